@@ -105,9 +105,10 @@ export const appointmentAPI = {
     body: JSON.stringify(appointment),
   }),
   
-  cancel: (appointmentId) => apiRequest('/appointments/cancel', {
+  // version: the version the appointment was read at; the server answers 409 if it changed since
+  cancel: (appointmentId, version) => apiRequest('/appointments/cancel', {
     method: 'POST',
-    body: JSON.stringify({ appointmentId }),
+    body: JSON.stringify({ appointmentId, version }),
   }),
 
   delete: (id) => apiRequest(`/appointments/${id}`, {
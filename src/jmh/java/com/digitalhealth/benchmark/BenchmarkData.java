@@ -0,0 +1,153 @@
+package com.digitalhealth.benchmark;
+
+import com.digitalhealth.model.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+/**
+ * Deterministic datasets and temp directories shared by the DAO benchmarks.
+ * Entity i always has the same ID and contents, so results are comparable between runs.
+ * Datasets are at version 1, like rows bulk-loaded from another store, so they can be updated.
+ */
+final class BenchmarkData {
+    private static final String[] SPECIALTIES = {
+        "Cardiology", "Dermatology", "Neurology", "Pediatrics", "Orthopedics", "General Practice"
+    };
+    private static final LocalDateTime EPOCH = LocalDateTime.of(2025, 1, 6, 9, 0);
+
+    private BenchmarkData() {
+    }
+
+    static int randomIndex(int size) {
+        return ThreadLocalRandom.current().nextInt(size);
+    }
+
+    static Path createTempDirectory(String prefix) throws IOException {
+        return Files.createTempDirectory("dh-bench-" + prefix);
+    }
+
+    static void deleteRecursively(Path directory) throws IOException {
+        if (directory == null || !Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    // ========== Patients ==========
+
+    static String patientId(int i) {
+        return "P" + (1000 + i);
+    }
+
+    static Patient patient(int i) {
+        return new Patient(patientId(i), "Patient " + i, 18 + i % 70, i % 2 == 0 ? "F" : "M",
+                String.format("%010d", 5550000000L + i));
+    }
+
+    static Map<String, Patient> patients(int size) {
+        Map<String, Patient> patients = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            Patient patient = patient(i);
+            patient.setVersion(1);
+            patients.put(patient.getPatientId(), patient);
+        }
+        return patients;
+    }
+
+    // ========== Doctors ==========
+
+    static String doctorId(int i) {
+        return String.format("D%04d", i + 1);
+    }
+
+    static Doctor doctor(int i) {
+        return new Doctor(doctorId(i), "Dr. Doctor " + i, SPECIALTIES[i % SPECIALTIES.length],
+                String.format("%010d", 4440000000L + i), "doctor" + i + "@clinic.example",
+                "Mon-Fri 09:00-17:00");
+    }
+
+    static Map<String, Doctor> doctors(int size) {
+        Map<String, Doctor> doctors = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            Doctor doctor = doctor(i);
+            doctor.setVersion(1);
+            doctors.put(doctor.getDoctorId(), doctor);
+        }
+        return doctors;
+    }
+
+    // ========== Appointments ==========
+
+    static String appointmentId(int i) {
+        return "A" + (1000 + i);
+    }
+
+    static Appointment appointment(int i) {
+        return new Appointment(appointmentId(i), patientId(i / 3), doctorId(i % 500),
+                EPOCH.plusMinutes(30L * i), AppointmentStatus.BOOKED, "Routine checkup");
+    }
+
+    static Map<String, Appointment> appointments(int size) {
+        Map<String, Appointment> appointments = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            Appointment appointment = appointment(i);
+            appointment.setVersion(1);
+            appointments.put(appointment.getAppointmentId(), appointment);
+        }
+        return appointments;
+    }
+
+    // ========== Health Records ==========
+
+    static String recordId(int i) {
+        return "R" + (1000 + i);
+    }
+
+    static HealthRecord healthRecord(int i) {
+        return new HealthRecord(recordId(i), patientId(i / 4), doctorId(i % 500),
+                EPOCH.plusHours(i), "Headache and mild fever", "Viral infection",
+                "Rest and fluids", "Paracetamol 500mg twice daily");
+    }
+
+    static Map<String, HealthRecord> healthRecords(int size) {
+        Map<String, HealthRecord> records = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            HealthRecord record = healthRecord(i);
+            record.setVersion(1);
+            records.put(record.getRecordId(), record);
+        }
+        return records;
+    }
+
+    // ========== Users ==========
+
+    static String userId(int i) {
+        return String.format("U%07d", i + 2);
+    }
+
+    static User user(int i) {
+        return new User(userId(i), "user" + i,
+                "5e884898da28047151d0e56f8dc6292773603d0d6aabbdd62a11ef721d1542d8",
+                UserRole.PATIENT, patientId(i));
+    }
+
+    static Map<String, User> users(int size) {
+        Map<String, User> users = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            User user = user(i);
+            user.setVersion(1);
+            users.put(user.getUserId(), user);
+        }
+        return users;
+    }
+}
@@ -0,0 +1,210 @@
+package com.digitalhealth.benchmark;
+
+import com.digitalhealth.dao.file.FileAppointmentDao;
+import com.digitalhealth.dao.file.FileDoctorDao;
+import com.digitalhealth.dao.file.FileHealthRecordDao;
+import com.digitalhealth.dao.file.FilePatientDao;
+import com.digitalhealth.dao.file.FileUserDao;
+import com.digitalhealth.exception.OptimisticLockException;
+import com.digitalhealth.model.Versioned;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * Cost of single operations of a file DAO, picked by {@code table}, against a dataset of
+ * {@code size} entities. The *Contended variants run the same operation from
+ * {@value #CONTENDED_THREADS} threads at once to expose lock contention.
+ *
+ * {@code save} updates a stored entity the way the services do: it reads it and saves a new
+ * copy at the version it read. A contended save that loses the race to another thread fails
+ * its version check and is measured like any other. For users, {@code loadAll} is
+ * {@code findAll}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class FileDaoBenchmark {
+    static final int CONTENDED_THREADS = 4;
+    static final int DELETE_BATCH = 100;
+
+    @Param({"patients", "doctors", "appointments", "healthRecords", "users"})
+    public String table;
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    private Path directory;
+    private Table<?> dao;
+
+    /**
+     * The operations of one file DAO on the entities of {@link BenchmarkData}.
+     */
+    private static final class Table<T extends Versioned> {
+        private final IntFunction<T> entity;
+        private final IntFunction<String> id;
+        private final Function<String, Optional<T>> findById;
+        private final Consumer<T> save;
+        private final Supplier<Object> loadAll;
+        private final Consumer<String> delete;
+        private final Runnable reseed;
+
+        Table(IntFunction<T> entity, IntFunction<String> id, Function<String, Optional<T>> findById,
+              Consumer<T> save, Supplier<Object> loadAll, Consumer<String> delete, Runnable reseed) {
+            this.entity = entity;
+            this.id = id;
+            this.findById = findById;
+            this.save = save;
+            this.loadAll = loadAll;
+            this.delete = delete;
+            this.reseed = reseed;
+        }
+
+        void save(int i) {
+            T row = entity.apply(i);
+            findById.apply(id.apply(i)).ifPresent(stored -> row.setVersion(stored.getVersion()));
+            try {
+                save.accept(row);
+            } catch (OptimisticLockException e) {
+                // Updated by another thread since it was read
+            }
+        }
+
+        Optional<T> findById(int i) {
+            return findById.apply(id.apply(i));
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = BenchmarkData.createTempDirectory(table);
+        String path = directory.resolve(table + ".dat").toString();
+        switch (table) {
+            case "patients": {
+                FilePatientDao patients = new FilePatientDao(path);
+                dao = new Table<>(BenchmarkData::patient, BenchmarkData::patientId, patients::findById,
+                        patients::save, patients::loadAll, patients::delete,
+                        () -> patients.saveAll(BenchmarkData.patients(size)));
+                break;
+            }
+            case "doctors": {
+                FileDoctorDao doctors = new FileDoctorDao(path);
+                dao = new Table<>(BenchmarkData::doctor, BenchmarkData::doctorId, doctors::findById,
+                        doctors::save, doctors::loadAll, doctors::delete,
+                        () -> doctors.saveAll(BenchmarkData.doctors(size)));
+                break;
+            }
+            case "appointments": {
+                FileAppointmentDao appointments = new FileAppointmentDao(path);
+                dao = new Table<>(BenchmarkData::appointment, BenchmarkData::appointmentId, appointments::findById,
+                        appointments::save, appointments::loadAll, appointments::delete,
+                        () -> appointments.saveAll(BenchmarkData.appointments(size)));
+                break;
+            }
+            case "healthRecords": {
+                FileHealthRecordDao records = new FileHealthRecordDao(path);
+                dao = new Table<>(BenchmarkData::healthRecord, BenchmarkData::recordId, records::findById,
+                        records::save, records::loadAll, records::delete,
+                        () -> records.saveAll(BenchmarkData.healthRecords(size)));
+                break;
+            }
+            case "users": {
+                FileUserDao users = new FileUserDao(path);
+                dao = new Table<>(BenchmarkData::user, BenchmarkData::userId, users::findById,
+                        users::update, users::findAll, users::delete,
+                        () -> users.saveAll(BenchmarkData.users(size)));
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown table: " + table);
+        }
+        dao.reseed.run();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkData.deleteRecursively(directory);
+    }
+
+    /**
+     * Restores the full dataset before each delete iteration and hands out distinct indexes,
+     * so every measured delete removes an existing entry.
+     */
+    @State(Scope.Benchmark)
+    public static class Deletions {
+        private final AtomicInteger cursor = new AtomicInteger();
+
+        @Setup(Level.Iteration)
+        public void reseed(FileDaoBenchmark benchmark) {
+            benchmark.dao.reseed.run();
+            cursor.set(0);
+        }
+
+        String nextId(FileDaoBenchmark benchmark) {
+            return benchmark.dao.id.apply(cursor.getAndIncrement() % benchmark.size);
+        }
+    }
+
+    @Benchmark
+    public void save() {
+        dao.save(BenchmarkData.randomIndex(size));
+    }
+
+    @Benchmark
+    @Threads(CONTENDED_THREADS)
+    public void saveContended() {
+        dao.save(BenchmarkData.randomIndex(size));
+    }
+
+    @Benchmark
+    public Optional<?> findById() {
+        return dao.findById(BenchmarkData.randomIndex(size));
+    }
+
+    @Benchmark
+    @Threads(CONTENDED_THREADS)
+    public Optional<?> findByIdContended() {
+        return dao.findById(BenchmarkData.randomIndex(size));
+    }
+
+    @Benchmark
+    public Object loadAll() {
+        return dao.loadAll.get();
+    }
+
+    @Benchmark
+    @Threads(CONTENDED_THREADS)
+    public Object loadAllContended() {
+        return dao.loadAll.get();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2, batchSize = DELETE_BATCH)
+    @Measurement(iterations = 5, batchSize = DELETE_BATCH)
+    public void delete(Deletions deletions) {
+        dao.delete.accept(deletions.nextId(this));
+    }
+
+    @Benchmark
+    @Threads(CONTENDED_THREADS)
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2, batchSize = DELETE_BATCH)
+    @Measurement(iterations = 5, batchSize = DELETE_BATCH)
+    public void deleteContended(Deletions deletions) {
+        dao.delete.accept(deletions.nextId(this));
+    }
+}
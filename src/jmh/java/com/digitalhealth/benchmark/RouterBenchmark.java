@@ -0,0 +1,90 @@
+package com.digitalhealth.benchmark;
+
+import com.digitalhealth.api.Router;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of finding the handler for a request: {@link Router} against the previous scheme of
+ * one server context per resource (longest matching prefix), then {@code split("/")} and
+ * string comparisons inside the resource's handler. Handlers are no-ops, so only dispatch
+ * is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class RouterBenchmark {
+    private static final Router.Handler NO_OP = (exchange, params) -> { };
+    private static final String[] CONTEXTS = {
+        "/api/auth", "/api/patients", "/api/doctors", "/api/appointments",
+        "/api/health-records", "/api/metrics", "/"
+    };
+
+    @Param({"/api/patients", "/api/patients/search", "/api/patients/P1042",
+            "/api/health-records/HR10042", "/css/style.css"})
+    public String path;
+
+    private final Router router = new Router();
+    private final Router.PathParams params = new Router.PathParams();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        router.add("POST", "/api/auth/register", NO_OP);
+        router.add("POST", "/api/auth/login", NO_OP);
+        router.add("POST", "/api/auth/validate", NO_OP);
+        for (String resource : new String[] {"patients", "doctors"}) {
+            String id = resource.equals("patients") ? "{patientId}" : "{doctorId}";
+            router.add("GET", "/api/" + resource, NO_OP);
+            router.add("POST", "/api/" + resource + "/register", NO_OP);
+            router.add("GET", "/api/" + resource + "/" + id, NO_OP);
+            router.add("DELETE", "/api/" + resource + "/" + id, NO_OP);
+        }
+        router.add("GET", "/api/patients/search", NO_OP);
+        router.add("GET", "/api/appointments", NO_OP);
+        router.add("POST", "/api/appointments/book", NO_OP);
+        router.add("POST", "/api/appointments/cancel", NO_OP);
+        router.add("GET", "/api/appointments/{appointmentId}", NO_OP);
+        router.add("DELETE", "/api/appointments/{appointmentId}", NO_OP);
+        router.add("GET", "/api/health-records", NO_OP);
+        router.add("POST", "/api/health-records/add", NO_OP);
+        router.add("GET", "/api/health-records/search", NO_OP);
+        router.add("GET", "/api/health-records/{recordId}", NO_OP);
+        router.add("DELETE", "/api/health-records/{recordId}", NO_OP);
+        router.add("GET", "/api/metrics", NO_OP);
+        router.add("GET", "/*", NO_OP);
+    }
+
+    @Benchmark
+    public Router.Route trie() {
+        return router.match("GET", path, params);
+    }
+
+    @Benchmark
+    public String prefixContextsAndSplit() {
+        String context = null;
+        for (String candidate : CONTEXTS) {
+            if (path.startsWith(candidate) && (context == null || candidate.length() > context.length())) {
+                context = candidate;
+            }
+        }
+        String[] parts = path.split("/");
+        if (parts.length == 3) {
+            return context;
+        }
+        if (parts.length == 4) {
+            if (parts[3].equals("register") || parts[3].equals("book") || parts[3].equals("cancel")
+                    || parts[3].equals("add")) {
+                return null;
+            }
+            if (parts[3].equals("search")) {
+                return context + " search";
+            }
+            return parts[3];
+        }
+        return context;
+    }
+}
@@ -0,0 +1,274 @@
+package com.digitalhealth.analytics;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * On-disk layout of one column of a snapshot table.
+ *
+ * A column file holds a header, the dictionary (for string columns) and the column's values in
+ * row groups of {@link #ROWS_PER_GROUP} rows. Each group starts with the minimum and maximum
+ * value it contains and its encoded length, so a reader can skip a group that cannot match a
+ * predicate without decoding it. Within a group:
+ * <ul>
+ *   <li>string columns store dictionary codes (0 for null, otherwise 1 + the index in the
+ *       sorted dictionary, so codes compare like the strings);</li>
+ *   <li>timestamp columns store the first value and then the difference to the previous row,
+ *       zigzag-encoded; rows are sorted by time, so the differences are small;</li>
+ *   <li>the resulting numbers are written as varints, either one per row or as
+ *       (value, run length) pairs, whichever is smaller.</li>
+ * </ul>
+ */
+final class ColumnFile {
+    static final int MAGIC = 0x44484331; // "DHC1"
+    static final int ROWS_PER_GROUP = 4096;
+    static final String EXTENSION = ".col";
+
+    private static final byte PLAIN = 0;
+    private static final byte RUN_LENGTH = 1;
+
+    private ColumnFile() {
+    }
+
+    /**
+     * Kind of values in a column.
+     */
+    enum Type {
+        /** Strings, dictionary-encoded. */
+        STRING,
+        /** {@link java.time.LocalDateTime} values, stored as epoch seconds (UTC) and delta-encoded. */
+        TIMESTAMP
+    }
+
+    /**
+     * Write a whole column.
+     *
+     * @param dictionary Sorted dictionary for string columns, null for timestamps
+     * @param values Dictionary codes or epoch seconds, in row order
+     */
+    static void write(File file, Type type, List<String> dictionary, long[] values) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeByte(type.ordinal());
+            out.writeInt(values.length);
+            out.writeInt(ROWS_PER_GROUP);
+            if (type == Type.STRING) {
+                out.writeInt(dictionary.size());
+                for (String value : dictionary) {
+                    out.writeUTF(value);
+                }
+            }
+            ByteArrayOutputStream group = new ByteArrayOutputStream(ROWS_PER_GROUP * 2);
+            for (int from = 0; from < values.length; from += ROWS_PER_GROUP) {
+                int to = Math.min(values.length, from + ROWS_PER_GROUP);
+                long min = Long.MAX_VALUE;
+                long max = Long.MIN_VALUE;
+                for (int i = from; i < to; i++) {
+                    min = Math.min(min, values[i]);
+                    max = Math.max(max, values[i]);
+                }
+                group.reset();
+                encodeGroup(new DataOutputStream(group), type, values, from, to);
+                out.writeLong(min);
+                out.writeLong(max);
+                out.writeInt(group.size());
+                group.writeTo(out);
+            }
+        }
+    }
+
+    private static void encodeGroup(DataOutput out, Type type, long[] values, int from, int to) throws IOException {
+        long[] numbers = new long[to - from];
+        long previous = 0;
+        for (int i = from; i < to; i++) {
+            if (type == Type.TIMESTAMP) {
+                numbers[i - from] = zigzag(values[i] - previous);
+                previous = values[i];
+            } else {
+                numbers[i - from] = values[i];
+            }
+        }
+        int plainBytes = 0;
+        int runBytes = 0;
+        for (int i = 0; i < numbers.length; ) {
+            int run = 1;
+            while (i + run < numbers.length && numbers[i + run] == numbers[i]) {
+                run++;
+            }
+            plainBytes += run * varLongSize(numbers[i]);
+            runBytes += varLongSize(numbers[i]) + varLongSize(run);
+            i += run;
+        }
+        if (runBytes < plainBytes) {
+            out.writeByte(RUN_LENGTH);
+            for (int i = 0; i < numbers.length; ) {
+                int run = 1;
+                while (i + run < numbers.length && numbers[i + run] == numbers[i]) {
+                    run++;
+                }
+                writeVarLong(out, numbers[i]);
+                writeVarLong(out, run);
+                i += run;
+            }
+        } else {
+            out.writeByte(PLAIN);
+            for (long number : numbers) {
+                writeVarLong(out, number);
+            }
+        }
+    }
+
+    /**
+     * Sequential reader of one column file. Callers step through the groups in order with
+     * {@link #nextGroup()} and then either {@link #decode(long[])} or {@link #skip()} each one.
+     */
+    static final class Reader implements Closeable {
+        final String name;
+        final Type type;
+        final int rowCount;
+        final List<String> dictionary;
+        private final DataInputStream in;
+        private long groupMin;
+        private long groupMax;
+        private int groupBytes;
+        private int groupRows;
+        private int rowsRead;
+
+        Reader(File file, String name) throws IOException {
+            this.name = name;
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536));
+            try {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException("Not a snapshot column file: " + file);
+                }
+                this.type = Type.values()[in.readByte()];
+                this.rowCount = in.readInt();
+                if (in.readInt() != ROWS_PER_GROUP) {
+                    throw new IOException("Unsupported row group size in " + file);
+                }
+                if (type == Type.STRING) {
+                    int size = in.readInt();
+                    List<String> values = new ArrayList<>(size);
+                    for (int i = 0; i < size; i++) {
+                        values.add(in.readUTF());
+                    }
+                    this.dictionary = values;
+                } else {
+                    this.dictionary = null;
+                }
+            } catch (IOException | RuntimeException e) {
+                in.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Read the next group's header.
+         *
+         * @return Rows in the group, or 0 at the end of the column
+         */
+        int nextGroup() throws IOException {
+            if (rowsRead >= rowCount) {
+                return 0;
+            }
+            groupMin = in.readLong();
+            groupMax = in.readLong();
+            groupBytes = in.readInt();
+            groupRows = Math.min(ROWS_PER_GROUP, rowCount - rowsRead);
+            rowsRead += groupRows;
+            return groupRows;
+        }
+
+        long groupMin() {
+            return groupMin;
+        }
+
+        long groupMax() {
+            return groupMax;
+        }
+
+        void skip() throws IOException {
+            int remaining = groupBytes;
+            while (remaining > 0) {
+                int skipped = in.skipBytes(remaining);
+                if (skipped <= 0) {
+                    throw new EOFException("Truncated snapshot column " + name);
+                }
+                remaining -= skipped;
+            }
+        }
+
+        /**
+         * Decode the current group into codes or epoch seconds.
+         */
+        void decode(long[] values) throws IOException {
+            byte encoding = in.readByte();
+            int n = 0;
+            if (encoding == RUN_LENGTH) {
+                while (n < groupRows) {
+                    long value = readVarLong(in);
+                    long run = readVarLong(in);
+                    for (long i = 0; i < run; i++) {
+                        values[n++] = value;
+                    }
+                }
+            } else {
+                while (n < groupRows) {
+                    values[n++] = readVarLong(in);
+                }
+            }
+            if (type == Type.TIMESTAMP) {
+                long previous = 0;
+                for (int i = 0; i < groupRows; i++) {
+                    previous += unzigzag(values[i]);
+                    values[i] = previous;
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    // ========== Varints ==========
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int varLongSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in snapshot column");
+    }
+}
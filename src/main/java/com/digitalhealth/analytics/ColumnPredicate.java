@@ -0,0 +1,114 @@
+package com.digitalhealth.analytics;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Filter on one column of a snapshot scan. Predicates are checked against each row group's
+ * minimum and maximum first, so groups that cannot match are skipped without being decoded.
+ */
+public final class ColumnPredicate {
+    private final String column;
+    private final Set<String> values;
+    private final LocalDateTime from;
+    private final LocalDateTime to;
+
+    private ColumnPredicate(String column, Set<String> values, LocalDateTime from, LocalDateTime to) {
+        this.column = column;
+        this.values = values;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Rows whose string column equals the value.
+     */
+    public static ColumnPredicate equalTo(String column, String value) {
+        return in(column, Collections.singleton(value));
+    }
+
+    /**
+     * Rows whose string column equals any of the values.
+     */
+    public static ColumnPredicate in(String column, Collection<String> values) {
+        return new ColumnPredicate(column, new HashSet<>(values), null, null);
+    }
+
+    /**
+     * Rows whose timestamp column lies in [from, to). Snapshots keep whole seconds.
+     *
+     * @param from Earliest time (inclusive), or null for no lower bound
+     * @param to Latest time (exclusive), or null for no upper bound
+     */
+    public static ColumnPredicate between(String column, LocalDateTime from, LocalDateTime to) {
+        return new ColumnPredicate(column, null, from, to);
+    }
+
+    public String getColumn() {
+        return column;
+    }
+
+    /**
+     * Resolve the predicate against a column: string values become dictionary codes (values
+     * missing from the dictionary match nothing) and times become epoch seconds.
+     */
+    Bound bind(ColumnFile.Type type, List<String> dictionary) {
+        if (values != null) {
+            if (type != ColumnFile.Type.STRING) {
+                throw new IllegalArgumentException("Column " + column + " is not a string column");
+            }
+            BitSet codes = new BitSet(dictionary.size() + 1);
+            for (String value : values) {
+                int code = value == null ? 0 : Collections.binarySearch(dictionary, value) + 1;
+                if (value == null || code > 0) {
+                    codes.set(code);
+                }
+            }
+            return new Bound(codes, codes.nextSetBit(0), codes.length() - 1);
+        }
+        if (type != ColumnFile.Type.TIMESTAMP) {
+            throw new IllegalArgumentException("Column " + column + " is not a timestamp column");
+        }
+        return new Bound(null, from == null ? Long.MIN_VALUE : from.toEpochSecond(ZoneOffset.UTC),
+                to == null ? Long.MAX_VALUE : to.toEpochSecond(ZoneOffset.UTC) - (to.getNano() == 0 ? 1 : 0));
+    }
+
+    /**
+     * A predicate resolved against one column file: a set of dictionary codes, or a range of
+     * epoch seconds.
+     */
+    static final class Bound {
+        private final BitSet codes;
+        private final long min;
+        private final long max;
+
+        private Bound(BitSet codes, long min, long max) {
+            this.codes = codes;
+            this.min = min;
+            this.max = max;
+        }
+
+        /**
+         * Whether a group with values in [groupMin, groupMax] may contain a matching row.
+         */
+        boolean mightMatch(long groupMin, long groupMax) {
+            if (codes != null && codes.isEmpty()) {
+                return false;
+            }
+            return min <= groupMax && max >= groupMin;
+        }
+
+        boolean matches(long value) {
+            if (codes != null) {
+                return codes.get((int) value);
+            }
+            return value >= min && value <= max;
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package com.digitalhealth.analytics;
+
+import java.io.*;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Read-only view of a snapshot written by {@link ColumnarSnapshotWriter}.
+ *
+ * A scan reads only the columns it selects or filters on. Row groups whose minimum and
+ * maximum rule out a predicate are skipped without decoding, and the selected columns of a
+ * group are only decoded if some row in it passes the predicates.
+ *
+ * <pre>
+ * ColumnarSnapshot snapshot = ColumnarSnapshot.open(new File("data/analytics"));
+ * snapshot.scan("appointments")
+ *         .select("specialty", "date_time")
+ *         .where(ColumnPredicate.equalTo("status", "COMPLETED"))
+ *         .where(ColumnPredicate.between("date_time", from, to))
+ *         .forEach(row -> count(row.getString("specialty"), row.getTimestamp("date_time")));
+ * </pre>
+ */
+public final class ColumnarSnapshot {
+    static final String MANIFEST = "snapshot.properties";
+
+    private final File directory;
+    private final Properties manifest;
+
+    private ColumnarSnapshot(File directory, Properties manifest) {
+        this.directory = directory;
+        this.manifest = manifest;
+    }
+
+    /**
+     * Open a snapshot directory.
+     *
+     * @throws FileNotFoundException if the directory holds no complete snapshot
+     */
+    public static ColumnarSnapshot open(File directory) throws IOException {
+        Properties manifest = new Properties();
+        try (InputStream in = new FileInputStream(new File(directory, MANIFEST))) {
+            manifest.load(in);
+        }
+        return new ColumnarSnapshot(directory, manifest);
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return LocalDateTime.parse(manifest.getProperty("created"));
+    }
+
+    public List<String> getTables() {
+        return Arrays.asList(manifest.getProperty("tables").split(","));
+    }
+
+    public List<String> getColumns(String table) {
+        return Arrays.asList(property(table, "columns").split(","));
+    }
+
+    public int getRowCount(String table) {
+        return Integer.parseInt(property(table, "rows"));
+    }
+
+    private String property(String table, String key) {
+        String value = manifest.getProperty(table + "." + key);
+        if (value == null) {
+            throw new IllegalArgumentException("No table " + table + " in snapshot");
+        }
+        return value;
+    }
+
+    /**
+     * Start a scan of a table; by default it selects every column.
+     */
+    public Scan scan(String table) {
+        return new Scan(table);
+    }
+
+    /**
+     * Values of one row. Only columns the scan selected or filtered on can be read.
+     */
+    public interface Row {
+        String getString(String column);
+
+        LocalDateTime getTimestamp(String column);
+    }
+
+    /**
+     * A scan of one table, configured with {@link #select} and {@link #where} and run with
+     * {@link #forEach}.
+     */
+    public final class Scan {
+        private final String table;
+        private final Set<String> selected = new LinkedHashSet<>();
+        private final List<ColumnPredicate> predicates = new ArrayList<>();
+        private int groupsRead;
+        private int groupsSkipped;
+
+        private Scan(String table) {
+            this.table = table;
+            selected.addAll(getColumns(table));
+        }
+
+        /**
+         * Read only these columns (predicate columns are read as well).
+         */
+        public Scan select(String... columns) {
+            List<String> known = getColumns(table);
+            selected.clear();
+            for (String column : columns) {
+                if (!known.contains(column)) {
+                    throw new IllegalArgumentException("No column " + column + " in table " + table);
+                }
+                selected.add(column);
+            }
+            return this;
+        }
+
+        /**
+         * Keep only rows matching the predicate; several predicates must all match.
+         */
+        public Scan where(ColumnPredicate predicate) {
+            if (!getColumns(table).contains(predicate.getColumn())) {
+                throw new IllegalArgumentException("No column " + predicate.getColumn() + " in table " + table);
+            }
+            predicates.add(predicate);
+            return this;
+        }
+
+        /**
+         * Pass each matching row to the action, in time order. The row object is reused;
+         * copy values out of it rather than keeping it.
+         *
+         * @return Number of matching rows
+         */
+        public long forEach(Consumer<Row> action) throws IOException {
+            groupsRead = 0;
+            groupsSkipped = 0;
+            Map<String, Slot> slots = new LinkedHashMap<>();
+            try {
+                for (ColumnPredicate predicate : predicates) {
+                    slot(slots, predicate.getColumn());
+                }
+                for (String column : selected) {
+                    slot(slots, column);
+                }
+                List<Slot> filterSlots = new ArrayList<>();
+                List<ColumnPredicate.Bound> filters = new ArrayList<>();
+                for (ColumnPredicate predicate : predicates) {
+                    Slot slot = slots.get(predicate.getColumn());
+                    filterSlots.add(slot);
+                    filters.add(predicate.bind(slot.reader.type, slot.reader.dictionary));
+                }
+                return scanGroups(slots, filterSlots, filters, action);
+            } finally {
+                for (Slot slot : slots.values()) {
+                    slot.reader.close();
+                }
+            }
+        }
+
+        private long scanGroups(Map<String, Slot> slots, List<Slot> filterSlots,
+                                List<ColumnPredicate.Bound> filters, Consumer<Row> action) throws IOException {
+            GroupRow row = new GroupRow(slots);
+            boolean[] match = new boolean[ColumnFile.ROWS_PER_GROUP];
+            long matched = 0;
+            while (true) {
+                int rows = 0;
+                for (Slot slot : slots.values()) {
+                    rows = slot.reader.nextGroup();
+                    slot.decoded = false;
+                }
+                if (rows == 0) {
+                    return matched;
+                }
+
+                boolean possible = true;
+                for (int f = 0; f < filters.size() && possible; f++) {
+                    Slot slot = filterSlots.get(f);
+                    possible = filters.get(f).mightMatch(slot.reader.groupMin(), slot.reader.groupMax());
+                }
+                int matches = 0;
+                if (possible) {
+                    Arrays.fill(match, 0, rows, true);
+                    for (int f = 0; f < filters.size(); f++) {
+                        Slot slot = filterSlots.get(f);
+                        slot.decode();
+                        ColumnPredicate.Bound filter = filters.get(f);
+                        for (int i = 0; i < rows; i++) {
+                            match[i] = match[i] && filter.matches(slot.values[i]);
+                        }
+                    }
+                    for (int i = 0; i < rows; i++) {
+                        if (match[i]) {
+                            matches++;
+                        }
+                    }
+                }
+                if (matches == 0) {
+                    groupsSkipped++;
+                    for (Slot slot : slots.values()) {
+                        if (!slot.decoded) {
+                            slot.reader.skip();
+                        }
+                    }
+                    continue;
+                }
+
+                groupsRead++;
+                for (Slot slot : slots.values()) {
+                    slot.decode();
+                }
+                for (int i = 0; i < rows; i++) {
+                    if (match[i]) {
+                        row.index = i;
+                        action.accept(row);
+                    }
+                }
+                matched += matches;
+            }
+        }
+
+        private void slot(Map<String, Slot> slots, String column) throws IOException {
+            if (!slots.containsKey(column)) {
+                File file = new File(new File(directory, table), column + ColumnFile.EXTENSION);
+                slots.put(column, new Slot(new ColumnFile.Reader(file, column)));
+            }
+        }
+
+        /**
+         * Row groups decoded by the last {@link #forEach}.
+         */
+        public int getGroupsRead() {
+            return groupsRead;
+        }
+
+        /**
+         * Row groups the last {@link #forEach} skipped because no row could match.
+         */
+        public int getGroupsSkipped() {
+            return groupsSkipped;
+        }
+    }
+
+    /**
+     * A column being scanned and its decoded values for the current group.
+     */
+    private static final class Slot {
+        final ColumnFile.Reader reader;
+        final long[] values = new long[ColumnFile.ROWS_PER_GROUP];
+        boolean decoded;
+
+        Slot(ColumnFile.Reader reader) {
+            this.reader = reader;
+        }
+
+        void decode() throws IOException {
+            if (!decoded) {
+                reader.decode(values);
+                decoded = true;
+            }
+        }
+    }
+
+    private static final class GroupRow implements Row {
+        private final Map<String, Slot> slots;
+        int index;
+
+        GroupRow(Map<String, Slot> slots) {
+            this.slots = slots;
+        }
+
+        @Override
+        public String getString(String column) {
+            Slot slot = slot(column, ColumnFile.Type.STRING);
+            int code = (int) slot.values[index];
+            return code == 0 ? null : slot.reader.dictionary.get(code - 1);
+        }
+
+        @Override
+        public LocalDateTime getTimestamp(String column) {
+            Slot slot = slot(column, ColumnFile.Type.TIMESTAMP);
+            return LocalDateTime.ofEpochSecond(slot.values[index], 0, ZoneOffset.UTC);
+        }
+
+        private Slot slot(String column, ColumnFile.Type type) {
+            Slot slot = slots.get(column);
+            if (slot == null) {
+                throw new IllegalArgumentException("Column " + column + " is not part of the scan");
+            }
+            if (slot.reader.type != type) {
+                throw new IllegalArgumentException("Column " + column + " is not a "
+                        + type.name().toLowerCase() + " column");
+            }
+            return slot;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.digitalhealth.analytics;
+
+import com.digitalhealth.dao.AppointmentDao;
+import com.digitalhealth.dao.DoctorDao;
+import com.digitalhealth.dao.HealthRecordDao;
+import com.digitalhealth.model.Appointment;
+import com.digitalhealth.model.DoctorSummary;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+
+/**
+ * Writes appointments and health records as a columnar snapshot for aggregate queries
+ * (for example visits by specialty per month), read back with {@link ColumnarSnapshot}.
+ *
+ * Each table is a directory with one file per column (see {@link ColumnFile}); rows are
+ * sorted by time. The doctor's specialty is copied onto every row so queries by specialty
+ * need no join. Data is read through the DAO interfaces, so either backend can be exported.
+ *
+ * <ul>
+ *   <li>{@code appointments}: appointment_id, patient_id, doctor_id, specialty, status, date_time</li>
+ *   <li>{@code health_records}: record_id, patient_id, doctor_id, specialty, diagnosis, record_date</li>
+ * </ul>
+ */
+public class ColumnarSnapshotWriter {
+    public static final String APPOINTMENTS = "appointments";
+    public static final String HEALTH_RECORDS = "health_records";
+
+    private final AppointmentDao appointmentDao;
+    private final HealthRecordDao healthRecordDao;
+    private final DoctorDao doctorDao;
+
+    public ColumnarSnapshotWriter(AppointmentDao appointmentDao, HealthRecordDao healthRecordDao,
+                                  DoctorDao doctorDao) {
+        this.appointmentDao = appointmentDao;
+        this.healthRecordDao = healthRecordDao;
+        this.doctorDao = doctorDao;
+    }
+
+    /**
+     * Write a snapshot, replacing any previous one in the directory. The manifest is written
+     * last, so a snapshot interrupted part way is not opened as complete.
+     *
+     * @return Rows written per table
+     */
+    public Map<String, Integer> write(File directory) throws IOException {
+        Files.createDirectories(directory.toPath());
+        File manifestFile = new File(directory, ColumnarSnapshot.MANIFEST);
+        Files.deleteIfExists(manifestFile.toPath());
+        Map<String, DoctorSummary> doctors = doctorDao.findAllSummaries();
+
+        TableBuilder appointments = new TableBuilder(
+                "appointment_id", "patient_id", "doctor_id", "specialty", "status");
+        for (Appointment appointment : appointmentDao.loadAll().values()) {
+            appointments.add(appointment.getDateTime(), appointment.getAppointmentId(), appointment.getPatientId(),
+                    appointment.getDoctorId(), specialty(doctors, appointment.getDoctorId()),
+                    appointment.getStatus() != null ? appointment.getStatus().name() : null);
+        }
+
+        TableBuilder records = new TableBuilder(
+                "record_id", "patient_id", "doctor_id", "specialty", "diagnosis");
+        healthRecordDao.scan(null, null, record -> records.add(record.getDate(), record.getRecordId(),
+                record.getPatientId(), record.getDoctorId(), specialty(doctors, record.getDoctorId()),
+                record.getDiagnosis()));
+
+        Map<String, Integer> rows = new LinkedHashMap<>();
+        rows.put(APPOINTMENTS, appointments.write(new File(directory, APPOINTMENTS), "date_time"));
+        rows.put(HEALTH_RECORDS, records.write(new File(directory, HEALTH_RECORDS), "record_date"));
+
+        Properties manifest = new Properties();
+        manifest.setProperty("created", LocalDateTime.now().toString());
+        manifest.setProperty("tables", String.join(",", rows.keySet()));
+        manifest.setProperty(APPOINTMENTS + ".columns", String.join(",", appointments.columnNames("date_time")));
+        manifest.setProperty(HEALTH_RECORDS + ".columns", String.join(",", records.columnNames("record_date")));
+        for (Map.Entry<String, Integer> entry : rows.entrySet()) {
+            manifest.setProperty(entry.getKey() + ".rows", Integer.toString(entry.getValue()));
+        }
+        File temp = new File(directory, ColumnarSnapshot.MANIFEST + ".tmp");
+        try (OutputStream out = new FileOutputStream(temp)) {
+            manifest.store(out, "Columnar snapshot");
+        }
+        Files.move(temp.toPath(), manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        return rows;
+    }
+
+    /**
+     * Specialty of a doctor; null for unknown doctors.
+     */
+    private static String specialty(Map<String, DoctorSummary> doctors, String doctorId) {
+        DoctorSummary doctor = doctorId != null ? doctors.get(doctorId) : null;
+        return doctor != null ? doctor.getSpecialty() : null;
+    }
+
+    /**
+     * Rows of one table collected column by column: string columns as provisional dictionary
+     * codes in arrival order, plus a timestamp per row.
+     */
+    private static final class TableBuilder {
+        private final String[] names;
+        private final List<Map<String, Integer>> dictionaries = new ArrayList<>();
+        private final List<List<String>> values = new ArrayList<>();
+        private int[][] codes;
+        private long[] times = new long[1024];
+        private int size;
+
+        TableBuilder(String... names) {
+            this.names = names;
+            this.codes = new int[names.length][1024];
+            for (int c = 0; c < names.length; c++) {
+                dictionaries.add(new HashMap<>());
+                values.add(new ArrayList<>());
+            }
+        }
+
+        void add(LocalDateTime time, String... row) {
+            if (time == null) {
+                throw new IllegalStateException("Row " + row[0] + " has no date");
+            }
+            if (size == times.length) {
+                times = Arrays.copyOf(times, size * 2);
+                for (int c = 0; c < names.length; c++) {
+                    codes[c] = Arrays.copyOf(codes[c], size * 2);
+                }
+            }
+            times[size] = time.toEpochSecond(ZoneOffset.UTC);
+            for (int c = 0; c < names.length; c++) {
+                codes[c][size] = provisionalCode(c, row[c]);
+            }
+            size++;
+        }
+
+        private int provisionalCode(int column, String value) {
+            if (value == null) {
+                return -1;
+            }
+            Map<String, Integer> dictionary = dictionaries.get(column);
+            Integer code = dictionary.get(value);
+            if (code == null) {
+                code = dictionary.size();
+                dictionary.put(value, code);
+                values.get(column).add(value);
+            }
+            return code;
+        }
+
+        List<String> columnNames(String timeColumn) {
+            List<String> columns = new ArrayList<>(Arrays.asList(names));
+            columns.add(timeColumn);
+            return columns;
+        }
+
+        /**
+         * Sort the rows by time (then by the first column) and write every column.
+         *
+         * @return Number of rows
+         */
+        int write(File directory, String timeColumn) throws IOException {
+            Files.createDirectories(directory.toPath());
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            List<String> firstValues = values.get(0);
+            Arrays.sort(order, Comparator.<Integer>comparingLong(i -> times[i])
+                    .thenComparing(i -> codes[0][i] < 0 ? "" : firstValues.get(codes[0][i])));
+
+            long[] column = new long[size];
+            for (int c = 0; c < names.length; c++) {
+                List<String> dictionary = new ArrayList<>(values.get(c));
+                Collections.sort(dictionary);
+                // Final code: 0 for null, 1 + position in the sorted dictionary otherwise
+                int[] finalCode = new int[dictionary.size()];
+                for (int i = 0; i < dictionary.size(); i++) {
+                    finalCode[dictionaries.get(c).get(dictionary.get(i))] = i + 1;
+                }
+                for (int i = 0; i < size; i++) {
+                    int code = codes[c][order[i]];
+                    column[i] = code < 0 ? 0 : finalCode[code];
+                }
+                ColumnFile.write(new File(directory, names[c] + ColumnFile.EXTENSION),
+                        ColumnFile.Type.STRING, dictionary, column);
+            }
+            for (int i = 0; i < size; i++) {
+                column[i] = times[order[i]];
+            }
+            ColumnFile.write(new File(directory, timeColumn + ColumnFile.EXTENSION),
+                    ColumnFile.Type.TIMESTAMP, null, column);
+            return size;
+        }
+    }
+}
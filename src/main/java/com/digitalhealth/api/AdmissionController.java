@@ -0,0 +1,378 @@
+package com.digitalhealth.api;
+
+import com.digitalhealth.metrics.Counter;
+import com.digitalhealth.metrics.Histogram;
+import com.digitalhealth.metrics.MetricsRegistry;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admission control in front of the request handlers.
+ *
+ * Each {@link RouteClass} has a concurrency limit that adapts to observed latency: while
+ * requests take no longer than {@link #LATENCY_TOLERANCE} times the best recent latency the
+ * limit grows, and beyond that it shrinks in proportion. Requests over the limit wait in a
+ * bounded queue for at most the class's queue budget; a full queue is answered at once with
+ * 429 and an expired wait with 503, both with Retry-After, instead of letting latency climb
+ * until clients time out.
+ *
+ * Classes are in priority order. While a class has requests waiting, every lower-priority
+ * class is held to half its limit, and freed capacity goes to waiting requests of the
+ * highest-priority class first, so bookings keep moving while bulk list reads back off.
+ *
+ * A request holds its slot until its response body is closed, so handlers that answer
+ * asynchronously are counted until they actually respond. Admitted requests run on the
+ * controller's own threads, never on the HTTP server's dispatcher thread, which only routes
+ * requests and answers rejections; the pool has one thread per slot of all classes together.
+ */
+final class AdmissionController implements Closeable {
+    /** Latency may grow to this multiple of the best recent latency before limits shrink. */
+    static final double LATENCY_TOLERANCE = 2.0;
+    /** Completions between resets of the best recent latency, so the baseline can follow real changes. */
+    private static final int BASELINE_WINDOW = 500;
+    private static final double SMOOTHING = 0.2;
+    private static final long MAX_RETRY_AFTER_SECONDS = 60;
+
+    /**
+     * Kinds of request with separate limits, highest priority first.
+     */
+    enum RouteClass {
+        WRITE("write", 8, 2, 64, 64, 1000),
+        AUTH("auth", 8, 2, 32, 32, 500),
+        READ("read", 8, 1, 64, 16, 100),
+        EXPORT("export", 1, 1, 2, 4, 2000);
+
+        final String label;
+        final int initialLimit;
+        final int minLimit;
+        final int maxLimit;
+        final int queueCapacity;
+        final long queueBudgetMillis;
+
+        RouteClass(String label, int initialLimit, int minLimit, int maxLimit, int queueCapacity,
+                   long queueBudgetMillis) {
+            this.label = label;
+            this.initialLimit = initialLimit;
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+            this.queueCapacity = queueCapacity;
+            this.queueBudgetMillis = queueBudgetMillis;
+        }
+    }
+
+    /**
+     * Sends the response for a request that was not admitted.
+     */
+    @FunctionalInterface
+    interface Rejection {
+        void send(HttpExchange exchange, int status, long retryAfterSeconds, String message) throws IOException;
+    }
+
+    private final Map<RouteClass, Lane> lanes = new EnumMap<>(RouteClass.class);
+    private final Rejection rejection;
+    private final ExecutorService admittedExecutor;
+    private final ScheduledExecutorService timer;
+    private boolean closed;
+
+    /**
+     * A waiting request.
+     */
+    private static final class Waiter {
+        final HttpExchange exchange;
+        final RequestMetrics.Call call;
+        final long enqueuedAt = System.nanoTime();
+        ScheduledFuture<?> timeout;
+
+        Waiter(HttpExchange exchange, RequestMetrics.Call call) {
+            this.exchange = exchange;
+            this.call = call;
+        }
+    }
+
+    /**
+     * Limit, in-flight count and queue of one route class. Guarded by the controller.
+     */
+    static final class Lane {
+        final RouteClass routeClass;
+        final ArrayDeque<Waiter> queue = new ArrayDeque<>();
+        final Counter queueFull;
+        final Counter queueTimeout;
+        final Histogram queueWait;
+        double limit;
+        int inFlight;
+        long baselineNanos = Long.MAX_VALUE;
+        long windowMinNanos = Long.MAX_VALUE;
+        int windowCount;
+        double smoothedNanos;
+
+        Lane(RouteClass routeClass, MetricsRegistry metrics) {
+            this.routeClass = routeClass;
+            this.limit = routeClass.initialLimit;
+            this.queueFull = metrics.counter("admission_rejected_total", "Requests turned away by admission control",
+                    "class", routeClass.label, "reason", "queue_full");
+            this.queueTimeout = metrics.counter("admission_rejected_total", "Requests turned away by admission control",
+                    "class", routeClass.label, "reason", "queue_timeout");
+            this.queueWait = metrics.histogram("admission_queue_wait_seconds", "Time admitted requests spent queued",
+                    "class", routeClass.label);
+        }
+
+        int currentLimit() {
+            return (int) limit;
+        }
+
+        /**
+         * Adjust the limit to a completed request's latency: scale it by how far the smoothed
+         * latency is above the tolerated baseline, plus a headroom of sqrt(limit) so it can
+         * grow while latency holds. The limit only grows while it is actually being used.
+         */
+        void onComplete(long nanos) {
+            windowMinNanos = Math.min(windowMinNanos, nanos);
+            if (++windowCount >= BASELINE_WINDOW) {
+                baselineNanos = windowMinNanos;
+                windowMinNanos = Long.MAX_VALUE;
+                windowCount = 0;
+            } else {
+                baselineNanos = Math.min(baselineNanos, nanos);
+            }
+            smoothedNanos = smoothedNanos == 0 ? nanos : smoothedNanos + SMOOTHING * (nanos - smoothedNanos);
+
+            double gradient = Math.max(0.5, Math.min(1.0, LATENCY_TOLERANCE * baselineNanos / smoothedNanos));
+            double target = limit * gradient + Math.sqrt(limit);
+            if (target > limit && inFlight + 1 < limit / 2) {
+                return;
+            }
+            double next = limit + SMOOTHING * (target - limit);
+            limit = Math.max(routeClass.minLimit, Math.min(routeClass.maxLimit, next));
+        }
+
+        /**
+         * Seconds until the queue ahead of a new request has likely drained.
+         */
+        long retryAfterSeconds() {
+            double drainNanos = (queue.size() + 1) * smoothedNanos / Math.max(1, currentLimit());
+            long seconds = (long) Math.ceil(drainNanos / 1e9);
+            return Math.max(1, Math.min(MAX_RETRY_AFTER_SECONDS, seconds));
+        }
+    }
+
+    AdmissionController(MetricsRegistry metrics, Rejection rejection) {
+        this.rejection = rejection;
+        for (RouteClass routeClass : RouteClass.values()) {
+            Lane lane = new Lane(routeClass, metrics);
+            lanes.put(routeClass, lane);
+            metrics.gauge("admission_limit", "Current concurrency limit", () -> currentLimit(lane),
+                    "class", routeClass.label);
+            metrics.gauge("admission_in_flight", "Admitted requests not yet answered", () -> inFlight(lane),
+                    "class", routeClass.label);
+            metrics.gauge("admission_queued", "Requests waiting for admission", () -> queued(lane),
+                    "class", routeClass.label);
+        }
+        // In-flight requests never exceed the sum of the class limits, so neither do busy threads
+        int maxThreads = 0;
+        for (RouteClass routeClass : RouteClass.values()) {
+            maxThreads += routeClass.maxLimit;
+        }
+        AtomicInteger threadCount = new AtomicInteger(1);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "admission-" + threadCount.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        this.admittedExecutor = executor;
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "admission-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Start a request on the controller's threads if its class has capacity, queue it if not,
+     * or reject it. Returns without waiting for the request to run.
+     */
+    void submit(HttpExchange exchange, RouteClass routeClass, RequestMetrics.Call call) throws IOException {
+        Lane lane = lanes.get(routeClass);
+        long retryAfter;
+        synchronized (this) {
+            if (!closed && lane.queue.isEmpty() && lane.inFlight < effectiveLimit(lane)) {
+                lane.inFlight++;
+                retryAfter = -1;
+            } else if (!closed && lane.queue.size() < routeClass.queueCapacity) {
+                Waiter waiter = new Waiter(exchange, call);
+                lane.queue.addLast(waiter);
+                waiter.timeout = timer.schedule(() -> expire(lane, waiter),
+                        routeClass.queueBudgetMillis, TimeUnit.MILLISECONDS);
+                return;
+            } else {
+                lane.queueFull.inc();
+                retryAfter = lane.retryAfterSeconds();
+            }
+        }
+        if (retryAfter >= 0) {
+            rejection.send(exchange, 429, retryAfter, "Too many " + routeClass.label + " requests");
+            return;
+        }
+        start(lane, exchange, call);
+    }
+
+    private void start(Lane lane, HttpExchange exchange, RequestMetrics.Call call) {
+        try {
+            admittedExecutor.execute(() -> runAdmitted(lane, exchange, call));
+        } catch (RejectedExecutionException e) {
+            // Shutting down; the exchange is abandoned with the server
+            exchange.close();
+        }
+    }
+
+    private void run(Lane lane, HttpExchange exchange, RequestMetrics.Call call) throws IOException {
+        long start = System.nanoTime();
+        AtomicBoolean released = new AtomicBoolean();
+        OutputStream body = exchange.getResponseBody();
+        exchange.setStreams(null, new FilterOutputStream(body) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    if (released.compareAndSet(false, true)) {
+                        release(lane, System.nanoTime() - start);
+                    }
+                }
+            }
+        });
+        try {
+            call.run();
+        } catch (IOException | RuntimeException e) {
+            if (released.compareAndSet(false, true)) {
+                release(lane, System.nanoTime() - start);
+            }
+            throw e;
+        }
+    }
+
+    private void runAdmitted(Lane lane, HttpExchange exchange, RequestMetrics.Call call) {
+        try {
+            run(lane, exchange, call);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Failed to handle request: " + e.getMessage());
+            exchange.close();
+        }
+    }
+
+    private void release(Lane lane, long nanos) {
+        List<Runnable> admitted = new ArrayList<>();
+        synchronized (this) {
+            lane.inFlight--;
+            lane.onComplete(nanos);
+            // Highest priority first; a lane's waiters may also have been held back by a
+            // higher-priority queue that has just drained
+            for (Lane candidate : lanes.values()) {
+                while (!candidate.queue.isEmpty() && candidate.inFlight < effectiveLimit(candidate)) {
+                    Waiter waiter = candidate.queue.pollFirst();
+                    waiter.timeout.cancel(false);
+                    candidate.inFlight++;
+                    candidate.queueWait.recordSince(waiter.enqueuedAt);
+                    admitted.add(() -> start(candidate, waiter.exchange, waiter.call));
+                }
+            }
+        }
+        // Started outside the lock
+        for (Runnable admit : admitted) {
+            admit.run();
+        }
+    }
+
+    private void expire(Lane lane, Waiter waiter) {
+        long retryAfter;
+        synchronized (this) {
+            if (!lane.queue.remove(waiter)) {
+                return;
+            }
+            lane.queueTimeout.inc();
+            retryAfter = lane.retryAfterSeconds();
+        }
+        try {
+            rejection.send(waiter.exchange, 503, retryAfter,
+                    "Server busy: " + lane.routeClass.label + " request waited too long");
+        } catch (IOException e) {
+            System.err.println("Failed to reject queued request: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Limit of a lane, halved while any higher-priority lane has requests waiting.
+     */
+    private int effectiveLimit(Lane lane) {
+        for (Lane other : lanes.values()) {
+            if (other == lane) {
+                break;
+            }
+            if (!other.queue.isEmpty()) {
+                return Math.max(1, lane.currentLimit() / 2);
+            }
+        }
+        return lane.currentLimit();
+    }
+
+    private synchronized double currentLimit(Lane lane) {
+        return lane.currentLimit();
+    }
+
+    private synchronized double inFlight(Lane lane) {
+        return lane.inFlight;
+    }
+
+    private synchronized double queued(Lane lane) {
+        return lane.queue.size();
+    }
+
+    /**
+     * Reject everything still queued and stop the controller's threads.
+     */
+    @Override
+    public void close() {
+        List<Waiter> pending = new ArrayList<>();
+        synchronized (this) {
+            closed = true;
+            for (Lane lane : lanes.values()) {
+                pending.addAll(lane.queue);
+                lane.queue.clear();
+            }
+        }
+        timer.shutdownNow();
+        admittedExecutor.shutdown();
+        for (Waiter waiter : pending) {
+            try {
+                rejection.send(waiter.exchange, 503, 1, "Server shutting down");
+            } catch (IOException e) {
+                // Connection is going away anyway
+            }
+        }
+    }
+}
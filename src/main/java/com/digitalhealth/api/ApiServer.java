@@ -2,607 +2,952 @@ package com.digitalhealth.api;
 
 import com.digitalhealth.dto.*;
 import com.digitalhealth.exception.*;
+import com.digitalhealth.facade.AsyncBackendFacade;
 import com.digitalhealth.facade.BackendFacade;
 import com.digitalhealth.facade.BackendFactory;
+import com.digitalhealth.metrics.MetricsRegistry;
+import com.sun.net.httpserver.Headers;
 import com.sun.net.httpserver.HttpServer;
 import com.sun.net.httpserver.HttpExchange;
 
 import java.io.*;
 import java.net.InetSocketAddress;
+import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Simple HTTP REST API Server for Digital Health Repository
  * Connects the Java backend with HTML/JavaScript frontend
  */
 public class ApiServer {
+    private final AsyncBackendFacade asyncFacade;
     private final BackendFacade facade;
     private final HttpServer server;
+    private final MetricsRegistry metrics = MetricsRegistry.getDefault();
+    private final Router router = new Router();
+    private final RequestMetrics requestMetrics = new RequestMetrics(metrics);
+    private final AdmissionController admission = new AdmissionController(metrics, this::sendRejection);
+    private final StaticAssetCache staticAssets = new StaticAssetCache(Paths.get(STATIC_ROOT), metrics);
     private static final int PORT = 8080;
+    private static final String STATIC_ROOT = "frontend";
     private static final DateTimeFormatter formatter = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+    /** Distinguishes ETags of this process from those of earlier runs, whose change counts restarted at 0. */
+    private final String etagEpoch = Long.toString(System.currentTimeMillis(), 36);
 
     public ApiServer() throws IOException {
-        this.facade = BackendFactory.create();
-        this.server = HttpServer.create(new InetSocketAddress(PORT), 0);
+        this(BackendFactory.createAsync(), PORT);
+    }
+
+    /**
+     * Create a server on the given backend, e.g. an in-process server for tests and load runs.
+     * 
+     * @param asyncFacade Backend to serve; closed when the server stops
+     * @param port Port to listen on, or 0 to pick a free one (see {@link #getPort()})
+     */
+    public ApiServer(AsyncBackendFacade asyncFacade, int port) throws IOException {
+        this.asyncFacade = asyncFacade;
+        this.facade = asyncFacade.blocking();
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
         setupRoutes();
     }
 
+    /**
+     * Port the server is bound to.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
     private void setupRoutes() {
-        // CORS and static files
-        server.createContext("/", this::handleStaticFiles);
-        
         // Authentication endpoints
-        server.createContext("/api/auth/register", this::handleAuthRegister);
-        server.createContext("/api/auth/login", this::handleAuthLogin);
-        server.createContext("/api/auth/validate", this::handleAuthValidate);
+        router.add("POST", "/api/auth/register", this::handleAuthRegister);
+        router.add("POST", "/api/auth/login", this::handleAuthLogin);
+        router.add("POST", "/api/auth/validate", this::handleAuthValidate);
         
         // Patient endpoints
-        server.createContext("/api/patients", this::handlePatients);
-        server.createContext("/api/patients/register", this::handleRegisterPatient);
+        router.add("GET", "/api/patients", this::handleListPatients);
+        router.add("GET", "/api/patients/search", this::handleSearchPatients);
+        router.add("POST", "/api/patients/register", this::handleRegisterPatient);
+        router.add("GET", "/api/patients/{patientId}", this::handleGetPatient);
+        router.add("PUT", "/api/patients/{patientId}", this::handleUpdatePatient);
+        router.add("DELETE", "/api/patients/{patientId}", this::handleDeletePatient);
         
         // Doctor endpoints
-        server.createContext("/api/doctors", this::handleDoctors);
-        server.createContext("/api/doctors/register", this::handleRegisterDoctor);
+        router.add("GET", "/api/doctors", this::handleListDoctors);
+        router.add("POST", "/api/doctors/register", this::handleRegisterDoctor);
+        router.add("GET", "/api/doctors/{doctorId}", this::handleGetDoctor);
+        router.add("DELETE", "/api/doctors/{doctorId}", this::handleDeleteDoctor);
         
         // Appointment endpoints
-        server.createContext("/api/appointments", this::handleAppointments);
-        server.createContext("/api/appointments/book", this::handleBookAppointment);
-        server.createContext("/api/appointments/cancel", this::handleCancelAppointment);
+        router.add("GET", "/api/appointments", this::handleListAppointments);
+        router.add("POST", "/api/appointments/book", this::handleBookAppointment);
+        router.add("POST", "/api/appointments/cancel", this::handleCancelAppointment);
+        router.add("GET", "/api/appointments/{appointmentId}", this::handleGetAppointment);
+        router.add("DELETE", "/api/appointments/{appointmentId}", this::handleDeleteAppointment);
         
         // Health records endpoints
-        server.createContext("/api/health-records", this::handleHealthRecords);
-        server.createContext("/api/health-records/add", this::handleAddHealthRecord);
+        router.add("GET", "/api/health-records", this::handleListHealthRecords);
+        router.add("POST", "/api/health-records/add", this::handleAddHealthRecord);
+        router.add("GET", "/api/health-records/search", this::handleSearchHealthRecords);
+        router.add("GET", "/api/health-records/export.ndjson", this::handleExportHealthRecords);
+        router.add("GET", "/api/health-records/{recordId}", this::handleGetHealthRecord);
+        router.add("DELETE", "/api/health-records/{recordId}", this::handleDeleteHealthRecord);
+        
+        // Background exports, scoped to the caller's bearer token
+        router.add("GET", "/api/exports", this::handleListExportJobs);
+        router.add("POST", "/api/exports", this::handleSubmitExportJob);
+        router.add("GET", "/api/exports/{jobId}", this::handleGetExportJob);
+        router.add("DELETE", "/api/exports/{jobId}", this::handleDeleteExportJob);
+        router.add("POST", "/api/exports/{jobId}/cancel", this::handleCancelExportJob);
+        router.add("GET", "/api/exports/{jobId}/download", this::handleDownloadExportJob);
+
+        // Bulk CSV imports
+        router.add("POST", "/api/import/patients", this::handleImportPatients);
+        router.add("POST", "/api/import/doctors", this::handleImportDoctors);
+        router.add("GET", "/api/import/{importId}/rejects", this::handleDownloadImportRejects);
+
+        // Monitoring
+        router.add("GET", "/api/metrics", this::handleMetrics);
+
+        // Static files
+        router.add("GET", "/*", this::handleStaticFiles);
+
+        server.createContext("/", this::dispatch);
     }
 
-    private void handleStaticFiles(HttpExchange exchange) throws IOException {
+    /**
+     * Route a request, pass it through admission control and record it under the matched pattern.
+     */
+    private void dispatch(HttpExchange exchange) throws IOException {
+        Router.PathParams params = new Router.PathParams();
+        Router.Route route = router.match(exchange.getRequestMethod(), exchange.getRequestURI().getPath(), params);
+        AdmissionController.RouteClass routeClass = admissionClass(exchange.getRequestMethod(), route);
+        requestMetrics.observe(exchange, route == null ? RequestMetrics.UNMATCHED : route.pattern(), () -> {
+            if (routeClass == null) {
+                handle(exchange, route, params);
+            } else {
+                admission.submit(exchange, routeClass, () -> handle(exchange, route, params));
+            }
+        });
+    }
+
+    /**
+     * Admission class of a request, or null for requests answered without touching the
+     * backend (errors, preflight, static files, metrics), which are never held back.
+     */
+    private static AdmissionController.RouteClass admissionClass(String method, Router.Route route) {
+        if (route == null || route.handler() == null || "OPTIONS".equals(method)
+                || route.pattern().equals("/*") || route.pattern().equals("/api/metrics")) {
+            return null;
+        }
+        if (route.pattern().startsWith("/api/auth/")) {
+            return AdmissionController.RouteClass.AUTH;
+        }
+        // Bulk bodies; job submission and status polls are cheap and use the read/write limits
+        if (route.pattern().endsWith("/export.ndjson") || route.pattern().endsWith("/download")
+                || route.pattern().startsWith("/api/import/")) {
+            return AdmissionController.RouteClass.EXPORT;
+        }
+        return "GET".equals(method) || "HEAD".equals(method)
+                ? AdmissionController.RouteClass.READ : AdmissionController.RouteClass.WRITE;
+    }
+
+    /**
+     * 404 for unknown paths, 204 for CORS preflight, 405 with an Allow header for methods
+     * the path does not support, otherwise the route's handler.
+     */
+    private void handle(HttpExchange exchange, Router.Route route, Router.PathParams params) throws IOException {
+        if (route == null) {
+            sendJsonResponse(exchange, 404, "{\"error\":\"Not found\"}");
+            return;
+        }
+        setCorsHeaders(exchange);
+        if ("OPTIONS".equals(exchange.getRequestMethod())) {
+            exchange.getResponseHeaders().add("Allow", route.allow());
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+            return;
+        }
+        if (route.handler() == null) {
+            exchange.getResponseHeaders().add("Allow", route.allow());
+            sendJsonResponse(exchange, 405, "{\"error\":\"Method not allowed\"}");
+            return;
+        }
+        route.handler().handle(exchange, params);
+    }
+
+    private void handleMetrics(HttpExchange exchange, Router.PathParams params) throws IOException {
+        sendResponse(exchange, 200, "text/plain; version=0.0.4; charset=utf-8",
+                metrics.scrape().getBytes(StandardCharsets.UTF_8), null);
+    }
+
+    private void handleStaticFiles(HttpExchange exchange, Router.PathParams params) throws IOException {
         String path = exchange.getRequestURI().getPath();
         if (path.equals("/")) path = "/html/index.html";
         
         // Map paths to frontend directory structure
         String filePath;
         if (path.startsWith("/html/") || path.endsWith(".html")) {
-            filePath = "frontend" + (path.startsWith("/html/") ? path : "/html" + path);
+            filePath = path.startsWith("/html/") ? path : "/html" + path;
         } else if (path.startsWith("/css/") || path.endsWith(".css")) {
-            filePath = "frontend" + (path.startsWith("/css/") ? path : "/css" + path);
+            filePath = path.startsWith("/css/") ? path : "/css" + path;
         } else if (path.startsWith("/js/") || path.endsWith(".js")) {
-            filePath = "frontend" + (path.startsWith("/js/") ? path : "/js" + path);
+            filePath = path.startsWith("/js/") ? path : "/js" + path;
         } else {
-            filePath = "frontend" + path;
+            filePath = path;
         }
         
-        File file = new File(filePath);
-        if (file.exists() && !file.isDirectory()) {
-            String contentType = getContentType(path);
-            exchange.getResponseHeaders().add("Content-Type", contentType);
-            exchange.sendResponseHeaders(200, file.length());
-            
-            try (OutputStream os = exchange.getResponseBody();
-                 FileInputStream fis = new FileInputStream(file)) {
-                byte[] buffer = new byte[1024];
-                int count;
-                while ((count = fis.read(buffer)) != -1) {
-                    os.write(buffer, 0, count);
-                }
-            }
-        } else {
-            String response = "404 Not Found: " + filePath;
+        StaticAssetCache.Asset asset = staticAssets.get(filePath.substring(1));
+        if (asset == null) {
+            String response = "404 Not Found: " + STATIC_ROOT + filePath;
             exchange.sendResponseHeaders(404, response.length());
             exchange.getResponseBody().write(response.getBytes());
             exchange.getResponseBody().close();
+            return;
         }
-    }
 
-    private String getContentType(String path) {
-        if (path.endsWith(".html")) return "text/html";
-        if (path.endsWith(".css")) return "text/css";
-        if (path.endsWith(".js")) return "application/javascript";
-        if (path.endsWith(".json")) return "application/json";
-        return "text/plain";
-    }
+        Headers headers = exchange.getResponseHeaders();
+        // Asset names carry no content hash, so pages are always revalidated and other
+        // files only briefly trusted; revalidation is a cheap ETag match
+        headers.add("Cache-Control", asset.contentType.equals("text/html") ? "no-cache" : "public, max-age=300");
+        String matched = ResponseEncoding.matchIfNoneMatch(exchange.getRequestHeaders(), asset.etag);
+        if (matched != null) {
+            headers.add("ETag", matched);
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
 
-    // Authentication handlers
-    private void handleAuthRegister(HttpExchange exchange) throws IOException {
-        setCorsHeaders(exchange);
-        
-        if ("OPTIONS".equals(exchange.getRequestMethod())) {
-            exchange.sendResponseHeaders(204, -1);
+        headers.add("Content-Type", asset.contentType);
+        if (!asset.isCached()) {
+            headers.add("ETag", asset.etag);
+            exchange.sendResponseHeaders(200, asset.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                asset.transferTo(os);
+            }
             return;
         }
-        
-        if ("POST".equals(exchange.getRequestMethod())) {
-            try {
-                String requestBody = readRequestBody(exchange);
-                Map<String, String> data = parseJson(requestBody);
-                
-                // Create UserDTO
-                UserDTO userDTO = new UserDTO();
-                userDTO.setUsername(data.get("username"));
-                userDTO.setPassword(data.get("password"));
-                userDTO.setRole(data.get("role"));
-                userDTO.setLinkedEntityId(data.get("linkedEntityId"));
-                
-                String userId = facade.registerUser(userDTO);
-                sendJsonResponse(exchange, 201, "{\"userId\":\"" + userId + "\",\"message\":\"User registered successfully\"}");
-            } catch (ValidationException e) {
-                sendJsonResponse(exchange, 400, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
-            } catch (Exception e) {
-                e.printStackTrace();
-                sendJsonResponse(exchange, 500, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
+        byte[] body = asset.body;
+        String etag = asset.etag;
+        if (asset.gzipBody != null) {
+            headers.add("Vary", "Accept-Encoding");
+            if (ResponseEncoding.acceptsGzip(exchange.getRequestHeaders())) {
+                body = asset.gzipBody;
+                etag = ResponseEncoding.gzipTag(etag);
+                headers.add("Content-Encoding", "gzip");
             }
         }
+        headers.add("ETag", etag);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
     }
 
-    private void handleAuthLogin(HttpExchange exchange) throws IOException {
-        setCorsHeaders(exchange);
-        
-        if ("OPTIONS".equals(exchange.getRequestMethod())) {
-            exchange.sendResponseHeaders(204, -1);
-            return;
+    // Authentication handlers
+    private void handleAuthRegister(HttpExchange exchange, Router.PathParams params) throws IOException {
+        try {
+            String requestBody = readRequestBody(exchange);
+            Map<String, String> data = parseJson(requestBody);
+            
+            // Create UserDTO
+            UserDTO userDTO = new UserDTO();
+            userDTO.setUsername(data.get("username"));
+            userDTO.setPassword(data.get("password"));
+            userDTO.setRole(data.get("role"));
+            userDTO.setLinkedEntityId(data.get("linkedEntityId"));
+            
+            String userId = facade.registerUser(userDTO);
+            sendJsonResponse(exchange, 201, "{\"userId\":\"" + userId + "\",\"message\":\"User registered successfully\"}");
+        } catch (ValidationException e) {
+            sendJsonResponse(exchange, 400, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
+        } catch (Exception e) {
+            e.printStackTrace();
+            sendJsonResponse(exchange, 500, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
         }
-        
-        if ("POST".equals(exchange.getRequestMethod())) {
-            try {
-                String requestBody = readRequestBody(exchange);
-                Map<String, String> data = parseJson(requestBody);
-                
-                // Create LoginRequestDTO
-                LoginRequestDTO loginRequest = new LoginRequestDTO();
-                loginRequest.setUsername(data.get("username"));
-                loginRequest.setPassword(data.get("password"));
-                
-                LoginResponseDTO response = facade.login(loginRequest);
-                
-                // Convert to JSON
-                String json = String.format("{\"userId\":\"%s\",\"username\":\"%s\",\"role\":\"%s\",\"token\":\"%s\",\"linkedEntityId\":\"%s\"}",
-                    response.getUserId(), response.getUsername(), response.getRole(), response.getToken(),
-                    response.getLinkedEntityId() != null ? response.getLinkedEntityId() : "");
-                
-                sendJsonResponse(exchange, 200, json);
-            } catch (ValidationException e) {
-                sendJsonResponse(exchange, 401, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
-            } catch (Exception e) {
-                e.printStackTrace();
-                sendJsonResponse(exchange, 500, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
+    }
+
+    private void handleAuthLogin(HttpExchange exchange, Router.PathParams params) throws IOException {
+        try {
+            String requestBody = readRequestBody(exchange);
+            Map<String, String> data = parseJson(requestBody);
+            
+            // Create LoginRequestDTO
+            LoginRequestDTO loginRequest = new LoginRequestDTO();
+            loginRequest.setUsername(data.get("username"));
+            loginRequest.setPassword(data.get("password"));
+            
+            LoginResponseDTO response = facade.login(loginRequest);
+            
+            // Convert to JSON
+            String json = String.format("{\"userId\":\"%s\",\"username\":\"%s\",\"role\":\"%s\",\"token\":\"%s\",\"linkedEntityId\":\"%s\"}",
+                response.getUserId(), response.getUsername(), response.getRole(), response.getToken(),
+                response.getLinkedEntityId() != null ? response.getLinkedEntityId() : "");
+            
+            sendJsonResponse(exchange, 200, json);
+        } catch (ValidationException e) {
+            sendJsonResponse(exchange, 401, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
+        } catch (Exception e) {
+            e.printStackTrace();
+            sendJsonResponse(exchange, 500, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
+        }
+    }
+
+    private void handleAuthValidate(HttpExchange exchange, Router.PathParams params) throws IOException {
+        try {
+            String requestBody = readRequestBody(exchange);
+            Map<String, String> data = parseJson(requestBody);
+            
+            String token = data.get("token");
+            LoginResponseDTO response = facade.validateToken(token);
+            
+            // Convert to JSON
+            String json = String.format("{\"userId\":\"%s\",\"username\":\"%s\",\"role\":\"%s\",\"token\":\"%s\",\"linkedEntityId\":\"%s\"}",
+                response.getUserId(), response.getUsername(), response.getRole(), response.getToken(),
+                response.getLinkedEntityId() != null ? response.getLinkedEntityId() : "");
+            
+            sendJsonResponse(exchange, 200, json);
+        } catch (ValidationException e) {
+            sendJsonResponse(exchange, 401, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
+        } catch (Exception e) {
+            e.printStackTrace();
+            sendJsonResponse(exchange, 500, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
+        }
+    }
+
+    // Patient handlers
+    private void handleListPatients(HttpExchange exchange, Router.PathParams params) throws IOException {
+        // Answered from the change count alone if the client is current
+        String etag = collectionTag("patients", facade.getPatientChangeCount());
+        if (!sendNotModified(exchange, etag)) {
+            respondAsync(exchange, asyncFacade.listPatients(), etag);
+        }
+    }
+
+    private void handleGetPatient(HttpExchange exchange, Router.PathParams params) throws IOException {
+        try {
+            PatientDTO patient = facade.getPatient(params.get("patientId"));
+            String json = toJson(List.of(patient));
+            // Extract single patient from array format
+            json = json.substring(1, json.length() - 1); // Remove [ and ]
+            sendJsonResponse(exchange, 200, json);
+        } catch (EntityNotFoundException e) {
+            sendJsonResponse(exchange, 404, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
+        } catch (Exception e) {
+            e.printStackTrace();
+            sendJsonResponse(exchange, 500, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
+        }
+    }
+
+    /**
+     * Update a patient read earlier. The body carries the version the patient was read at;
+     * if the patient has changed since, the update is refused with 409 and the client must
+     * read the patient again rather than overwrite the other change.
+     */
+    private void handleUpdatePatient(HttpExchange exchange, Router.PathParams params) throws IOException {
+        try {
+            Map<String, String> data = parseJson(readRequestBody(exchange));
+            if (!data.containsKey("name") || !data.containsKey("age") ||
+                !data.containsKey("gender") || !data.containsKey("contact") || !data.containsKey("version")) {
+                sendJsonResponse(exchange, 400, "{\"error\":\"Missing required fields: name, age, gender, contact, version\"}");
+                return;
+            }
+            long version = Long.parseLong(data.get("version"));
+            if (version <= 0) {
+                sendJsonResponse(exchange, 400, "{\"error\":\"version must be the version the patient was read at\"}");
+                return;
             }
+
+            PatientDTO dto = new PatientDTO(
+                params.get("patientId"),
+                data.get("name"),
+                Integer.parseInt(data.get("age")),
+                data.get("gender"),
+                data.get("contact")
+            );
+            dto.setVersion(version);
+            facade.updatePatient(dto);
+            sendJsonResponse(exchange, 200, objectToJson(dto));
+        } catch (NumberFormatException e) {
+            sendJsonResponse(exchange, 400, "{\"error\":\"Invalid age or version format\"}");
+        } catch (ValidationException e) {
+            sendJsonResponse(exchange, 400, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
+        } catch (EntityNotFoundException e) {
+            sendJsonResponse(exchange, 404, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
+        } catch (OptimisticLockException e) {
+            sendJsonResponse(exchange, 409, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
+        } catch (Exception e) {
+            e.printStackTrace();
+            sendJsonResponse(exchange, 500, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
         }
     }
 
-    private void handleAuthValidate(HttpExchange exchange) throws IOException {
-        setCorsHeaders(exchange);
-        
-        if ("OPTIONS".equals(exchange.getRequestMethod())) {
-            exchange.sendResponseHeaders(204, -1);
+    private void handleDeletePatient(HttpExchange exchange, Router.PathParams params) throws IOException {
+        try {
+            // TODO: Add token validation and admin role check
+            facade.deletePatient(params.get("patientId"));
+            sendJsonResponse(exchange, 200, "{\"message\":\"Patient deleted successfully\"}");
+        } catch (EntityNotFoundException e) {
+            sendJsonResponse(exchange, 404, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
+        } catch (Exception e) {
+            sendJsonResponse(exchange, 500, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
+        }
+    }
+
+    private void handleSearchPatients(HttpExchange exchange, Router.PathParams params) throws IOException {
+        String q = queryParameter(exchange, "q");
+        if (q == null || q.trim().isEmpty()) {
+            sendJsonResponse(exchange, 400, "{\"error\":\"Query parameter q is required\"}");
             return;
         }
-        
-        if ("POST".equals(exchange.getRequestMethod())) {
+        int limit = 0;
+        String limitParam = queryParameter(exchange, "limit");
+        if (limitParam != null && !limitParam.isEmpty()) {
             try {
-                String requestBody = readRequestBody(exchange);
-                Map<String, String> data = parseJson(requestBody);
-                
-                String token = data.get("token");
-                LoginResponseDTO response = facade.validateToken(token);
-                
-                // Convert to JSON
-                String json = String.format("{\"userId\":\"%s\",\"username\":\"%s\",\"role\":\"%s\",\"token\":\"%s\",\"linkedEntityId\":\"%s\"}",
-                    response.getUserId(), response.getUsername(), response.getRole(), response.getToken(),
-                    response.getLinkedEntityId() != null ? response.getLinkedEntityId() : "");
-                
-                sendJsonResponse(exchange, 200, json);
-            } catch (ValidationException e) {
-                sendJsonResponse(exchange, 401, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
-            } catch (Exception e) {
-                e.printStackTrace();
-                sendJsonResponse(exchange, 500, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
+                limit = Integer.parseInt(limitParam);
+            } catch (NumberFormatException e) {
+                sendJsonResponse(exchange, 400, "{\"error\":\"Query parameter limit must be a number\"}");
+                return;
             }
         }
+        respondAsync(exchange, asyncFacade.searchPatients(q, limit));
     }
 
-    // Patient handlers
-    private void handlePatients(HttpExchange exchange) throws IOException {
-        setCorsHeaders(exchange);
-        
-        if ("OPTIONS".equals(exchange.getRequestMethod())) {
-            exchange.sendResponseHeaders(204, -1);
-            return;
-        }
-        
-        if ("GET".equals(exchange.getRequestMethod())) {
-            // Check if this is a request for a specific patient by ID
-            String path = exchange.getRequestURI().getPath();
-            String[] parts = path.split("/");
+    private void handleRegisterPatient(HttpExchange exchange, Router.PathParams params) throws IOException {
+        try {
+            String requestBody = readRequestBody(exchange);
+            System.out.println("Register Patient Request Body: " + requestBody);
             
-            // /api/patients/{patientId}
-            if (parts.length >= 4 && !parts[3].isEmpty()) {
-                String patientId = parts[3];
-                try {
-                    PatientDTO patient = facade.getPatient(patientId);
-                    String json = toJson(List.of(patient));
-                    // Extract single patient from array format
-                    json = json.substring(1, json.length() - 1); // Remove [ and ]
-                    sendJsonResponse(exchange, 200, json);
-                } catch (EntityNotFoundException e) {
-                    sendJsonResponse(exchange, 404, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    sendJsonResponse(exchange, 500, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
-                }
-            } else {
-                // Get all patients
-                List<PatientDTO> patients = facade.listPatients();
-                String json = toJson(patients);
-                sendJsonResponse(exchange, 200, json);
-            }
-        } else if ("DELETE".equals(exchange.getRequestMethod())) {
-            // Extract patient ID from URL path: /api/patients/{patientId}
-            String path = exchange.getRequestURI().getPath();
-            String[] parts = path.split("/");
-            if (parts.length < 4) {
-                sendJsonResponse(exchange, 400, "{\"error\":\"Patient ID is required\"}");
+            Map<String, String> data = parseJson(requestBody);
+            System.out.println("Parsed data: " + data);
+            
+            // Validate required fields
+            if (!data.containsKey("name") || !data.containsKey("age") || 
+                !data.containsKey("gender") || !data.containsKey("contact")) {
+                sendJsonResponse(exchange, 400, "{\"error\":\"Missing required fields: name, age, gender, contact\"}");
                 return;
             }
             
-            String patientId = parts[3]; // /api/patients/{patientId}
+            PatientDTO dto = new PatientDTO(
+                null,
+                data.get("name"),
+                Integer.parseInt(data.get("age")),
+                data.get("gender"),
+                data.get("contact")
+            );
             
-            try {
-                // TODO: Add token validation and admin role check
-                facade.deletePatient(patientId);
-                sendJsonResponse(exchange, 200, "{\"message\":\"Patient deleted successfully\"}");
-            } catch (EntityNotFoundException e) {
-                sendJsonResponse(exchange, 404, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
-            } catch (Exception e) {
-                sendJsonResponse(exchange, 500, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
+            String patientId = facade.registerPatient(dto);
+            System.out.println("Patient registered successfully: " + patientId);
+            
+            // Link user with patient if userId is provided
+            if (data.containsKey("userId") && data.get("userId") != null && !data.get("userId").isEmpty()) {
+                try {
+                    facade.linkUserToEntity(data.get("userId"), patientId);
+                    System.out.println("User " + data.get("userId") + " linked to patient " + patientId);
+                } catch (Exception e) {
+                    System.err.println("Warning: Failed to link user to patient: " + e.getMessage());
+                }
             }
+            
+            sendJsonResponse(exchange, 201, "{\"patientId\":\"" + patientId + "\",\"message\":\"Patient registered successfully\"}");
+        } catch (ValidationException e) {
+            System.err.println("Validation error: " + e.getMessage());
+            sendJsonResponse(exchange, 400, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
+        } catch (NumberFormatException e) {
+            System.err.println("Number format error: " + e.getMessage());
+            sendJsonResponse(exchange, 400, "{\"error\":\"Invalid age format\"}");
+        } catch (Exception e) {
+            System.err.println("Server error: " + e.getMessage());
+            e.printStackTrace();
+            sendJsonResponse(exchange, 500, "{\"error\":\"Server error: " + escapeJson(e.getMessage()) + "\"}");
         }
     }
 
-    private void handleRegisterPatient(HttpExchange exchange) throws IOException {
-        setCorsHeaders(exchange);
-        
-        if ("OPTIONS".equals(exchange.getRequestMethod())) {
-            exchange.sendResponseHeaders(204, -1);
-            return;
+    // Doctor handlers
+    private void handleListDoctors(HttpExchange exchange, Router.PathParams params) throws IOException {
+        // Answered from the change count alone if the client is current
+        String etag = collectionTag("doctors", facade.getDoctorChangeCount());
+        if (!sendNotModified(exchange, etag)) {
+            respondAsync(exchange, asyncFacade.listDoctors(), etag);
         }
-        
-        if ("POST".equals(exchange.getRequestMethod())) {
-            try {
-                String requestBody = readRequestBody(exchange);
-                System.out.println("Register Patient Request Body: " + requestBody);
-                
-                Map<String, String> data = parseJson(requestBody);
-                System.out.println("Parsed data: " + data);
-                
-                // Validate required fields
-                if (!data.containsKey("name") || !data.containsKey("age") || 
-                    !data.containsKey("gender") || !data.containsKey("contact")) {
-                    sendJsonResponse(exchange, 400, "{\"error\":\"Missing required fields: name, age, gender, contact\"}");
-                    return;
-                }
-                
-                PatientDTO dto = new PatientDTO(
-                    null,
-                    data.get("name"),
-                    Integer.parseInt(data.get("age")),
-                    data.get("gender"),
-                    data.get("contact")
-                );
-                
-                String patientId = facade.registerPatient(dto);
-                System.out.println("Patient registered successfully: " + patientId);
-                
-                // Link user with patient if userId is provided
-                if (data.containsKey("userId") && data.get("userId") != null && !data.get("userId").isEmpty()) {
-                    try {
-                        facade.linkUserToEntity(data.get("userId"), patientId);
-                        System.out.println("User " + data.get("userId") + " linked to patient " + patientId);
-                    } catch (Exception e) {
-                        System.err.println("Warning: Failed to link user to patient: " + e.getMessage());
-                    }
-                }
-                
-                sendJsonResponse(exchange, 201, "{\"patientId\":\"" + patientId + "\",\"message\":\"Patient registered successfully\"}");
-            } catch (ValidationException e) {
-                System.err.println("Validation error: " + e.getMessage());
-                sendJsonResponse(exchange, 400, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
-            } catch (NumberFormatException e) {
-                System.err.println("Number format error: " + e.getMessage());
-                sendJsonResponse(exchange, 400, "{\"error\":\"Invalid age format\"}");
-            } catch (Exception e) {
-                System.err.println("Server error: " + e.getMessage());
-                e.printStackTrace();
-                sendJsonResponse(exchange, 500, "{\"error\":\"Server error: " + escapeJson(e.getMessage()) + "\"}");
-            }
+    }
+
+    private void handleGetDoctor(HttpExchange exchange, Router.PathParams params) throws IOException {
+        try {
+            DoctorDTO doctor = facade.getDoctor(params.get("doctorId"));
+            String json = toJson(List.of(doctor));
+            // Extract single doctor from array format
+            json = json.substring(1, json.length() - 1); // Remove [ and ]
+            sendJsonResponse(exchange, 200, json);
+        } catch (EntityNotFoundException e) {
+            sendJsonResponse(exchange, 404, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
+        } catch (Exception e) {
+            e.printStackTrace();
+            sendJsonResponse(exchange, 500, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
         }
     }
 
-    // Doctor handlers
-    private void handleDoctors(HttpExchange exchange) throws IOException {
-        setCorsHeaders(exchange);
-        
-        if ("OPTIONS".equals(exchange.getRequestMethod())) {
-            exchange.sendResponseHeaders(204, -1);
-            return;
+    private void handleDeleteDoctor(HttpExchange exchange, Router.PathParams params) throws IOException {
+        try {
+            // TODO: Add token validation and admin role check
+            facade.deleteDoctor(params.get("doctorId"));
+            sendJsonResponse(exchange, 200, "{\"message\":\"Doctor deleted successfully\"}");
+        } catch (EntityNotFoundException e) {
+            sendJsonResponse(exchange, 404, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
+        } catch (Exception e) {
+            sendJsonResponse(exchange, 500, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
         }
+    }
+
+    private void handleRegisterDoctor(HttpExchange exchange, Router.PathParams params) throws IOException {
+        String requestBody = readRequestBody(exchange);
+        Map<String, String> data = parseJson(requestBody);
         
-        if ("GET".equals(exchange.getRequestMethod())) {
-            // Check if this is a request for a specific doctor by ID
-            String path = exchange.getRequestURI().getPath();
-            String[] parts = path.split("/");
+        try {
+            DoctorDTO dto = new DoctorDTO(
+                null,  // ID will be auto-generated
+                data.get("name"),
+                data.get("specialty"),
+                data.get("contact"),
+                data.get("email"),
+                data.get("schedule")
+            );
             
-            // /api/doctors/{doctorId}
-            if (parts.length >= 4 && !parts[3].isEmpty()) {
-                String doctorId = parts[3];
+            String doctorId = facade.registerDoctor(dto);
+            
+            // Link user with doctor if userId is provided
+            if (data.containsKey("userId") && data.get("userId") != null && !data.get("userId").isEmpty()) {
                 try {
-                    DoctorDTO doctor = facade.getDoctor(doctorId);
-                    String json = toJson(List.of(doctor));
-                    // Extract single doctor from array format
-                    json = json.substring(1, json.length() - 1); // Remove [ and ]
-                    sendJsonResponse(exchange, 200, json);
-                } catch (EntityNotFoundException e) {
-                    sendJsonResponse(exchange, 404, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
+                    facade.linkUserToEntity(data.get("userId"), doctorId);
+                    System.out.println("User " + data.get("userId") + " linked to doctor " + doctorId);
                 } catch (Exception e) {
-                    e.printStackTrace();
-                    sendJsonResponse(exchange, 500, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
+                    System.err.println("Warning: Failed to link user to doctor: " + e.getMessage());
                 }
-            } else {
-                // Get all doctors
-                List<DoctorDTO> doctors = facade.listDoctors();
-                String json = toJson(doctors);
-                sendJsonResponse(exchange, 200, json);
             }
-        } else if ("DELETE".equals(exchange.getRequestMethod())) {
-            // Extract doctor ID from URL path: /api/doctors/{doctorId}
-            String path = exchange.getRequestURI().getPath();
-            String[] parts = path.split("/");
-            if (parts.length < 4) {
-                sendJsonResponse(exchange, 400, "{\"error\":\"Doctor ID is required\"}");
-                return;
-            }
-            
-            String doctorId = parts[3]; // /api/doctors/{doctorId}
             
-            try {
-                // TODO: Add token validation and admin role check
-                facade.deleteDoctor(doctorId);
-                sendJsonResponse(exchange, 200, "{\"message\":\"Doctor deleted successfully\"}");
-            } catch (EntityNotFoundException e) {
-                sendJsonResponse(exchange, 404, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
-            } catch (Exception e) {
-                sendJsonResponse(exchange, 500, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
-            }
+            sendJsonResponse(exchange, 201, "{\"doctorId\":\"" + doctorId + "\",\"message\":\"Doctor registered successfully\"}");
+        } catch (ValidationException e) {
+            sendJsonResponse(exchange, 400, "{\"error\":\"" + e.getMessage() + "\"}");
         }
     }
 
-    private void handleRegisterDoctor(HttpExchange exchange) throws IOException {
-        setCorsHeaders(exchange);
+    // Appointment handlers
+    private void handleListAppointments(HttpExchange exchange, Router.PathParams params) throws IOException {
+        String patientId = queryParameter(exchange, "patientId");
+        String doctorId = queryParameter(exchange, "doctorId");
+        if (patientId != null) {
+            respondAsync(exchange, asyncFacade.getAppointmentsByPatient(patientId));
+        } else if (doctorId != null) {
+            respondAsync(exchange, asyncFacade.getAppointmentsByDoctor(doctorId));
+        } else {
+            respondAsync(exchange, asyncFacade.listAppointments());
+        }
+    }
+
+    private void handleGetAppointment(HttpExchange exchange, Router.PathParams params) throws IOException {
+        try {
+            AppointmentDTO appointment = facade.getAppointment(params.get("appointmentId"));
+            sendJsonResponse(exchange, 200, toJson(appointment));
+        } catch (EntityNotFoundException e) {
+            sendJsonResponse(exchange, 404, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
+        } catch (Exception e) {
+            e.printStackTrace();
+            sendJsonResponse(exchange, 500, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
+        }
+    }
+
+    private void handleDeleteAppointment(HttpExchange exchange, Router.PathParams params) throws IOException {
+        try {
+            // TODO: Add token validation and admin role check
+            facade.deleteAppointment(params.get("appointmentId"));
+            sendJsonResponse(exchange, 200, "{\"message\":\"Appointment deleted successfully\"}");
+        } catch (EntityNotFoundException e) {
+            sendJsonResponse(exchange, 404, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
+        } catch (Exception e) {
+            sendJsonResponse(exchange, 500, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
+        }
+    }
+
+    private void handleBookAppointment(HttpExchange exchange, Router.PathParams params) throws IOException {
+        String requestBody = readRequestBody(exchange);
+        System.out.println("Book Appointment Request Body: " + requestBody);
+        Map<String, String> data = parseJson(requestBody);
         
-        if ("OPTIONS".equals(exchange.getRequestMethod())) {
-            exchange.sendResponseHeaders(204, -1);
+        String patientId = data.get("patientId");
+        String doctorId = data.get("doctorId");
+        String dateTimeStr = data.get("dateTime");
+        String reason = data.get("reason");
+        
+        System.out.println("Parsed data - PatientID: " + patientId + ", DoctorID: " + doctorId + ", DateTime: " + dateTimeStr + ", Reason: " + reason);
+        
+        LocalDateTime dateTime;
+        try {
+            // Handle datetime-local format (YYYY-MM-DDTHH:MM)
+            dateTime = LocalDateTime.parse(dateTimeStr);
+        } catch (Exception e) {
+            System.err.println("Booking error (500): " + e.getMessage());
+            sendJsonResponse(exchange, 500, "{\"error\":\"Invalid date/time format or server error: " + e.getMessage() + "\"}");
             return;
         }
         
-        if ("POST".equals(exchange.getRequestMethod())) {
-            String requestBody = readRequestBody(exchange);
-            Map<String, String> data = parseJson(requestBody);
-            
+        asyncFacade.bookAppointment(patientId, doctorId, dateTime, reason).whenComplete((appointment, error) -> {
             try {
-                DoctorDTO dto = new DoctorDTO(
-                    null,  // ID will be auto-generated
-                    data.get("name"),
-                    data.get("specialty"),
-                    data.get("contact"),
-                    data.get("email"),
-                    data.get("schedule")
-                );
-                
-                String doctorId = facade.registerDoctor(dto);
-                
-                // Link user with doctor if userId is provided
-                if (data.containsKey("userId") && data.get("userId") != null && !data.get("userId").isEmpty()) {
-                    try {
-                        facade.linkUserToEntity(data.get("userId"), doctorId);
-                        System.out.println("User " + data.get("userId") + " linked to doctor " + doctorId);
-                    } catch (Exception e) {
-                        System.err.println("Warning: Failed to link user to doctor: " + e.getMessage());
-                    }
+                if (error == null) {
+                    sendJsonResponse(exchange, 201, "{\"appointmentId\":\"" + appointment.getAppointmentId() + "\",\"message\":\"Appointment booked successfully\"}");
+                    return;
+                }
+                Throwable e = AsyncBackendFacade.unwrap(error);
+                if (e instanceof EntityNotFoundException || e instanceof SlotUnavailableException
+                        || e instanceof ValidationException) {
+                    System.err.println("Booking error (400): " + e.getMessage());
+                    sendJsonResponse(exchange, 400, "{\"error\":\"" + e.getMessage() + "\"}");
+                } else {
+                    System.err.println("Booking error (500): " + e.getMessage());
+                    e.printStackTrace();
+                    sendJsonResponse(exchange, 500, "{\"error\":\"Invalid date/time format or server error: " + e.getMessage() + "\"}");
                 }
-                
-                sendJsonResponse(exchange, 201, "{\"doctorId\":\"" + doctorId + "\",\"message\":\"Doctor registered successfully\"}");
-            } catch (ValidationException e) {
-                sendJsonResponse(exchange, 400, "{\"error\":\"" + e.getMessage() + "\"}");
+            } catch (IOException ioe) {
+                System.err.println("Failed to send booking response: " + ioe.getMessage());
             }
+        });
+    }
+
+    private void handleCancelAppointment(HttpExchange exchange, Router.PathParams params) throws IOException {
+        String requestBody = readRequestBody(exchange);
+        Map<String, String> data = parseJson(requestBody);
+        
+        try {
+            String appointmentId = data.get("appointmentId");
+            // Optional: the version the client read the appointment at
+            String version = data.get("version");
+            long expectedVersion = version != null && !version.equals("null") ? Long.parseLong(version) : 0;
+            boolean cancelled = facade.cancelAppointment(appointmentId, expectedVersion);
+            sendJsonResponse(exchange, 200, "{\"success\":" + cancelled + ",\"message\":\"Appointment cancelled\"}");
+        } catch (NumberFormatException e) {
+            sendJsonResponse(exchange, 400, "{\"error\":\"Invalid version format\"}");
+        } catch (EntityNotFoundException e) {
+            sendJsonResponse(exchange, 404, "{\"error\":\"" + e.getMessage() + "\"}");
+        } catch (OptimisticLockException e) {
+            sendJsonResponse(exchange, 409, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
         }
     }
 
-    // Appointment handlers
-    private void handleAppointments(HttpExchange exchange) throws IOException {
-        setCorsHeaders(exchange);
+    // Health Record handlers
+    private void handleListHealthRecords(HttpExchange exchange, Router.PathParams params) throws IOException {
+        String patientId = queryParameter(exchange, "patientId");
+        if (patientId != null) {
+            respondAsync(exchange, asyncFacade.getPatientHealthRecords(patientId));
+        } else {
+            respondAsync(exchange, asyncFacade.listAllHealthRecords());
+        }
+    }
+
+    private void handleGetHealthRecord(HttpExchange exchange, Router.PathParams params) throws IOException {
+        try {
+            HealthRecordDTO record = facade.getHealthRecord(params.get("recordId"));
+            sendJsonResponse(exchange, 200, toJson(record));
+        } catch (EntityNotFoundException e) {
+            sendJsonResponse(exchange, 404, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
+        } catch (Exception e) {
+            e.printStackTrace();
+            sendJsonResponse(exchange, 500, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
+        }
+    }
+
+    private void handleDeleteHealthRecord(HttpExchange exchange, Router.PathParams params) throws IOException {
+        try {
+            // TODO: Add token validation and admin role check
+            facade.deleteHealthRecord(params.get("recordId"));
+            sendJsonResponse(exchange, 200, "{\"message\":\"Health record deleted successfully\"}");
+        } catch (EntityNotFoundException e) {
+            sendJsonResponse(exchange, 404, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
+        } catch (Exception e) {
+            sendJsonResponse(exchange, 500, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
+        }
+    }
+
+    private void handleAddHealthRecord(HttpExchange exchange, Router.PathParams params) throws IOException {
+        String requestBody = readRequestBody(exchange);
+        Map<String, String> data = parseJson(requestBody);
         
-        if ("OPTIONS".equals(exchange.getRequestMethod())) {
-            exchange.sendResponseHeaders(204, -1);
+        HealthRecordDTO dto;
+        try {
+            String recordDateStr = data.get("recordDate");
+            LocalDateTime recordDate = (recordDateStr != null && !recordDateStr.isEmpty()) 
+                ? LocalDateTime.parse(recordDateStr + "T00:00:00") 
+                : LocalDateTime.now();
+            
+            dto = new HealthRecordDTO(
+                data.get("patientId"),
+                data.get("doctorId"),
+                recordDate,
+                data.get("symptoms"),
+                data.get("diagnosis"),
+                data.get("treatment"),
+                data.get("prescription")
+            );
+        } catch (Exception e) {
+            sendJsonResponse(exchange, 500, "{\"error\":\"Server error: " + e.getMessage() + "\"}");
             return;
         }
         
-        if ("GET".equals(exchange.getRequestMethod())) {
-            String query = exchange.getRequestURI().getQuery();
-            if (query != null && query.startsWith("patientId=")) {
-                String patientId = query.split("=")[1];
-                List<AppointmentDTO> appointments = facade.getAppointmentsByPatient(patientId);
-                sendJsonResponse(exchange, 200, toJson(appointments));
-            } else if (query != null && query.startsWith("doctorId=")) {
-                String doctorId = query.split("=")[1];
-                List<AppointmentDTO> appointments = facade.getAppointmentsByDoctor(doctorId);
-                sendJsonResponse(exchange, 200, toJson(appointments));
-            } else {
-                List<AppointmentDTO> appointments = facade.listAppointments();
-                sendJsonResponse(exchange, 200, toJson(appointments));
-            }
-        } else if ("DELETE".equals(exchange.getRequestMethod())) {
-            // Extract appointment ID from URL path: /api/appointments/{appointmentId}
-            String path = exchange.getRequestURI().getPath();
-            String[] parts = path.split("/");
-            if (parts.length < 4) {
-                sendJsonResponse(exchange, 400, "{\"error\":\"Appointment ID is required\"}");
-                return;
-            }
-            
-            String appointmentId = parts[3]; // /api/appointments/{appointmentId}
-            
+        asyncFacade.addHealthRecord(dto).whenComplete((recordId, error) -> {
             try {
-                // TODO: Add token validation and admin role check
-                facade.deleteAppointment(appointmentId);
-                sendJsonResponse(exchange, 200, "{\"message\":\"Appointment deleted successfully\"}");
-            } catch (EntityNotFoundException e) {
-                sendJsonResponse(exchange, 404, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
-            } catch (Exception e) {
-                sendJsonResponse(exchange, 500, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
+                if (error == null) {
+                    sendJsonResponse(exchange, 201, "{\"recordId\":\"" + recordId + "\",\"message\":\"Health record added successfully\"}");
+                    return;
+                }
+                Throwable e = AsyncBackendFacade.unwrap(error);
+                if (e instanceof EntityNotFoundException || e instanceof ValidationException) {
+                    sendJsonResponse(exchange, 400, "{\"error\":\"" + e.getMessage() + "\"}");
+                } else {
+                    sendJsonResponse(exchange, 500, "{\"error\":\"Server error: " + e.getMessage() + "\"}");
+                }
+            } catch (IOException ioe) {
+                System.err.println("Failed to send health record response: " + ioe.getMessage());
             }
+        });
+    }
+
+    private void handleSearchHealthRecords(HttpExchange exchange, Router.PathParams params) throws IOException {
+        String q = queryParameter(exchange, "q");
+        if (q == null || q.trim().isEmpty()) {
+            sendJsonResponse(exchange, 400, "{\"error\":\"Query parameter q is required\"}");
+            return;
         }
+        respondAsync(exchange, asyncFacade.searchHealthRecords(q));
     }
 
-    private void handleBookAppointment(HttpExchange exchange) throws IOException {
-        setCorsHeaders(exchange);
-        
-        if ("OPTIONS".equals(exchange.getRequestMethod())) {
-            exchange.sendResponseHeaders(204, -1);
+    /**
+     * Stream health records as NDJSON, optionally limited to {@code from}/{@code to} dates
+     * (inclusive, yyyy-MM-dd or ISO date-time) and gzip-compressed if the client accepts it.
+     * The body is chunked and written from an I/O thread as records are read. The status is
+     * sent before the first record, so a failure part-way through ends the stream with an
+     * {@code {"error":"..."}} line instead; a body whose last line has no recordId is incomplete.
+     */
+    private void handleExportHealthRecords(HttpExchange exchange, Router.PathParams params) throws IOException {
+        LocalDateTime from;
+        LocalDateTime to;
+        try {
+            from = dateBound(queryParameter(exchange, "from"), false);
+            to = dateBound(queryParameter(exchange, "to"), true);
+        } catch (DateTimeParseException e) {
+            sendJsonResponse(exchange, 400, "{\"error\":\"Dates must be yyyy-MM-dd or yyyy-MM-ddTHH:mm\"}");
             return;
         }
-        
-        if ("POST".equals(exchange.getRequestMethod())) {
-            String requestBody = readRequestBody(exchange);
-            System.out.println("Book Appointment Request Body: " + requestBody);
-            Map<String, String> data = parseJson(requestBody);
-            
+        Headers headers = exchange.getResponseHeaders();
+        headers.add("Content-Type", "application/x-ndjson; charset=utf-8");
+        headers.add("Vary", "Accept-Encoding");
+        OutputStream body = exchange.getResponseBody();
+        if (ResponseEncoding.acceptsGzip(exchange.getRequestHeaders())) {
+            headers.add("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(200, 0);
+            body = new GZIPOutputStream(body, 8192);
+        } else {
+            exchange.sendResponseHeaders(200, 0);
+        }
+        Writer writer = new BufferedWriter(new OutputStreamWriter(body, StandardCharsets.UTF_8), 16384);
+        asyncFacade.exportHealthRecordsNdjson(writer, from, to).whenComplete((count, error) -> {
             try {
-                String patientId = data.get("patientId");
-                String doctorId = data.get("doctorId");
-                String dateTimeStr = data.get("dateTime");
-                String reason = data.get("reason");
-                
-                System.out.println("Parsed data - PatientID: " + patientId + ", DoctorID: " + doctorId + ", DateTime: " + dateTimeStr + ", Reason: " + reason);
-                
-                // Handle datetime-local format (YYYY-MM-DDTHH:MM)
-                LocalDateTime dateTime = LocalDateTime.parse(dateTimeStr);
-                
-                AppointmentDTO appointment = facade.bookAppointment(patientId, doctorId, dateTime, reason);
-                
-                sendJsonResponse(exchange, 201, "{\"appointmentId\":\"" + appointment.getAppointmentId() + "\",\"message\":\"Appointment booked successfully\"}");
-            } catch (EntityNotFoundException | SlotUnavailableException | ValidationException e) {
-                System.err.println("Booking error (400): " + e.getMessage());
-                e.printStackTrace();
-                sendJsonResponse(exchange, 400, "{\"error\":\"" + e.getMessage() + "\"}");
-            } catch (Exception e) {
-                System.err.println("Booking error (500): " + e.getMessage());
-                e.printStackTrace();
-                sendJsonResponse(exchange, 500, "{\"error\":\"Invalid date/time format or server error: " + e.getMessage() + "\"}");
+                if (error != null) {
+                    String message = AsyncBackendFacade.unwrap(error).getMessage();
+                    System.err.println("Health record export failed: " + message);
+                    // The 200 is already sent, so the last line tells the client the export is incomplete
+                    writer.write("{\"error\":\"" + escapeJson("Export failed: " + message) + "\"}\n");
+                }
+                writer.close();
+            } catch (IOException ioe) {
+                System.err.println("Failed to send response: " + ioe.getMessage());
             }
+        });
+    }
+
+    /**
+     * Parse a date filter; a bare date as an upper bound covers the whole day.
+     * 
+     * @return Inclusive lower or exclusive upper bound, or null if the value is absent
+     */
+    private static LocalDateTime dateBound(String value, boolean upper) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        if (value.length() == 10) {
+            LocalDate date = LocalDate.parse(value);
+            return (upper ? date.plusDays(1) : date).atStartOfDay();
         }
+        LocalDateTime dateTime = LocalDateTime.parse(value);
+        return upper ? dateTime.plusNanos(1) : dateTime;
     }
 
-    private void handleCancelAppointment(HttpExchange exchange) throws IOException {
-        setCorsHeaders(exchange);
-        
-        if ("OPTIONS".equals(exchange.getRequestMethod())) {
-            exchange.sendResponseHeaders(204, -1);
+    // Export job handlers
+    private void handleListExportJobs(HttpExchange exchange, Router.PathParams params) throws IOException {
+        String tenantId = authenticatedUserId(exchange);
+        if (tenantId != null) {
+            sendJsonResponse(exchange, 200, toJson(facade.listExportJobs(tenantId)));
+        }
+    }
+
+    private void handleSubmitExportJob(HttpExchange exchange, Router.PathParams params) throws IOException {
+        String tenantId = authenticatedUserId(exchange);
+        if (tenantId == null) {
             return;
         }
-        
-        if ("POST".equals(exchange.getRequestMethod())) {
-            String requestBody = readRequestBody(exchange);
-            Map<String, String> data = parseJson(requestBody);
-            
-            try {
-                String appointmentId = data.get("appointmentId");
-                boolean cancelled = facade.cancelAppointment(appointmentId);
-                sendJsonResponse(exchange, 200, "{\"success\":" + cancelled + ",\"message\":\"Appointment cancelled\"}");
-            } catch (EntityNotFoundException e) {
-                sendJsonResponse(exchange, 404, "{\"error\":\"" + e.getMessage() + "\"}");
-            }
+        Map<String, String> data = parseJson(readRequestBody(exchange));
+        try {
+            ExportJobDTO job = facade.submitExportJob(tenantId, data.get("patientId"));
+            exchange.getResponseHeaders().add("Location", "/api/exports/" + job.getJobId());
+            sendJsonResponse(exchange, 202, toJson(job));
+        } catch (EntityNotFoundException e) {
+            sendJsonResponse(exchange, 404, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
+        } catch (QuotaExceededException e) {
+            sendJsonResponse(exchange, 429, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
         }
     }
 
-    // Health Record handlers
-    private void handleHealthRecords(HttpExchange exchange) throws IOException {
-        setCorsHeaders(exchange);
-        
-        if ("OPTIONS".equals(exchange.getRequestMethod())) {
-            exchange.sendResponseHeaders(204, -1);
+    private void handleGetExportJob(HttpExchange exchange, Router.PathParams params) throws IOException {
+        String tenantId = authenticatedUserId(exchange);
+        if (tenantId == null) {
             return;
         }
-        
-        if ("GET".equals(exchange.getRequestMethod())) {
-            String query = exchange.getRequestURI().getQuery();
-            if (query != null && query.startsWith("patientId=")) {
-                String patientId = query.split("=")[1];
-                List<HealthRecordDTO> records = facade.getPatientHealthRecords(patientId);
-                sendJsonResponse(exchange, 200, toJson(records));
-            } else {
-                List<HealthRecordDTO> records = facade.listAllHealthRecords();
-                sendJsonResponse(exchange, 200, toJson(records));
-            }
-        } else if ("DELETE".equals(exchange.getRequestMethod())) {
-            // Extract health record ID from URL path: /api/health-records/{recordId}
-            String path = exchange.getRequestURI().getPath();
-            String[] parts = path.split("/");
-            if (parts.length < 4) {
-                sendJsonResponse(exchange, 400, "{\"error\":\"Health record ID is required\"}");
-                return;
-            }
-            
-            String recordId = parts[3]; // /api/health-records/{recordId}
-            
-            try {
-                // TODO: Add token validation and admin role check
-                facade.deleteHealthRecord(recordId);
-                sendJsonResponse(exchange, 200, "{\"message\":\"Health record deleted successfully\"}");
-            } catch (EntityNotFoundException e) {
-                sendJsonResponse(exchange, 404, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
-            } catch (Exception e) {
-                sendJsonResponse(exchange, 500, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
-            }
+        try {
+            sendJsonResponse(exchange, 200, toJson(facade.getExportJob(tenantId, params.get("jobId"))));
+        } catch (EntityNotFoundException e) {
+            sendJsonResponse(exchange, 404, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
         }
     }
 
-    private void handleAddHealthRecord(HttpExchange exchange) throws IOException {
-        setCorsHeaders(exchange);
-        
-        if ("OPTIONS".equals(exchange.getRequestMethod())) {
-            exchange.sendResponseHeaders(204, -1);
+    private void handleCancelExportJob(HttpExchange exchange, Router.PathParams params) throws IOException {
+        String tenantId = authenticatedUserId(exchange);
+        if (tenantId == null) {
             return;
         }
-        
-        if ("POST".equals(exchange.getRequestMethod())) {
-            String requestBody = readRequestBody(exchange);
-            Map<String, String> data = parseJson(requestBody);
-            
-            try {
-                String recordDateStr = data.get("recordDate");
-                LocalDateTime recordDate = (recordDateStr != null && !recordDateStr.isEmpty()) 
-                    ? LocalDateTime.parse(recordDateStr + "T00:00:00") 
-                    : LocalDateTime.now();
-                
-                HealthRecordDTO dto = new HealthRecordDTO(
-                    data.get("patientId"),
-                    data.get("doctorId"),
-                    recordDate,
-                    data.get("symptoms"),
-                    data.get("diagnosis"),
-                    data.get("treatment"),
-                    data.get("prescription")
-                );
-                
-                String recordId = facade.addHealthRecord(dto);
-                sendJsonResponse(exchange, 201, "{\"recordId\":\"" + recordId + "\",\"message\":\"Health record added successfully\"}");
-            } catch (EntityNotFoundException | ValidationException e) {
-                sendJsonResponse(exchange, 400, "{\"error\":\"" + e.getMessage() + "\"}");
-            } catch (Exception e) {
-                sendJsonResponse(exchange, 500, "{\"error\":\"Server error: " + e.getMessage() + "\"}");
-            }
+        try {
+            sendJsonResponse(exchange, 200, toJson(facade.cancelExportJob(tenantId, params.get("jobId"))));
+        } catch (EntityNotFoundException e) {
+            sendJsonResponse(exchange, 404, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
+        } catch (IllegalStateException e) {
+            sendJsonResponse(exchange, 409, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
+        }
+    }
+
+    private void handleDeleteExportJob(HttpExchange exchange, Router.PathParams params) throws IOException {
+        String tenantId = authenticatedUserId(exchange);
+        if (tenantId == null) {
+            return;
+        }
+        try {
+            facade.deleteExportJob(tenantId, params.get("jobId"));
+            sendJsonResponse(exchange, 200, "{\"message\":\"Export deleted successfully\"}");
+        } catch (EntityNotFoundException e) {
+            sendJsonResponse(exchange, 404, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
+        } catch (IllegalStateException e) {
+            sendJsonResponse(exchange, 409, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
+        }
+    }
+
+    /**
+     * Stream a finished export's file; the body is copied from disk rather than buffered.
+     */
+    private void handleDownloadExportJob(HttpExchange exchange, Router.PathParams params) throws IOException {
+        String tenantId = authenticatedUserId(exchange);
+        if (tenantId == null) {
+            return;
+        }
+        File file;
+        try {
+            file = facade.getExportJobResult(tenantId, params.get("jobId"));
+        } catch (EntityNotFoundException e) {
+            sendJsonResponse(exchange, 404, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
+            return;
+        } catch (IllegalStateException e) {
+            sendJsonResponse(exchange, 409, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
+            return;
+        }
+        Headers headers = exchange.getResponseHeaders();
+        headers.add("Content-Type", file.getName().endsWith(".zip")
+                ? "application/zip" : "text/plain; charset=utf-8");
+        headers.add("Content-Disposition", "attachment; filename=\"" + file.getName() + "\"");
+        exchange.sendResponseHeaders(200, file.length());
+        try (OutputStream out = exchange.getResponseBody()) {
+            Files.copy(file.toPath(), out);
+        }
+    }
+
+    private void handleImportPatients(HttpExchange exchange, Router.PathParams params) throws IOException {
+        handleImport(exchange, true);
+    }
+
+    private void handleImportDoctors(HttpExchange exchange, Router.PathParams params) throws IOException {
+        handleImport(exchange, false);
+    }
+
+    /**
+     * Import the CSV request body as it arrives; rejected rows are listed in part in the
+     * response and in full at the {@code Location} of the reject file.
+     */
+    private void handleImport(HttpExchange exchange, boolean patients) throws IOException {
+        if (authenticatedUserId(exchange) == null) {
+            return;
+        }
+        ImportResultDTO result;
+        try (Reader csv = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)) {
+            result = patients ? facade.importPatients(csv) : facade.importDoctors(csv);
+        } catch (ValidationException e) {
+            sendJsonResponse(exchange, 400, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
+            return;
+        }
+        if (result.getImportId() != null) {
+            exchange.getResponseHeaders().add("Location", "/api/import/" + result.getImportId() + "/rejects");
+        }
+        sendJsonResponse(exchange, 200, toJson(result));
+    }
+
+    private void handleDownloadImportRejects(HttpExchange exchange, Router.PathParams params) throws IOException {
+        if (authenticatedUserId(exchange) == null) {
+            return;
+        }
+        File file;
+        try {
+            file = facade.getImportRejectsFile(params.get("importId"));
+        } catch (EntityNotFoundException e) {
+            sendJsonResponse(exchange, 404, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
+            return;
+        }
+        Headers headers = exchange.getResponseHeaders();
+        headers.add("Content-Type", "text/csv; charset=utf-8");
+        headers.add("Content-Disposition", "attachment; filename=\"" + file.getName() + "\"");
+        exchange.sendResponseHeaders(200, file.length());
+        try (OutputStream out = exchange.getResponseBody()) {
+            Files.copy(file.toPath(), out);
+        }
+    }
+
+    /**
+     * User ID of the request's {@code Authorization: Bearer} token; sends 401 and returns
+     * null if the token is missing or invalid.
+     */
+    private String authenticatedUserId(HttpExchange exchange) throws IOException {
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        if (authorization == null || !authorization.startsWith("Bearer ")) {
+            sendJsonResponse(exchange, 401, "{\"error\":\"Bearer token required\"}");
+            return null;
+        }
+        try {
+            return facade.validateToken(authorization.substring("Bearer ".length()).trim()).getUserId();
+        } catch (ValidationException e) {
+            sendJsonResponse(exchange, 401, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
+            return null;
         }
     }
 
@@ -610,7 +955,33 @@ public class ApiServer {
     private void setCorsHeaders(HttpExchange exchange) {
         exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
         exchange.getResponseHeaders().add("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
-        exchange.getResponseHeaders().add("Access-Control-Allow-Headers", "Content-Type, Authorization");
+        exchange.getResponseHeaders().add("Access-Control-Allow-Headers", "Content-Type, Authorization, If-None-Match");
+        exchange.getResponseHeaders().add("Access-Control-Expose-Headers", "ETag, Retry-After, Location, Content-Disposition");
+    }
+
+    private void sendRejection(HttpExchange exchange, int status, long retryAfterSeconds, String message)
+            throws IOException {
+        setCorsHeaders(exchange);
+        exchange.getResponseHeaders().add("Retry-After", Long.toString(retryAfterSeconds));
+        sendJsonResponse(exchange, status, "{\"error\":\"" + escapeJson(message) + "\"}");
+    }
+
+    /**
+     * Get a URL-decoded query string parameter, or null if absent.
+     */
+    private String queryParameter(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return null;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq >= 0 ? pair.substring(0, eq) : pair;
+            if (key.equals(name)) {
+                return eq >= 0 ? URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8) : "";
+            }
+        }
+        return null;
     }
 
     private String readRequestBody(HttpExchange exchange) throws IOException {
@@ -665,32 +1036,171 @@ public class ApiServer {
     private String objectToJson(Object obj) {
         if (obj instanceof PatientDTO) {
             PatientDTO p = (PatientDTO) obj;
-            return String.format("{\"patientId\":\"%s\",\"name\":\"%s\",\"age\":%d,\"gender\":\"%s\",\"contact\":\"%s\"}",
-                p.getPatientId(), p.getName(), p.getAge(), p.getGender(), p.getContact());
+            return String.format("{\"patientId\":\"%s\",\"name\":\"%s\",\"age\":%d,\"gender\":\"%s\",\"contact\":\"%s\",\"version\":%d}",
+                p.getPatientId(), p.getName(), p.getAge(), p.getGender(), p.getContact(), p.getVersion());
         } else if (obj instanceof DoctorDTO) {
             DoctorDTO d = (DoctorDTO) obj;
             return String.format("{\"doctorId\":\"%s\",\"name\":\"%s\",\"specialty\":\"%s\",\"availableSlots\":%d}",
                 d.getDoctorId(), d.getName(), d.getSpecialty(), d.getAvailableSlots().size());
         } else if (obj instanceof AppointmentDTO) {
             AppointmentDTO a = (AppointmentDTO) obj;
-            return String.format("{\"appointmentId\":\"%s\",\"patientId\":\"%s\",\"doctorId\":\"%s\",\"dateTime\":\"%s\",\"status\":\"%s\"}",
-                a.getAppointmentId(), a.getPatientId(), a.getDoctorId(), a.getDateTime().format(formatter), a.getStatus());
+            return String.format("{\"appointmentId\":\"%s\",\"patientId\":\"%s\",\"doctorId\":\"%s\",\"doctorName\":%s,\"dateTime\":\"%s\",\"status\":\"%s\",\"version\":%d}",
+                a.getAppointmentId(), a.getPatientId(), a.getDoctorId(), doctorNameJson(a.getDoctorId()),
+                a.getDateTime().format(formatter), a.getStatus(), a.getVersion());
         } else if (obj instanceof HealthRecordDTO) {
             HealthRecordDTO h = (HealthRecordDTO) obj;
-            return String.format("{\"recordId\":\"%s\",\"patientId\":\"%s\",\"doctorId\":\"%s\",\"date\":\"%s\",\"symptoms\":\"%s\",\"diagnosis\":\"%s\",\"prescription\":\"%s\"}",
-                h.getRecordId(), h.getPatientId(), h.getDoctorId(), h.getDate().format(formatter), 
+            return String.format("{\"recordId\":\"%s\",\"patientId\":\"%s\",\"doctorId\":\"%s\",\"doctorName\":%s,\"date\":\"%s\",\"symptoms\":\"%s\",\"diagnosis\":\"%s\",\"prescription\":\"%s\"}",
+                h.getRecordId(), h.getPatientId(), h.getDoctorId(), doctorNameJson(h.getDoctorId()), h.getDate().format(formatter), 
                 h.getSymptoms(), h.getDiagnosis(), h.getPrescription());
+        } else if (obj instanceof ExportJobDTO) {
+            ExportJobDTO j = (ExportJobDTO) obj;
+            return String.format("{\"jobId\":\"%s\",\"patientId\":%s,\"status\":\"%s\",\"submittedAt\":\"%s\",\"startedAt\":%s,\"finishedAt\":%s,\"exported\":%d,\"total\":%d,\"resultBytes\":%d,\"error\":%s}",
+                j.getJobId(), j.getPatientId() != null ? "\"" + j.getPatientId() + "\"" : "null", j.getStatus(),
+                j.getSubmittedAt().format(formatter),
+                j.getStartedAt() != null ? "\"" + j.getStartedAt().format(formatter) + "\"" : "null",
+                j.getFinishedAt() != null ? "\"" + j.getFinishedAt().format(formatter) + "\"" : "null",
+                j.getExported(), j.getTotal(), j.getResultBytes(),
+                j.getError() != null ? "\"" + escapeJson(j.getError()) + "\"" : "null");
+        } else if (obj instanceof ImportResultDTO) {
+            ImportResultDTO r = (ImportResultDTO) obj;
+            StringBuilder rejects = new StringBuilder("[");
+            for (String reject : r.getFirstRejects()) {
+                if (rejects.length() > 1) rejects.append(",");
+                rejects.append("\"").append(escapeJson(reject)).append("\"");
+            }
+            rejects.append("]");
+            return String.format("{\"importId\":%s,\"entity\":\"%s\",\"rowsRead\":%d,\"imported\":%d,\"rejected\":%d,\"batches\":%d,\"elapsedMillis\":%d,\"firstRejects\":%s}",
+                r.getImportId() != null ? "\"" + r.getImportId() + "\"" : "null", r.getEntity(),
+                r.getRowsRead(), r.getImported(), r.getRejected(), r.getBatches(), r.getElapsedMillis(),
+                rejects);
         }
         return "{}";
     }
 
+    /**
+     * Doctor name as a JSON value from the cached doctor directory, or null for unknown doctors.
+     */
+    private String doctorNameJson(String doctorId) {
+        String name = facade.getDoctorName(doctorId);
+        return name != null ? "\"" + escapeJson(name) + "\"" : "null";
+    }
+
+    /**
+     * Complete the exchange with the JSON form of the future's result once it is available.
+     * The handler thread returns immediately; the response is written from the I/O executor.
+     */
+    private void respondAsync(HttpExchange exchange, CompletableFuture<?> result) {
+        respondAsync(exchange, result, null);
+    }
+
+    /**
+     * Like {@link #respondAsync(HttpExchange, CompletableFuture)}, tagging a successful
+     * response with the given ETag.
+     */
+    private void respondAsync(HttpExchange exchange, CompletableFuture<?> result, String etag) {
+        result.whenComplete((value, error) -> {
+            try {
+                if (error == null) {
+                    sendJsonResponse(exchange, 200, toJson(value), etag);
+                } else {
+                    sendAsyncError(exchange, AsyncBackendFacade.unwrap(error));
+                }
+            } catch (IOException ioe) {
+                System.err.println("Failed to send response: " + ioe.getMessage());
+            } catch (RuntimeException e) {
+                // e.g. toJson of a DTO with a missing field; usually nothing has been sent yet
+                sendAsyncError(exchange, e);
+            } finally {
+                closeExchange(exchange);
+            }
+        });
+    }
+
+    /**
+     * Send a 500 for a failed asynchronous call, if the response has not been started.
+     */
+    private void sendAsyncError(HttpExchange exchange, Throwable e) {
+        e.printStackTrace();
+        try {
+            sendJsonResponse(exchange, 500, "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
+        } catch (IOException | RuntimeException ioe) {
+            System.err.println("Failed to send response: " + ioe.getMessage());
+        }
+    }
+
+    /**
+     * Close the response body, then the exchange. HttpExchange.close alone skips the body when
+     * no headers were sent, and closing the body is what releases the admission permit.
+     */
+    private static void closeExchange(HttpExchange exchange) {
+        try {
+            exchange.getResponseBody().close();
+        } catch (IOException e) {
+            // No response was sent; closing the exchange drops the connection
+        }
+        exchange.close();
+    }
+
     private void sendJsonResponse(HttpExchange exchange, int statusCode, String response) throws IOException {
-        exchange.getResponseHeaders().add("Content-Type", "application/json");
-        byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
-        exchange.sendResponseHeaders(statusCode, bytes.length);
-        exchange.getResponseBody().write(bytes);
+        sendJsonResponse(exchange, statusCode, response, null);
+    }
+
+    private void sendJsonResponse(HttpExchange exchange, int statusCode, String response, String etag) throws IOException {
+        sendResponse(exchange, statusCode, "application/json", response.getBytes(StandardCharsets.UTF_8), etag);
+    }
+
+    /**
+     * Send a body, gzip-compressed if the client accepts it and the body is large enough.
+     * 
+     * @param etag Strong ETag of the identity body, or null for none
+     */
+    private void sendResponse(HttpExchange exchange, int statusCode, String contentType,
+                              byte[] body, String etag) throws IOException {
+        Headers headers = exchange.getResponseHeaders();
+        headers.add("Content-Type", contentType);
+        boolean gzip = false;
+        if (body.length >= ResponseEncoding.GZIP_MIN_BYTES) {
+            headers.add("Vary", "Accept-Encoding");
+            if (ResponseEncoding.acceptsGzip(exchange.getRequestHeaders())) {
+                body = ResponseEncoding.gzip(body);
+                headers.add("Content-Encoding", "gzip");
+                gzip = true;
+            }
+        }
+        if (etag != null) {
+            headers.add("ETag", gzip ? ResponseEncoding.gzipTag(etag) : etag);
+            headers.add("Cache-Control", "no-cache");
+        }
+        exchange.sendResponseHeaders(statusCode, body.length);
+        exchange.getResponseBody().write(body);
         exchange.getResponseBody().close();
     }
+
+    /**
+     * Strong ETag for a collection at the given change count.
+     */
+    private String collectionTag(String collection, long changeCount) {
+        return "\"" + collection + "-" + etagEpoch + "-" + changeCount + "\"";
+    }
+
+    /**
+     * Answer 304 Not Modified if the request's If-None-Match matches the ETag.
+     * 
+     * @return true if the response was sent
+     */
+    private boolean sendNotModified(HttpExchange exchange, String etag) throws IOException {
+        String matched = ResponseEncoding.matchIfNoneMatch(exchange.getRequestHeaders(), etag);
+        if (matched == null) {
+            return false;
+        }
+        Headers headers = exchange.getResponseHeaders();
+        headers.add("ETag", matched);
+        headers.add("Cache-Control", "no-cache");
+        headers.add("Vary", "Accept-Encoding");
+        exchange.sendResponseHeaders(304, -1);
+        exchange.close();
+        return true;
+    }
     
     private String escapeJson(String str) {
         if (str == null) return "";
@@ -702,19 +1212,27 @@ public class ApiServer {
     }
 
     public void start() {
+        // The dispatcher thread only routes; admitted requests run on the admission controller's pool
         server.setExecutor(null);
         server.start();
         System.out.println("========================================");
         System.out.println("  Digital Health Repository API Server");
         System.out.println("========================================");
-        System.out.println("Server started on http://localhost:" + PORT);
-        System.out.println("Frontend: http://localhost:" + PORT);
-        System.out.println("API Base: http://localhost:" + PORT + "/api");
+        System.out.println("Server started on http://localhost:" + getPort());
+        System.out.println("Frontend: http://localhost:" + getPort());
+        System.out.println("API Base: http://localhost:" + getPort() + "/api");
         System.out.println("========================================\n");
     }
 
     public void stop() {
         server.stop(0);
+        admission.close();
+        try {
+            staticAssets.close();
+        } catch (IOException e) {
+            System.err.println("Warning: Could not stop static file watcher: " + e.getMessage());
+        }
+        asyncFacade.close();
         System.out.println("Server stopped.");
     }
 
@@ -722,6 +1240,8 @@ public class ApiServer {
         try {
             ApiServer server = new ApiServer();
             server.start();
+            // Ctrl+C: drain in-flight calls and save the search index snapshot
+            Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "api-shutdown"));
             
             // Keep server running
             System.out.println("Press Ctrl+C to stop the server...\n");
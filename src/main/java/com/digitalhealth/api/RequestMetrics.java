@@ -0,0 +1,105 @@
+package com.digitalhealth.api;
+
+import com.digitalhealth.jfr.HttpRequestEvent;
+import com.digitalhealth.metrics.Counter;
+import com.digitalhealth.metrics.Histogram;
+import com.digitalhealth.metrics.MetricsRegistry;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Counts requests and times them per route, method and status, and emits an
+ * {@link HttpRequestEvent} per request when that JFR event is enabled. The route is the
+ * matched pattern passed in by the dispatcher, so metrics stay per endpoint rather than
+ * per URL; requests that matched no route are counted as {@link #UNMATCHED}.
+ *
+ * Handlers that answer asynchronously return before the response is written, so the
+ * request is recorded when the response body is closed; responses without a body
+ * (e.g. 204) are recorded when the handler returns.
+ */
+final class RequestMetrics {
+    static final String UNMATCHED = "unmatched";
+
+    private final MetricsRegistry registry;
+    private final Map<String, Counter> requests = new ConcurrentHashMap<>();
+    private final Map<String, Histogram> latency = new ConcurrentHashMap<>();
+
+    /**
+     * Handling of one request.
+     */
+    @FunctionalInterface
+    interface Call {
+        void run() throws IOException;
+    }
+
+    RequestMetrics(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Run a request's handling and record it under the given route.
+     */
+    void observe(HttpExchange exchange, String route, Call call) throws IOException {
+        HttpRequestEvent event = new HttpRequestEvent();
+        event.begin();
+        long start = System.nanoTime();
+        String method = exchange.getRequestMethod();
+        AtomicBoolean recorded = new AtomicBoolean();
+
+        OutputStream body = exchange.getResponseBody();
+        exchange.setStreams(null, new FilterOutputStream(body) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    if (recorded.compareAndSet(false, true)) {
+                        record(exchange, event, route, method, exchange.getResponseCode(), start);
+                    }
+                }
+            }
+        });
+
+        try {
+            call.run();
+        } catch (IOException | RuntimeException e) {
+            if (recorded.compareAndSet(false, true)) {
+                record(exchange, event, route, method, -1, start);
+            }
+            throw e;
+        }
+        if (exchange.getResponseCode() != -1 && recorded.compareAndSet(false, true)) {
+            record(exchange, event, route, method, exchange.getResponseCode(), start);
+        }
+    }
+
+    private void record(HttpExchange exchange, HttpRequestEvent event, String route, String method,
+                        int statusCode, long start) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.route = route;
+            event.method = method;
+            event.path = exchange.getRequestURI().getPath();
+            event.status = statusCode;
+            event.commit();
+        }
+        String status = statusCode == -1 ? "error" : String.valueOf(statusCode);
+        latency.computeIfAbsent(route + ' ' + method, key -> registry.histogram("http_request_duration_seconds",
+                "HTTP request latency by route", "route", route, "method", method))
+                .recordSince(start);
+        requests.computeIfAbsent(route + ' ' + method + ' ' + status, key -> registry.counter("http_requests_total",
+                "HTTP requests by route, method and status", "route", route, "method", method, "status", status))
+                .inc();
+    }
+}
@@ -0,0 +1,110 @@
+package com.digitalhealth.api;
+
+import com.sun.net.httpserver.Headers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Content negotiation helpers: gzip via Accept-Encoding and ETag matching via If-None-Match.
+ *
+ * A gzip body is a different representation from the identity body, so it gets its own
+ * strong ETag ({@link #gzipTag(String)}); If-None-Match uses weak comparison and accepts
+ * either variant of the same tag.
+ */
+final class ResponseEncoding {
+    /** Bodies smaller than this are sent as is; gzip framing would eat most of the gain. */
+    static final int GZIP_MIN_BYTES = 1024;
+
+    private static final String GZIP_SUFFIX = "-gzip";
+
+    private ResponseEncoding() {
+    }
+
+    /**
+     * Whether the client accepts a gzip body (q-value above zero for gzip, x-gzip or *).
+     */
+    static boolean acceptsGzip(Headers requestHeaders) {
+        List<String> values = requestHeaders.get("Accept-Encoding");
+        if (values == null) {
+            return false;
+        }
+        Double gzip = null;
+        Double wildcard = null;
+        for (String value : values) {
+            for (String coding : value.split(",")) {
+                String[] parts = coding.split(";");
+                String name = parts[0].trim().toLowerCase();
+                double q = 1.0;
+                for (int i = 1; i < parts.length; i++) {
+                    String param = parts[i].trim();
+                    if (param.startsWith("q=")) {
+                        try {
+                            q = Double.parseDouble(param.substring(2));
+                        } catch (NumberFormatException e) {
+                            q = 0;
+                        }
+                    }
+                }
+                if (name.equals("gzip") || name.equals("x-gzip")) {
+                    gzip = q;
+                } else if (name.equals("*")) {
+                    wildcard = q;
+                }
+            }
+        }
+        if (gzip != null) {
+            return gzip > 0;
+        }
+        return wildcard != null && wildcard > 0;
+    }
+
+    static byte[] gzip(byte[] body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 64);
+        try (GZIPOutputStream gz = new GZIPOutputStream(out, 8192)) {
+            gz.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Strong ETag of the gzip representation of a body tagged {@code etag}.
+     */
+    static String gzipTag(String etag) {
+        return etag.substring(0, etag.length() - 1) + GZIP_SUFFIX + "\"";
+    }
+
+    /**
+     * Find {@code etag} (either representation) in If-None-Match.
+     *
+     * @return The matching tag as the client sent it (without W/), {@code etag} for "*",
+     *         or null if nothing matches
+     */
+    static String matchIfNoneMatch(Headers requestHeaders, String etag) {
+        List<String> values = requestHeaders.get("If-None-Match");
+        if (values == null) {
+            return null;
+        }
+        String gzipEtag = gzipTag(etag);
+        for (String value : values) {
+            for (String candidate : value.split(",")) {
+                String tag = candidate.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*")) {
+                    return etag;
+                }
+                if (tag.equals(etag) || tag.equals(gzipEtag)) {
+                    return tag;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,280 @@
+package com.digitalhealth.api;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Request router: a trie of path segments built once at startup.
+ *
+ * Patterns are made of literal segments, {@code {name}} segments that capture one path
+ * segment, and a final {@code *} that captures the rest of the path. Literal segments take
+ * precedence over parameters, and parameters over {@code *}, so {@code /api/patients/search}
+ * wins over {@code /api/patients/{patientId}} whatever the registration order.
+ *
+ * {@link #match} does not allocate: it walks the path in place, records parameters as
+ * offsets into the path in a caller-supplied {@link PathParams}, and returns a
+ * {@link Route} created at registration time.
+ *
+ * Usage:
+ * <pre>
+ * Router router = new Router();
+ * router.add("GET", "/api/patients/{patientId}", (exchange, params) -&gt; ...);
+ *
+ * PathParams params = new PathParams();
+ * Route route = router.match("GET", "/api/patients/P1001", params);
+ * // route.handler() handles the request, params.get("patientId") is "P1001"
+ * </pre>
+ */
+public final class Router {
+    private static final int MAX_PARAMS = 8;
+    private static final String WILDCARD = "*";
+
+    private final Node root = new Node(null);
+
+    /**
+     * Handles a request whose route matched.
+     */
+    @FunctionalInterface
+    public interface Handler {
+        void handle(HttpExchange exchange, PathParams params) throws IOException;
+    }
+
+    /**
+     * Result of a match: the handler for the request method, or none if the path exists
+     * but not for that method.
+     */
+    public static final class Route {
+        private final String pattern;
+        private final Handler handler;
+        private final String allow;
+
+        private Route(String pattern, Handler handler, String allow) {
+            this.pattern = pattern;
+            this.handler = handler;
+            this.allow = allow;
+        }
+
+        /** Pattern the path matched, e.g. "/api/patients/{patientId}"; low-cardinality, fit for metric labels. */
+        public String pattern() {
+            return pattern;
+        }
+
+        /** Handler for the request method, or null if the method is not allowed on this path. */
+        public Handler handler() {
+            return handler;
+        }
+
+        /** Methods registered for the path, as an Allow header value, e.g. "GET, DELETE". */
+        public String allow() {
+            return allow;
+        }
+    }
+
+    /**
+     * Path parameters of the last match, kept as offsets into the path until asked for.
+     * Reusable across matches.
+     */
+    public static final class PathParams {
+        private final String[] names = new String[MAX_PARAMS];
+        private final int[] starts = new int[MAX_PARAMS];
+        private final int[] ends = new int[MAX_PARAMS];
+        private String path;
+        private int size;
+
+        /**
+         * Get a parameter, or null if the route has no parameter of that name.
+         */
+        public String get(String name) {
+            for (int i = 0; i < size; i++) {
+                if (names[i].equals(name)) {
+                    return path.substring(starts[i], ends[i]);
+                }
+            }
+            return null;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        private void reset(String path) {
+            this.path = path;
+            this.size = 0;
+        }
+
+        private void push(String name, int start, int end) {
+            names[size] = name;
+            starts[size] = start;
+            ends[size] = end;
+            size++;
+        }
+    }
+
+    private static final class Node {
+        /** Literal segment leading to this node, or the parameter name for parameter nodes. */
+        private final String segment;
+        private Node[] literals = new Node[0];
+        private Node parameter;
+        private Node wildcard;
+        private String pattern;
+        private String[] methods = new String[0];
+        private Route[] routes = new Route[0];
+        private Route methodNotAllowed;
+
+        Node(String segment) {
+            this.segment = segment;
+        }
+
+        boolean isTerminal() {
+            return pattern != null;
+        }
+
+        Route route(String method) {
+            for (int i = 0; i < methods.length; i++) {
+                if (methods[i].equals(method)) {
+                    return routes[i];
+                }
+            }
+            return methodNotAllowed;
+        }
+    }
+
+    /**
+     * Register a handler.
+     *
+     * @param method HTTP method, e.g. "GET"
+     * @param pattern Path pattern, e.g. "/api/doctors/{doctorId}" or "/static/*"
+     * @throws IllegalArgumentException if the pattern is malformed, reuses a parameter name,
+     *         disagrees with an existing route on a parameter name, or is already registered for the method
+     */
+    public synchronized void add(String method, String pattern, Handler handler) {
+        if (!pattern.startsWith("/")) {
+            throw new IllegalArgumentException("Pattern must start with '/': " + pattern);
+        }
+        Node node = root;
+        String[] segments = Arrays.stream(pattern.split("/")).filter(s -> !s.isEmpty()).toArray(String[]::new);
+        int params = 0;
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if (segment.equals(WILDCARD)) {
+                if (i != segments.length - 1) {
+                    throw new IllegalArgumentException("'*' must be the last segment: " + pattern);
+                }
+                if (node.wildcard == null) {
+                    node.wildcard = new Node(WILDCARD);
+                }
+                node = node.wildcard;
+                params++;
+            } else if (segment.startsWith("{") && segment.endsWith("}")) {
+                String name = segment.substring(1, segment.length() - 1);
+                if (name.isEmpty() || name.equals(WILDCARD)) {
+                    throw new IllegalArgumentException("Bad parameter name in " + pattern);
+                }
+                if (node.parameter == null) {
+                    node.parameter = new Node(name);
+                } else if (!node.parameter.segment.equals(name)) {
+                    throw new IllegalArgumentException("Parameter {" + name + "} in " + pattern
+                            + " conflicts with {" + node.parameter.segment + "} of an existing route");
+                }
+                node = node.parameter;
+                params++;
+            } else {
+                node = literalChild(node, segment);
+            }
+        }
+        if (params > MAX_PARAMS) {
+            throw new IllegalArgumentException("More than " + MAX_PARAMS + " parameters: " + pattern);
+        }
+        if (node.isTerminal() && !node.pattern.equals(pattern)) {
+            throw new IllegalArgumentException(pattern + " is ambiguous with " + node.pattern);
+        }
+        for (String existing : node.methods) {
+            if (existing.equals(method)) {
+                throw new IllegalArgumentException(method + " " + pattern + " is already registered");
+            }
+        }
+        node.pattern = pattern;
+        node.methods = Arrays.copyOf(node.methods, node.methods.length + 1);
+        node.methods[node.methods.length - 1] = method;
+        String allow = String.join(", ", node.methods);
+        Route[] routes = new Route[node.methods.length];
+        for (int i = 0; i < routes.length; i++) {
+            Handler existing = i < node.routes.length ? node.routes[i].handler : handler;
+            routes[i] = new Route(pattern, existing, allow);
+        }
+        node.routes = routes;
+        node.methodNotAllowed = new Route(pattern, null, allow);
+    }
+
+    private static Node literalChild(Node node, String segment) {
+        for (Node child : node.literals) {
+            if (child.segment.equals(segment)) {
+                return child;
+            }
+        }
+        Node child = new Node(segment);
+        node.literals = Arrays.copyOf(node.literals, node.literals.length + 1);
+        node.literals[node.literals.length - 1] = child;
+        return child;
+    }
+
+    /**
+     * Find the route for a request. Empty segments (repeated or trailing slashes) are ignored.
+     *
+     * @param params Filled with the path parameters of the match
+     * @return The matching route (whose handler is null if the method is not allowed),
+     *         or null if no pattern matches the path
+     */
+    public Route match(String method, String path, PathParams params) {
+        params.reset(path);
+        Node node = find(root, path, 0, params);
+        return node == null ? null : node.route(method);
+    }
+
+    private static Node find(Node node, String path, int position, PathParams params) {
+        int length = path.length();
+        while (position < length && path.charAt(position) == '/') {
+            position++;
+        }
+        if (position == length) {
+            if (node.isTerminal()) {
+                return node;
+            }
+            if (node.wildcard != null && node.wildcard.isTerminal()) {
+                params.push(WILDCARD, position, position);
+                return node.wildcard;
+            }
+            return null;
+        }
+        int end = path.indexOf('/', position);
+        if (end < 0) {
+            end = length;
+        }
+        int segmentLength = end - position;
+        for (Node child : node.literals) {
+            if (child.segment.length() == segmentLength
+                    && path.regionMatches(position, child.segment, 0, segmentLength)) {
+                Node found = find(child, path, end, params);
+                if (found != null) {
+                    return found;
+                }
+            }
+        }
+        if (node.parameter != null) {
+            int mark = params.size;
+            params.push(node.parameter.segment, position, end);
+            Node found = find(node.parameter, path, end, params);
+            if (found != null) {
+                return found;
+            }
+            params.size = mark;
+        }
+        if (node.wildcard != null && node.wildcard.isTerminal()) {
+            params.push(WILDCARD, position, length);
+            return node.wildcard;
+        }
+        return null;
+    }
+}
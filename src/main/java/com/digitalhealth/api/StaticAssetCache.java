@@ -0,0 +1,304 @@
+package com.digitalhealth.api;
+
+import com.digitalhealth.metrics.CacheMetrics;
+import com.digitalhealth.metrics.MetricsRegistry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory cache of the frontend's static files.
+ *
+ * Files up to {@link #DEFAULT_MAX_FILE_BYTES} are read once and kept as byte arrays together
+ * with a gzip variant (a fresh {@code name.gz} next to the file, or compressed on load for
+ * text types) and a strong ETag from the content hash. Larger files, and files that would
+ * push the cache over its total budget, are streamed from disk on each request.
+ *
+ * A {@link WatchService} on the root directory evicts entries when files change, so edits
+ * show up on the next request without restarting the server.
+ */
+final class StaticAssetCache implements Closeable {
+    static final long DEFAULT_MAX_FILE_BYTES = 512 * 1024;
+    static final long DEFAULT_MAX_TOTAL_BYTES = 32L * 1024 * 1024;
+
+    private final Path root;
+    private final long maxFileBytes;
+    private final long maxTotalBytes;
+    private final Map<Path, Asset> assets = new ConcurrentHashMap<>();
+    private final Map<WatchKey, Path> watchedDirectories = new ConcurrentHashMap<>();
+    private final AtomicLong cachedBytes = new AtomicLong();
+    /** Bumped by every eviction, so a load that raced with a change is not kept. */
+    private final AtomicLong generation = new AtomicLong();
+    private final CacheMetrics cacheMetrics;
+    private final WatchService watcher;
+
+    /**
+     * A static file ready to be sent.
+     */
+    static final class Asset {
+        final Path file;
+        final String contentType;
+        final String etag;
+        final long length;
+        /** File content, or null if the file is streamed from disk. */
+        final byte[] body;
+        /** Gzip-compressed content, or null if there is none worth sending. */
+        final byte[] gzipBody;
+
+        private Asset(Path file, String contentType, String etag, long length, byte[] body, byte[] gzipBody) {
+            this.file = file;
+            this.contentType = contentType;
+            this.etag = etag;
+            this.length = length;
+            this.body = body;
+            this.gzipBody = gzipBody;
+        }
+
+        boolean isCached() {
+            return body != null;
+        }
+
+        long memoryBytes() {
+            return (body == null ? 0 : body.length) + (gzipBody == null ? 0 : gzipBody.length);
+        }
+
+        /**
+         * Copy an uncached file to the response with {@link FileChannel#transferTo}.
+         * Stops early if the file shrank since it was looked up.
+         */
+        void transferTo(OutputStream out) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                WritableByteChannel target = Channels.newChannel(out);
+                long position = 0;
+                while (position < length) {
+                    long sent = channel.transferTo(position, length - position, target);
+                    if (sent <= 0) {
+                        break;
+                    }
+                    position += sent;
+                }
+            }
+        }
+    }
+
+    StaticAssetCache(Path root, MetricsRegistry metrics) {
+        this(root, DEFAULT_MAX_FILE_BYTES, DEFAULT_MAX_TOTAL_BYTES, metrics);
+    }
+
+    StaticAssetCache(Path root, long maxFileBytes, long maxTotalBytes, MetricsRegistry metrics) {
+        this.root = root.toAbsolutePath().normalize();
+        this.maxFileBytes = maxFileBytes;
+        this.maxTotalBytes = maxTotalBytes;
+        this.cacheMetrics = new CacheMetrics(metrics, "static_assets");
+        metrics.gauge("static_asset_cache_bytes", "Bytes of static files held in memory", cachedBytes::get);
+        this.watcher = startWatching();
+    }
+
+    /**
+     * Look up a file below the root.
+     *
+     * @param relativePath Path relative to the root, e.g. "css/style.css"
+     * @return The asset, or null if there is no such file (or the path leaves the root)
+     */
+    Asset get(String relativePath) throws IOException {
+        Path file = root.resolve(relativePath).normalize();
+        if (!file.startsWith(root)) {
+            return null;
+        }
+        Asset asset = assets.get(file);
+        if (asset != null) {
+            cacheMetrics.hit();
+            return asset;
+        }
+        cacheMetrics.miss();
+        return load(file);
+    }
+
+    private Asset load(Path file) throws IOException {
+        long loadGeneration = generation.get();
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        if (!attributes.isRegularFile()) {
+            return null;
+        }
+        String contentType = contentType(file);
+        long length = attributes.size();
+        if (length > maxFileBytes || cachedBytes.get() + length > maxTotalBytes) {
+            String etag = "\"" + Long.toHexString(length) + "-"
+                    + Long.toHexString(attributes.lastModifiedTime().toMillis()) + "\"";
+            return new Asset(file, contentType, etag, length, null, null);
+        }
+
+        byte[] body = Files.readAllBytes(file);
+        Asset asset = new Asset(file, contentType, contentTag(body), body.length, body, gzipVariant(file, body, contentType));
+        Asset previous = assets.putIfAbsent(file, asset);
+        if (previous != null) {
+            return previous;
+        }
+        cachedBytes.addAndGet(asset.memoryBytes());
+        if (generation.get() != loadGeneration) {
+            // The file may have changed while it was read; serve this copy once, but don't keep it
+            evict(file, asset);
+        }
+        return asset;
+    }
+
+    /**
+     * Gzip form of the file: a {@code .gz} sibling at least as new as the file, else the
+     * body compressed now if it is text and compression saves at least a tenth.
+     */
+    private byte[] gzipVariant(Path file, byte[] body, String contentType) throws IOException {
+        Path precompressed = file.resolveSibling(file.getFileName() + ".gz");
+        try {
+            if (Files.getLastModifiedTime(precompressed).compareTo(Files.getLastModifiedTime(file)) >= 0) {
+                return Files.readAllBytes(precompressed);
+            }
+        } catch (NoSuchFileException e) {
+            // No precompressed variant
+        }
+        if (body.length < ResponseEncoding.GZIP_MIN_BYTES || !isCompressible(contentType)) {
+            return null;
+        }
+        byte[] gzip = ResponseEncoding.gzip(body);
+        return gzip.length <= body.length - body.length / 10 ? gzip : null;
+    }
+
+    private void evict(Path file, Asset asset) {
+        if (assets.remove(file, asset)) {
+            cachedBytes.addAndGet(-asset.memoryBytes());
+        }
+    }
+
+    private void evict(Path file) {
+        generation.incrementAndGet();
+        Asset asset = assets.get(file);
+        if (asset != null) {
+            evict(file, asset);
+        }
+    }
+
+    private void evictAll() {
+        generation.incrementAndGet();
+        for (Map.Entry<Path, Asset> entry : assets.entrySet()) {
+            evict(entry.getKey(), entry.getValue());
+        }
+    }
+
+    // ========== Change Watching ==========
+
+    private WatchService startWatching() {
+        if (!Files.isDirectory(root)) {
+            return null;
+        }
+        try {
+            WatchService service = root.getFileSystem().newWatchService();
+            registerTree(service, root);
+            Thread thread = new Thread(() -> watch(service), "static-asset-watcher");
+            thread.setDaemon(true);
+            thread.start();
+            return service;
+        } catch (IOException | UnsupportedOperationException e) {
+            System.err.println("Warning: Static files will not be reloaded on change: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void registerTree(WatchService service, Path directory) throws IOException {
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                WatchKey key = dir.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                watchedDirectories.put(key, dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void watch(WatchService service) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                Path directory = watchedDirectories.get(key);
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null) {
+                        evictAll();
+                        continue;
+                    }
+                    Path changed = directory.resolve((Path) event.context());
+                    String name = changed.getFileName().toString();
+                    evict(changed);
+                    if (name.endsWith(".gz")) {
+                        evict(changed.resolveSibling(name.substring(0, name.length() - 3)));
+                    }
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(changed)) {
+                        registerTree(service, changed);
+                    }
+                }
+                if (!key.reset()) {
+                    watchedDirectories.remove(key);
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            // Cache closed
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println("Warning: Stopped watching static files: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stop watching for changes.
+     */
+    @Override
+    public void close() throws IOException {
+        if (watcher != null) {
+            watcher.close();
+        }
+    }
+
+    // ========== Helpers ==========
+
+    static String contentType(Path file) {
+        String name = file.getFileName().toString();
+        if (name.endsWith(".html")) return "text/html";
+        if (name.endsWith(".css")) return "text/css";
+        if (name.endsWith(".js")) return "application/javascript";
+        if (name.endsWith(".json")) return "application/json";
+        if (name.endsWith(".svg")) return "image/svg+xml";
+        if (name.endsWith(".png")) return "image/png";
+        if (name.endsWith(".ico")) return "image/x-icon";
+        return "text/plain";
+    }
+
+    private static boolean isCompressible(String contentType) {
+        return contentType.startsWith("text/") || contentType.equals("application/javascript")
+                || contentType.equals("application/json") || contentType.equals("image/svg+xml");
+    }
+
+    private static String contentTag(byte[] body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+            return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(digest).substring(0, 22) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -35,6 +35,7 @@ public class CliApplication {
         
         // Run demo
         app.runDemo();
+        app.facade.close();
         
         System.out.println("\nThank you for using the Digital Health Repository System!");
     }
@@ -117,6 +118,15 @@ public class CliApplication {
                     case "12":
                         runFullScenarioDemo();
                         break;
+                    case "13":
+                        exportHealthRecordsNdjsonDemo();
+                        break;
+                    case "14":
+                        writeAnalyticsSnapshotDemo();
+                        break;
+                    case "15":
+                        importCsvDemo();
+                        break;
                     case "0":
                         running = false;
                         break;
@@ -150,6 +160,9 @@ public class CliApplication {
         System.out.println("10. View Patient Health Records");
         System.out.println("11. Export Patient History");
         System.out.println("12. Run Full Scenario Demo");
+        System.out.println("13. Export Health Records (NDJSON)");
+        System.out.println("14. Write Analytics Snapshot");
+        System.out.println("15. Import Patients/Doctors (CSV)");
         System.out.println("0.  Exit");
         System.out.println("========================================");
     }
@@ -405,6 +418,85 @@ public class CliApplication {
         }
     }
 
+    private void exportHealthRecordsNdjsonDemo() {
+        System.out.println("=== Export Health Records (NDJSON) ===");
+        System.out.print("From date (yyyy-MM-dd, blank for all): ");
+        String from = scanner.nextLine().trim();
+        System.out.print("To date, inclusive (yyyy-MM-dd, blank for all): ");
+        String to = scanner.nextLine().trim();
+        System.out.print("Compress with gzip? (y/N): ");
+        boolean gzip = scanner.nextLine().trim().equalsIgnoreCase("y");
+        
+        String fileName = "export/health_records.ndjson" + (gzip ? ".gz" : "");
+        
+        try {
+            new java.io.File("export").mkdirs();
+            java.io.OutputStream out = new java.io.FileOutputStream(fileName);
+            if (gzip) {
+                out = new java.util.zip.GZIPOutputStream(out, 8192);
+            }
+            int count;
+            try (java.io.Writer writer = new java.io.BufferedWriter(
+                    new java.io.OutputStreamWriter(out, java.nio.charset.StandardCharsets.UTF_8))) {
+                count = facade.exportHealthRecordsNdjson(writer,
+                        from.isEmpty() ? null : java.time.LocalDate.parse(from).atStartOfDay(),
+                        to.isEmpty() ? null : java.time.LocalDate.parse(to).plusDays(1).atStartOfDay());
+            }
+            System.out.println("\n✓ Health records exported successfully!");
+            System.out.println("  Records: " + count);
+            System.out.println("  File: " + fileName);
+        } catch (Exception e) {
+            System.err.println("Error exporting health records: " + e.getMessage());
+        }
+    }
+
+    private void writeAnalyticsSnapshotDemo() {
+        System.out.println("=== Write Analytics Snapshot ===");
+        String directory = "export/analytics";
+        
+        try {
+            java.util.Map<String, Integer> rows = facade.writeAnalyticsSnapshot(directory);
+            System.out.println("\n✓ Analytics snapshot written successfully!");
+            for (java.util.Map.Entry<String, Integer> table : rows.entrySet()) {
+                System.out.println("  " + table.getKey() + ": " + table.getValue() + " rows");
+            }
+            System.out.println("  Directory: " + directory);
+        } catch (Exception e) {
+            System.err.println("Error writing analytics snapshot: " + e.getMessage());
+        }
+    }
+
+    private void importCsvDemo() {
+        System.out.println("=== Import Patients/Doctors (CSV) ===");
+        System.out.print("Import (1) patients or (2) doctors: ");
+        boolean patients = !scanner.nextLine().trim().equals("2");
+        System.out.println(patients
+                ? "Header must name the columns: name,age,gender,contact"
+                : "Header must name the columns: name,specialty (optional: contact,email,schedule)");
+        System.out.print("CSV file: ");
+        String fileName = scanner.nextLine().trim();
+        String rejectsFileName = fileName + ".rejects.csv";
+        
+        try (java.io.Reader csv = new java.io.InputStreamReader(
+                new java.io.FileInputStream(fileName), java.nio.charset.StandardCharsets.UTF_8)) {
+            ImportResultDTO result = patients ? facade.importPatients(csv) : facade.importDoctors(csv);
+            System.out.println("\n✓ Import finished in " + result.getElapsedMillis() + " ms");
+            System.out.println("  Rows read: " + result.getRowsRead());
+            System.out.println("  Imported: " + result.getImported() + " in " + result.getBatches() + " batches");
+            System.out.println("  Rejected: " + result.getRejected());
+            if (result.getImportId() != null) {
+                java.nio.file.Files.copy(facade.getImportRejectsFile(result.getImportId()).toPath(),
+                        java.nio.file.Paths.get(rejectsFileName), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+                for (String reject : result.getFirstRejects()) {
+                    System.out.println("    " + reject);
+                }
+                System.out.println("  Rejected rows: " + rejectsFileName);
+            }
+        } catch (Exception e) {
+            System.err.println("Error importing CSV: " + e.getMessage());
+        }
+    }
+
     private void runFullScenarioDemo() {
         System.out.println("=== Running Full Scenario Demo ===\n");
         
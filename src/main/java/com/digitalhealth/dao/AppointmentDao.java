@@ -2,6 +2,7 @@ package com.digitalhealth.dao;
 
 import com.digitalhealth.model.Appointment;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -11,6 +12,8 @@ import java.util.Optional;
 public interface AppointmentDao {
     /**
      * Save all appointments to storage.
+     * A bulk load: rows are stored as given, without the version check of {@link #save}.
+     * The file backend replaces its whole table; MySQL upserts the rows and keeps the others.
      * @param appointments Map of appointmentId to Appointment
      */
     void saveAll(Map<String, Appointment> appointments);
@@ -46,4 +49,18 @@ public interface AppointmentDao {
      * @param appointmentId Appointment ID
      */
     void delete(String appointmentId);
+
+    /**
+     * Find all appointments of a patient.
+     * @param patientId Patient ID
+     * @return List of appointments belonging to the patient (unordered)
+     */
+    List<Appointment> findByPatientId(String patientId);
+
+    /**
+     * Find all appointments handled by a doctor.
+     * @param doctorId Doctor ID
+     * @return List of appointments belonging to the doctor (unordered)
+     */
+    List<Appointment> findByDoctorId(String doctorId);
 }
@@ -0,0 +1,42 @@
+package com.digitalhealth.dao;
+
+import com.digitalhealth.model.Appointment;
+import com.digitalhealth.model.HealthRecord;
+import com.digitalhealth.model.PatientHistoryLoader;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * PatientHistoryLoader backed by the appointment and health record DAOs.
+ * Resolves history with the DAOs' patientId queries (indexed in MySQL).
+ */
+public class DaoPatientHistoryLoader implements PatientHistoryLoader {
+    private final AppointmentDao appointmentDao;
+    private final HealthRecordDao healthRecordDao;
+
+    public DaoPatientHistoryLoader(AppointmentDao appointmentDao, HealthRecordDao healthRecordDao) {
+        this.appointmentDao = appointmentDao;
+        this.healthRecordDao = healthRecordDao;
+    }
+
+    @Override
+    public List<Appointment> loadAppointments(String patientId) {
+        if (appointmentDao == null) {
+            return Collections.emptyList();
+        }
+        List<Appointment> appointments = appointmentDao.findByPatientId(patientId);
+        Collections.sort(appointments);
+        return appointments;
+    }
+
+    @Override
+    public List<HealthRecord> loadHealthRecords(String patientId) {
+        if (healthRecordDao == null) {
+            return Collections.emptyList();
+        }
+        List<HealthRecord> records = healthRecordDao.findByPatientId(patientId);
+        Collections.sort(records);
+        return records;
+    }
+}
@@ -1,6 +1,7 @@
 package com.digitalhealth.dao;
 
 import com.digitalhealth.model.Doctor;
+import com.digitalhealth.model.DoctorSummary;
 
 import java.util.Map;
 import java.util.Optional;
@@ -11,6 +12,9 @@ import java.util.Optional;
 public interface DoctorDao {
     /**
      * Save all doctors to storage.
+     * A bulk load: rows are stored as given, without the version check of {@link #save}.
+     * The file backend replaces its whole table; MySQL upserts the rows and keeps the others,
+     * replacing the stored slots of each given doctor with its available slots.
      * @param doctors Map of doctorId to Doctor
      */
     void saveAll(Map<String, Doctor> doctors);
@@ -28,6 +32,19 @@ public interface DoctorDao {
      */
     Optional<Doctor> findById(String id);
 
+    /**
+     * Find a doctor's ID, name and specialty, without loading slots.
+     * @param id Doctor ID
+     * @return Optional containing the summary if the doctor exists
+     */
+    Optional<DoctorSummary> findSummaryById(String id);
+
+    /**
+     * Find the ID, name and specialty of every doctor in one read, without loading slots.
+     * @return Map of doctorId to summary
+     */
+    Map<String, DoctorSummary> findAllSummaries();
+
     /**
      * Save or update a single doctor.
      * @param doctor Doctor to save
@@ -2,8 +2,11 @@ package com.digitalhealth.dao;
 
 import com.digitalhealth.model.HealthRecord;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 /**
  * Data Access Object interface for HealthRecord entities.
@@ -11,6 +14,8 @@ import java.util.Optional;
 public interface HealthRecordDao {
     /**
      * Save all health records to storage.
+     * A bulk load: rows are stored as given, without the version check of {@link #save}.
+     * The file backend replaces its whole table; MySQL upserts the rows and keeps the others.
      * @param records Map of recordId to HealthRecord
      */
     void saveAll(Map<String, HealthRecord> records);
@@ -28,6 +33,13 @@ public interface HealthRecordDao {
      */
     Optional<HealthRecord> findById(String id);
 
+    /**
+     * Find several health records by ID in one round trip.
+     * @param ids Record IDs
+     * @return Records found, in the order of the given IDs (missing IDs are skipped)
+     */
+    List<HealthRecord> findAllById(List<String> ids);
+
     /**
      * Save or update a single health record.
      * @param record HealthRecord to save
@@ -46,4 +58,29 @@ public interface HealthRecordDao {
      * @param recordId Record ID
      */
     void delete(String recordId);
+
+    /**
+     * Find all health records of a patient.
+     * @param patientId Patient ID
+     * @return List of health records belonging to the patient (unordered)
+     */
+    List<HealthRecord> findByPatientId(String patientId);
+
+    /**
+     * Find all health records handled by a doctor.
+     * @param doctorId Doctor ID
+     * @return List of health records belonging to the doctor (unordered)
+     */
+    List<HealthRecord> findByDoctorId(String doctorId);
+
+    /**
+     * Pass every health record dated in [from, to) to an action, one at a time, without
+     * collecting them into a result. Records reach the action while the scan is in progress,
+     * so the action should not call back into this DAO.
+     * @param from Earliest record date (inclusive), or null for no lower bound
+     * @param to Latest record date (exclusive), or null for no upper bound
+     * @param action Called once per record (unordered); exceptions it throws end the scan
+     * @return Number of records passed to the action
+     */
+    int scan(LocalDateTime from, LocalDateTime to, Consumer<HealthRecord> action);
 }
@@ -0,0 +1,32 @@
+package com.digitalhealth.dao;
+
+/**
+ * Handle returned when a unit of work is begun inside another one on the same thread.
+ * Commit is deferred to the outer unit of work; closing without commit marks the
+ * outer one rollback-only.
+ */
+public final class JoinedUnitOfWork implements UnitOfWork {
+    private final UnitOfWork outer;
+    private boolean committed;
+
+    public JoinedUnitOfWork(UnitOfWork outer) {
+        this.outer = outer;
+    }
+
+    @Override
+    public void commit() {
+        committed = true;
+    }
+
+    @Override
+    public void setRollbackOnly() {
+        outer.setRollbackOnly();
+    }
+
+    @Override
+    public void close() {
+        if (!committed) {
+            outer.setRollbackOnly();
+        }
+    }
+}
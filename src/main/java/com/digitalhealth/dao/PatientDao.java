@@ -2,6 +2,7 @@ package com.digitalhealth.dao;
 
 import com.digitalhealth.model.Patient;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -11,6 +12,8 @@ import java.util.Optional;
 public interface PatientDao {
     /**
      * Save all patients to storage.
+     * A bulk load: rows are stored as given, without the version check of {@link #save}.
+     * The file backend replaces its whole table; MySQL upserts the rows and keeps the others.
      * @param patients Map of patientId to Patient
      */
     void saveAll(Map<String, Patient> patients);
@@ -28,6 +31,13 @@ public interface PatientDao {
      */
     Optional<Patient> findById(String id);
 
+    /**
+     * Find several patients by ID in one round trip.
+     * @param ids Patient IDs
+     * @return Patients found, in the order of the given IDs (missing IDs are skipped)
+     */
+    List<Patient> findAllById(List<String> ids);
+
     /**
      * Save or update a single patient.
      * @param patient Patient to save
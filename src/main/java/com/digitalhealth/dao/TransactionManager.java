@@ -0,0 +1,34 @@
+package com.digitalhealth.dao;
+
+/**
+ * Starts units of work for a persistence backend.
+ * Calling {@link #begin()} while a unit of work is already open on the current thread
+ * joins it: the inner commit is deferred to the outer one, and an inner close without
+ * commit marks the outer unit of work rollback-only.
+ */
+public interface TransactionManager {
+    /**
+     * Begin (or join) a unit of work on the current thread.
+     */
+    UnitOfWork begin();
+
+    /**
+     * Transaction manager whose units of work do nothing; every DAO write
+     * is applied immediately. Used when no backend transaction support is wired in.
+     */
+    static TransactionManager none() {
+        return () -> new UnitOfWork() {
+            @Override
+            public void commit() {
+            }
+
+            @Override
+            public void setRollbackOnly() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+}
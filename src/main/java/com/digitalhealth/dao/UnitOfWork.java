@@ -0,0 +1,35 @@
+package com.digitalhealth.dao;
+
+/**
+ * A group of DAO writes that is committed or rolled back as a whole.
+ * While a unit of work is open on a thread, DAO writes made on that thread join it:
+ * the MySQL backend runs them on one connection with a single commit, the file
+ * backend stages them and applies them as one journaled batch.
+ *
+ * Usage:
+ * <pre>
+ * try (UnitOfWork uow = transactionManager.begin()) {
+ *     appointmentDao.save(appointment);
+ *     doctorDao.save(doctor);
+ *     uow.commit();
+ * } // closing without commit() rolls back
+ * </pre>
+ */
+public interface UnitOfWork extends AutoCloseable {
+    /**
+     * Make all writes of this unit of work durable.
+     * @throws IllegalStateException if the unit of work was marked rollback-only
+     */
+    void commit();
+
+    /**
+     * Mark this unit of work so that it can only be rolled back.
+     */
+    void setRollbackOnly();
+
+    /**
+     * Roll back if not committed and release resources.
+     */
+    @Override
+    void close();
+}
@@ -2,6 +2,7 @@ package com.digitalhealth.dao;
 
 import com.digitalhealth.model.User;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -15,4 +16,12 @@ public interface UserDao {
     void update(User user);
     void delete(String userId);
     boolean existsByUsername(String username);
+
+    /**
+     * Store many users at once, as the bulk counterpart of {@link #save(User)}.
+     * Rows are stored as given, without a version check. The file backend replaces its whole
+     * table; MySQL upserts the rows and keeps the others.
+     * @param users Map of userId to User
+     */
+    void saveAll(Map<String, User> users);
 }
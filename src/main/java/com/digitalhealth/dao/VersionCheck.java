@@ -0,0 +1,37 @@
+package com.digitalhealth.dao;
+
+import com.digitalhealth.exception.OptimisticLockException;
+import com.digitalhealth.model.Versioned;
+
+/**
+ * Compare-and-set of entity versions for DAOs that do not have a database to do it.
+ */
+public final class VersionCheck {
+    private VersionCheck() {
+    }
+
+    /**
+     * Check an entity about to be written against the stored copy and assign its next version.
+     * The caller writes the entity with the new version and, if that write fails, sets the
+     * returned version back so the entity still matches what is stored.
+     *
+     * @param id Entity ID
+     * @param stored Currently stored entity, or null if none
+     * @param incoming Entity being saved; its version is advanced
+     * @return Version of the incoming entity before the call
+     * @throws OptimisticLockException if the incoming version is 0 and the entity is already
+     *         stored, or is not 0 and does not match the stored one
+     */
+    public static long advance(String id, Versioned stored, Versioned incoming) {
+        long expected = incoming.getVersion();
+        if (expected == 0) {
+            if (stored != null) {
+                throw new OptimisticLockException(incoming.getClass().getSimpleName() + " " + id + " already exists");
+            }
+        } else if (stored == null || stored.getVersion() != expected) {
+            throw new OptimisticLockException(incoming.getClass().getSimpleName(), id, expected);
+        }
+        incoming.setVersion(expected + 1);
+        return expected;
+    }
+}
@@ -1,10 +1,14 @@
 package com.digitalhealth.dao.file;
 
 import com.digitalhealth.dao.AppointmentDao;
+import com.digitalhealth.dao.VersionCheck;
+import com.digitalhealth.jfr.FileFlushEvent;
 import com.digitalhealth.model.Appointment;
 
 import java.io.*;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.locks.ReadWriteLock;
@@ -12,9 +16,10 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * File-based implementation of AppointmentDao using Java serialization.
- * Thread-safe with read-write locks.
+ * Thread-safe with read-write locks; saves are compare-and-set on the entity version.
+ * Writes made inside a {@link FileUnitOfWork} are staged and written together on commit.
  */
-public class FileAppointmentDao implements AppointmentDao {
+public class FileAppointmentDao implements AppointmentDao, JournaledStore<Appointment> {
     private final String filePath;
     private final ReadWriteLock lock = new ReentrantReadWriteLock();
 
@@ -23,12 +28,22 @@ public class FileAppointmentDao implements AppointmentDao {
         ensureFileExists();
     }
 
+    @Override
+    public String getFilePath() {
+        return filePath;
+    }
+
+    @Override
+    public ReadWriteLock getLock() {
+        return lock;
+    }
+
     private void ensureFileExists() {
         File file = new File(filePath);
         if (!file.exists()) {
             try {
                 file.getParentFile().mkdirs();
-                saveAll(new HashMap<>());
+                writeFile(new HashMap<>());
             } catch (Exception e) {
                 throw new RuntimeException("Failed to create appointment data file", e);
             }
@@ -37,6 +52,13 @@ public class FileAppointmentDao implements AppointmentDao {
 
     @Override
     public void saveAll(Map<String, Appointment> appointments) {
+        writeFile(appointments);
+    }
+
+    @Override
+    public void writeFile(Map<String, Appointment> appointments) {
+        FileFlushEvent flush = new FileFlushEvent();
+        flush.begin();
         lock.writeLock().lock();
         try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(filePath))) {
             oos.writeObject(appointments);
@@ -45,11 +67,19 @@ public class FileAppointmentDao implements AppointmentDao {
         } finally {
             lock.writeLock().unlock();
         }
+        flush.complete(filePath, false);
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public Map<String, Appointment> loadAll() {
+        Map<String, Appointment> appointments = readFile();
+        FileUnitOfWork.overlay(this, appointments);
+        return appointments;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String, Appointment> readFile() {
         lock.readLock().lock();
         try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(filePath))) {
             return (Map<String, Appointment>) ois.readObject();
@@ -70,11 +100,20 @@ public class FileAppointmentDao implements AppointmentDao {
 
     @Override
     public void save(Appointment appointment) {
+        if (FileUnitOfWork.stage(this, appointment.getAppointmentId(), appointment)) {
+            return;
+        }
         lock.writeLock().lock();
         try {
-            Map<String, Appointment> appointments = loadAll();
+            Map<String, Appointment> appointments = readFile();
+            long previousVersion = VersionCheck.advance(appointment.getAppointmentId(), appointments.get(appointment.getAppointmentId()), appointment);
             appointments.put(appointment.getAppointmentId(), appointment);
-            saveAll(appointments);
+            try {
+                writeFile(appointments);
+            } catch (RuntimeException e) {
+                appointment.setVersion(previousVersion);
+                throw e;
+            }
         } finally {
             lock.writeLock().unlock();
         }
@@ -87,13 +126,38 @@ public class FileAppointmentDao implements AppointmentDao {
 
     @Override
     public void delete(String appointmentId) {
+        if (FileUnitOfWork.stage(this, appointmentId, null)) {
+            return;
+        }
         lock.writeLock().lock();
         try {
-            Map<String, Appointment> appointments = loadAll();
+            Map<String, Appointment> appointments = readFile();
             appointments.remove(appointmentId);
-            saveAll(appointments);
+            writeFile(appointments);
         } finally {
             lock.writeLock().unlock();
         }
     }
+
+    @Override
+    public List<Appointment> findByPatientId(String patientId) {
+        List<Appointment> result = new ArrayList<>();
+        for (Appointment appointment : loadAll().values()) {
+            if (appointment.getPatientId().equals(patientId)) {
+                result.add(appointment);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<Appointment> findByDoctorId(String doctorId) {
+        List<Appointment> result = new ArrayList<>();
+        for (Appointment appointment : loadAll().values()) {
+            if (appointment.getDoctorId().equals(doctorId)) {
+                result.add(appointment);
+            }
+        }
+        return result;
+    }
 }
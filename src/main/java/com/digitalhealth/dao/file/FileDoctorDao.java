@@ -1,7 +1,10 @@
 package com.digitalhealth.dao.file;
 
 import com.digitalhealth.dao.DoctorDao;
+import com.digitalhealth.dao.VersionCheck;
+import com.digitalhealth.jfr.FileFlushEvent;
 import com.digitalhealth.model.Doctor;
+import com.digitalhealth.model.DoctorSummary;
 
 import java.io.*;
 import java.util.HashMap;
@@ -12,9 +15,10 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * File-based implementation of DoctorDao using Java serialization.
- * Thread-safe with read-write locks.
+ * Thread-safe with read-write locks; saves are compare-and-set on the entity version.
+ * Writes made inside a {@link FileUnitOfWork} are staged and written together on commit.
  */
-public class FileDoctorDao implements DoctorDao {
+public class FileDoctorDao implements DoctorDao, JournaledStore<Doctor> {
     private final String filePath;
     private final ReadWriteLock lock = new ReentrantReadWriteLock();
 
@@ -23,12 +27,22 @@ public class FileDoctorDao implements DoctorDao {
         ensureFileExists();
     }
 
+    @Override
+    public String getFilePath() {
+        return filePath;
+    }
+
+    @Override
+    public ReadWriteLock getLock() {
+        return lock;
+    }
+
     private void ensureFileExists() {
         File file = new File(filePath);
         if (!file.exists()) {
             try {
                 file.getParentFile().mkdirs();
-                saveAll(new HashMap<>());
+                writeFile(new HashMap<>());
             } catch (Exception e) {
                 throw new RuntimeException("Failed to create doctor data file", e);
             }
@@ -37,6 +51,13 @@ public class FileDoctorDao implements DoctorDao {
 
     @Override
     public void saveAll(Map<String, Doctor> doctors) {
+        writeFile(doctors);
+    }
+
+    @Override
+    public void writeFile(Map<String, Doctor> doctors) {
+        FileFlushEvent flush = new FileFlushEvent();
+        flush.begin();
         lock.writeLock().lock();
         try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(filePath))) {
             oos.writeObject(doctors);
@@ -45,11 +66,19 @@ public class FileDoctorDao implements DoctorDao {
         } finally {
             lock.writeLock().unlock();
         }
+        flush.complete(filePath, false);
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public Map<String, Doctor> loadAll() {
+        Map<String, Doctor> doctors = readFile();
+        FileUnitOfWork.overlay(this, doctors);
+        return doctors;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String, Doctor> readFile() {
         lock.readLock().lock();
         try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(filePath))) {
             return (Map<String, Doctor>) ois.readObject();
@@ -68,13 +97,41 @@ public class FileDoctorDao implements DoctorDao {
         return Optional.ofNullable(doctors.get(id));
     }
 
+    @Override
+    public Optional<DoctorSummary> findSummaryById(String id) {
+        // Slots are part of the serialized doctor, so the file is read either way
+        Doctor doctor = loadAll().get(id);
+        return doctor == null ? Optional.empty()
+                : Optional.of(new DoctorSummary(doctor.getDoctorId(), doctor.getName(), doctor.getSpecialty()));
+    }
+
+    @Override
+    public Map<String, DoctorSummary> findAllSummaries() {
+        Map<String, Doctor> doctors = loadAll();
+        Map<String, DoctorSummary> summaries = new HashMap<>(doctors.size() * 4 / 3 + 1);
+        for (Doctor doctor : doctors.values()) {
+            summaries.put(doctor.getDoctorId(),
+                    new DoctorSummary(doctor.getDoctorId(), doctor.getName(), doctor.getSpecialty()));
+        }
+        return summaries;
+    }
+
     @Override
     public void save(Doctor doctor) {
+        if (FileUnitOfWork.stage(this, doctor.getDoctorId(), doctor)) {
+            return;
+        }
         lock.writeLock().lock();
         try {
-            Map<String, Doctor> doctors = loadAll();
+            Map<String, Doctor> doctors = readFile();
+            long previousVersion = VersionCheck.advance(doctor.getDoctorId(), doctors.get(doctor.getDoctorId()), doctor);
             doctors.put(doctor.getDoctorId(), doctor);
-            saveAll(doctors);
+            try {
+                writeFile(doctors);
+            } catch (RuntimeException e) {
+                doctor.setVersion(previousVersion);
+                throw e;
+            }
         } finally {
             lock.writeLock().unlock();
         }
@@ -88,11 +145,14 @@ public class FileDoctorDao implements DoctorDao {
 
     @Override
     public void delete(String doctorId) {
+        if (FileUnitOfWork.stage(this, doctorId, null)) {
+            return;
+        }
         lock.writeLock().lock();
         try {
-            Map<String, Doctor> doctors = loadAll();
+            Map<String, Doctor> doctors = readFile();
             doctors.remove(doctorId);
-            saveAll(doctors);
+            writeFile(doctors);
         } finally {
             lock.writeLock().unlock();
         }
@@ -1,20 +1,27 @@
 package com.digitalhealth.dao.file;
 
 import com.digitalhealth.dao.HealthRecordDao;
+import com.digitalhealth.dao.VersionCheck;
+import com.digitalhealth.jfr.FileFlushEvent;
 import com.digitalhealth.model.HealthRecord;
 
 import java.io.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * File-based implementation of HealthRecordDao using Java serialization.
- * Thread-safe with read-write locks.
+ * Thread-safe with read-write locks; saves are compare-and-set on the entity version.
+ * Writes made inside a {@link FileUnitOfWork} are staged and written together on commit.
  */
-public class FileHealthRecordDao implements HealthRecordDao {
+public class FileHealthRecordDao implements HealthRecordDao, JournaledStore<HealthRecord> {
     private final String filePath;
     private final ReadWriteLock lock = new ReentrantReadWriteLock();
 
@@ -23,12 +30,22 @@ public class FileHealthRecordDao implements HealthRecordDao {
         ensureFileExists();
     }
 
+    @Override
+    public String getFilePath() {
+        return filePath;
+    }
+
+    @Override
+    public ReadWriteLock getLock() {
+        return lock;
+    }
+
     private void ensureFileExists() {
         File file = new File(filePath);
         if (!file.exists()) {
             try {
                 file.getParentFile().mkdirs();
-                saveAll(new HashMap<>());
+                writeFile(new HashMap<>());
             } catch (Exception e) {
                 throw new RuntimeException("Failed to create health record data file", e);
             }
@@ -37,6 +54,13 @@ public class FileHealthRecordDao implements HealthRecordDao {
 
     @Override
     public void saveAll(Map<String, HealthRecord> records) {
+        writeFile(records);
+    }
+
+    @Override
+    public void writeFile(Map<String, HealthRecord> records) {
+        FileFlushEvent flush = new FileFlushEvent();
+        flush.begin();
         lock.writeLock().lock();
         try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(filePath))) {
             oos.writeObject(records);
@@ -45,11 +69,19 @@ public class FileHealthRecordDao implements HealthRecordDao {
         } finally {
             lock.writeLock().unlock();
         }
+        flush.complete(filePath, false);
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public Map<String, HealthRecord> loadAll() {
+        Map<String, HealthRecord> records = readFile();
+        FileUnitOfWork.overlay(this, records);
+        return records;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String, HealthRecord> readFile() {
         lock.readLock().lock();
         try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(filePath))) {
             return (Map<String, HealthRecord>) ois.readObject();
@@ -68,13 +100,35 @@ public class FileHealthRecordDao implements HealthRecordDao {
         return Optional.ofNullable(records.get(id));
     }
 
+    @Override
+    public List<HealthRecord> findAllById(List<String> ids) {
+        Map<String, HealthRecord> records = loadAll();
+        List<HealthRecord> result = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            HealthRecord record = records.get(id);
+            if (record != null) {
+                result.add(record);
+            }
+        }
+        return result;
+    }
+
     @Override
     public void save(HealthRecord record) {
+        if (FileUnitOfWork.stage(this, record.getRecordId(), record)) {
+            return;
+        }
         lock.writeLock().lock();
         try {
-            Map<String, HealthRecord> records = loadAll();
+            Map<String, HealthRecord> records = readFile();
+            long previousVersion = VersionCheck.advance(record.getRecordId(), records.get(record.getRecordId()), record);
             records.put(record.getRecordId(), record);
-            saveAll(records);
+            try {
+                writeFile(records);
+            } catch (RuntimeException e) {
+                record.setVersion(previousVersion);
+                throw e;
+            }
         } finally {
             lock.writeLock().unlock();
         }
@@ -87,13 +141,55 @@ public class FileHealthRecordDao implements HealthRecordDao {
 
     @Override
     public void delete(String recordId) {
+        if (FileUnitOfWork.stage(this, recordId, null)) {
+            return;
+        }
         lock.writeLock().lock();
         try {
-            Map<String, HealthRecord> records = loadAll();
+            Map<String, HealthRecord> records = readFile();
             records.remove(recordId);
-            saveAll(records);
+            writeFile(records);
         } finally {
             lock.writeLock().unlock();
         }
     }
+
+    @Override
+    public List<HealthRecord> findByPatientId(String patientId) {
+        List<HealthRecord> result = new ArrayList<>();
+        for (HealthRecord record : loadAll().values()) {
+            if (record.getPatientId().equals(patientId)) {
+                result.add(record);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<HealthRecord> findByDoctorId(String doctorId) {
+        List<HealthRecord> result = new ArrayList<>();
+        for (HealthRecord record : loadAll().values()) {
+            if (record.getDoctorId().equals(doctorId)) {
+                result.add(record);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sequential scan of the record file. The file is one serialized map, so it is read whole
+     * (as for every other query), but no copy of the result is made.
+     */
+    @Override
+    public int scan(LocalDateTime from, LocalDateTime to, Consumer<HealthRecord> action) {
+        int count = 0;
+        for (HealthRecord record : loadAll().values()) {
+            if ((from == null || !record.getDate().isBefore(from))
+                    && (to == null || record.getDate().isBefore(to))) {
+                action.accept(record);
+                count++;
+            }
+        }
+        return count;
+    }
 }
@@ -1,10 +1,14 @@
 package com.digitalhealth.dao.file;
 
 import com.digitalhealth.dao.PatientDao;
+import com.digitalhealth.dao.VersionCheck;
+import com.digitalhealth.jfr.FileFlushEvent;
 import com.digitalhealth.model.Patient;
 
 import java.io.*;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.locks.ReadWriteLock;
@@ -12,9 +16,10 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * File-based implementation of PatientDao using Java serialization.
- * Thread-safe with read-write locks.
+ * Thread-safe with read-write locks; saves are compare-and-set on the entity version.
+ * Writes made inside a {@link FileUnitOfWork} are staged and written together on commit.
  */
-public class FilePatientDao implements PatientDao {
+public class FilePatientDao implements PatientDao, JournaledStore<Patient> {
     private final String filePath;
     private final ReadWriteLock lock = new ReentrantReadWriteLock();
 
@@ -23,12 +28,22 @@ public class FilePatientDao implements PatientDao {
         ensureFileExists();
     }
 
+    @Override
+    public String getFilePath() {
+        return filePath;
+    }
+
+    @Override
+    public ReadWriteLock getLock() {
+        return lock;
+    }
+
     private void ensureFileExists() {
         File file = new File(filePath);
         if (!file.exists()) {
             try {
                 file.getParentFile().mkdirs();
-                saveAll(new HashMap<>());
+                writeFile(new HashMap<>());
             } catch (Exception e) {
                 throw new RuntimeException("Failed to create patient data file", e);
             }
@@ -37,6 +52,13 @@ public class FilePatientDao implements PatientDao {
 
     @Override
     public void saveAll(Map<String, Patient> patients) {
+        writeFile(patients);
+    }
+
+    @Override
+    public void writeFile(Map<String, Patient> patients) {
+        FileFlushEvent flush = new FileFlushEvent();
+        flush.begin();
         lock.writeLock().lock();
         try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(filePath))) {
             oos.writeObject(patients);
@@ -45,11 +67,19 @@ public class FilePatientDao implements PatientDao {
         } finally {
             lock.writeLock().unlock();
         }
+        flush.complete(filePath, false);
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public Map<String, Patient> loadAll() {
+        Map<String, Patient> patients = readFile();
+        FileUnitOfWork.overlay(this, patients);
+        return patients;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String, Patient> readFile() {
         lock.readLock().lock();
         try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(filePath))) {
             return (Map<String, Patient>) ois.readObject();
@@ -68,13 +98,35 @@ public class FilePatientDao implements PatientDao {
         return Optional.ofNullable(patients.get(id));
     }
 
+    @Override
+    public List<Patient> findAllById(List<String> ids) {
+        Map<String, Patient> patients = loadAll();
+        List<Patient> result = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            Patient patient = patients.get(id);
+            if (patient != null) {
+                result.add(patient);
+            }
+        }
+        return result;
+    }
+
     @Override
     public void save(Patient patient) {
+        if (FileUnitOfWork.stage(this, patient.getPatientId(), patient)) {
+            return;
+        }
         lock.writeLock().lock();
         try {
-            Map<String, Patient> patients = loadAll();
+            Map<String, Patient> patients = readFile();
+            long previousVersion = VersionCheck.advance(patient.getPatientId(), patients.get(patient.getPatientId()), patient);
             patients.put(patient.getPatientId(), patient);
-            saveAll(patients);
+            try {
+                writeFile(patients);
+            } catch (RuntimeException e) {
+                patient.setVersion(previousVersion);
+                throw e;
+            }
         } finally {
             lock.writeLock().unlock();
         }
@@ -88,11 +140,14 @@ public class FilePatientDao implements PatientDao {
 
     @Override
     public void delete(String patientId) {
+        if (FileUnitOfWork.stage(this, patientId, null)) {
+            return;
+        }
         lock.writeLock().lock();
         try {
-            Map<String, Patient> patients = loadAll();
+            Map<String, Patient> patients = readFile();
             patients.remove(patientId);
-            saveAll(patients);
+            writeFile(patients);
         } finally {
             lock.writeLock().unlock();
         }
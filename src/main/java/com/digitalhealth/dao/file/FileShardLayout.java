@@ -0,0 +1,148 @@
+package com.digitalhealth.dao.file;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shard directories of a sharded file backend and the threads that read them in parallel.
+ * Entities are placed by a hash of their routing key (the patient ID for patients,
+ * appointments and health records, so one patient's data shares a shard). The hash is stable
+ * across restarts; each shard directory records its position and the shard count, and a
+ * layout that does not match them is refused instead of silently misrouting reads.
+ */
+public class FileShardLayout {
+    private static final String MARKER_FILE = "shard.properties";
+
+    private final List<File> directories;
+    private final ThreadPoolExecutor readers;
+
+    /**
+     * Open (or create) the shards in the given directories, in routing order.
+     *
+     * @throws IllegalStateException if a directory belongs to another layout
+     */
+    public FileShardLayout(List<File> directories) {
+        if (directories.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard directory is required");
+        }
+        this.directories = new ArrayList<>(directories);
+        for (int i = 0; i < directories.size(); i++) {
+            checkMarker(directories.get(i), i, directories.size());
+        }
+        for (int i = 0; i < directories.size(); i++) {
+            writeMarker(directories.get(i), i, directories.size());
+        }
+
+        AtomicInteger threadCount = new AtomicInteger(1);
+        this.readers = new ThreadPoolExecutor(directories.size(), directories.size(), 30L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "file-shard-" + threadCount.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        readers.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Layout of {@code shardCount} shards in {@code shard-0}, {@code shard-1}, ... under a data directory.
+     */
+    public static FileShardLayout inDataDirectory(String dataDirectory, int shardCount) {
+        List<File> directories = new ArrayList<>();
+        for (int i = 0; i < shardCount; i++) {
+            directories.add(new File(dataDirectory, "shard-" + i));
+        }
+        return new FileShardLayout(directories);
+    }
+
+    /**
+     * Number of shards.
+     */
+    public int size() {
+        return directories.size();
+    }
+
+    /**
+     * Directory of a shard.
+     */
+    public File getDirectory(int shard) {
+        return directories.get(shard);
+    }
+
+    /**
+     * Shard an entity with this routing key lives in.
+     */
+    public int shardOf(String routingKey) {
+        // Spread sequential IDs ("P1001", "P1002", ...) whose String hashes differ by one
+        int h = routingKey.hashCode() * 0x9E3779B9;
+        return Math.floorMod(h ^ (h >>> 16), directories.size());
+    }
+
+    /**
+     * Run one task per shard in parallel and return their results in shard order.
+     * A task's unchecked exception is rethrown after every task has finished.
+     */
+    <T> List<T> runAll(List<? extends Callable<T>> tasks) {
+        List<Future<T>> futures = new ArrayList<>(tasks.size());
+        for (Callable<T> task : tasks) {
+            futures.add(readers.submit(task));
+        }
+        List<T> results = new ArrayList<>(tasks.size());
+        RuntimeException failure = null;
+        for (Future<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof RuntimeException
+                            ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for shards", e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return results;
+    }
+
+    private static void checkMarker(File directory, int index, int count) {
+        File marker = new File(directory, MARKER_FILE);
+        if (!marker.exists()) {
+            return;
+        }
+        Properties props = new Properties();
+        try (InputStream in = new FileInputStream(marker)) {
+            props.load(in);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read shard marker " + marker, e);
+        }
+        String expected = index + "/" + count;
+        String actual = props.getProperty("shard") + "/" + props.getProperty("count");
+        if (!expected.equals(actual)) {
+            throw new IllegalStateException("Shard directory " + directory + " holds shard " + actual
+                    + " but is configured as shard " + expected + "; data must be re-sharded to change the layout");
+        }
+    }
+
+    private static void writeMarker(File directory, int index, int count) {
+        File marker = new File(directory, MARKER_FILE);
+        if (marker.exists()) {
+            return;
+        }
+        directory.mkdirs();
+        Properties props = new Properties();
+        props.setProperty("shard", String.valueOf(index));
+        props.setProperty("count", String.valueOf(count));
+        try (OutputStream out = new FileOutputStream(marker)) {
+            props.store(out, "Position of this directory in the file shard layout");
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to write shard marker " + marker, e);
+        }
+    }
+}
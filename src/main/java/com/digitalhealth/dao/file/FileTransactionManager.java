@@ -0,0 +1,210 @@
+package com.digitalhealth.dao.file;
+
+import com.digitalhealth.dao.JoinedUnitOfWork;
+import com.digitalhealth.dao.TransactionManager;
+import com.digitalhealth.dao.UnitOfWork;
+import com.digitalhealth.jfr.FileFlushEvent;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Transaction manager for the file backend.
+ * Owns the transaction journals in the data directory and replays them on startup if a
+ * previous commit was interrupted after its journal was written. Commits on disjoint data
+ * files (e.g. different shards) run concurrently, each with its own journal file:
+ * {@code transaction.journal} for the first, {@code transaction-1.journal} and up for others.
+ *
+ * If a data file cannot be rewritten after its journal was written, the commit rewrites its
+ * files once more while it still holds their locks. If that fails too, the journal is left
+ * for replay on restart and its data files refuse writes until then, since the replay would
+ * otherwise put the journaled entities back over anything written after them.
+ */
+public class FileTransactionManager implements TransactionManager {
+    private static final String JOURNAL_FILE = "transaction.journal";
+    private static final Pattern JOURNAL_NAME = Pattern.compile("transaction(-\\d+)?\\.journal");
+    // Data files (normalized paths) with a journal left to replay on restart
+    private static final Set<String> UNREPLAYED = ConcurrentHashMap.newKeySet();
+
+    private final File directory;
+    private final Map<String, JournaledStore<?>> storesByPath = new HashMap<>();
+    // Journal slots of commits in progress; slot 0 is JOURNAL_FILE
+    private final BitSet journalsInUse = new BitSet();
+
+    /**
+     * @param dataDirectory Directory holding the data files and the journal
+     * @param stores File DAOs that may take part in units of work
+     */
+    public FileTransactionManager(String dataDirectory, JournaledStore<?>... stores) {
+        this(dataDirectory, Arrays.asList(stores));
+    }
+
+    /**
+     * @param dataDirectory Directory holding the journals
+     * @param stores File DAOs that may take part in units of work
+     */
+    public FileTransactionManager(String dataDirectory, Collection<? extends JournaledStore<?>> stores) {
+        this.directory = new File(dataDirectory);
+        for (JournaledStore<?> store : stores) {
+            storesByPath.put(normalize(store.getFilePath()), store);
+        }
+        recoverJournals();
+    }
+
+    @Override
+    public UnitOfWork begin() {
+        FileUnitOfWork current = FileUnitOfWork.current();
+        if (current != null) {
+            return new JoinedUnitOfWork(current);
+        }
+        return new FileUnitOfWork(this);
+    }
+
+    /**
+     * Durably record the changes of a commit before any data file is rewritten.
+     * 
+     * @return The journal written, to be passed to {@link #clearJournal(File)}
+     */
+    File writeJournal(Map<JournaledStore<?>, Map<String, Object>> staged) {
+        Map<String, Map<String, Object>> entries = new LinkedHashMap<>();
+        for (Map.Entry<JournaledStore<?>, Map<String, Object>> entry : staged.entrySet()) {
+            entries.put(normalize(entry.getKey().getFilePath()), new HashMap<>(entry.getValue()));
+        }
+
+        File journalFile = acquireJournal();
+        FileFlushEvent flush = new FileFlushEvent();
+        flush.begin();
+        File tmp = new File(journalFile.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp);
+             ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(fos))) {
+            oos.writeObject(entries);
+            oos.flush();
+            fos.getFD().sync();
+        } catch (IOException e) {
+            releaseJournal(journalFile);
+            throw new RuntimeException("Failed to write transaction journal", e);
+        }
+        try {
+            Files.move(tmp.toPath(), journalFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            releaseJournal(journalFile);
+            throw new RuntimeException("Failed to publish transaction journal", e);
+        }
+        flush.complete(journalFile.getPath(), true);
+        return journalFile;
+    }
+
+    /**
+     * Discard a journal once every data file of its commit has been rewritten. A journal
+     * that is never cleared keeps its slot, so it stays in place for replay on restart.
+     */
+    void clearJournal(File journalFile) {
+        if (journalFile.exists() && !journalFile.delete()) {
+            System.err.println("Warning: Could not delete transaction journal: " + journalFile);
+        }
+        releaseJournal(journalFile);
+    }
+
+    /**
+     * Keep the journal of a commit whose data files could not all be rewritten. Its slot stays
+     * taken so no other commit overwrites it, and its data files refuse writes until it is
+     * replayed on restart.
+     */
+    void abandonJournal(File journalFile, Collection<? extends JournaledStore<?>> stores) {
+        for (JournaledStore<?> store : stores) {
+            UNREPLAYED.add(normalize(store.getFilePath()));
+        }
+        System.err.println("Error: Commit failed part-way; " + journalFile
+                + " will be replayed on restart and its data files are read-only until then");
+    }
+
+    /**
+     * Refuse a write to a data file that has a journal left to replay.
+     *
+     * @throws IllegalStateException if the file has an unreplayed journal
+     */
+    static void checkWritable(JournaledStore<?> store) {
+        if (!UNREPLAYED.isEmpty() && UNREPLAYED.contains(normalize(store.getFilePath()))) {
+            throw new IllegalStateException("Data file " + store.getFilePath()
+                    + " has an interrupted transaction to replay; restart to recover it");
+        }
+    }
+
+    private synchronized File acquireJournal() {
+        int slot = journalsInUse.nextClearBit(0);
+        journalsInUse.set(slot);
+        return journalFile(slot);
+    }
+
+    private synchronized void releaseJournal(File journalFile) {
+        String name = journalFile.getName();
+        journalsInUse.clear(name.equals(JOURNAL_FILE) ? 0
+                : Integer.parseInt(name.substring("transaction-".length(), name.length() - ".journal".length())));
+    }
+
+    private File journalFile(int slot) {
+        return new File(directory, slot == 0 ? JOURNAL_FILE : "transaction-" + slot + ".journal");
+    }
+
+    /**
+     * Replay every journal left by interrupted commits. Journals of concurrent commits touch
+     * disjoint data files (commits hold the locks of their files until the journal is
+     * cleared), so they can be replayed in any order.
+     */
+    private void recoverJournals() {
+        File[] journals = directory.listFiles((dir, name) -> JOURNAL_NAME.matcher(name).matches());
+        if (journals == null) {
+            return;
+        }
+        Arrays.sort(journals);
+        for (File journalFile : journals) {
+            recoverJournal(journalFile);
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void recoverJournal(File journalFile) {
+        Map<String, Map<String, Object>> entries;
+        try (ObjectInputStream ois = new ObjectInputStream(
+                new BufferedInputStream(new FileInputStream(journalFile)))) {
+            entries = (Map<String, Map<String, Object>>) ois.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new RuntimeException("Failed to read transaction journal " + journalFile, e);
+        }
+
+        System.out.println("Replaying interrupted transaction from " + journalFile);
+        for (Map.Entry<String, Map<String, Object>> entry : entries.entrySet()) {
+            JournaledStore store = storesByPath.get(entry.getKey());
+            if (store == null) {
+                throw new IllegalStateException("Transaction journal references unknown data file: " + entry.getKey());
+            }
+            store.getLock().writeLock().lock();
+            try {
+                Map data = store.readFile();
+                FileUnitOfWork.applyChanges(data, entry.getValue());
+                store.writeFile(data);
+            } finally {
+                store.getLock().writeLock().unlock();
+            }
+            UNREPLAYED.remove(entry.getKey());
+        }
+        if (!journalFile.delete()) {
+            System.err.println("Warning: Could not delete transaction journal: " + journalFile);
+        }
+    }
+
+    private static String normalize(String path) {
+        return new File(path).getAbsoluteFile().toPath().normalize().toString();
+    }
+}
@@ -0,0 +1,206 @@
+package com.digitalhealth.dao.file;
+
+import com.digitalhealth.dao.UnitOfWork;
+import com.digitalhealth.dao.VersionCheck;
+import com.digitalhealth.model.Versioned;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Unit of work for the file backend.
+ * File DAO writes made on the owning thread are staged in memory (reads on that thread
+ * see them). On commit every touched data file is locked, staged entities are version-checked
+ * (a conflict aborts the whole unit of work), the changes are written to the
+ * transaction journal, and each file is rewritten once. If the process dies while files
+ * are being rewritten, {@link FileTransactionManager} replays the journal on startup; if a
+ * rewrite fails, it is retried once before the journal is left for that replay.
+ */
+public class FileUnitOfWork implements UnitOfWork {
+    private static final ThreadLocal<FileUnitOfWork> CURRENT = new ThreadLocal<>();
+
+    private final FileTransactionManager manager;
+    // store -> (id -> entity, or null for a delete), in first-touched order
+    private final Map<JournaledStore<?>, Map<String, Object>> staged = new LinkedHashMap<>();
+    private boolean rollbackOnly;
+    private boolean finished;
+
+    FileUnitOfWork(FileTransactionManager manager) {
+        this.manager = manager;
+        CURRENT.set(this);
+    }
+
+    /**
+     * Get the unit of work open on the current thread, or null.
+     */
+    static FileUnitOfWork current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Stage a write if a unit of work is open on the current thread.
+     *
+     * @param store Store being written
+     * @param id Entity ID
+     * @param value Entity to save, or null to delete
+     * @return true if the write was staged, false if the caller should write through
+     */
+    static <T> boolean stage(JournaledStore<T> store, String id, T value) {
+        FileTransactionManager.checkWritable(store);
+        FileUnitOfWork uow = CURRENT.get();
+        if (uow == null) {
+            return false;
+        }
+        uow.staged.computeIfAbsent(store, s -> new LinkedHashMap<>()).put(id, value);
+        return true;
+    }
+
+    /**
+     * Apply the current thread's staged writes for a store onto freshly read data.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> void overlay(JournaledStore<T> store, Map<String, T> data) {
+        FileUnitOfWork uow = CURRENT.get();
+        if (uow == null) {
+            return;
+        }
+        Map<String, Object> changes = uow.staged.get(store);
+        if (changes != null) {
+            applyChanges(data, (Map<String, T>) (Map<String, ?>) changes);
+        }
+    }
+
+    @Override
+    public void setRollbackOnly() {
+        rollbackOnly = true;
+    }
+
+    @Override
+    public void commit() {
+        if (finished) {
+            throw new IllegalStateException("Unit of work already finished");
+        }
+        if (rollbackOnly) {
+            close();
+            throw new IllegalStateException("Unit of work was marked rollback-only");
+        }
+        try {
+            if (!staged.isEmpty()) {
+                apply();
+            }
+        } finally {
+            finish();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!finished) {
+            // Rollback: staged changes were never written
+            finish();
+        }
+    }
+
+    private void finish() {
+        finished = true;
+        staged.clear();
+        if (CURRENT.get() == this) {
+            CURRENT.remove();
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void apply() {
+        // Lock in a global order so concurrent commits cannot deadlock
+        List<JournaledStore<?>> stores = new ArrayList<>(staged.keySet());
+        stores.sort(Comparator.comparing(JournaledStore::getFilePath));
+
+        // Stop overlaying our own staged changes while reading committed data
+        CURRENT.remove();
+        List<JournaledStore<?>> locked = new ArrayList<>();
+        Map<Versioned, Long> previousVersions = new IdentityHashMap<>();
+        boolean applied = false;
+        try {
+            Map<JournaledStore<?>, Map> updated = new HashMap<>();
+            for (JournaledStore<?> store : stores) {
+                store.getLock().writeLock().lock();
+                locked.add(store);
+                FileTransactionManager.checkWritable(store);
+                Map data = store.readFile();
+                checkVersions(data, staged.get(store), previousVersions);
+                applyChanges(data, staged.get(store));
+                updated.put(store, data);
+            }
+
+            File journal = manager.writeJournal(staged);
+            try {
+                writeAll(stores, updated);
+            } catch (RuntimeException e) {
+                // Roll forward while the files are still locked, so the journal never
+                // outlives the commit and gets replayed over later ones
+                try {
+                    writeAll(stores, updated);
+                    System.err.println("Warning: Rewrote data files after a failed write: " + e.getMessage());
+                } catch (RuntimeException retry) {
+                    manager.abandonJournal(journal, stores);
+                    e.addSuppressed(retry);
+                    throw e;
+                }
+            }
+            manager.clearJournal(journal);
+            applied = true;
+        } finally {
+            for (JournaledStore<?> store : locked) {
+                store.getLock().writeLock().unlock();
+            }
+            if (!applied) {
+                // Entities keep the versions they were read with, so a retry compares correctly
+                for (Map.Entry<Versioned, Long> previous : previousVersions.entrySet()) {
+                    previous.getKey().setVersion(previous.getValue());
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static void writeAll(List<JournaledStore<?>> stores, Map<JournaledStore<?>, Map> updated) {
+        for (JournaledStore store : stores) {
+            store.writeFile(updated.get(store));
+        }
+    }
+
+    /**
+     * Compare-and-set every staged entity against the committed data.
+     * Runs before anything is journaled, so a conflict leaves all files untouched.
+     *
+     * @param previousVersions Receives the version each advanced entity had before
+     */
+    private static void checkVersions(Map<String, ?> data, Map<String, Object> changes,
+                                      Map<Versioned, Long> previousVersions) {
+        for (Map.Entry<String, Object> change : changes.entrySet()) {
+            if (change.getValue() instanceof Versioned) {
+                Versioned incoming = (Versioned) change.getValue();
+                Object stored = data.get(change.getKey());
+                long previous = VersionCheck.advance(change.getKey(),
+                        stored instanceof Versioned ? (Versioned) stored : null, incoming);
+                previousVersions.put(incoming, previous);
+            }
+        }
+    }
+
+    static <T> void applyChanges(Map<String, T> data, Map<String, T> changes) {
+        for (Map.Entry<String, T> change : changes.entrySet()) {
+            if (change.getValue() == null) {
+                data.remove(change.getKey());
+            } else {
+                data.put(change.getKey(), change.getValue());
+            }
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.digitalhealth.dao.file;
 
 import com.digitalhealth.dao.UserDao;
+import com.digitalhealth.dao.VersionCheck;
+import com.digitalhealth.jfr.FileFlushEvent;
 import com.digitalhealth.model.User;
 import com.digitalhealth.model.UserRole;
 
@@ -10,6 +12,8 @@ import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * File-based implementation of UserDao using serialization.
+ * Users are cached in memory and handed out as copies, so a caller's changes only take
+ * effect through save/update, which compare-and-set the entity version.
  */
 public class FileUserDao implements UserDao {
     private final String filePath;
@@ -22,42 +26,66 @@ public class FileUserDao implements UserDao {
     }
 
     @Override
-    public void save(User user) {
-        users.put(user.getUserId(), user);
+    public synchronized void save(User user) {
+        VersionCheck.advance(user.getUserId(), users.get(user.getUserId()), user);
+        users.put(user.getUserId(), copy(user));
         saveToFile();
     }
 
     @Override
     public Optional<User> findById(String userId) {
-        return Optional.ofNullable(users.get(userId));
+        return Optional.ofNullable(users.get(userId)).map(FileUserDao::copy);
     }
 
     @Override
     public Optional<User> findByUsername(String username) {
         return users.values().stream()
                 .filter(u -> u.getUsername().equals(username))
-                .findFirst();
+                .findFirst()
+                .map(FileUserDao::copy);
     }
 
     @Override
     public List<User> findAll() {
-        return new ArrayList<>(users.values());
+        List<User> result = new ArrayList<>();
+        for (User user : users.values()) {
+            result.add(copy(user));
+        }
+        return result;
     }
 
     @Override
-    public void update(User user) {
-        if (users.containsKey(user.getUserId())) {
-            users.put(user.getUserId(), user);
+    public synchronized void update(User user) {
+        User stored = users.get(user.getUserId());
+        if (stored != null) {
+            if (user.getVersion() == 0) {
+                // Unversioned update overwrites whatever is stored, as in MySQLUserDao
+                user.setVersion(stored.getVersion());
+            }
+            VersionCheck.advance(user.getUserId(), stored, user);
+            users.put(user.getUserId(), copy(user));
             saveToFile();
         }
     }
 
     @Override
-    public void delete(String userId) {
+    public synchronized void delete(String userId) {
         users.remove(userId);
         saveToFile();
     }
 
+    /**
+     * Replace every stored user in one write, keeping their versions as they are.
+     */
+    @Override
+    public synchronized void saveAll(Map<String, User> allUsers) {
+        users.clear();
+        for (User user : allUsers.values()) {
+            users.put(user.getUserId(), copy(user));
+        }
+        saveToFile();
+    }
+
     @Override
     public boolean existsByUsername(String username) {
         return users.values().stream()
@@ -91,6 +119,8 @@ public class FileUserDao implements UserDao {
     }
 
     private void saveToFile() {
+        FileFlushEvent flush = new FileFlushEvent();
+        flush.begin();
         try {
             File file = new File(filePath);
             file.getParentFile().mkdirs();
@@ -98,12 +128,23 @@ public class FileUserDao implements UserDao {
             try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(file))) {
                 oos.writeObject(new HashMap<>(users));
             }
+            flush.complete(filePath, false);
         } catch (IOException e) {
             System.err.println("Error saving users to file: " + e.getMessage());
             e.printStackTrace();
         }
     }
 
+    private static User copy(User user) {
+        User copy = new User(user.getUserId(), user.getUsername(), user.getPasswordHash(),
+                user.getRole(), user.getLinkedEntityId());
+        copy.setCreatedAt(user.getCreatedAt());
+        copy.setLastLogin(user.getLastLogin());
+        copy.setActive(user.isActive());
+        copy.setVersion(user.getVersion());
+        return copy;
+    }
+
     // Simple password hashing (in production, use bcrypt or similar)
     private String hashPassword(String password) {
         try {
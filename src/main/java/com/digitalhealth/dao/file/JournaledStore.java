@@ -0,0 +1,32 @@
+package com.digitalhealth.dao.file;
+
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+
+/**
+ * A file-backed map of entities that can take part in a {@link FileUnitOfWork}.
+ * Implemented by the file DAOs; the raw read/write methods bypass any staged changes.
+ *
+ * @param <T> Entity type
+ */
+public interface JournaledStore<T> {
+    /**
+     * Path of the backing data file.
+     */
+    String getFilePath();
+
+    /**
+     * Lock guarding the backing data file.
+     */
+    ReadWriteLock getLock();
+
+    /**
+     * Read the committed contents of the data file.
+     */
+    Map<String, T> readFile();
+
+    /**
+     * Replace the contents of the data file.
+     */
+    void writeFile(Map<String, T> data);
+}
@@ -0,0 +1,66 @@
+package com.digitalhealth.dao.file;
+
+import com.digitalhealth.dao.AppointmentDao;
+import com.digitalhealth.model.Appointment;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * AppointmentDao over several {@link FileAppointmentDao} shards, partitioned by hash of the
+ * patient ID so that a patient's appointments share the patient's shard. A patient's
+ * appointments are read from one shard file; lookups by appointment or doctor ID read all
+ * shards in parallel.
+ */
+public class ShardedFileAppointmentDao extends ShardedFileStore<Appointment, FileAppointmentDao>
+        implements AppointmentDao {
+
+    public ShardedFileAppointmentDao(FileShardLayout layout) {
+        super(layout, i -> new FileAppointmentDao(new File(layout.getDirectory(i), "appointments.dat").getPath()));
+    }
+
+    @Override
+    public void saveAll(Map<String, Appointment> appointments) {
+        saveAllShards(appointments, Appointment::getPatientId);
+    }
+
+    @Override
+    public Map<String, Appointment> loadAll() {
+        return loadAllShards();
+    }
+
+    @Override
+    public Optional<Appointment> findById(String id) {
+        return findInShards(id);
+    }
+
+    @Override
+    public void save(Appointment appointment) {
+        shardFor(appointment.getPatientId()).save(appointment);
+    }
+
+    @Override
+    public boolean exists(String appointmentId) {
+        return findInShards(appointmentId).isPresent();
+    }
+
+    @Override
+    public void delete(String appointmentId) {
+        FileAppointmentDao shard = shardHolding(appointmentId);
+        if (shard != null) {
+            shard.delete(appointmentId);
+        }
+    }
+
+    @Override
+    public List<Appointment> findByPatientId(String patientId) {
+        return shardFor(patientId).findByPatientId(patientId);
+    }
+
+    @Override
+    public List<Appointment> findByDoctorId(String doctorId) {
+        return filterShards(appointment -> appointment.getDoctorId().equals(doctorId));
+    }
+}
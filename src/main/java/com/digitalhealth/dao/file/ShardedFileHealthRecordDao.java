@@ -0,0 +1,105 @@
+package com.digitalhealth.dao.file;
+
+import com.digitalhealth.dao.HealthRecordDao;
+import com.digitalhealth.model.HealthRecord;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * HealthRecordDao over several {@link FileHealthRecordDao} shards, partitioned by hash of the
+ * patient ID so that a patient's records share the patient's shard. A patient's records are
+ * read from one shard file; other queries read all shards in parallel.
+ */
+public class ShardedFileHealthRecordDao extends ShardedFileStore<HealthRecord, FileHealthRecordDao>
+        implements HealthRecordDao {
+
+    public ShardedFileHealthRecordDao(FileShardLayout layout) {
+        super(layout, i -> new FileHealthRecordDao(new File(layout.getDirectory(i), "records.dat").getPath()));
+    }
+
+    @Override
+    public void saveAll(Map<String, HealthRecord> records) {
+        saveAllShards(records, HealthRecord::getPatientId);
+    }
+
+    @Override
+    public Map<String, HealthRecord> loadAll() {
+        return loadAllShards();
+    }
+
+    @Override
+    public Optional<HealthRecord> findById(String id) {
+        return findInShards(id);
+    }
+
+    @Override
+    public List<HealthRecord> findAllById(List<String> ids) {
+        Map<String, HealthRecord> found = new HashMap<>();
+        for (Map<String, HealthRecord> shard : readShards()) {
+            for (String id : ids) {
+                HealthRecord record = shard.get(id);
+                if (record != null) {
+                    found.put(id, record);
+                }
+            }
+        }
+        List<HealthRecord> result = new ArrayList<>(found.size());
+        for (String id : ids) {
+            HealthRecord record = found.get(id);
+            if (record != null) {
+                result.add(record);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void save(HealthRecord record) {
+        shardFor(record.getPatientId()).save(record);
+    }
+
+    @Override
+    public boolean exists(String recordId) {
+        return findInShards(recordId).isPresent();
+    }
+
+    @Override
+    public void delete(String recordId) {
+        FileHealthRecordDao shard = shardHolding(recordId);
+        if (shard != null) {
+            shard.delete(recordId);
+        }
+    }
+
+    @Override
+    public List<HealthRecord> findByPatientId(String patientId) {
+        return shardFor(patientId).findByPatientId(patientId);
+    }
+
+    @Override
+    public List<HealthRecord> findByDoctorId(String doctorId) {
+        return filterShards(record -> record.getDoctorId().equals(doctorId));
+    }
+
+    /**
+     * Shard files are read in parallel; the action is called on the calling thread, one shard
+     * after another.
+     */
+    @Override
+    public int scan(LocalDateTime from, LocalDateTime to, Consumer<HealthRecord> action) {
+        int count = 0;
+        for (Map<String, HealthRecord> shard : readShards()) {
+            for (HealthRecord record : shard.values()) {
+                if ((from == null || !record.getDate().isBefore(from))
+                        && (to == null || record.getDate().isBefore(to))) {
+                    action.accept(record);
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+}
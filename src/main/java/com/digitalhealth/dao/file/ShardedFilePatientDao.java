@@ -0,0 +1,86 @@
+package com.digitalhealth.dao.file;
+
+import com.digitalhealth.dao.PatientDao;
+import com.digitalhealth.model.Patient;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.Callable;
+
+/**
+ * PatientDao over several {@link FilePatientDao} shards, partitioned by hash of the patient ID.
+ * Lookups by ID read one shard file; listing all patients reads the shards in parallel.
+ */
+public class ShardedFilePatientDao extends ShardedFileStore<Patient, FilePatientDao> implements PatientDao {
+
+    public ShardedFilePatientDao(FileShardLayout layout) {
+        super(layout, i -> new FilePatientDao(new File(layout.getDirectory(i), "patients.dat").getPath()));
+    }
+
+    @Override
+    public void saveAll(Map<String, Patient> patients) {
+        saveAllShards(patients, Patient::getPatientId);
+    }
+
+    @Override
+    public Map<String, Patient> loadAll() {
+        return loadAllShards();
+    }
+
+    @Override
+    public Optional<Patient> findById(String id) {
+        return shardFor(id).findById(id);
+    }
+
+    /**
+     * Reads only the shards holding the requested IDs, in parallel.
+     */
+    @Override
+    public List<Patient> findAllById(List<String> ids) {
+        Map<Integer, List<String>> idsByShard = new TreeMap<>();
+        for (String id : ids) {
+            idsByShard.computeIfAbsent(layout.shardOf(id), s -> new ArrayList<>()).add(id);
+        }
+        List<Integer> shardIndexes = new ArrayList<>(idsByShard.keySet());
+        List<Callable<Map<String, Patient>>> reads = new ArrayList<>(shardIndexes.size());
+        for (int shard : shardIndexes) {
+            reads.add(shards.get(shard)::readFile);
+        }
+        Map<String, Patient> found = new HashMap<>();
+        List<Map<String, Patient>> contents = layout.runAll(reads);
+        for (int i = 0; i < shardIndexes.size(); i++) {
+            Map<String, Patient> shard = contents.get(i);
+            FileUnitOfWork.overlay(shards.get(shardIndexes.get(i)), shard);
+            for (String id : idsByShard.get(shardIndexes.get(i))) {
+                Patient patient = shard.get(id);
+                if (patient != null) {
+                    found.put(id, patient);
+                }
+            }
+        }
+
+        List<Patient> result = new ArrayList<>(found.size());
+        for (String id : ids) {
+            Patient patient = found.get(id);
+            if (patient != null) {
+                result.add(patient);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void save(Patient patient) {
+        shardFor(patient.getPatientId()).save(patient);
+    }
+
+    @Override
+    public boolean exists(String patientId) {
+        return shardFor(patientId).exists(patientId);
+    }
+
+    @Override
+    public void delete(String patientId) {
+        shardFor(patientId).delete(patientId);
+    }
+}
@@ -0,0 +1,143 @@
+package com.digitalhealth.dao.file;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+
+/**
+ * Common part of the sharded file DAOs: one ordinary file DAO per shard, each with its own
+ * file and lock, so writes to different shards never wait for each other. Reads that cannot
+ * be routed to one shard read all shard files in parallel. Units of work see every shard as a
+ * separate store, so a commit locks and rewrites only the shards it touched.
+ *
+ * @param <T> Entity type
+ * @param <S> File DAO of one shard
+ */
+abstract class ShardedFileStore<T, S extends JournaledStore<T>> {
+    protected final FileShardLayout layout;
+    protected final List<S> shards;
+
+    /**
+     * @param shardFactory Creates the DAO of a shard from its index
+     */
+    ShardedFileStore(FileShardLayout layout, IntFunction<S> shardFactory) {
+        this.layout = layout;
+        List<S> created = new ArrayList<>(layout.size());
+        for (int i = 0; i < layout.size(); i++) {
+            created.add(shardFactory.apply(i));
+        }
+        this.shards = Collections.unmodifiableList(created);
+    }
+
+    /**
+     * DAOs of the shards, in routing order (to register with the transaction manager).
+     */
+    public List<S> getShards() {
+        return shards;
+    }
+
+    /**
+     * Shard for an entity with this routing key.
+     */
+    protected S shardFor(String routingKey) {
+        return shards.get(layout.shardOf(routingKey));
+    }
+
+    /**
+     * Contents of every shard, read in parallel, each with the calling thread's staged writes
+     * applied (which can only be done on the calling thread).
+     */
+    protected List<Map<String, T>> readShards() {
+        List<Callable<Map<String, T>>> reads = new ArrayList<>(shards.size());
+        for (S shard : shards) {
+            reads.add(shard::readFile);
+        }
+        List<Map<String, T>> contents = layout.runAll(reads);
+        for (int i = 0; i < shards.size(); i++) {
+            FileUnitOfWork.overlay(shards.get(i), contents.get(i));
+        }
+        return contents;
+    }
+
+    /**
+     * All entities of all shards.
+     */
+    protected Map<String, T> loadAllShards() {
+        List<Map<String, T>> contents = readShards();
+        int size = 0;
+        for (Map<String, T> shard : contents) {
+            size += shard.size();
+        }
+        Map<String, T> all = new HashMap<>(size * 4 / 3 + 1);
+        for (Map<String, T> shard : contents) {
+            all.putAll(shard);
+        }
+        return all;
+    }
+
+    /**
+     * Shard holding an entity that is not routed by its own ID, or null if none does.
+     */
+    protected S shardHolding(String id) {
+        List<Map<String, T>> contents = readShards();
+        for (int i = 0; i < contents.size(); i++) {
+            if (contents.get(i).containsKey(id)) {
+                return shards.get(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find an entity that is not routed by its own ID in whichever shard holds it.
+     */
+    protected Optional<T> findInShards(String id) {
+        for (Map<String, T> shard : readShards()) {
+            T entity = shard.get(id);
+            if (entity != null) {
+                return Optional.of(entity);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Entities of all shards that match a filter.
+     */
+    protected List<T> filterShards(Predicate<T> filter) {
+        List<T> result = new ArrayList<>();
+        for (Map<String, T> shard : readShards()) {
+            for (T entity : shard.values()) {
+                if (filter.test(entity)) {
+                    result.add(entity);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Replace the contents of every shard, writing the shard files in parallel.
+     */
+    protected void saveAllShards(Map<String, T> entities, Function<T, String> routingKey) {
+        List<Map<String, T>> partitions = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            partitions.add(new HashMap<>());
+        }
+        for (Map.Entry<String, T> entry : entities.entrySet()) {
+            partitions.get(layout.shardOf(routingKey.apply(entry.getValue()))).put(entry.getKey(), entry.getValue());
+        }
+        List<Callable<Void>> writes = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            S shard = shards.get(i);
+            Map<String, T> partition = partitions.get(i);
+            writes.add(() -> {
+                shard.writeFile(partition);
+                return null;
+            });
+        }
+        layout.runAll(writes);
+    }
+}
@@ -3,11 +3,14 @@ package com.digitalhealth.dao.mysql;
 import com.digitalhealth.dao.AppointmentDao;
 import com.digitalhealth.model.Appointment;
 import com.digitalhealth.model.AppointmentStatus;
+import com.digitalhealth.util.ConnectionProvider;
 import com.digitalhealth.util.DatabaseConnection;
 
 import java.sql.*;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -15,14 +18,32 @@ import java.util.Optional;
  * MySQL implementation of AppointmentDao.
  */
 public class MySQLAppointmentDao implements AppointmentDao {
+    private final ConnectionProvider connections;
+
+    /**
+     * DAO on the configured database.
+     */
+    public MySQLAppointmentDao() {
+        this(DatabaseConnection.provider());
+    }
+
+    /**
+     * DAO on another database, e.g. one shard of a sharded backend.
+     */
+    public MySQLAppointmentDao(ConnectionProvider connections) {
+        this.connections = connections;
+    }
     
     @Override
     public void save(Appointment appointment) {
-        String sql = "INSERT INTO appointments (appointment_id, patient_id, doctor_id, appointment_datetime, status) " +
-                     "VALUES (?, ?, ?, ?, ?) " +
-                     "ON DUPLICATE KEY UPDATE patient_id=?, doctor_id=?, appointment_datetime=?, status=?";
+        if (appointment.getVersion() != 0) {
+            update(appointment);
+            return;
+        }
+        String sql = "INSERT INTO appointments (appointment_id, patient_id, doctor_id, appointment_datetime, status, version) " +
+                     "VALUES (?, ?, ?, ?, ?, 1)";
         
-        try (Connection conn = DatabaseConnection.getConnection();
+        try (Connection conn = connections.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             
             pstmt.setString(1, appointment.getAppointmentId());
@@ -30,13 +51,36 @@ public class MySQLAppointmentDao implements AppointmentDao {
             pstmt.setString(3, appointment.getDoctorId());
             pstmt.setTimestamp(4, Timestamp.valueOf(appointment.getDateTime()));
             pstmt.setString(5, appointment.getStatus().name());
-            // For UPDATE part
-            pstmt.setString(6, appointment.getPatientId());
-            pstmt.setString(7, appointment.getDoctorId());
-            pstmt.setTimestamp(8, Timestamp.valueOf(appointment.getDateTime()));
-            pstmt.setString(9, appointment.getStatus().name());
             
             pstmt.executeUpdate();
+            MySQLVersions.inserted(appointment);
+            
+        } catch (SQLException e) {
+            if (MySQLVersions.isDuplicateKey(e)) {
+                throw MySQLVersions.alreadyExists(appointment, appointment.getAppointmentId());
+            }
+            throw new RuntimeException("Error saving appointment: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Compare-and-set update of an appointment read from the database.
+     */
+    private void update(Appointment appointment) {
+        String sql = "UPDATE appointments SET patient_id=?, doctor_id=?, appointment_datetime=?, status=?, " +
+                     "version=version+1 WHERE appointment_id=? AND version=?";
+        
+        try (Connection conn = connections.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            
+            pstmt.setString(1, appointment.getPatientId());
+            pstmt.setString(2, appointment.getDoctorId());
+            pstmt.setTimestamp(3, Timestamp.valueOf(appointment.getDateTime()));
+            pstmt.setString(4, appointment.getStatus().name());
+            pstmt.setString(5, appointment.getAppointmentId());
+            pstmt.setLong(6, appointment.getVersion());
+            
+            MySQLVersions.checkUpdated(pstmt.executeUpdate(), appointment, appointment.getAppointmentId());
             
         } catch (SQLException e) {
             throw new RuntimeException("Error saving appointment: " + e.getMessage(), e);
@@ -45,29 +89,21 @@ public class MySQLAppointmentDao implements AppointmentDao {
     
     @Override
     public void saveAll(Map<String, Appointment> appointments) {
-        for (Appointment appointment : appointments.values()) {
-            save(appointment);
-        }
+        MySQLBulkWriter.saveAll(connections, "appointments", appointments.values(), MySQLBulkWriter::insertAppointments);
     }
     
     @Override
     public Optional<Appointment> findById(String appointmentId) {
         String sql = "SELECT * FROM appointments WHERE appointment_id = ?";
         
-        try (Connection conn = DatabaseConnection.getConnection();
+        try (Connection conn = connections.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             
             pstmt.setString(1, appointmentId);
             ResultSet rs = pstmt.executeQuery();
             
             if (rs.next()) {
-                Appointment appointment = new Appointment(
-                    rs.getString("appointment_id"),
-                    rs.getString("patient_id"),
-                    rs.getString("doctor_id"),
-                    rs.getTimestamp("appointment_datetime").toLocalDateTime(),
-                    AppointmentStatus.valueOf(rs.getString("status"))
-                );
+                Appointment appointment = mapResultSetToAppointment(rs);
                 return Optional.of(appointment);
             }
             
@@ -83,18 +119,12 @@ public class MySQLAppointmentDao implements AppointmentDao {
         Map<String, Appointment> appointments = new HashMap<>();
         String sql = "SELECT * FROM appointments";
         
-        try (Connection conn = DatabaseConnection.getConnection();
+        try (Connection conn = connections.getConnection();
              Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery(sql)) {
             
             while (rs.next()) {
-                Appointment appointment = new Appointment(
-                    rs.getString("appointment_id"),
-                    rs.getString("patient_id"),
-                    rs.getString("doctor_id"),
-                    rs.getTimestamp("appointment_datetime").toLocalDateTime(),
-                    AppointmentStatus.valueOf(rs.getString("status"))
-                );
+                Appointment appointment = mapResultSetToAppointment(rs);
                 appointments.put(appointment.getAppointmentId(), appointment);
             }
             
@@ -108,7 +138,7 @@ public class MySQLAppointmentDao implements AppointmentDao {
     @Override
     public boolean exists(String appointmentId) {
         String sql = "SELECT COUNT(*) FROM appointments WHERE appointment_id = ?";
-        try (Connection conn = DatabaseConnection.getConnection();
+        try (Connection conn = connections.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, appointmentId);
             ResultSet rs = pstmt.executeQuery();
@@ -125,7 +155,7 @@ public class MySQLAppointmentDao implements AppointmentDao {
     public void delete(String appointmentId) {
         String sql = "DELETE FROM appointments WHERE appointment_id = ?";
         
-        try (Connection conn = DatabaseConnection.getConnection();
+        try (Connection conn = connections.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             
             pstmt.setString(1, appointmentId);
@@ -135,4 +165,53 @@ public class MySQLAppointmentDao implements AppointmentDao {
             throw new RuntimeException("Error deleting appointment: " + e.getMessage(), e);
         }
     }
+
+    @Override
+    public List<Appointment> findByPatientId(String patientId) {
+        return findByColumn("patient_id", patientId);
+    }
+
+    @Override
+    public List<Appointment> findByDoctorId(String doctorId) {
+        return findByColumn("doctor_id", doctorId);
+    }
+
+    /**
+     * Query appointments by an indexed foreign key column (idx_patient_id / idx_doctor_id).
+     */
+    private List<Appointment> findByColumn(String column, String value) {
+        List<Appointment> appointments = new ArrayList<>();
+        String sql = "SELECT * FROM appointments WHERE " + column + " = ?";
+        
+        try (Connection conn = connections.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            
+            pstmt.setString(1, value);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    appointments.add(mapResultSetToAppointment(rs));
+                }
+            }
+            
+        } catch (SQLException e) {
+            throw new RuntimeException("Error finding appointments by " + column + ": " + e.getMessage(), e);
+        }
+        
+        return appointments;
+    }
+
+    /**
+     * Map ResultSet to Appointment object.
+     */
+    private Appointment mapResultSetToAppointment(ResultSet rs) throws SQLException {
+        Appointment appointment = new Appointment(
+            rs.getString("appointment_id"),
+            rs.getString("patient_id"),
+            rs.getString("doctor_id"),
+            rs.getTimestamp("appointment_datetime").toLocalDateTime(),
+            AppointmentStatus.valueOf(rs.getString("status"))
+        );
+        appointment.setVersion(rs.getLong("version"));
+        return appointment;
+    }
 }
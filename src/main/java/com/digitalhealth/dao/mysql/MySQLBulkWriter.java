@@ -0,0 +1,247 @@
+package com.digitalhealth.dao.mysql;
+
+import com.digitalhealth.model.Appointment;
+import com.digitalhealth.model.Doctor;
+import com.digitalhealth.model.HealthRecord;
+import com.digitalhealth.model.Patient;
+import com.digitalhealth.model.User;
+import com.digitalhealth.util.ConnectionProvider;
+import com.digitalhealth.util.DatabaseConnection;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Multi-row upserts for bulk loads such as {@link com.digitalhealth.util.DataMigrationUtil}.
+ * Each call writes the whole batch with one {@code INSERT ... VALUES (...),(...)} statement per
+ * table and commits it as one transaction, so a batch is either fully stored or not at all.
+ * Rows that already exist are overwritten, which makes replaying a batch harmless.
+ *
+ * Entity versions are copied as they are (at least 1) instead of being advanced or checked, so
+ * optimistic locking carries on from the source. Inside a unit of work the writer joins it, and
+ * its batches commit or roll back with the unit of work instead of on their own. A writer holds
+ * one connection and is not thread-safe.
+ */
+public class MySQLBulkWriter implements AutoCloseable {
+    /**
+     * Largest batch the insert methods accept; keeps every statement well below MySQL's
+     * limit of 65,535 placeholders.
+     */
+    public static final int MAX_BATCH_SIZE = 5000;
+
+    private static final int MAX_SLOTS_PER_STATEMENT = 10000;
+    private static final int SAVE_ALL_BATCH_SIZE = 1000;
+
+    /**
+     * One of the insert methods, for callers that pick the table at runtime.
+     */
+    public interface BatchInsert<T> {
+        void insert(MySQLBulkWriter writer, List<T> batch) throws SQLException;
+    }
+
+    private final ConnectionProvider connections;
+    private Connection connection;
+
+    /**
+     * Writer to the configured database.
+     */
+    public MySQLBulkWriter() {
+        this(DatabaseConnection.provider());
+    }
+
+    /**
+     * Writer to another database, e.g. one shard of a sharded backend.
+     */
+    public MySQLBulkWriter(ConnectionProvider connections) {
+        this.connections = connections;
+    }
+
+    /**
+     * Write any number of rows in batches, joining the unit of work on the current thread if
+     * there is one. This backs the {@code saveAll} methods of the MySQL DAOs: rows are upserted
+     * with their versions kept as given (at least 1), and rows not given are left alone.
+     */
+    static <T> void saveAll(ConnectionProvider connections, String entity, Collection<T> rows,
+                            BatchInsert<T> insert) {
+        List<T> list = new ArrayList<>(rows);
+        try (MySQLBulkWriter writer = new MySQLBulkWriter(connections)) {
+            for (int from = 0; from < list.size(); from += SAVE_ALL_BATCH_SIZE) {
+                insert.insert(writer, list.subList(from, Math.min(list.size(), from + SAVE_ALL_BATCH_SIZE)));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Error saving all " + entity + ": " + e.getMessage(), e);
+        }
+    }
+
+    public void insertPatients(List<Patient> patients) throws SQLException {
+        Connection conn = connection();
+        try {
+            upsert(conn, "patients", new String[] {"patient_id", "name", "age", "gender", "contact", "version"},
+                    patients, p -> new Object[] {p.getPatientId(), p.getName(), p.getAge(), p.getGender(),
+                            p.getContact(), version(p.getVersion())});
+            conn.commit();
+        } catch (SQLException e) {
+            rollback(conn);
+            throw e;
+        }
+    }
+
+    /**
+     * Upsert doctors and replace their stored slots with their available slots, as
+     * {@link MySQLDoctorDao#save} does, so slots booked or removed since are not reopened.
+     */
+    public void insertDoctors(List<Doctor> doctors) throws SQLException {
+        if (doctors.isEmpty()) {
+            return;
+        }
+        Connection conn = connection();
+        try {
+            upsert(conn, "doctors", new String[] {"doctor_id", "name", "specialty", "version"},
+                    doctors, d -> new Object[] {d.getDoctorId(), d.getName(), d.getSpecialty(), version(d.getVersion())});
+
+            StringBuilder delete = new StringBuilder("DELETE FROM doctor_slots WHERE doctor_id IN (");
+            appendRows(delete, doctors.size(), "?");
+            execute(conn, delete.append(')').toString(), doctors, d -> new Object[] {d.getDoctorId()});
+
+            List<Object[]> slots = new ArrayList<>();
+            for (Doctor doctor : doctors) {
+                for (LocalDateTime slot : doctor.getAvailableSlots()) {
+                    slots.add(new Object[] {doctor.getDoctorId(), slot});
+                }
+            }
+            for (int from = 0; from < slots.size(); from += MAX_SLOTS_PER_STATEMENT) {
+                List<Object[]> chunk = slots.subList(from, Math.min(slots.size(), from + MAX_SLOTS_PER_STATEMENT));
+                StringBuilder sql = new StringBuilder("INSERT IGNORE INTO doctor_slots (doctor_id, slot_datetime, is_available) VALUES ");
+                appendRows(sql, chunk.size(), "(?, ?, TRUE)");
+                execute(conn, sql.toString(), chunk, row -> row);
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            rollback(conn);
+            throw e;
+        }
+    }
+
+    public void insertUsers(List<User> users) throws SQLException {
+        Connection conn = connection();
+        try {
+            upsert(conn, "users", new String[] {"user_id", "username", "password_hash", "role", "linked_entity_id",
+                            "created_at", "last_login", "is_active", "version"},
+                    users, u -> new Object[] {u.getUserId(), u.getUsername(), u.getPasswordHash(),
+                            u.getRole() != null ? u.getRole().name() : null, u.getLinkedEntityId(),
+                            u.getCreatedAt() != null ? u.getCreatedAt() : LocalDateTime.now(), u.getLastLogin(),
+                            u.isActive(), version(u.getVersion())});
+            conn.commit();
+        } catch (SQLException e) {
+            rollback(conn);
+            throw e;
+        }
+    }
+
+    public void insertAppointments(List<Appointment> appointments) throws SQLException {
+        Connection conn = connection();
+        try {
+            upsert(conn, "appointments", new String[] {"appointment_id", "patient_id", "doctor_id",
+                            "appointment_datetime", "status", "version"},
+                    appointments, a -> new Object[] {a.getAppointmentId(), a.getPatientId(), a.getDoctorId(),
+                            a.getDateTime(), a.getStatus() != null ? a.getStatus().name() : null,
+                            version(a.getVersion())});
+            conn.commit();
+        } catch (SQLException e) {
+            rollback(conn);
+            throw e;
+        }
+    }
+
+    public void insertHealthRecords(List<HealthRecord> records) throws SQLException {
+        Connection conn = connection();
+        try {
+            upsert(conn, "health_records", new String[] {"record_id", "patient_id", "doctor_id", "symptoms",
+                            "diagnosis", "prescription", "record_date", "version"},
+                    records, r -> new Object[] {r.getRecordId(), r.getPatientId(), r.getDoctorId(), r.getSymptoms(),
+                            r.getDiagnosis(), r.getPrescription(), r.getDate(), version(r.getVersion())});
+            conn.commit();
+        } catch (SQLException e) {
+            rollback(conn);
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        DatabaseConnection.closeConnection(connection);
+        connection = null;
+    }
+
+    private Connection connection() throws SQLException {
+        if (connection == null) {
+            connection = connections.getConnection();
+            connection.setAutoCommit(false);
+        }
+        return connection;
+    }
+
+    private static void rollback(Connection conn) {
+        try {
+            conn.rollback();
+        } catch (SQLException e) {
+            System.err.println("Error rolling back bulk insert: " + e.getMessage());
+        }
+    }
+
+    private static long version(long version) {
+        return Math.max(1, version);
+    }
+
+    /**
+     * INSERT ... ON DUPLICATE KEY UPDATE every column but the first (the primary key).
+     */
+    private static <T> void upsert(Connection conn, String table, String[] columns, List<T> rows,
+                                   Function<T, Object[]> values) throws SQLException {
+        if (rows.isEmpty()) {
+            return;
+        }
+        if (rows.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("Batch of " + rows.size() + " rows exceeds " + MAX_BATCH_SIZE);
+        }
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(table)
+                .append(" (").append(String.join(", ", columns)).append(") VALUES ");
+        StringBuilder row = new StringBuilder("(");
+        for (int c = 0; c < columns.length; c++) {
+            row.append(c == 0 ? "?" : ", ?");
+        }
+        appendRows(sql, rows.size(), row.append(')').toString());
+        sql.append(" ON DUPLICATE KEY UPDATE ");
+        for (int c = 1; c < columns.length; c++) {
+            sql.append(c == 1 ? "" : ", ").append(columns[c]).append("=VALUES(").append(columns[c]).append(')');
+        }
+        execute(conn, sql.toString(), rows, values);
+    }
+
+    private static void appendRows(StringBuilder sql, int rows, String row) {
+        for (int i = 0; i < rows; i++) {
+            sql.append(i == 0 ? "" : ",").append(row);
+        }
+    }
+
+    private static <T> void execute(Connection conn, String sql, List<T> rows,
+                                    Function<T, Object[]> values) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            int index = 1;
+            for (T row : rows) {
+                for (Object value : values.apply(row)) {
+                    pstmt.setObject(index++, value instanceof LocalDateTime
+                            ? Timestamp.valueOf((LocalDateTime) value) : value);
+                }
+            }
+            pstmt.executeUpdate();
+        }
+    }
+}
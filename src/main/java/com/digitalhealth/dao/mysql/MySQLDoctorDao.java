@@ -1,7 +1,9 @@
 package com.digitalhealth.dao.mysql;
 
 import com.digitalhealth.dao.DoctorDao;
+import com.digitalhealth.exception.OptimisticLockException;
 import com.digitalhealth.model.Doctor;
+import com.digitalhealth.model.DoctorSummary;
 import com.digitalhealth.util.DatabaseConnection;
 
 import java.sql.*;
@@ -24,18 +26,33 @@ public class MySQLDoctorDao implements DoctorDao {
             conn = DatabaseConnection.getConnection();
             conn.setAutoCommit(false);
             
-            // Save doctor basic info
-            String doctorSql = "INSERT INTO doctors (doctor_id, name, specialty) " +
-                              "VALUES (?, ?, ?) " +
-                              "ON DUPLICATE KEY UPDATE name=?, specialty=?";
-            
-            try (PreparedStatement pstmt = conn.prepareStatement(doctorSql)) {
-                pstmt.setString(1, doctor.getDoctorId());
-                pstmt.setString(2, doctor.getName());
-                pstmt.setString(3, doctor.getSpecialty());
-                pstmt.setString(4, doctor.getName());
-                pstmt.setString(5, doctor.getSpecialty());
-                pstmt.executeUpdate();
+            // Save doctor basic info (compare-and-set when the doctor was read from the database)
+            long newVersion;
+            if (doctor.getVersion() == 0) {
+                String doctorSql = "INSERT INTO doctors (doctor_id, name, specialty, version) " +
+                                  "VALUES (?, ?, ?, 1)";
+                
+                try (PreparedStatement pstmt = conn.prepareStatement(doctorSql)) {
+                    pstmt.setString(1, doctor.getDoctorId());
+                    pstmt.setString(2, doctor.getName());
+                    pstmt.setString(3, doctor.getSpecialty());
+                    pstmt.executeUpdate();
+                }
+                newVersion = 1;
+            } else {
+                String doctorSql = "UPDATE doctors SET name=?, specialty=?, version=version+1 " +
+                                  "WHERE doctor_id=? AND version=?";
+                
+                try (PreparedStatement pstmt = conn.prepareStatement(doctorSql)) {
+                    pstmt.setString(1, doctor.getName());
+                    pstmt.setString(2, doctor.getSpecialty());
+                    pstmt.setString(3, doctor.getDoctorId());
+                    pstmt.setLong(4, doctor.getVersion());
+                    if (pstmt.executeUpdate() == 0) {
+                        throw new OptimisticLockException("Doctor", doctor.getDoctorId(), doctor.getVersion());
+                    }
+                }
+                newVersion = doctor.getVersion() + 1;
             }
             
             // Delete existing slots
@@ -59,6 +76,7 @@ public class MySQLDoctorDao implements DoctorDao {
             }
             
             conn.commit();
+            MySQLVersions.assign(doctor, newVersion);
             
         } catch (SQLException e) {
             if (conn != null) {
@@ -68,6 +86,9 @@ public class MySQLDoctorDao implements DoctorDao {
                     // Ignore
                 }
             }
+            if (MySQLVersions.isDuplicateKey(e)) {
+                throw MySQLVersions.alreadyExists(doctor, doctor.getDoctorId());
+            }
             throw new RuntimeException("Error saving doctor: " + e.getMessage(), e);
         } finally {
             if (conn != null) {
@@ -83,9 +104,7 @@ public class MySQLDoctorDao implements DoctorDao {
     
     @Override
     public void saveAll(Map<String, Doctor> doctors) {
-        for (Doctor doctor : doctors.values()) {
-            save(doctor);
-        }
+        MySQLBulkWriter.saveAll(DatabaseConnection.provider(), "doctors", doctors.values(), MySQLBulkWriter::insertDoctors);
     }
     
     @Override
@@ -104,6 +123,7 @@ public class MySQLDoctorDao implements DoctorDao {
                     rs.getString("name"),
                     rs.getString("specialty")
                 );
+                doctor.setVersion(rs.getLong("version"));
                 
                 // Load available slots
                 List<LocalDateTime> slots = loadSlotsForDoctor(doctorId);
@@ -119,6 +139,52 @@ public class MySQLDoctorDao implements DoctorDao {
         return Optional.empty();
     }
     
+    @Override
+    public Optional<DoctorSummary> findSummaryById(String doctorId) {
+        String sql = "SELECT doctor_id, name, specialty FROM doctors WHERE doctor_id = ?";
+        
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            
+            pstmt.setString(1, doctorId);
+            ResultSet rs = pstmt.executeQuery();
+            
+            if (rs.next()) {
+                return Optional.of(new DoctorSummary(
+                    rs.getString("doctor_id"),
+                    rs.getString("name"),
+                    rs.getString("specialty")
+                ));
+            }
+            
+        } catch (SQLException e) {
+            throw new RuntimeException("Error finding doctor: " + e.getMessage(), e);
+        }
+        
+        return Optional.empty();
+    }
+    
+    @Override
+    public Map<String, DoctorSummary> findAllSummaries() {
+        String sql = "SELECT doctor_id, name, specialty FROM doctors";
+        Map<String, DoctorSummary> summaries = new HashMap<>();
+        
+        try (Connection conn = DatabaseConnection.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            
+            while (rs.next()) {
+                String doctorId = rs.getString("doctor_id");
+                summaries.put(doctorId, new DoctorSummary(doctorId, rs.getString("name"), rs.getString("specialty")));
+            }
+            
+        } catch (SQLException e) {
+            throw new RuntimeException("Error loading doctors: " + e.getMessage(), e);
+        }
+        
+        return summaries;
+    }
+    
     @Override
     public Map<String, Doctor> loadAll() {
         Map<String, Doctor> doctors = new HashMap<>();
@@ -135,6 +201,7 @@ public class MySQLDoctorDao implements DoctorDao {
                     rs.getString("name"),
                     rs.getString("specialty")
                 );
+                doctor.setVersion(rs.getLong("version"));
                 
                 // Load available slots
                 List<LocalDateTime> slots = loadSlotsForDoctor(doctorId);
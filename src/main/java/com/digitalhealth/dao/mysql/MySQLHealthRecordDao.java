@@ -2,26 +2,51 @@ package com.digitalhealth.dao.mysql;
 
 import com.digitalhealth.dao.HealthRecordDao;
 import com.digitalhealth.model.HealthRecord;
+import com.digitalhealth.util.ConnectionProvider;
 import com.digitalhealth.util.DatabaseConnection;
 
 import java.sql.*;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 /**
  * MySQL implementation of HealthRecordDao.
  */
 public class MySQLHealthRecordDao implements HealthRecordDao {
+    private static final int IN_CLAUSE_CHUNK = 500;
+
+    private final ConnectionProvider connections;
+
+    /**
+     * DAO on the configured database.
+     */
+    public MySQLHealthRecordDao() {
+        this(DatabaseConnection.provider());
+    }
+
+    /**
+     * DAO on another database, e.g. one shard of a sharded backend.
+     */
+    public MySQLHealthRecordDao(ConnectionProvider connections) {
+        this.connections = connections;
+    }
     
     @Override
     public void save(HealthRecord record) {
-        String sql = "INSERT INTO health_records (record_id, patient_id, doctor_id, symptoms, diagnosis, prescription, record_date) " +
-                     "VALUES (?, ?, ?, ?, ?, ?, ?) " +
-                     "ON DUPLICATE KEY UPDATE patient_id=?, doctor_id=?, symptoms=?, diagnosis=?, prescription=?";
+        if (record.getVersion() != 0) {
+            update(record);
+            return;
+        }
+        String sql = "INSERT INTO health_records (record_id, patient_id, doctor_id, symptoms, diagnosis, prescription, record_date, version) " +
+                     "VALUES (?, ?, ?, ?, ?, ?, ?, 1)";
         
-        try (Connection conn = DatabaseConnection.getConnection();
+        try (Connection conn = connections.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             
             pstmt.setString(1, record.getRecordId());
@@ -31,14 +56,37 @@ public class MySQLHealthRecordDao implements HealthRecordDao {
             pstmt.setString(5, record.getDiagnosis());
             pstmt.setString(6, record.getPrescription());
             pstmt.setTimestamp(7, Timestamp.valueOf(record.getDate()));
-            // For UPDATE part
-            pstmt.setString(8, record.getPatientId());
-            pstmt.setString(9, record.getDoctorId());
-            pstmt.setString(10, record.getSymptoms());
-            pstmt.setString(11, record.getDiagnosis());
-            pstmt.setString(12, record.getPrescription());
             
             pstmt.executeUpdate();
+            MySQLVersions.inserted(record);
+            
+        } catch (SQLException e) {
+            if (MySQLVersions.isDuplicateKey(e)) {
+                throw MySQLVersions.alreadyExists(record, record.getRecordId());
+            }
+            throw new RuntimeException("Error saving health record: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Compare-and-set update of a health record read from the database.
+     */
+    private void update(HealthRecord record) {
+        String sql = "UPDATE health_records SET patient_id=?, doctor_id=?, symptoms=?, diagnosis=?, prescription=?, " +
+                     "version=version+1 WHERE record_id=? AND version=?";
+        
+        try (Connection conn = connections.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            
+            pstmt.setString(1, record.getPatientId());
+            pstmt.setString(2, record.getDoctorId());
+            pstmt.setString(3, record.getSymptoms());
+            pstmt.setString(4, record.getDiagnosis());
+            pstmt.setString(5, record.getPrescription());
+            pstmt.setString(6, record.getRecordId());
+            pstmt.setLong(7, record.getVersion());
+            
+            MySQLVersions.checkUpdated(pstmt.executeUpdate(), record, record.getRecordId());
             
         } catch (SQLException e) {
             throw new RuntimeException("Error saving health record: " + e.getMessage(), e);
@@ -47,32 +95,21 @@ public class MySQLHealthRecordDao implements HealthRecordDao {
     
     @Override
     public void saveAll(Map<String, HealthRecord> records) {
-        for (HealthRecord record : records.values()) {
-            save(record);
-        }
+        MySQLBulkWriter.saveAll(connections, "health records", records.values(), MySQLBulkWriter::insertHealthRecords);
     }
     
     @Override
     public Optional<HealthRecord> findById(String recordId) {
         String sql = "SELECT * FROM health_records WHERE record_id = ?";
         
-        try (Connection conn = DatabaseConnection.getConnection();
+        try (Connection conn = connections.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             
             pstmt.setString(1, recordId);
             ResultSet rs = pstmt.executeQuery();
             
             if (rs.next()) {
-                Timestamp recordDate = rs.getTimestamp("record_date");
-                HealthRecord record = new HealthRecord(
-                    rs.getString("record_id"),
-                    rs.getString("patient_id"),
-                    rs.getString("doctor_id"),
-                    recordDate != null ? recordDate.toLocalDateTime() : LocalDateTime.now(),
-                    rs.getString("symptoms"),
-                    rs.getString("diagnosis"),
-                    rs.getString("prescription")
-                );
+                HealthRecord record = mapResultSetToRecord(rs);
                 return Optional.of(record);
             }
             
@@ -83,26 +120,53 @@ public class MySQLHealthRecordDao implements HealthRecordDao {
         return Optional.empty();
     }
     
+    @Override
+    public List<HealthRecord> findAllById(List<String> ids) {
+        Map<String, HealthRecord> found = new HashMap<>();
+        for (int from = 0; from < ids.size(); from += IN_CLAUSE_CHUNK) {
+            List<String> chunk = ids.subList(from, Math.min(ids.size(), from + IN_CLAUSE_CHUNK));
+            String placeholders = String.join(",", Collections.nCopies(chunk.size(), "?"));
+            String sql = "SELECT * FROM health_records WHERE record_id IN (" + placeholders + ")";
+            
+            try (Connection conn = connections.getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                
+                for (int i = 0; i < chunk.size(); i++) {
+                    pstmt.setString(i + 1, chunk.get(i));
+                }
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        HealthRecord record = mapResultSetToRecord(rs);
+                        found.put(record.getRecordId(), record);
+                    }
+                }
+                
+            } catch (SQLException e) {
+                throw new RuntimeException("Error finding health records by ID: " + e.getMessage(), e);
+            }
+        }
+        
+        List<HealthRecord> result = new ArrayList<>(found.size());
+        for (String id : ids) {
+            HealthRecord record = found.get(id);
+            if (record != null) {
+                result.add(record);
+            }
+        }
+        return result;
+    }
+    
     @Override
     public Map<String, HealthRecord> loadAll() {
         Map<String, HealthRecord> records = new HashMap<>();
         String sql = "SELECT * FROM health_records";
         
-        try (Connection conn = DatabaseConnection.getConnection();
+        try (Connection conn = connections.getConnection();
              Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery(sql)) {
             
             while (rs.next()) {
-                Timestamp recordDate = rs.getTimestamp("record_date");
-                HealthRecord record = new HealthRecord(
-                    rs.getString("record_id"),
-                    rs.getString("patient_id"),
-                    rs.getString("doctor_id"),
-                    recordDate != null ? recordDate.toLocalDateTime() : LocalDateTime.now(),
-                    rs.getString("symptoms"),
-                    rs.getString("diagnosis"),
-                    rs.getString("prescription")
-                );
+                HealthRecord record = mapResultSetToRecord(rs);
                 records.put(record.getRecordId(), record);
             }
             
@@ -116,7 +180,7 @@ public class MySQLHealthRecordDao implements HealthRecordDao {
     @Override
     public boolean exists(String recordId) {
         String sql = "SELECT COUNT(*) FROM health_records WHERE record_id = ?";
-        try (Connection conn = DatabaseConnection.getConnection();
+        try (Connection conn = connections.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, recordId);
             ResultSet rs = pstmt.executeQuery();
@@ -133,7 +197,7 @@ public class MySQLHealthRecordDao implements HealthRecordDao {
     public void delete(String recordId) {
         String sql = "DELETE FROM health_records WHERE record_id = ?";
         
-        try (Connection conn = DatabaseConnection.getConnection();
+        try (Connection conn = connections.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             
             pstmt.setString(1, recordId);
@@ -143,4 +207,101 @@ public class MySQLHealthRecordDao implements HealthRecordDao {
             throw new RuntimeException("Error deleting health record: " + e.getMessage(), e);
         }
     }
+
+    @Override
+    public List<HealthRecord> findByPatientId(String patientId) {
+        return findByColumn("patient_id", patientId);
+    }
+
+    @Override
+    public List<HealthRecord> findByDoctorId(String doctorId) {
+        return findByColumn("doctor_id", doctorId);
+    }
+
+    /**
+     * Query health records by an indexed foreign key column (idx_patient_id / idx_doctor_id).
+     */
+    private List<HealthRecord> findByColumn(String column, String value) {
+        List<HealthRecord> records = new ArrayList<>();
+        String sql = "SELECT * FROM health_records WHERE " + column + " = ?";
+        
+        try (Connection conn = connections.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            
+            pstmt.setString(1, value);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    records.add(mapResultSetToRecord(rs));
+                }
+            }
+            
+        } catch (SQLException e) {
+            throw new RuntimeException("Error finding health records by " + column + ": " + e.getMessage(), e);
+        }
+        
+        return records;
+    }
+
+    /**
+     * Stream matching rows with a forward-only, read-only statement and a fetch size of
+     * {@link Integer#MIN_VALUE}, which makes Connector/J hand over rows as they arrive instead
+     * of buffering the whole result. The connection is held until the scan ends.
+     */
+    @Override
+    public int scan(LocalDateTime from, LocalDateTime to, Consumer<HealthRecord> action) {
+        StringBuilder sql = new StringBuilder("SELECT * FROM health_records");
+        if (from != null || to != null) {
+            sql.append(" WHERE ");
+            if (from != null) {
+                sql.append("record_date >= ?");
+            }
+            if (to != null) {
+                sql.append(from != null ? " AND " : "").append("record_date < ?");
+            }
+        }
+        int count = 0;
+        
+        try (Connection conn = connections.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql.toString(),
+                     ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            
+            pstmt.setFetchSize(Integer.MIN_VALUE);
+            int index = 1;
+            if (from != null) {
+                pstmt.setTimestamp(index++, Timestamp.valueOf(from));
+            }
+            if (to != null) {
+                pstmt.setTimestamp(index, Timestamp.valueOf(to));
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    action.accept(mapResultSetToRecord(rs));
+                    count++;
+                }
+            }
+            
+        } catch (SQLException e) {
+            throw new RuntimeException("Error scanning health records: " + e.getMessage(), e);
+        }
+        
+        return count;
+    }
+
+    /**
+     * Map ResultSet to HealthRecord object.
+     */
+    private HealthRecord mapResultSetToRecord(ResultSet rs) throws SQLException {
+        Timestamp recordDate = rs.getTimestamp("record_date");
+        HealthRecord record = new HealthRecord(
+            rs.getString("record_id"),
+            rs.getString("patient_id"),
+            rs.getString("doctor_id"),
+            recordDate != null ? recordDate.toLocalDateTime() : LocalDateTime.now(),
+            rs.getString("symptoms"),
+            rs.getString("diagnosis"),
+            rs.getString("prescription")
+        );
+        record.setVersion(rs.getLong("version"));
+        return record;
+    }
 }
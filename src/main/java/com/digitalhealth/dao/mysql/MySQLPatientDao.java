@@ -2,10 +2,14 @@ package com.digitalhealth.dao.mysql;
 
 import com.digitalhealth.dao.PatientDao;
 import com.digitalhealth.model.Patient;
+import com.digitalhealth.util.ConnectionProvider;
 import com.digitalhealth.util.DatabaseConnection;
 
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -13,14 +17,34 @@ import java.util.Optional;
  * MySQL implementation of PatientDao.
  */
 public class MySQLPatientDao implements PatientDao {
+    private static final int IN_CLAUSE_CHUNK = 500;
+
+    private final ConnectionProvider connections;
+
+    /**
+     * DAO on the configured database.
+     */
+    public MySQLPatientDao() {
+        this(DatabaseConnection.provider());
+    }
+
+    /**
+     * DAO on another database, e.g. one shard of a sharded backend.
+     */
+    public MySQLPatientDao(ConnectionProvider connections) {
+        this.connections = connections;
+    }
     
     @Override
     public void save(Patient patient) {
-        String sql = "INSERT INTO patients (patient_id, name, age, gender, contact) " +
-                     "VALUES (?, ?, ?, ?, ?) " +
-                     "ON DUPLICATE KEY UPDATE name=?, age=?, gender=?, contact=?";
+        if (patient.getVersion() != 0) {
+            update(patient);
+            return;
+        }
+        String sql = "INSERT INTO patients (patient_id, name, age, gender, contact, version) " +
+                     "VALUES (?, ?, ?, ?, ?, 1)";
         
-        try (Connection conn = DatabaseConnection.getConnection();
+        try (Connection conn = connections.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             
             pstmt.setString(1, patient.getPatientId());
@@ -28,13 +52,36 @@ public class MySQLPatientDao implements PatientDao {
             pstmt.setInt(3, patient.getAge());
             pstmt.setString(4, patient.getGender());
             pstmt.setString(5, patient.getContact());
-            // For UPDATE part
-            pstmt.setString(6, patient.getName());
-            pstmt.setInt(7, patient.getAge());
-            pstmt.setString(8, patient.getGender());
-            pstmt.setString(9, patient.getContact());
             
             pstmt.executeUpdate();
+            MySQLVersions.inserted(patient);
+            
+        } catch (SQLException e) {
+            if (MySQLVersions.isDuplicateKey(e)) {
+                throw MySQLVersions.alreadyExists(patient, patient.getPatientId());
+            }
+            throw new RuntimeException("Error saving patient: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Compare-and-set update of a patient read from the database.
+     */
+    private void update(Patient patient) {
+        String sql = "UPDATE patients SET name=?, age=?, gender=?, contact=?, version=version+1 " +
+                     "WHERE patient_id=? AND version=?";
+        
+        try (Connection conn = connections.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            
+            pstmt.setString(1, patient.getName());
+            pstmt.setInt(2, patient.getAge());
+            pstmt.setString(3, patient.getGender());
+            pstmt.setString(4, patient.getContact());
+            pstmt.setString(5, patient.getPatientId());
+            pstmt.setLong(6, patient.getVersion());
+            
+            MySQLVersions.checkUpdated(pstmt.executeUpdate(), patient, patient.getPatientId());
             
         } catch (SQLException e) {
             throw new RuntimeException("Error saving patient: " + e.getMessage(), e);
@@ -43,16 +90,14 @@ public class MySQLPatientDao implements PatientDao {
     
     @Override
     public void saveAll(Map<String, Patient> patients) {
-        for (Patient patient : patients.values()) {
-            save(patient);
-        }
+        MySQLBulkWriter.saveAll(connections, "patients", patients.values(), MySQLBulkWriter::insertPatients);
     }
     
     @Override
     public Optional<Patient> findById(String patientId) {
         String sql = "SELECT * FROM patients WHERE patient_id = ?";
         
-        try (Connection conn = DatabaseConnection.getConnection();
+        try (Connection conn = connections.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             
             pstmt.setString(1, patientId);
@@ -66,6 +111,7 @@ public class MySQLPatientDao implements PatientDao {
                     rs.getString("gender"),
                     rs.getString("contact")
                 );
+                patient.setVersion(rs.getLong("version"));
                 return Optional.of(patient);
             }
             
@@ -76,12 +122,55 @@ public class MySQLPatientDao implements PatientDao {
         return Optional.empty();
     }
     
+    @Override
+    public List<Patient> findAllById(List<String> ids) {
+        Map<String, Patient> found = new HashMap<>();
+        for (int from = 0; from < ids.size(); from += IN_CLAUSE_CHUNK) {
+            List<String> chunk = ids.subList(from, Math.min(ids.size(), from + IN_CLAUSE_CHUNK));
+            String placeholders = String.join(",", Collections.nCopies(chunk.size(), "?"));
+            String sql = "SELECT * FROM patients WHERE patient_id IN (" + placeholders + ")";
+            
+            try (Connection conn = connections.getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                
+                for (int i = 0; i < chunk.size(); i++) {
+                    pstmt.setString(i + 1, chunk.get(i));
+                }
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        Patient patient = new Patient(
+                            rs.getString("patient_id"),
+                            rs.getString("name"),
+                            rs.getInt("age"),
+                            rs.getString("gender"),
+                            rs.getString("contact")
+                        );
+                        patient.setVersion(rs.getLong("version"));
+                        found.put(patient.getPatientId(), patient);
+                    }
+                }
+                
+            } catch (SQLException e) {
+                throw new RuntimeException("Error finding patients by ID: " + e.getMessage(), e);
+            }
+        }
+        
+        List<Patient> result = new ArrayList<>(found.size());
+        for (String id : ids) {
+            Patient patient = found.get(id);
+            if (patient != null) {
+                result.add(patient);
+            }
+        }
+        return result;
+    }
+
     @Override
     public Map<String, Patient> loadAll() {
         Map<String, Patient> patients = new HashMap<>();
         String sql = "SELECT * FROM patients";
         
-        try (Connection conn = DatabaseConnection.getConnection();
+        try (Connection conn = connections.getConnection();
              Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery(sql)) {
             
@@ -93,6 +182,7 @@ public class MySQLPatientDao implements PatientDao {
                     rs.getString("gender"),
                     rs.getString("contact")
                 );
+                patient.setVersion(rs.getLong("version"));
                 patients.put(patient.getPatientId(), patient);
             }
             
@@ -106,7 +196,7 @@ public class MySQLPatientDao implements PatientDao {
     @Override
     public boolean exists(String patientId) {
         String sql = "SELECT COUNT(*) FROM patients WHERE patient_id = ?";
-        try (Connection conn = DatabaseConnection.getConnection();
+        try (Connection conn = connections.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, patientId);
             ResultSet rs = pstmt.executeQuery();
@@ -123,7 +213,7 @@ public class MySQLPatientDao implements PatientDao {
     public void delete(String patientId) {
         String sql = "DELETE FROM patients WHERE patient_id = ?";
         
-        try (Connection conn = DatabaseConnection.getConnection();
+        try (Connection conn = connections.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             
             pstmt.setString(1, patientId);
@@ -0,0 +1,203 @@
+package com.digitalhealth.dao.mysql;
+
+import com.digitalhealth.util.ConnectionProvider;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Databases of a sharded MySQL backend and the threads that query them in parallel.
+ * Patients are placed on a consistent-hash ring: every shard owns {@value #POINTS_PER_SHARD}
+ * points derived from its name, and a patient belongs to the shard owning the first point at
+ * or after the hash of the patient ID. Placement depends only on the shard names, not on their
+ * order or on the URLs, and adding a shard takes over about 1/N of the patients from the
+ * others without moving any between existing shards. Since placement follows the names, each
+ * database records the name of its shard, and {@link #checkShardIdentities()} refuses a layout
+ * that gives a database another name.
+ */
+public class MySQLShardLayout {
+    static final int POINTS_PER_SHARD = 160;
+
+    private final List<String> names;
+    private final List<ConnectionProvider> databases;
+    private final TreeMap<Long, Integer> ring = new TreeMap<>();
+    private final ThreadPoolExecutor queries;
+
+    /**
+     * @param shards Database of each shard by shard name
+     */
+    public MySQLShardLayout(Map<String, ? extends ConnectionProvider> shards) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard database is required");
+        }
+        this.names = new ArrayList<>(shards.keySet());
+        this.databases = new ArrayList<>(shards.values());
+        for (int shard = 0; shard < names.size(); shard++) {
+            for (int point = 0; point < POINTS_PER_SHARD; point++) {
+                Integer owner = ring.putIfAbsent(hash(names.get(shard) + "#" + point), shard);
+                if (owner != null && names.get(owner).compareTo(names.get(shard)) > 0) {
+                    // Settle a (very unlikely) collision the same way whatever the shard order
+                    ring.put(hash(names.get(shard) + "#" + point), shard);
+                }
+            }
+        }
+
+        AtomicInteger threadCount = new AtomicInteger(1);
+        this.queries = new ThreadPoolExecutor(names.size(), names.size(), 30L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "mysql-shard-" + threadCount.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        queries.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Number of shards.
+     */
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * Name of a shard.
+     */
+    public String getName(int shard) {
+        return names.get(shard);
+    }
+
+    /**
+     * Database of a shard.
+     */
+    public ConnectionProvider getDatabase(int shard) {
+        return databases.get(shard);
+    }
+
+    /**
+     * Databases of all shards, in shard order.
+     */
+    public List<ConnectionProvider> getDatabases() {
+        return Collections.unmodifiableList(databases);
+    }
+
+    /**
+     * Shard the data of this patient lives in.
+     */
+    public int shardOf(String patientId) {
+        Map.Entry<Long, Integer> point = ring.ceilingEntry(hash(patientId));
+        return point != null ? point.getValue() : ring.firstEntry().getValue();
+    }
+
+    /**
+     * Check that every database holds the shard it is configured as, before any patient is
+     * routed. A database records its shard name in shard_identity (see schema-shard.sql) the
+     * first time it is checked; after that, swapped shard URLs or one database configured for
+     * two shards are refused instead of silently misrouting patients.
+     *
+     * @throws IllegalStateException if a database belongs to another shard or cannot be checked
+     */
+    public void checkShardIdentities() {
+        for (int shard = 0; shard < names.size(); shard++) {
+            String name = names.get(shard);
+            ConnectionProvider database = databases.get(shard);
+            String recorded = recordIdentity(database, name);
+            if (!name.equals(recorded)) {
+                throw new IllegalStateException("Shard database " + database.getUrl() + " holds shard " + recorded
+                        + " but is configured as shard " + name + "; patients must be moved to change the layout");
+            }
+        }
+    }
+
+    /**
+     * Record the shard name in a database that has none yet and return the name it holds.
+     */
+    private static String recordIdentity(ConnectionProvider database, String name) {
+        try (Connection conn = database.openConnection()) {
+            try (PreparedStatement insert = conn.prepareStatement(
+                    "INSERT IGNORE INTO shard_identity (id, shard_name) VALUES (1, ?)")) {
+                insert.setString(1, name);
+                insert.executeUpdate();
+            }
+            try (PreparedStatement select = conn.prepareStatement("SELECT shard_name FROM shard_identity WHERE id = 1");
+                 ResultSet rs = select.executeQuery()) {
+                if (!rs.next()) {
+                    throw new IllegalStateException("Shard database " + database.getUrl() + " has no shard_identity row");
+                }
+                return rs.getString(1);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Error checking shard " + name + " at " + database.getUrl()
+                    + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Run one task per shard and return their results in shard order. Tasks run in parallel,
+     * except inside a unit of work, whose connections belong to the calling thread; then they
+     * run one after the other on it. A task's exception is rethrown after every task has finished.
+     */
+    <T> List<T> runAll(List<? extends Callable<T>> tasks) {
+        if (databases.get(0).inTransaction()) {
+            List<T> results = new ArrayList<>(tasks.size());
+            for (Callable<T> task : tasks) {
+                try {
+                    results.add(task.call());
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            return results;
+        }
+
+        List<Future<T>> futures = new ArrayList<>(tasks.size());
+        for (Callable<T> task : tasks) {
+            futures.add(queries.submit(task));
+        }
+        List<T> results = new ArrayList<>(tasks.size());
+        RuntimeException failure = null;
+        for (Future<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof RuntimeException
+                            ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for shards", e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return results;
+    }
+
+    /**
+     * First 8 bytes of the MD5 digest: stable across JVMs, unlike String.hashCode, and well
+     * spread for sequential IDs.
+     */
+    private static long hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+            long h = 0;
+            for (int i = 0; i < 8; i++) {
+                h = (h << 8) | (digest[i] & 0xFF);
+            }
+            return h;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 not available", e);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.digitalhealth.dao.mysql;
+
+import com.digitalhealth.dao.JoinedUnitOfWork;
+import com.digitalhealth.dao.TransactionManager;
+import com.digitalhealth.dao.UnitOfWork;
+import com.digitalhealth.util.ConnectionProvider;
+import com.digitalhealth.util.DatabaseConnection;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Transaction manager for the MySQL backend.
+ * A unit of work holds one connection per database with auto-commit disabled; while it is
+ * open, every MySQL DAO call on the same thread runs on that connection and is committed once.
+ *
+ * With several databases (a sharded backend), a database's connection is only opened when a
+ * DAO first uses it, and commit commits the used databases one by one in the order they were
+ * given. This is not atomic across databases: if a later commit fails, the earlier ones stay
+ * committed. Databases are therefore given with the directory database (doctors and their
+ * slots) first, so a failed booking loses a slot rather than booking it twice.
+ *
+ * Entity versions assigned by the DAOs are set back if the unit of work rolls back or its
+ * commit fails, so a retry compares against what the database holds.
+ */
+public class MySQLTransactionManager implements TransactionManager {
+    private final List<ConnectionProvider> databases;
+    private final ThreadLocal<MySQLUnitOfWork> current = new ThreadLocal<>();
+
+    /**
+     * Transaction manager of the configured database.
+     */
+    public MySQLTransactionManager() {
+        this(Collections.singletonList(DatabaseConnection.provider()));
+    }
+
+    /**
+     * Transaction manager spanning several databases, committed in this order.
+     */
+    public MySQLTransactionManager(List<? extends ConnectionProvider> databases) {
+        this.databases = new ArrayList<>(databases);
+    }
+
+    @Override
+    public UnitOfWork begin() {
+        MySQLUnitOfWork outer = current.get();
+        if (outer != null) {
+            return new JoinedUnitOfWork(outer);
+        }
+        if (databases.size() == 1) {
+            // Open eagerly so that an unreachable database fails here rather than in a DAO
+            try {
+                Connection conn = databases.get(0).openConnection();
+                conn.setAutoCommit(false);
+                return start(Collections.singletonList(new DatabaseTransaction(databases.get(0), conn)));
+            } catch (SQLException e) {
+                throw new RuntimeException("Error starting transaction: " + e.getMessage(), e);
+            }
+        }
+        List<DatabaseTransaction> transactions = new ArrayList<>(databases.size());
+        for (ConnectionProvider database : databases) {
+            transactions.add(new DatabaseTransaction(database, null));
+        }
+        return start(transactions);
+    }
+
+    private MySQLUnitOfWork start(List<DatabaseTransaction> transactions) {
+        MySQLUnitOfWork uow = new MySQLUnitOfWork(transactions);
+        current.set(uow);
+        MySQLVersions.track();
+        for (DatabaseTransaction transaction : transactions) {
+            transaction.database.bindTransaction(transaction.proxy);
+        }
+        return uow;
+    }
+
+    /**
+     * The part of a unit of work on one database. DAOs get a proxy that opens the physical
+     * connection on first use.
+     */
+    private static class DatabaseTransaction implements InvocationHandler {
+        private final ConnectionProvider database;
+        private final Connection proxy;
+        private Connection conn;
+
+        DatabaseTransaction(ConnectionProvider database, Connection conn) {
+            this.database = database;
+            this.conn = conn;
+            this.proxy = (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(), new Class<?>[] {Connection.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (conn == null) {
+                conn = database.openConnection();
+                conn.setAutoCommit(false);
+            }
+            try {
+                return method.invoke(conn, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        void commit() throws SQLException {
+            if (conn != null) {
+                conn.commit();
+            }
+        }
+
+        void rollback() {
+            if (conn == null) {
+                return;
+            }
+            try {
+                conn.rollback();
+            } catch (SQLException e) {
+                System.err.println("Error rolling back transaction: " + e.getMessage());
+            }
+        }
+
+        void release() {
+            database.unbindTransaction();
+            if (conn == null) {
+                return;
+            }
+            try {
+                conn.setAutoCommit(true);
+            } catch (SQLException e) {
+                // Ignore
+            }
+            DatabaseConnection.closeConnection(conn);
+        }
+    }
+
+    private class MySQLUnitOfWork implements UnitOfWork {
+        private final List<DatabaseTransaction> transactions;
+        private boolean rollbackOnly;
+        private boolean finished;
+
+        MySQLUnitOfWork(List<DatabaseTransaction> transactions) {
+            this.transactions = transactions;
+        }
+
+        @Override
+        public void commit() {
+            if (finished) {
+                throw new IllegalStateException("Unit of work already finished");
+            }
+            if (rollbackOnly) {
+                close();
+                throw new IllegalStateException("Unit of work was marked rollback-only");
+            }
+            for (int i = 0; i < transactions.size(); i++) {
+                DatabaseTransaction transaction = transactions.get(i);
+                try {
+                    transaction.commit();
+                } catch (SQLException e) {
+                    String message = "Error committing transaction: " + e.getMessage();
+                    if (i > 0) {
+                        message += " (on " + transaction.database.getUrl()
+                                + "; databases before it were already committed)";
+                    }
+                    close();
+                    throw new RuntimeException(message, e);
+                }
+            }
+            MySQLVersions.untrack(true);
+            release();
+        }
+
+        @Override
+        public void setRollbackOnly() {
+            rollbackOnly = true;
+        }
+
+        @Override
+        public void close() {
+            if (finished) {
+                return;
+            }
+            for (DatabaseTransaction transaction : transactions) {
+                transaction.rollback();
+            }
+            MySQLVersions.untrack(false);
+            release();
+        }
+
+        private void release() {
+            finished = true;
+            current.remove();
+            for (DatabaseTransaction transaction : transactions) {
+                transaction.release();
+            }
+        }
+    }
+}
@@ -9,6 +9,7 @@ import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -19,8 +20,8 @@ public class MySQLUserDao implements UserDao {
 
     @Override
     public void save(User user) {
-        String sql = "INSERT INTO users (user_id, username, password_hash, role, linked_entity_id, created_at, last_login, is_active) " +
-                     "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+        String sql = "INSERT INTO users (user_id, username, password_hash, role, linked_entity_id, created_at, last_login, is_active, version) " +
+                     "VALUES (?, ?, ?, ?, ?, ?, ?, ?, 1)";
         
         try (Connection conn = DatabaseConnection.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -35,9 +36,13 @@ public class MySQLUserDao implements UserDao {
             stmt.setBoolean(8, user.isActive());
             
             stmt.executeUpdate();
+            MySQLVersions.inserted(user);
             System.out.println("User saved to MySQL: " + user.getUsername());
             
         } catch (SQLException e) {
+            if (MySQLVersions.isDuplicateKey(e)) {
+                throw MySQLVersions.alreadyExists(user, user.getUserId());
+            }
             System.err.println("Error saving user to MySQL: " + e.getMessage());
             throw new RuntimeException("Failed to save user", e);
         }
@@ -107,10 +112,16 @@ public class MySQLUserDao implements UserDao {
         return users;
     }
 
+    /**
+     * Update a user. A user read from the database (version != 0) is only updated if its
+     * version still matches, otherwise an OptimisticLockException is thrown.
+     */
     @Override
     public void update(User user) {
+        boolean versioned = user.getVersion() != 0;
         String sql = "UPDATE users SET username = ?, password_hash = ?, role = ?, linked_entity_id = ?, " +
-                     "last_login = ?, is_active = ? WHERE user_id = ?";
+                     "last_login = ?, is_active = ?, version = version + 1 WHERE user_id = ?" +
+                     (versioned ? " AND version = ?" : "");
         
         try (Connection conn = DatabaseConnection.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -122,8 +133,14 @@ public class MySQLUserDao implements UserDao {
             stmt.setTimestamp(5, user.getLastLogin() != null ? Timestamp.valueOf(user.getLastLogin()) : null);
             stmt.setBoolean(6, user.isActive());
             stmt.setString(7, user.getUserId());
+            if (versioned) {
+                stmt.setLong(8, user.getVersion());
+            }
             
             int rowsAffected = stmt.executeUpdate();
+            if (versioned) {
+                MySQLVersions.checkUpdated(rowsAffected, user, user.getUserId());
+            }
             if (rowsAffected > 0) {
                 System.out.println("User updated in MySQL: " + user.getUsername());
             }
@@ -175,6 +192,11 @@ public class MySQLUserDao implements UserDao {
         return false;
     }
 
+    @Override
+    public void saveAll(Map<String, User> users) {
+        MySQLBulkWriter.saveAll(DatabaseConnection.provider(), "users", users.values(), MySQLBulkWriter::insertUsers);
+    }
+
     /**
      * Map ResultSet to User object.
      */
@@ -197,6 +219,7 @@ public class MySQLUserDao implements UserDao {
         }
         
         user.setActive(rs.getBoolean("is_active"));
+        user.setVersion(rs.getLong("version"));
         
         return user;
     }
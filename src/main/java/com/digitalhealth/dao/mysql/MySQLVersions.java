@@ -0,0 +1,91 @@
+package com.digitalhealth.dao.mysql;
+
+import com.digitalhealth.exception.OptimisticLockException;
+import com.digitalhealth.model.Versioned;
+
+import java.sql.SQLException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Shared version-column handling for the MySQL DAOs.
+ * Unversioned saves (version 0) are plain INSERTs of version 1, so saving over an existing row
+ * fails on its primary key; versioned saves use {@code UPDATE ... WHERE id = ? AND version = ?}.
+ *
+ * Outside a unit of work a statement is committed when it returns, so the entity gets its new
+ * version right away. Inside one, {@link MySQLTransactionManager} tracks the versions assigned
+ * on its thread and sets them back if the unit of work rolls back or fails to commit.
+ */
+final class MySQLVersions {
+    private static final int ER_DUP_ENTRY = 1062;
+
+    // Entity -> version before the open unit of work first changed it
+    private static final ThreadLocal<Map<Versioned, Long>> ASSIGNED = new ThreadLocal<>();
+
+    private MySQLVersions() {
+    }
+
+    /**
+     * Check if an INSERT failed because the row already exists.
+     */
+    static boolean isDuplicateKey(SQLException e) {
+        return e.getErrorCode() == ER_DUP_ENTRY;
+    }
+
+    /**
+     * Exception for an unversioned save of an entity that is already stored.
+     */
+    static OptimisticLockException alreadyExists(Versioned entity, String id) {
+        return new OptimisticLockException(entity.getClass().getSimpleName() + " " + id + " already exists");
+    }
+
+    /**
+     * Set the version of an entity just inserted.
+     */
+    static void inserted(Versioned entity) {
+        assign(entity, 1);
+    }
+
+    /**
+     * Check the row count of a versioned UPDATE and advance the entity version.
+     *
+     * @throws OptimisticLockException if no row matched the expected version
+     */
+    static void checkUpdated(int rowsAffected, Versioned entity, String id) {
+        if (rowsAffected == 0) {
+            throw new OptimisticLockException(entity.getClass().getSimpleName(), id, entity.getVersion());
+        }
+        assign(entity, entity.getVersion() + 1);
+    }
+
+    /**
+     * Set the version written for an entity, remembering the old one if a unit of work is open.
+     */
+    static void assign(Versioned entity, long version) {
+        Map<Versioned, Long> assigned = ASSIGNED.get();
+        if (assigned != null) {
+            assigned.putIfAbsent(entity, entity.getVersion());
+        }
+        entity.setVersion(version);
+    }
+
+    /**
+     * Start tracking version changes for a unit of work opened on this thread.
+     */
+    static void track() {
+        ASSIGNED.set(new IdentityHashMap<>());
+    }
+
+    /**
+     * Stop tracking, setting every tracked entity back to its old version unless committed.
+     */
+    static void untrack(boolean committed) {
+        Map<Versioned, Long> assigned = ASSIGNED.get();
+        ASSIGNED.remove();
+        if (assigned != null && !committed) {
+            for (Map.Entry<Versioned, Long> entry : assigned.entrySet()) {
+                entry.getKey().setVersion(entry.getValue());
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.digitalhealth.dao.mysql;
+
+import com.digitalhealth.dao.AppointmentDao;
+import com.digitalhealth.model.Appointment;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * AppointmentDao over several {@link MySQLAppointmentDao} shards, placed by the consistent hash
+ * of the patient ID so that a patient's appointments share the patient's database. A patient's
+ * appointments are queried on one database; lookups by appointment or doctor ID query all
+ * shards in parallel.
+ */
+public class ShardedMySQLAppointmentDao extends ShardedMySQLStore<MySQLAppointmentDao>
+        implements AppointmentDao {
+
+    public ShardedMySQLAppointmentDao(MySQLShardLayout layout) {
+        super(layout, MySQLAppointmentDao::new);
+    }
+
+    @Override
+    public void saveAll(Map<String, Appointment> appointments) {
+        saveAllShards(appointments, Appointment::getPatientId, MySQLAppointmentDao::saveAll);
+    }
+
+    @Override
+    public Map<String, Appointment> loadAll() {
+        return loadAllShards(MySQLAppointmentDao::loadAll);
+    }
+
+    @Override
+    public Optional<Appointment> findById(String id) {
+        return findInShards(shard -> shard.findById(id));
+    }
+
+    @Override
+    public void save(Appointment appointment) {
+        shardFor(appointment.getPatientId()).save(appointment);
+    }
+
+    @Override
+    public boolean exists(String appointmentId) {
+        return queryShards(shard -> shard.exists(appointmentId)).contains(true);
+    }
+
+    @Override
+    public void delete(String appointmentId) {
+        findById(appointmentId).ifPresent(appointment ->
+                shardFor(appointment.getPatientId()).delete(appointmentId));
+    }
+
+    @Override
+    public List<Appointment> findByPatientId(String patientId) {
+        return shardFor(patientId).findByPatientId(patientId);
+    }
+
+    @Override
+    public List<Appointment> findByDoctorId(String doctorId) {
+        return listShards(shard -> shard.findByDoctorId(doctorId));
+    }
+}
@@ -0,0 +1,92 @@
+package com.digitalhealth.dao.mysql;
+
+import com.digitalhealth.dao.HealthRecordDao;
+import com.digitalhealth.model.HealthRecord;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * HealthRecordDao over several {@link MySQLHealthRecordDao} shards, placed by the consistent
+ * hash of the patient ID so that a patient's records share the patient's database. A patient's
+ * records are queried on one database; other queries go to all shards in parallel.
+ */
+public class ShardedMySQLHealthRecordDao extends ShardedMySQLStore<MySQLHealthRecordDao>
+        implements HealthRecordDao {
+
+    public ShardedMySQLHealthRecordDao(MySQLShardLayout layout) {
+        super(layout, MySQLHealthRecordDao::new);
+    }
+
+    @Override
+    public void saveAll(Map<String, HealthRecord> records) {
+        saveAllShards(records, HealthRecord::getPatientId, MySQLHealthRecordDao::saveAll);
+    }
+
+    @Override
+    public Map<String, HealthRecord> loadAll() {
+        return loadAllShards(MySQLHealthRecordDao::loadAll);
+    }
+
+    @Override
+    public Optional<HealthRecord> findById(String id) {
+        return findInShards(shard -> shard.findById(id));
+    }
+
+    @Override
+    public List<HealthRecord> findAllById(List<String> ids) {
+        Map<String, HealthRecord> found = new HashMap<>();
+        for (List<HealthRecord> records : queryShards(shard -> shard.findAllById(ids))) {
+            for (HealthRecord record : records) {
+                found.put(record.getRecordId(), record);
+            }
+        }
+        List<HealthRecord> result = new ArrayList<>(found.size());
+        for (String id : ids) {
+            HealthRecord record = found.get(id);
+            if (record != null) {
+                result.add(record);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void save(HealthRecord record) {
+        shardFor(record.getPatientId()).save(record);
+    }
+
+    @Override
+    public boolean exists(String recordId) {
+        return queryShards(shard -> shard.exists(recordId)).contains(true);
+    }
+
+    @Override
+    public void delete(String recordId) {
+        findById(recordId).ifPresent(record -> shardFor(record.getPatientId()).delete(recordId));
+    }
+
+    @Override
+    public List<HealthRecord> findByPatientId(String patientId) {
+        return shardFor(patientId).findByPatientId(patientId);
+    }
+
+    @Override
+    public List<HealthRecord> findByDoctorId(String doctorId) {
+        return listShards(shard -> shard.findByDoctorId(doctorId));
+    }
+
+    /**
+     * Streams the shards one after the other on the calling thread, so the action is never
+     * called concurrently and only one shard's result is in flight.
+     */
+    @Override
+    public int scan(LocalDateTime from, LocalDateTime to, Consumer<HealthRecord> action) {
+        int count = 0;
+        for (MySQLHealthRecordDao shard : shards) {
+            count += shard.scan(from, to, action);
+        }
+        return count;
+    }
+}
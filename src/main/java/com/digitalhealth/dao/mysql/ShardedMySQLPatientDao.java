@@ -0,0 +1,79 @@
+package com.digitalhealth.dao.mysql;
+
+import com.digitalhealth.dao.PatientDao;
+import com.digitalhealth.model.Patient;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+
+/**
+ * PatientDao over several {@link MySQLPatientDao} shards, placed by the consistent hash of the
+ * patient ID. Lookups by ID query one database; listing all patients queries them in parallel.
+ */
+public class ShardedMySQLPatientDao extends ShardedMySQLStore<MySQLPatientDao> implements PatientDao {
+
+    public ShardedMySQLPatientDao(MySQLShardLayout layout) {
+        super(layout, MySQLPatientDao::new);
+    }
+
+    @Override
+    public void saveAll(Map<String, Patient> patients) {
+        saveAllShards(patients, Patient::getPatientId, MySQLPatientDao::saveAll);
+    }
+
+    @Override
+    public Map<String, Patient> loadAll() {
+        return loadAllShards(MySQLPatientDao::loadAll);
+    }
+
+    @Override
+    public Optional<Patient> findById(String id) {
+        return shardFor(id).findById(id);
+    }
+
+    /**
+     * Queries only the shards holding the requested IDs, in parallel.
+     */
+    @Override
+    public List<Patient> findAllById(List<String> ids) {
+        Map<Integer, List<String>> idsByShard = new TreeMap<>();
+        for (String id : ids) {
+            idsByShard.computeIfAbsent(layout.shardOf(id), s -> new ArrayList<>()).add(id);
+        }
+        List<Callable<List<Patient>>> queries = new ArrayList<>(idsByShard.size());
+        for (Map.Entry<Integer, List<String>> entry : idsByShard.entrySet()) {
+            MySQLPatientDao shard = shards.get(entry.getKey());
+            queries.add(() -> shard.findAllById(entry.getValue()));
+        }
+        Map<String, Patient> found = new HashMap<>();
+        for (List<Patient> patients : layout.runAll(queries)) {
+            for (Patient patient : patients) {
+                found.put(patient.getPatientId(), patient);
+            }
+        }
+
+        List<Patient> result = new ArrayList<>(found.size());
+        for (String id : ids) {
+            Patient patient = found.get(id);
+            if (patient != null) {
+                result.add(patient);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void save(Patient patient) {
+        shardFor(patient.getPatientId()).save(patient);
+    }
+
+    @Override
+    public boolean exists(String patientId) {
+        return shardFor(patientId).exists(patientId);
+    }
+
+    @Override
+    public void delete(String patientId) {
+        shardFor(patientId).delete(patientId);
+    }
+}
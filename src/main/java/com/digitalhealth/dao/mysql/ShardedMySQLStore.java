@@ -0,0 +1,122 @@
+package com.digitalhealth.dao.mysql;
+
+import com.digitalhealth.util.ConnectionProvider;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Common part of the sharded MySQL DAOs: one ordinary MySQL DAO per shard database. Queries
+ * that cannot be routed to one shard are sent to every shard in parallel (scatter) and their
+ * results merged (gather).
+ *
+ * @param <D> MySQL DAO of one shard
+ */
+abstract class ShardedMySQLStore<D> {
+    protected final MySQLShardLayout layout;
+    protected final List<D> shards;
+
+    /**
+     * @param shardFactory Creates the DAO of a shard from its database
+     */
+    ShardedMySQLStore(MySQLShardLayout layout, Function<ConnectionProvider, D> shardFactory) {
+        this.layout = layout;
+        List<D> created = new ArrayList<>(layout.size());
+        for (int i = 0; i < layout.size(); i++) {
+            created.add(shardFactory.apply(layout.getDatabase(i)));
+        }
+        this.shards = Collections.unmodifiableList(created);
+    }
+
+    /**
+     * DAOs of the shards, in shard order.
+     */
+    public List<D> getShards() {
+        return shards;
+    }
+
+    /**
+     * Shard holding the data of this patient.
+     */
+    protected D shardFor(String patientId) {
+        return shards.get(layout.shardOf(patientId));
+    }
+
+    /**
+     * Run a query on every shard and return the results in shard order.
+     */
+    protected <R> List<R> queryShards(Function<D, R> query) {
+        List<Callable<R>> tasks = new ArrayList<>(shards.size());
+        for (D shard : shards) {
+            tasks.add(() -> query.apply(shard));
+        }
+        return layout.runAll(tasks);
+    }
+
+    /**
+     * Merge the maps returned by every shard.
+     */
+    protected <T> Map<String, T> loadAllShards(Function<D, Map<String, T>> load) {
+        List<Map<String, T>> results = queryShards(load);
+        int size = 0;
+        for (Map<String, T> result : results) {
+            size += result.size();
+        }
+        Map<String, T> all = new HashMap<>(size * 4 / 3 + 1);
+        for (Map<String, T> result : results) {
+            all.putAll(result);
+        }
+        return all;
+    }
+
+    /**
+     * Concatenate the lists returned by every shard.
+     */
+    protected <T> List<T> listShards(Function<D, List<T>> list) {
+        List<T> all = new ArrayList<>();
+        for (List<T> result : queryShards(list)) {
+            all.addAll(result);
+        }
+        return all;
+    }
+
+    /**
+     * Find an entity that is not routed by its own ID in whichever shard holds it.
+     */
+    protected <T> Optional<T> findInShards(Function<D, Optional<T>> find) {
+        for (Optional<T> result : queryShards(find)) {
+            if (result.isPresent()) {
+                return result;
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Split entities by the shard of their patient and save each part on its shard in parallel.
+     */
+    protected <T> void saveAllShards(Map<String, T> entities, Function<T, String> patientId,
+                                     BiConsumer<D, Map<String, T>> saveAll) {
+        List<Map<String, T>> partitions = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            partitions.add(new HashMap<>());
+        }
+        for (Map.Entry<String, T> entry : entities.entrySet()) {
+            partitions.get(layout.shardOf(patientId.apply(entry.getValue()))).put(entry.getKey(), entry.getValue());
+        }
+        List<Callable<Void>> writes = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            D shard = shards.get(i);
+            Map<String, T> partition = partitions.get(i);
+            if (!partition.isEmpty()) {
+                writes.add(() -> {
+                    saveAll.accept(shard, partition);
+                    return null;
+                });
+            }
+        }
+        layout.runAll(writes);
+    }
+}
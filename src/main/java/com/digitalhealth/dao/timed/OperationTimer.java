@@ -0,0 +1,115 @@
+package com.digitalhealth.dao.timed;
+
+import com.digitalhealth.jfr.DaoCallEvent;
+import com.digitalhealth.metrics.Counter;
+import com.digitalhealth.metrics.Histogram;
+import com.digitalhealth.metrics.MetricsRegistry;
+
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Latency histogram, error and row counters for one DAO operation on one entity type,
+ * exported as dao_operation_seconds, dao_errors_total and dao_rows_total with
+ * entity/operation labels. Calls over the slow-operation threshold are also logged, and
+ * every call is a {@link DaoCallEvent} when that JFR event is enabled.
+ */
+final class OperationTimer {
+    private final String entity;
+    private final String operation;
+    private final Histogram latency;
+    private final Counter errors;
+    private final Counter rows;
+    private final Counter slow;
+    private final SlowOperationLog slowLog;
+
+    OperationTimer(MetricsRegistry registry, SlowOperationLog slowLog, String entity, String operation) {
+        this.entity = entity;
+        this.operation = operation;
+        this.slowLog = slowLog;
+        this.latency = registry.histogram("dao_operation_seconds", "DAO call latency",
+                "entity", entity, "operation", operation);
+        this.errors = registry.counter("dao_errors_total", "DAO calls that threw",
+                "entity", entity, "operation", operation);
+        this.rows = registry.counter("dao_rows_total", "Rows returned or written by DAO calls",
+                "entity", entity, "operation", operation);
+        this.slow = registry.counter("dao_slow_operations_total", "DAO calls over the slow-operation threshold",
+                "entity", entity, "operation", operation);
+    }
+
+    <T> T call(String key, Supplier<T> call) {
+        return call(key, call, null);
+    }
+
+    /**
+     * Time a call that returns rows.
+     * 
+     * @param key ID the call was made with, for the slow-operation log (may be null)
+     * @param rowCount Number of rows in the result, or null if the result has none
+     */
+    <T> T call(String key, Supplier<T> call, ToIntFunction<? super T> rowCount) {
+        DaoCallEvent event = new DaoCallEvent();
+        event.begin();
+        long start = System.nanoTime();
+        T result = null;
+        boolean failed = true;
+        try {
+            result = call.get();
+            failed = false;
+            return result;
+        } catch (RuntimeException e) {
+            errors.inc();
+            throw e;
+        } finally {
+            int count = -1;
+            if (!failed && rowCount != null && result != null) {
+                count = rowCount.applyAsInt(result);
+                rows.add(count);
+            }
+            finish(event, start, key, count, failed);
+        }
+    }
+
+    /**
+     * Time a write.
+     * 
+     * @param key ID being written, for the slow-operation log (may be null)
+     * @param rowsWritten Number of rows written, or -1 if unknown
+     */
+    void run(String key, int rowsWritten, Runnable call) {
+        DaoCallEvent event = new DaoCallEvent();
+        event.begin();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            call.run();
+            failed = false;
+        } catch (RuntimeException e) {
+            errors.inc();
+            throw e;
+        } finally {
+            if (!failed && rowsWritten >= 0) {
+                rows.add(rowsWritten);
+            }
+            finish(event, start, key, rowsWritten, failed);
+        }
+    }
+
+    private void finish(DaoCallEvent event, long start, String key, int count, boolean failed) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.entity = entity;
+            event.operation = operation;
+            event.key = key;
+            event.rows = count;
+            event.failed = failed;
+            event.commit();
+        }
+        long elapsed = System.nanoTime() - start;
+        latency.record(elapsed);
+        if (elapsed >= slowLog.thresholdNanos()) {
+            slow.inc();
+            slowLog.report(entity, operation, key, elapsed, count, failed);
+        }
+    }
+}
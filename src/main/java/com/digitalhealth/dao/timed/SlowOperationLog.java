@@ -0,0 +1,113 @@
+package com.digitalhealth.dao.timed;
+
+import java.io.PrintStream;
+import java.time.Instant;
+
+/**
+ * Reports DAO calls slower than a threshold as structured key=value lines, e.g.
+ * <pre>
+ * slow_dao_op ts=2025-11-15T10:00:00.123Z entity=doctor operation=loadAll duration_ms=153.210 rows=1200 thread=backend-io-2 outcome=ok
+ * </pre>
+ * Calls under the threshold cost one comparison, so the log can stay enabled in production.
+ */
+public class SlowOperationLog {
+    private final long thresholdNanos;
+    private final Sink sink;
+
+    /**
+     * Receives slow operations; the default sink prints to standard error.
+     */
+    @FunctionalInterface
+    public interface Sink {
+        void accept(SlowOperation operation);
+    }
+
+    /**
+     * One DAO call that exceeded the threshold.
+     */
+    public static final class SlowOperation {
+        private final Instant timestamp;
+        private final String entity;
+        private final String operation;
+        private final String key;
+        private final long durationNanos;
+        private final int rows;
+        private final boolean failed;
+        private final String thread;
+
+        SlowOperation(String entity, String operation, String key, long durationNanos, int rows, boolean failed) {
+            this.timestamp = Instant.now();
+            this.entity = entity;
+            this.operation = operation;
+            this.key = key;
+            this.durationNanos = durationNanos;
+            this.rows = rows;
+            this.failed = failed;
+            this.thread = Thread.currentThread().getName();
+        }
+
+        public Instant getTimestamp() { return timestamp; }
+        public String getEntity() { return entity; }
+        public String getOperation() { return operation; }
+        /** ID or username the call was made with, or null. */
+        public String getKey() { return key; }
+        public long getDurationNanos() { return durationNanos; }
+        /** Rows returned or written, or -1 if the operation has no row count. */
+        public int getRows() { return rows; }
+        public boolean isFailed() { return failed; }
+        public String getThread() { return thread; }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("slow_dao_op");
+            sb.append(" ts=").append(timestamp);
+            sb.append(" entity=").append(entity);
+            sb.append(" operation=").append(operation);
+            sb.append(" duration_ms=").append(String.format("%.3f", durationNanos / 1e6));
+            if (key != null) {
+                sb.append(" key=").append(quote(key));
+            }
+            if (rows >= 0) {
+                sb.append(" rows=").append(rows);
+            }
+            sb.append(" thread=").append(quote(thread));
+            sb.append(" outcome=").append(failed ? "error" : "ok");
+            return sb.toString();
+        }
+
+        private static String quote(String value) {
+            if (value.indexOf(' ') < 0 && value.indexOf('"') < 0 && value.indexOf('=') < 0) {
+                return value;
+            }
+            return '"' + value.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+        }
+    }
+
+    /**
+     * @param thresholdMillis Calls taking at least this long are reported; 0 reports every call
+     * @param sink Destination for slow operations
+     */
+    public SlowOperationLog(long thresholdMillis, Sink sink) {
+        if (thresholdMillis < 0) {
+            throw new IllegalArgumentException("thresholdMillis must not be negative: " + thresholdMillis);
+        }
+        this.thresholdNanos = thresholdMillis * 1_000_000L;
+        this.sink = sink;
+    }
+
+    /**
+     * Log to standard error.
+     */
+    public static SlowOperationLog toStandardError(long thresholdMillis) {
+        PrintStream err = System.err;
+        return new SlowOperationLog(thresholdMillis, operation -> err.println(operation));
+    }
+
+    long thresholdNanos() {
+        return thresholdNanos;
+    }
+
+    void report(String entity, String operation, String key, long durationNanos, int rows, boolean failed) {
+        sink.accept(new SlowOperation(entity, operation, key, durationNanos, rows, failed));
+    }
+}
@@ -0,0 +1,77 @@
+package com.digitalhealth.dao.timed;
+
+import com.digitalhealth.dao.AppointmentDao;
+import com.digitalhealth.metrics.MetricsRegistry;
+import com.digitalhealth.model.Appointment;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * AppointmentDao decorator that records the latency, failures and row counts of every call
+ * and logs calls over the slow-operation threshold.
+ */
+public class TimedAppointmentDao implements AppointmentDao {
+    private final AppointmentDao delegate;
+    private final OperationTimer saveAllTimer;
+    private final OperationTimer loadAllTimer;
+    private final OperationTimer findByIdTimer;
+    private final OperationTimer saveTimer;
+    private final OperationTimer existsTimer;
+    private final OperationTimer deleteTimer;
+    private final OperationTimer findByPatientIdTimer;
+    private final OperationTimer findByDoctorIdTimer;
+
+    public TimedAppointmentDao(AppointmentDao delegate, MetricsRegistry registry, SlowOperationLog slowLog) {
+        this.delegate = delegate;
+        this.saveAllTimer = new OperationTimer(registry, slowLog, "appointment", "saveAll");
+        this.loadAllTimer = new OperationTimer(registry, slowLog, "appointment", "loadAll");
+        this.findByIdTimer = new OperationTimer(registry, slowLog, "appointment", "findById");
+        this.saveTimer = new OperationTimer(registry, slowLog, "appointment", "save");
+        this.existsTimer = new OperationTimer(registry, slowLog, "appointment", "exists");
+        this.deleteTimer = new OperationTimer(registry, slowLog, "appointment", "delete");
+        this.findByPatientIdTimer = new OperationTimer(registry, slowLog, "appointment", "findByPatientId");
+        this.findByDoctorIdTimer = new OperationTimer(registry, slowLog, "appointment", "findByDoctorId");
+    }
+
+    @Override
+    public void saveAll(Map<String, Appointment> appointments) {
+        saveAllTimer.run(null, appointments.size(), () -> delegate.saveAll(appointments));
+    }
+
+    @Override
+    public Map<String, Appointment> loadAll() {
+        return loadAllTimer.call(null, delegate::loadAll, Map::size);
+    }
+
+    @Override
+    public Optional<Appointment> findById(String id) {
+        return findByIdTimer.call(id, () -> delegate.findById(id), found -> found.isPresent() ? 1 : 0);
+    }
+
+    @Override
+    public void save(Appointment appointment) {
+        saveTimer.run(appointment.getAppointmentId(), 1, () -> delegate.save(appointment));
+    }
+
+    @Override
+    public boolean exists(String appointmentId) {
+        return existsTimer.call(appointmentId, () -> delegate.exists(appointmentId));
+    }
+
+    @Override
+    public void delete(String appointmentId) {
+        deleteTimer.run(appointmentId, -1, () -> delegate.delete(appointmentId));
+    }
+
+    @Override
+    public List<Appointment> findByPatientId(String patientId) {
+        return findByPatientIdTimer.call(patientId, () -> delegate.findByPatientId(patientId), List::size);
+    }
+
+    @Override
+    public List<Appointment> findByDoctorId(String doctorId) {
+        return findByDoctorIdTimer.call(doctorId, () -> delegate.findByDoctorId(doctorId), List::size);
+    }
+}
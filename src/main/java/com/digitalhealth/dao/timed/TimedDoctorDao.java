@@ -0,0 +1,77 @@
+package com.digitalhealth.dao.timed;
+
+import com.digitalhealth.dao.DoctorDao;
+import com.digitalhealth.metrics.MetricsRegistry;
+import com.digitalhealth.model.Doctor;
+import com.digitalhealth.model.DoctorSummary;
+
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * DoctorDao decorator that records the latency, failures and row counts of every call
+ * and logs calls over the slow-operation threshold.
+ */
+public class TimedDoctorDao implements DoctorDao {
+    private final DoctorDao delegate;
+    private final OperationTimer saveAllTimer;
+    private final OperationTimer loadAllTimer;
+    private final OperationTimer findByIdTimer;
+    private final OperationTimer findSummaryByIdTimer;
+    private final OperationTimer findAllSummariesTimer;
+    private final OperationTimer saveTimer;
+    private final OperationTimer existsTimer;
+    private final OperationTimer deleteTimer;
+
+    public TimedDoctorDao(DoctorDao delegate, MetricsRegistry registry, SlowOperationLog slowLog) {
+        this.delegate = delegate;
+        this.saveAllTimer = new OperationTimer(registry, slowLog, "doctor", "saveAll");
+        this.loadAllTimer = new OperationTimer(registry, slowLog, "doctor", "loadAll");
+        this.findByIdTimer = new OperationTimer(registry, slowLog, "doctor", "findById");
+        this.findSummaryByIdTimer = new OperationTimer(registry, slowLog, "doctor", "findSummaryById");
+        this.findAllSummariesTimer = new OperationTimer(registry, slowLog, "doctor", "findAllSummaries");
+        this.saveTimer = new OperationTimer(registry, slowLog, "doctor", "save");
+        this.existsTimer = new OperationTimer(registry, slowLog, "doctor", "exists");
+        this.deleteTimer = new OperationTimer(registry, slowLog, "doctor", "delete");
+    }
+
+    @Override
+    public void saveAll(Map<String, Doctor> doctors) {
+        saveAllTimer.run(null, doctors.size(), () -> delegate.saveAll(doctors));
+    }
+
+    @Override
+    public Map<String, Doctor> loadAll() {
+        return loadAllTimer.call(null, delegate::loadAll, Map::size);
+    }
+
+    @Override
+    public Optional<Doctor> findById(String id) {
+        return findByIdTimer.call(id, () -> delegate.findById(id), found -> found.isPresent() ? 1 : 0);
+    }
+
+    @Override
+    public Optional<DoctorSummary> findSummaryById(String id) {
+        return findSummaryByIdTimer.call(id, () -> delegate.findSummaryById(id), found -> found.isPresent() ? 1 : 0);
+    }
+
+    @Override
+    public Map<String, DoctorSummary> findAllSummaries() {
+        return findAllSummariesTimer.call(null, delegate::findAllSummaries, Map::size);
+    }
+
+    @Override
+    public void save(Doctor doctor) {
+        saveTimer.run(doctor.getDoctorId(), 1, () -> delegate.save(doctor));
+    }
+
+    @Override
+    public boolean exists(String doctorId) {
+        return existsTimer.call(doctorId, () -> delegate.exists(doctorId));
+    }
+
+    @Override
+    public void delete(String doctorId) {
+        deleteTimer.run(doctorId, -1, () -> delegate.delete(doctorId));
+    }
+}
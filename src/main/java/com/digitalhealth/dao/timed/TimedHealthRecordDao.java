@@ -0,0 +1,96 @@
+package com.digitalhealth.dao.timed;
+
+import com.digitalhealth.dao.HealthRecordDao;
+import com.digitalhealth.metrics.MetricsRegistry;
+import com.digitalhealth.model.HealthRecord;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * HealthRecordDao decorator that records the latency, failures and row counts of every call
+ * and logs calls over the slow-operation threshold.
+ */
+public class TimedHealthRecordDao implements HealthRecordDao {
+    private final HealthRecordDao delegate;
+    private final OperationTimer saveAllTimer;
+    private final OperationTimer loadAllTimer;
+    private final OperationTimer findByIdTimer;
+    private final OperationTimer findAllByIdTimer;
+    private final OperationTimer saveTimer;
+    private final OperationTimer existsTimer;
+    private final OperationTimer deleteTimer;
+    private final OperationTimer findByPatientIdTimer;
+    private final OperationTimer findByDoctorIdTimer;
+    private final OperationTimer scanTimer;
+
+    public TimedHealthRecordDao(HealthRecordDao delegate, MetricsRegistry registry, SlowOperationLog slowLog) {
+        this.delegate = delegate;
+        this.saveAllTimer = new OperationTimer(registry, slowLog, "healthRecord", "saveAll");
+        this.loadAllTimer = new OperationTimer(registry, slowLog, "healthRecord", "loadAll");
+        this.findByIdTimer = new OperationTimer(registry, slowLog, "healthRecord", "findById");
+        this.findAllByIdTimer = new OperationTimer(registry, slowLog, "healthRecord", "findAllById");
+        this.saveTimer = new OperationTimer(registry, slowLog, "healthRecord", "save");
+        this.existsTimer = new OperationTimer(registry, slowLog, "healthRecord", "exists");
+        this.deleteTimer = new OperationTimer(registry, slowLog, "healthRecord", "delete");
+        this.findByPatientIdTimer = new OperationTimer(registry, slowLog, "healthRecord", "findByPatientId");
+        this.findByDoctorIdTimer = new OperationTimer(registry, slowLog, "healthRecord", "findByDoctorId");
+        this.scanTimer = new OperationTimer(registry, slowLog, "healthRecord", "scan");
+    }
+
+    @Override
+    public void saveAll(Map<String, HealthRecord> records) {
+        saveAllTimer.run(null, records.size(), () -> delegate.saveAll(records));
+    }
+
+    @Override
+    public Map<String, HealthRecord> loadAll() {
+        return loadAllTimer.call(null, delegate::loadAll, Map::size);
+    }
+
+    @Override
+    public Optional<HealthRecord> findById(String id) {
+        return findByIdTimer.call(id, () -> delegate.findById(id), found -> found.isPresent() ? 1 : 0);
+    }
+
+    @Override
+    public List<HealthRecord> findAllById(List<String> ids) {
+        return findAllByIdTimer.call(null, () -> delegate.findAllById(ids), List::size);
+    }
+
+    @Override
+    public void save(HealthRecord record) {
+        saveTimer.run(record.getRecordId(), 1, () -> delegate.save(record));
+    }
+
+    @Override
+    public boolean exists(String recordId) {
+        return existsTimer.call(recordId, () -> delegate.exists(recordId));
+    }
+
+    @Override
+    public void delete(String recordId) {
+        deleteTimer.run(recordId, -1, () -> delegate.delete(recordId));
+    }
+
+    @Override
+    public List<HealthRecord> findByPatientId(String patientId) {
+        return findByPatientIdTimer.call(patientId, () -> delegate.findByPatientId(patientId), List::size);
+    }
+
+    @Override
+    public List<HealthRecord> findByDoctorId(String doctorId) {
+        return findByDoctorIdTimer.call(doctorId, () -> delegate.findByDoctorId(doctorId), List::size);
+    }
+
+    /**
+     * Timed from the first row to the last, so the time includes the action's work.
+     */
+    @Override
+    public int scan(LocalDateTime from, LocalDateTime to, Consumer<HealthRecord> action) {
+        return scanTimer.call(null, () -> delegate.scan(from, to, action), Integer::intValue);
+    }
+}
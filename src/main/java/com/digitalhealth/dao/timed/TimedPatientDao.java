@@ -0,0 +1,70 @@
+package com.digitalhealth.dao.timed;
+
+import com.digitalhealth.dao.PatientDao;
+import com.digitalhealth.metrics.MetricsRegistry;
+import com.digitalhealth.model.Patient;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * PatientDao decorator that records the latency, failures and row counts of every call
+ * and logs calls over the slow-operation threshold.
+ */
+public class TimedPatientDao implements PatientDao {
+    private final PatientDao delegate;
+    private final OperationTimer saveAllTimer;
+    private final OperationTimer loadAllTimer;
+    private final OperationTimer findByIdTimer;
+    private final OperationTimer findAllByIdTimer;
+    private final OperationTimer saveTimer;
+    private final OperationTimer existsTimer;
+    private final OperationTimer deleteTimer;
+
+    public TimedPatientDao(PatientDao delegate, MetricsRegistry registry, SlowOperationLog slowLog) {
+        this.delegate = delegate;
+        this.saveAllTimer = new OperationTimer(registry, slowLog, "patient", "saveAll");
+        this.loadAllTimer = new OperationTimer(registry, slowLog, "patient", "loadAll");
+        this.findByIdTimer = new OperationTimer(registry, slowLog, "patient", "findById");
+        this.findAllByIdTimer = new OperationTimer(registry, slowLog, "patient", "findAllById");
+        this.saveTimer = new OperationTimer(registry, slowLog, "patient", "save");
+        this.existsTimer = new OperationTimer(registry, slowLog, "patient", "exists");
+        this.deleteTimer = new OperationTimer(registry, slowLog, "patient", "delete");
+    }
+
+    @Override
+    public void saveAll(Map<String, Patient> patients) {
+        saveAllTimer.run(null, patients.size(), () -> delegate.saveAll(patients));
+    }
+
+    @Override
+    public Map<String, Patient> loadAll() {
+        return loadAllTimer.call(null, delegate::loadAll, Map::size);
+    }
+
+    @Override
+    public Optional<Patient> findById(String id) {
+        return findByIdTimer.call(id, () -> delegate.findById(id), found -> found.isPresent() ? 1 : 0);
+    }
+
+    @Override
+    public List<Patient> findAllById(List<String> ids) {
+        return findAllByIdTimer.call(null, () -> delegate.findAllById(ids), List::size);
+    }
+
+    @Override
+    public void save(Patient patient) {
+        saveTimer.run(patient.getPatientId(), 1, () -> delegate.save(patient));
+    }
+
+    @Override
+    public boolean exists(String patientId) {
+        return existsTimer.call(patientId, () -> delegate.exists(patientId));
+    }
+
+    @Override
+    public void delete(String patientId) {
+        deleteTimer.run(patientId, -1, () -> delegate.delete(patientId));
+    }
+}
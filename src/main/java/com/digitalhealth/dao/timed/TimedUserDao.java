@@ -0,0 +1,77 @@
+package com.digitalhealth.dao.timed;
+
+import com.digitalhealth.dao.UserDao;
+import com.digitalhealth.metrics.MetricsRegistry;
+import com.digitalhealth.model.User;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * UserDao decorator that records the latency, failures and row counts of every call
+ * and logs calls over the slow-operation threshold.
+ */
+public class TimedUserDao implements UserDao {
+    private final UserDao delegate;
+    private final OperationTimer saveTimer;
+    private final OperationTimer findByIdTimer;
+    private final OperationTimer findByUsernameTimer;
+    private final OperationTimer findAllTimer;
+    private final OperationTimer updateTimer;
+    private final OperationTimer deleteTimer;
+    private final OperationTimer existsByUsernameTimer;
+    private final OperationTimer saveAllTimer;
+
+    public TimedUserDao(UserDao delegate, MetricsRegistry registry, SlowOperationLog slowLog) {
+        this.delegate = delegate;
+        this.saveTimer = new OperationTimer(registry, slowLog, "user", "save");
+        this.findByIdTimer = new OperationTimer(registry, slowLog, "user", "findById");
+        this.findByUsernameTimer = new OperationTimer(registry, slowLog, "user", "findByUsername");
+        this.findAllTimer = new OperationTimer(registry, slowLog, "user", "findAll");
+        this.updateTimer = new OperationTimer(registry, slowLog, "user", "update");
+        this.deleteTimer = new OperationTimer(registry, slowLog, "user", "delete");
+        this.existsByUsernameTimer = new OperationTimer(registry, slowLog, "user", "existsByUsername");
+        this.saveAllTimer = new OperationTimer(registry, slowLog, "user", "saveAll");
+    }
+
+    @Override
+    public void save(User user) {
+        saveTimer.run(user.getUserId(), 1, () -> delegate.save(user));
+    }
+
+    @Override
+    public Optional<User> findById(String userId) {
+        return findByIdTimer.call(userId, () -> delegate.findById(userId), found -> found.isPresent() ? 1 : 0);
+    }
+
+    @Override
+    public Optional<User> findByUsername(String username) {
+        return findByUsernameTimer.call(username, () -> delegate.findByUsername(username), found -> found.isPresent() ? 1 : 0);
+    }
+
+    @Override
+    public List<User> findAll() {
+        return findAllTimer.call(null, delegate::findAll, List::size);
+    }
+
+    @Override
+    public void update(User user) {
+        updateTimer.run(user.getUserId(), 1, () -> delegate.update(user));
+    }
+
+    @Override
+    public void delete(String userId) {
+        deleteTimer.run(userId, -1, () -> delegate.delete(userId));
+    }
+
+    @Override
+    public boolean existsByUsername(String username) {
+        return existsByUsernameTimer.call(username, () -> delegate.existsByUsername(username));
+    }
+
+    @Override
+    public void saveAll(Map<String, User> users) {
+        saveAllTimer.run(null, users.size(), () -> delegate.saveAll(users));
+    }
+}
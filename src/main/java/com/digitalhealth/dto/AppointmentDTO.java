@@ -17,6 +17,8 @@ public class AppointmentDTO implements Serializable {
     private LocalDateTime dateTime;
     private AppointmentStatus status;
     private String reason;
+    // Version the appointment was read at; 0 for a new appointment
+    private long version;
 
     public AppointmentDTO() {
     }
@@ -96,6 +98,14 @@ public class AppointmentDTO implements Serializable {
         this.reason = reason;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     @Override
     public String toString() {
         return "AppointmentDTO{" +
@@ -105,6 +115,7 @@ public class AppointmentDTO implements Serializable {
                 ", dateTime=" + dateTime +
                 ", status=" + status +
                 ", reason='" + reason + '\'' +
+                ", version=" + version +
                 '}';
     }
 }
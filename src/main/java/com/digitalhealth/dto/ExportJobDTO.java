@@ -0,0 +1,80 @@
+package com.digitalhealth.dto;
+
+import com.digitalhealth.model.ExportJobStatus;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * Data Transfer Object for export job status.
+ */
+public class ExportJobDTO implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String jobId;
+    private final String patientId;
+    private final ExportJobStatus status;
+    private final LocalDateTime submittedAt;
+    private final LocalDateTime startedAt;
+    private final LocalDateTime finishedAt;
+    private final int exported;
+    private final int total;
+    private final long resultBytes;
+    private final String error;
+
+    public ExportJobDTO(String jobId, String patientId, ExportJobStatus status,
+                        LocalDateTime submittedAt, LocalDateTime startedAt, LocalDateTime finishedAt,
+                        int exported, int total, long resultBytes, String error) {
+        this.jobId = jobId;
+        this.patientId = patientId;
+        this.status = status;
+        this.submittedAt = submittedAt;
+        this.startedAt = startedAt;
+        this.finishedAt = finishedAt;
+        this.exported = exported;
+        this.total = total;
+        this.resultBytes = resultBytes;
+        this.error = error;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    /** Exported patient, or null for an export of all patients. */
+    public String getPatientId() {
+        return patientId;
+    }
+
+    public ExportJobStatus getStatus() {
+        return status;
+    }
+
+    public LocalDateTime getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+
+    public int getExported() {
+        return exported;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public long getResultBytes() {
+        return resultBytes;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,82 @@
+package com.digitalhealth.dto;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Data Transfer Object for the outcome of a bulk CSV import.
+ */
+public class ImportResultDTO implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String importId;
+    private final String entity;
+    private final int rowsRead;
+    private final int imported;
+    private final int rejected;
+    private final int batches;
+    private final long elapsedMillis;
+    private final List<String> firstRejects;
+
+    public ImportResultDTO(String importId, String entity, int rowsRead, int imported, int rejected,
+                           int batches, long elapsedMillis, List<String> firstRejects) {
+        this.importId = importId;
+        this.entity = entity;
+        this.rowsRead = rowsRead;
+        this.imported = imported;
+        this.rejected = rejected;
+        this.batches = batches;
+        this.elapsedMillis = elapsedMillis;
+        this.firstRejects = new ArrayList<>(firstRejects);
+    }
+
+    /** ID under which the reject file of this import is kept, or null if it has none. */
+    public String getImportId() {
+        return importId;
+    }
+
+    /** "patients" or "doctors". */
+    public String getEntity() {
+        return entity;
+    }
+
+    /** Data rows read, excluding the header. */
+    public int getRowsRead() {
+        return rowsRead;
+    }
+
+    public int getImported() {
+        return imported;
+    }
+
+    public int getRejected() {
+        return rejected;
+    }
+
+    /** Number of batches stored, each with one file write or database commit. */
+    public int getBatches() {
+        return batches;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /** The first few rejected rows as "line N: reason", in no particular order. */
+    public List<String> getFirstRejects() {
+        return new ArrayList<>(firstRejects);
+    }
+
+    @Override
+    public String toString() {
+        return "ImportResultDTO{" +
+                "entity='" + entity + '\'' +
+                ", rowsRead=" + rowsRead +
+                ", imported=" + imported +
+                ", rejected=" + rejected +
+                ", batches=" + batches +
+                ", elapsedMillis=" + elapsedMillis +
+                '}';
+    }
+}
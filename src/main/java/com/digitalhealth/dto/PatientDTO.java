@@ -14,6 +14,8 @@ public class PatientDTO implements Serializable {
     private int age;
     private String gender;
     private String contact;
+    // Version the patient was read at; 0 for a new patient
+    private long version;
 
     public PatientDTO() {
     }
@@ -74,6 +76,14 @@ public class PatientDTO implements Serializable {
         this.contact = contact;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     @Override
     public String toString() {
         return "PatientDTO{" +
@@ -82,6 +92,7 @@ public class PatientDTO implements Serializable {
                 ", age=" + age +
                 ", gender='" + gender + '\'' +
                 ", contact='" + contact + '\'' +
+                ", version=" + version +
                 '}';
     }
 }
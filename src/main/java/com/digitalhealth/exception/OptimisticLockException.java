@@ -0,0 +1,16 @@
+package com.digitalhealth.exception;
+
+/**
+ * Exception thrown when an entity was changed by someone else between read and write.
+ * Unchecked so it can pass through the DAO interfaces; services catch it and retry
+ * through a {@link com.digitalhealth.service.RetryPolicy}.
+ */
+public class OptimisticLockException extends RuntimeException {
+    public OptimisticLockException(String message) {
+        super(message);
+    }
+
+    public OptimisticLockException(String entityType, String id, long expectedVersion) {
+        super(entityType + " " + id + " was modified concurrently (expected version " + expectedVersion + ")");
+    }
+}
@@ -0,0 +1,10 @@
+package com.digitalhealth.exception;
+
+/**
+ * Exception thrown when a caller has too much work outstanding to accept more.
+ */
+public class QuotaExceededException extends Exception {
+    public QuotaExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,331 @@
+package com.digitalhealth.facade;
+
+import com.digitalhealth.dto.*;
+import com.digitalhealth.exception.EntityNotFoundException;
+import com.digitalhealth.metrics.MetricsRegistry;
+
+import java.io.Writer;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking variant of {@link BackendFacade}.
+ * Every operation runs on a dedicated I/O executor whose size bounds the number of
+ * concurrent DAO round trips for the backend, so callers (e.g. HTTP handlers) never
+ * block on persistence.
+ *
+ * Checked exceptions thrown by the backend (EntityNotFoundException, ValidationException,
+ * SlotUnavailableException, ...) complete the returned future exceptionally, wrapped in a
+ * {@link CompletionException}; use {@link #unwrap(Throwable)} to get the original cause.
+ *
+ * Usage Example:
+ * <pre>
+ * AsyncBackendFacade async = BackendFactory.createAsync();
+ * async.bookAppointment("P1001", "D0001", LocalDateTime.of(2025,11,15,10,0), "Checkup")
+ *      .thenAccept(appt -&gt; System.out.println(appt.getAppointmentId()));
+ * </pre>
+ */
+public class AsyncBackendFacade implements AutoCloseable {
+    private final BackendFacade facade;
+    private final ThreadPoolExecutor ioExecutor;
+
+    /**
+     * A blocking backend call executed on the I/O executor.
+     */
+    @FunctionalInterface
+    private interface BackendCall<T> {
+        T call() throws Exception;
+    }
+
+    @FunctionalInterface
+    private interface BackendRunnable {
+        void run() throws Exception;
+    }
+
+    /**
+     * @param facade Blocking facade to delegate to
+     * @param maxConcurrency Maximum number of backend calls in flight at once
+     */
+    public AsyncBackendFacade(BackendFacade facade, int maxConcurrency) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("maxConcurrency must be positive: " + maxConcurrency);
+        }
+        this.facade = facade;
+        this.ioExecutor = createIoExecutor(maxConcurrency);
+    }
+
+    private static ThreadPoolExecutor createIoExecutor(int maxConcurrency) {
+        AtomicInteger threadCount = new AtomicInteger(1);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                maxConcurrency, maxConcurrency,
+                60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "backend-io-" + threadCount.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Export I/O executor usage: busy threads, queued calls and completed calls.
+     */
+    public void registerMetrics(MetricsRegistry registry) {
+        registry.gauge("backend_io_threads_active", "Backend I/O threads running a call",
+                ioExecutor::getActiveCount);
+        registry.gauge("backend_io_threads_max", "Backend I/O executor size",
+                ioExecutor::getMaximumPoolSize);
+        registry.gauge("backend_io_queue_depth", "Backend calls waiting for an I/O thread",
+                () -> ioExecutor.getQueue().size());
+        registry.gauge("backend_io_calls_completed", "Backend calls completed by the I/O executor",
+                ioExecutor::getCompletedTaskCount);
+    }
+
+    /**
+     * Get the underlying blocking facade.
+     */
+    public BackendFacade blocking() {
+        return facade;
+    }
+
+    /**
+     * Unwrap the backend exception from a {@link CompletionException}.
+     */
+    public static Throwable unwrap(Throwable throwable) {
+        if (throwable instanceof CompletionException && throwable.getCause() != null) {
+            return throwable.getCause();
+        }
+        return throwable;
+    }
+
+    // ========== Authentication Operations ==========
+
+    public CompletableFuture<String> registerUser(UserDTO userDTO) {
+        return supply(() -> facade.registerUser(userDTO));
+    }
+
+    public CompletableFuture<LoginResponseDTO> login(LoginRequestDTO loginRequest) {
+        return supply(() -> facade.login(loginRequest));
+    }
+
+    public CompletableFuture<LoginResponseDTO> validateToken(String token) {
+        return supply(() -> facade.validateToken(token));
+    }
+
+    // ========== Patient Operations ==========
+
+    public CompletableFuture<String> registerPatient(PatientDTO dto) {
+        return supply(() -> facade.registerPatient(dto));
+    }
+
+    public CompletableFuture<PatientDTO> getPatient(String patientId) {
+        return supply(() -> facade.getPatient(patientId));
+    }
+
+    public CompletableFuture<Void> updatePatient(PatientDTO dto) {
+        return run(() -> facade.updatePatient(dto));
+    }
+
+    public CompletableFuture<List<PatientDTO>> listPatients() {
+        return supply(facade::listPatients);
+    }
+
+    public CompletableFuture<List<PatientDTO>> searchPatients(String prefix, int limit) {
+        return supply(() -> facade.searchPatients(prefix, limit));
+    }
+
+    public CompletableFuture<Void> deletePatient(String patientId) {
+        return run(() -> facade.deletePatient(patientId));
+    }
+
+    // ========== Doctor Operations ==========
+
+    public CompletableFuture<String> registerDoctor(DoctorDTO dto) {
+        return supply(() -> facade.registerDoctor(dto));
+    }
+
+    public CompletableFuture<DoctorDTO> getDoctor(String doctorId) {
+        return supply(() -> facade.getDoctor(doctorId));
+    }
+
+    public CompletableFuture<List<DoctorDTO>> listDoctors() {
+        return supply(facade::listDoctors);
+    }
+
+    public CompletableFuture<Void> addDoctorSlot(String doctorId, LocalDateTime slot) {
+        return run(() -> facade.addDoctorSlot(doctorId, slot));
+    }
+
+    public CompletableFuture<Void> deleteDoctor(String doctorId) {
+        return run(() -> facade.deleteDoctor(doctorId));
+    }
+
+    // ========== Appointment Operations ==========
+
+    /**
+     * Book an appointment. The patient and doctor lookups run concurrently on two I/O threads;
+     * once both are found the booking runs without reading the patient again.
+     */
+    public CompletableFuture<AppointmentDTO> bookAppointment(String patientId, String doctorId,
+                                                             LocalDateTime dateTime, String reason) {
+        if (isBlank(patientId) || isBlank(doctorId)) {
+            // Nothing to look up; the service reports the missing ID
+            return supply(() -> facade.bookAppointment(patientId, doctorId, dateTime, reason));
+        }
+        return afterLookups(patientId, doctorId,
+                () -> facade.bookCheckedAppointment(patientId, doctorId, dateTime, reason));
+    }
+
+    public CompletableFuture<Boolean> cancelAppointment(String appointmentId) {
+        return supply(() -> facade.cancelAppointment(appointmentId));
+    }
+
+    public CompletableFuture<AppointmentDTO> rescheduleAppointment(String appointmentId, LocalDateTime newDateTime) {
+        return supply(() -> facade.rescheduleAppointment(appointmentId, newDateTime));
+    }
+
+    public CompletableFuture<AppointmentDTO> getAppointment(String appointmentId) {
+        return supply(() -> facade.getAppointment(appointmentId));
+    }
+
+    public CompletableFuture<List<AppointmentDTO>> getAppointmentsByPatient(String patientId) {
+        return supply(() -> facade.getAppointmentsByPatient(patientId));
+    }
+
+    public CompletableFuture<List<AppointmentDTO>> getAppointmentsByDoctor(String doctorId) {
+        return supply(() -> facade.getAppointmentsByDoctor(doctorId));
+    }
+
+    public CompletableFuture<List<AppointmentDTO>> getAppointmentsByDate(LocalDate date) {
+        return supply(() -> facade.getAppointmentsByDate(date));
+    }
+
+    public CompletableFuture<List<AppointmentDTO>> listAppointments() {
+        return supply(facade::listAppointments);
+    }
+
+    public CompletableFuture<Void> completeAppointment(String appointmentId) {
+        return run(() -> facade.completeAppointment(appointmentId));
+    }
+
+    public CompletableFuture<Void> deleteAppointment(String appointmentId) {
+        return run(() -> facade.deleteAppointment(appointmentId));
+    }
+
+    // ========== Health Record Operations ==========
+
+    /**
+     * Add a health record. As for bookings, the patient and doctor lookups run concurrently
+     * and the write itself reads neither again.
+     */
+    public CompletableFuture<String> addHealthRecord(HealthRecordDTO dto) {
+        if (dto == null || isBlank(dto.getPatientId()) || isBlank(dto.getDoctorId())) {
+            return supply(() -> facade.addHealthRecord(dto));
+        }
+        return afterLookups(dto.getPatientId(), dto.getDoctorId(), () -> facade.addCheckedHealthRecord(dto));
+    }
+
+    public CompletableFuture<HealthRecordDTO> getHealthRecord(String recordId) {
+        return supply(() -> facade.getHealthRecord(recordId));
+    }
+
+    public CompletableFuture<List<HealthRecordDTO>> getPatientHealthRecords(String patientId) {
+        return supply(() -> facade.getPatientHealthRecords(patientId));
+    }
+
+    public CompletableFuture<List<HealthRecordDTO>> getRecordsByDoctor(String doctorId) {
+        return supply(() -> facade.getRecordsByDoctor(doctorId));
+    }
+
+    public CompletableFuture<List<HealthRecordDTO>> listAllHealthRecords() {
+        return supply(facade::listAllHealthRecords);
+    }
+
+    public CompletableFuture<List<HealthRecordDTO>> searchHealthRecords(String query) {
+        return supply(() -> facade.searchHealthRecords(query));
+    }
+
+    public CompletableFuture<Void> deleteHealthRecord(String recordId) {
+        return run(() -> facade.deleteHealthRecord(recordId));
+    }
+
+    // ========== Export Operations ==========
+
+    public CompletableFuture<Void> exportPatientHistory(String patientId, String outputFilePath) {
+        return run(() -> facade.exportPatientHistory(patientId, outputFilePath));
+    }
+
+    /**
+     * Stream records to the writer on an I/O thread; the writer is not closed.
+     */
+    public CompletableFuture<Integer> exportHealthRecordsNdjson(Writer writer, LocalDateTime from, LocalDateTime to) {
+        return supply(() -> facade.exportHealthRecordsNdjson(writer, from, to));
+    }
+
+    /**
+     * Stop accepting new work, let in-flight calls finish, then close the blocking facade.
+     */
+    @Override
+    public void close() {
+        ioExecutor.shutdown();
+        try {
+            if (!ioExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+                ioExecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            ioExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        facade.close();
+    }
+
+    private <T> CompletableFuture<T> supply(BackendCall<T> call) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return call.call();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, ioExecutor);
+    }
+
+    /**
+     * Look the patient and doctor up concurrently, then run the write if both exist. A missing
+     * one fails the future with EntityNotFoundException and the write is never started.
+     */
+    private <T> CompletableFuture<T> afterLookups(String patientId, String doctorId, BackendCall<T> write) {
+        CompletableFuture<Boolean> patient = supply(() -> facade.patientExists(patientId));
+        CompletableFuture<Boolean> doctor = supply(() -> facade.doctorExists(doctorId));
+        return patient.thenCombine(doctor, (patientFound, doctorFound) -> {
+            if (!patientFound) {
+                throw new CompletionException(new EntityNotFoundException("Patient not found: " + patientId));
+            }
+            if (!doctorFound) {
+                throw new CompletionException(new EntityNotFoundException("Doctor not found: " + doctorId));
+            }
+            return Boolean.TRUE;
+        }).thenCompose(found -> supply(write));
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+
+    private CompletableFuture<Void> run(BackendRunnable call) {
+        return supply(() -> {
+            call.run();
+            return null;
+        });
+    }
+}
@@ -1,13 +1,18 @@
 package com.digitalhealth.facade;
 
+import com.digitalhealth.analytics.ColumnarSnapshotWriter;
 import com.digitalhealth.dto.*;
 import com.digitalhealth.exception.*;
 import com.digitalhealth.service.*;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Main facade for GUI integration.
@@ -23,12 +28,15 @@ import java.util.List;
  *                                               LocalDateTime.of(2025,11,15,10,0));
  * </pre>
  */
-public class BackendFacade {
+public class BackendFacade implements AutoCloseable {
     private final PatientService patientService;
     private final DoctorService doctorService;
     private final AppointmentService appointmentService;
     private final HealthRecordService healthRecordService;
     private final ExportService exportService;
+    private final ExportJobService exportJobService;
+    private final ColumnarSnapshotWriter snapshotWriter;
+    private final ImportService importService;
     private final AuthService authService;
 
     public BackendFacade(PatientService patientService,
@@ -36,12 +44,18 @@ public class BackendFacade {
                         AppointmentService appointmentService,
                         HealthRecordService healthRecordService,
                         ExportService exportService,
+                        ExportJobService exportJobService,
+                        ColumnarSnapshotWriter snapshotWriter,
+                        ImportService importService,
                         AuthService authService) {
         this.patientService = patientService;
         this.doctorService = doctorService;
         this.appointmentService = appointmentService;
         this.healthRecordService = healthRecordService;
         this.exportService = exportService;
+        this.exportJobService = exportJobService;
+        this.snapshotWriter = snapshotWriter;
+        this.importService = importService;
         this.authService = authService;
     }
 
@@ -99,12 +113,24 @@ public class BackendFacade {
         return patientService.getPatient(patientId);
     }
 
+    /**
+     * Check whether a patient exists, without building its DTO.
+     * 
+     * @param patientId Patient ID
+     * @return true if the patient exists
+     */
+    public boolean patientExists(String patientId) {
+        return patientService.patientExists(patientId);
+    }
+
     /**
      * Update patient information.
      * 
-     * @param dto PatientDTO with patientId and updated fields
+     * @param dto PatientDTO with patientId and updated fields; a non-zero version is only
+     *            applied if the patient is still at that version
      * @throws EntityNotFoundException if patient not found
      * @throws ValidationException if validation fails
+     * @throws OptimisticLockException if the DTO's version is stale
      */
     public void updatePatient(PatientDTO dto) throws EntityNotFoundException, ValidationException {
         patientService.updatePatient(dto);
@@ -119,6 +145,26 @@ public class BackendFacade {
         return patientService.listAllPatients();
     }
 
+    /**
+     * Count of patient changes made through this backend; changes whenever
+     * {@link #listPatients()} may return something different. Does not touch the DAOs.
+     */
+    public long getPatientChangeCount() {
+        return patientService.getChangeCount();
+    }
+
+    /**
+     * Type-ahead search by partial name or phone number.
+     * 
+     * @param prefix Start of any word of the name, or of the contact number
+     * @param limit Maximum number of results (0 for the default of 20, capped at 100)
+     * @return List of matching PatientDTOs
+     * @throws ValidationException if the prefix is blank
+     */
+    public List<PatientDTO> searchPatients(String prefix, int limit) throws ValidationException {
+        return patientService.searchPatients(prefix, limit);
+    }
+
     // ========== Doctor Operations ==========
 
     /**
@@ -154,6 +200,16 @@ public class BackendFacade {
         return doctorService.getDoctor(doctorId);
     }
 
+    /**
+     * Check whether a doctor exists, without building its DTO.
+     * 
+     * @param doctorId Doctor ID
+     * @return true if the doctor exists
+     */
+    public boolean doctorExists(String doctorId) {
+        return doctorService.doctorExists(doctorId);
+    }
+
     /**
      * List all doctors in the system.
      * 
@@ -163,6 +219,26 @@ public class BackendFacade {
         return doctorService.listAllDoctors();
     }
 
+    /**
+     * Count of doctor changes (including slots taken or freed by appointments) made
+     * through this backend; changes whenever {@link #listDoctors()} may return something
+     * different. Does not touch the DAOs.
+     */
+    public long getDoctorChangeCount() {
+        return doctorService.getChangeCount();
+    }
+
+    /**
+     * Get a doctor's name from the cached doctor directory, for display next to
+     * appointments and records.
+     * 
+     * @param doctorId Doctor ID
+     * @return Doctor name, or null if the doctor does not exist
+     */
+    public String getDoctorName(String doctorId) {
+        return doctorService.getDirectory().findName(doctorId);
+    }
+
     /**
      * Add an available time slot for a doctor.
      * 
@@ -210,6 +286,15 @@ public class BackendFacade {
         return appointmentService.bookAppointment(patientId, doctorId, dateTime, reason);
     }
 
+    /**
+     * Book an appointment whose patient and doctor the caller has already found
+     * (see AsyncBackendFacade#bookAppointment).
+     */
+    AppointmentDTO bookCheckedAppointment(String patientId, String doctorId, LocalDateTime dateTime, String reason)
+            throws EntityNotFoundException, SlotUnavailableException, ValidationException {
+        return appointmentService.bookAppointment(patientId, doctorId, dateTime, reason, true);
+    }
+
     /**
      * Cancel an appointment and restore the slot to doctor's availability.
      * 
@@ -221,6 +306,19 @@ public class BackendFacade {
         return appointmentService.cancelAppointment(appointmentId);
     }
 
+    /**
+     * Cancel an appointment the caller read at a known version.
+     * 
+     * @param appointmentId Appointment ID
+     * @param expectedVersion Version the appointment was read at, or 0 for any version
+     * @return true if cancelled successfully, false if already cancelled
+     * @throws EntityNotFoundException if appointment not found
+     * @throws OptimisticLockException if the appointment changed since
+     */
+    public boolean cancelAppointment(String appointmentId, long expectedVersion) throws EntityNotFoundException {
+        return appointmentService.cancelAppointment(appointmentId, expectedVersion);
+    }
+
     /**
      * Reschedule an appointment to a new time (atomic operation).
      * 
@@ -311,6 +409,14 @@ public class BackendFacade {
         return healthRecordService.addHealthRecord(dto);
     }
 
+    /**
+     * Add a health record whose patient and doctor the caller has already found
+     * (see AsyncBackendFacade#addHealthRecord).
+     */
+    String addCheckedHealthRecord(HealthRecordDTO dto) throws EntityNotFoundException, ValidationException {
+        return healthRecordService.addHealthRecord(dto, true);
+    }
+
     /**
      * Get health record by ID.
      * 
@@ -351,6 +457,17 @@ public class BackendFacade {
         return healthRecordService.listAllRecords();
     }
 
+    /**
+     * Full-text search over health record symptoms, diagnosis and prescription.
+     * 
+     * @param query Words that must all match; OR between alternatives, trailing * for prefixes
+     * @return List of matching HealthRecordDTOs sorted by date
+     * @throws ValidationException if the query is blank
+     */
+    public List<HealthRecordDTO> searchHealthRecords(String query) throws ValidationException {
+        return healthRecordService.searchRecords(query);
+    }
+
     // ========== Export Operations ==========
 
     /**
@@ -367,6 +484,138 @@ public class BackendFacade {
         exportService.exportPatientHistory(patientId, outputFilePath);
     }
 
+    /**
+     * Export the history of every patient, in parallel on all available processors.
+     * 
+     * @param outputPath Output directory for FILES (e.g., "export/histories"), or archive file for ZIP
+     * @param format One text file per patient, or a single ZIP archive
+     * @param progress Progress listener, or null
+     * @return Number of patient reports written
+     * @throws IOException if writing fails
+     */
+    public int exportAllPatientHistories(String outputPath, ExportService.BulkFormat format,
+                                         ExportService.ProgressListener progress) throws IOException {
+        return exportService.exportAllPatientHistories(outputPath, format,
+                Runtime.getRuntime().availableProcessors(), progress);
+    }
+
+    /**
+     * Export health records as newline-delimited JSON (one object per line), streamed from
+     * the store.
+     * 
+     * @param writer Destination; flushed but not closed
+     * @param from Earliest record date (inclusive), or null for no lower bound
+     * @param to Latest record date (exclusive), or null for no upper bound
+     * @return Number of records written
+     * @throws IOException if writing fails
+     */
+    public int exportHealthRecordsNdjson(Writer writer, LocalDateTime from, LocalDateTime to) throws IOException {
+        return exportService.exportHealthRecordsNdjson(writer, from, to);
+    }
+
+    /**
+     * Write appointments and health records as a columnar snapshot for analytics, replacing
+     * any snapshot already in the directory. Read it with
+     * {@link com.digitalhealth.analytics.ColumnarSnapshot}.
+     * 
+     * @param directory Snapshot directory (e.g., "data/analytics")
+     * @return Rows written per table
+     * @throws IOException if writing fails
+     */
+    public Map<String, Integer> writeAnalyticsSnapshot(String directory) throws IOException {
+        return snapshotWriter.write(new File(directory));
+    }
+
+    // ========== Bulk Import Operations ==========
+
+    /**
+     * Import patients from CSV with a header line ({@code name,age,gender,contact}), storing
+     * valid rows in batches. Rejected rows are kept in a reject file, see
+     * {@link #getImportRejectsFile(String)}.
+     * 
+     * @param csv CSV to import; read to the end but not closed
+     * @return Counts, the first rejected rows and the import ID of the reject file
+     * @throws ValidationException if the header lacks a required column
+     * @throws IOException if reading the CSV or writing the reject file fails
+     */
+    public ImportResultDTO importPatients(Reader csv) throws IOException, ValidationException {
+        return importService.importPatients(csv);
+    }
+
+    /**
+     * Import doctors from CSV with a header line ({@code name,specialty} and optionally
+     * {@code contact,email,schedule}), storing valid rows in batches.
+     * 
+     * @see #importPatients(Reader)
+     */
+    public ImportResultDTO importDoctors(Reader csv) throws IOException, ValidationException {
+        return importService.importDoctors(csv);
+    }
+
+    /**
+     * Rejected rows of an import, as CSV with the line number and reason before the original columns.
+     * 
+     * @throws EntityNotFoundException if no import with rejected rows has this ID
+     */
+    public File getImportRejectsFile(String importId) throws EntityNotFoundException {
+        return importService.getRejectsFile(importId);
+    }
+
+    /**
+     * Queue a background export for a user.
+     * 
+     * @param tenantId User ID of the requester; jobs are only visible to their requester
+     * @param patientId Patient to export, or null for all patients as a ZIP archive
+     * @return The queued job
+     * @throws EntityNotFoundException if the patient does not exist
+     * @throws QuotaExceededException if the user has too many unfinished exports
+     */
+    public ExportJobDTO submitExportJob(String tenantId, String patientId)
+            throws EntityNotFoundException, QuotaExceededException {
+        return exportJobService.submit(tenantId, patientId);
+    }
+
+    /**
+     * Get the status and progress of a background export.
+     */
+    public ExportJobDTO getExportJob(String tenantId, String jobId) throws EntityNotFoundException {
+        return exportJobService.getJob(tenantId, jobId);
+    }
+
+    /**
+     * List a user's background exports, oldest first.
+     */
+    public List<ExportJobDTO> listExportJobs(String tenantId) {
+        return exportJobService.listJobs(tenantId);
+    }
+
+    /**
+     * Cancel a queued or running background export; a running one ends cancelled once it stops.
+     *
+     * @throws IllegalStateException if the export had already finished
+     */
+    public ExportJobDTO cancelExportJob(String tenantId, String jobId) throws EntityNotFoundException {
+        return exportJobService.cancel(tenantId, jobId);
+    }
+
+    /**
+     * Remove a finished background export and its result.
+     * 
+     * @throws IllegalStateException if the export has not finished
+     */
+    public void deleteExportJob(String tenantId, String jobId) throws EntityNotFoundException {
+        exportJobService.delete(tenantId, jobId);
+    }
+
+    /**
+     * Get the result file of a successful background export.
+     * 
+     * @throws IllegalStateException if the export has not succeeded
+     */
+    public File getExportJobResult(String tenantId, String jobId) throws EntityNotFoundException {
+        return exportJobService.getResult(tenantId, jobId);
+    }
+
     // ========== Delete Operations (Admin Only) ==========
 
     /**
@@ -396,4 +645,13 @@ public class BackendFacade {
     public void deleteHealthRecord(String recordId) throws EntityNotFoundException {
         healthRecordService.deleteHealthRecord(recordId);
     }
+
+    /**
+     * Stop background exports and persist in-memory state (the health record search index snapshot).
+     */
+    @Override
+    public void close() {
+        exportJobService.close();
+        healthRecordService.saveSearchSnapshot();
+    }
 }
@@ -1,15 +1,24 @@
 package com.digitalhealth.facade;
 
+import com.digitalhealth.analytics.ColumnarSnapshotWriter;
 import com.digitalhealth.dao.*;
 import com.digitalhealth.dao.file.*;
 import com.digitalhealth.dao.mysql.*;
+import com.digitalhealth.dao.timed.*;
+import com.digitalhealth.metrics.MetricsRegistry;
 import com.digitalhealth.service.*;
+import com.digitalhealth.util.ConnectionProvider;
 import com.digitalhealth.util.DatabaseConnection;
+import com.digitalhealth.util.JdbcConnectionProvider;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 /**
@@ -26,12 +35,33 @@ import java.util.Properties;
  * // File-based with custom data directory
  * BackendFacade facade = BackendFactory.createFileBackend("data/myapp");
  * 
+ * // File-based, patients and their appointments and records split over 4 shards
+ * BackendFacade facade = BackendFactory.createShardedFileBackend("data", 4);
+ * 
+ * // MySQL, patients and their appointments and records split over several databases
+ * BackendFacade facade = BackendFactory.createShardedMySQLBackend(new MySQLShardLayout(shards));
+ * 
  * // Auto-detect from application.properties
  * BackendFacade facade = BackendFactory.create();
+ * 
+ * // Non-blocking variant, auto-detected the same way
+ * AsyncBackendFacade async = BackendFactory.createAsync();
  * </pre>
  */
 public class BackendFactory {
     private static final String DEFAULT_DATA_DIR = "data";
+    private static final String SEARCH_SNAPSHOT_FILE = "records.idx";
+    private static final String EXPORT_DIRECTORY = "exports";
+    private static final String IMPORT_DIRECTORY = "imports";
+    private static final int DEFAULT_MYSQL_CONCURRENCY = 10;
+    private static final int DEFAULT_FILE_CONCURRENCY = 4;
+    private static final int DEFAULT_SLOW_DAO_MILLIS = 100;
+    private static final int DEFAULT_EXPORT_WORKERS = 2;
+    private static final int DEFAULT_EXPORT_RUNNING_PER_TENANT = 1;
+    private static final int DEFAULT_EXPORT_QUEUED_PER_TENANT = 5;
+    private static final int DEFAULT_EXPORT_PARALLELISM = 1;
+    private static final int DEFAULT_MYSQL_IMPORT_BATCH_SIZE = 500;
+    private static final int DEFAULT_FILE_IMPORT_BATCH_SIZE = 5000;
 
     /**
      * Create backend based on application.properties.
@@ -39,7 +69,34 @@ public class BackendFactory {
      */
     public static BackendFacade create() {
         Properties props = loadProperties();
-        
+        if (useMySQL(props)) {
+            return createMySQLBackend(props);
+        }
+        return createFileBackend(props);
+    }
+
+    /**
+     * Create a non-blocking backend based on application.properties.
+     * The I/O executor is bounded by the MySQL pool size (db.pool.maxActive) or,
+     * for the file backend, by async.file.maxConcurrency since file DAOs serialize
+     * writes on a per-file lock anyway.
+     */
+    public static AsyncBackendFacade createAsync() {
+        Properties props = loadProperties();
+        if (useMySQL(props)) {
+            int maxConcurrency = intProperty(props, "db.pool.maxActive", DEFAULT_MYSQL_CONCURRENCY);
+            return instrument(new AsyncBackendFacade(createMySQLBackend(props), maxConcurrency));
+        }
+        int maxConcurrency = intProperty(props, "async.file.maxConcurrency", DEFAULT_FILE_CONCURRENCY);
+        return instrument(new AsyncBackendFacade(createFileBackend(props), maxConcurrency));
+    }
+
+    private static AsyncBackendFacade instrument(AsyncBackendFacade async) {
+        async.registerMetrics(MetricsRegistry.getDefault());
+        return async;
+    }
+
+    private static boolean useMySQL(Properties props) {
         String dbBackend = props.getProperty("db.backend", "file");
         String dbEnabled = props.getProperty("db.enabled", "false");
         String dbUrl = props.getProperty("db.url");
@@ -53,7 +110,7 @@ public class BackendFactory {
             if (dbUrl != null && !dbUrl.isEmpty()) {
                 if (DatabaseConnection.testConnection()) {
                     System.out.println("✓ Using MySQL database backend");
-                    return createMySQLBackend();
+                    return true;
                 } else {
                     System.err.println("✗ Database connection failed, falling back to file-based backend");
                 }
@@ -65,9 +122,67 @@ public class BackendFactory {
         // Fallback to file-based
         String dataDir = props.getProperty("data.directory", DEFAULT_DATA_DIR);
         System.out.println("✓ Using file-based backend (data directory: " + dataDir + ")");
+        return false;
+    }
+
+    private static int intProperty(Properties props, String key, int defaultValue) {
+        String value = props.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Warning: Invalid value for " + key + ": " + value);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * File-based backend as configured: sharded if data.shardDirectories lists directories
+     * or data.shards is above 1.
+     */
+    private static BackendFacade createFileBackend(Properties props) {
+        String dataDir = props.getProperty("data.directory", DEFAULT_DATA_DIR);
+        String shardDirectories = props.getProperty("data.shardDirectories", "").trim();
+        if (!shardDirectories.isEmpty()) {
+            List<File> directories = new ArrayList<>();
+            for (String directory : shardDirectories.split(",")) {
+                directories.add(new File(directory.trim()));
+            }
+            return createShardedFileBackend(dataDir, new FileShardLayout(directories));
+        }
+        int shards = intProperty(props, "data.shards", 1);
+        if (shards > 1) {
+            return createShardedFileBackend(dataDir, shards);
+        }
         return createFileBackend(dataDir);
     }
 
+    /**
+     * MySQL backend as configured: sharded if db.shards names shard databases. Each shard
+     * needs db.shard.NAME.url; its credentials default to db.username and db.password.
+     */
+    private static BackendFacade createMySQLBackend(Properties props) {
+        String shardNames = props.getProperty("db.shards", "").trim();
+        if (shardNames.isEmpty()) {
+            return createMySQLBackend();
+        }
+        Map<String, ConnectionProvider> shards = new LinkedHashMap<>();
+        for (String name : shardNames.split(",")) {
+            name = name.trim();
+            String prefix = "db.shard." + name + ".";
+            String url = props.getProperty(prefix + "url");
+            if (url == null || url.trim().isEmpty()) {
+                throw new IllegalStateException("Shard " + name + " has no " + prefix + "url");
+            }
+            shards.put(name, new JdbcConnectionProvider(url.trim(),
+                    props.getProperty(prefix + "username", props.getProperty("db.username", "root")),
+                    props.getProperty(prefix + "password", props.getProperty("db.password", "root"))));
+        }
+        return createShardedMySQLBackend(new MySQLShardLayout(shards));
+    }
+
     /**
      * Create MySQL-based backend.
      */
@@ -79,7 +194,34 @@ public class BackendFactory {
         HealthRecordDao healthRecordDao = new MySQLHealthRecordDao();
         UserDao userDao = new MySQLUserDao();
 
-        return createFacade(patientDao, doctorDao, appointmentDao, healthRecordDao, userDao);
+        return createFacade(patientDao, doctorDao, appointmentDao, healthRecordDao, userDao,
+                new MySQLTransactionManager(), new File(DEFAULT_DATA_DIR), DEFAULT_MYSQL_IMPORT_BATCH_SIZE);
+    }
+
+    /**
+     * Create MySQL-based backend whose patients, appointments and health records are split by
+     * patient over the shard databases of a layout (created with schema-shard.sql). Doctors and
+     * users stay in the configured database (db.url), which acts as the directory shard.
+     * 
+     * @param layout Shard databases; shard names must stay the same for the life of the data
+     * @throws IllegalStateException if a shard database belongs to another shard
+     */
+    public static BackendFacade createShardedMySQLBackend(MySQLShardLayout layout) {
+        layout.checkShardIdentities();
+        ShardedMySQLPatientDao patientDao = new ShardedMySQLPatientDao(layout);
+        DoctorDao doctorDao = new MySQLDoctorDao();
+        ShardedMySQLAppointmentDao appointmentDao = new ShardedMySQLAppointmentDao(layout);
+        ShardedMySQLHealthRecordDao healthRecordDao = new ShardedMySQLHealthRecordDao(layout);
+        UserDao userDao = new MySQLUserDao();
+
+        // The directory database commits first; see MySQLTransactionManager
+        List<ConnectionProvider> databases = new ArrayList<>();
+        databases.add(DatabaseConnection.provider());
+        databases.addAll(layout.getDatabases());
+        System.out.println("✓ Sharding patients, appointments and health records over " + layout.size() + " MySQL databases");
+
+        return createFacade(patientDao, doctorDao, appointmentDao, healthRecordDao, userDao,
+                new MySQLTransactionManager(databases), new File(DEFAULT_DATA_DIR), DEFAULT_MYSQL_IMPORT_BATCH_SIZE);
     }
 
     /**
@@ -101,29 +243,140 @@ public class BackendFactory {
         }
 
         // Initialize DAOs
-        PatientDao patientDao = new FilePatientDao(dataDirectory + "/patients.dat");
-        DoctorDao doctorDao = new FileDoctorDao(dataDirectory + "/doctors.dat");
-        AppointmentDao appointmentDao = new FileAppointmentDao(dataDirectory + "/appointments.dat");
-        HealthRecordDao healthRecordDao = new FileHealthRecordDao(dataDirectory + "/records.dat");
+        FilePatientDao patientDao = new FilePatientDao(dataDirectory + "/patients.dat");
+        FileDoctorDao doctorDao = new FileDoctorDao(dataDirectory + "/doctors.dat");
+        FileAppointmentDao appointmentDao = new FileAppointmentDao(dataDirectory + "/appointments.dat");
+        FileHealthRecordDao healthRecordDao = new FileHealthRecordDao(dataDirectory + "/records.dat");
         UserDao userDao = new FileUserDao(dataDirectory + "/users.dat");
 
-        return createFacade(patientDao, doctorDao, appointmentDao, healthRecordDao, userDao);
+        // Replays any transaction interrupted by a crash before the services read data
+        TransactionManager transactionManager = new FileTransactionManager(
+            dataDirectory, patientDao, doctorDao, appointmentDao, healthRecordDao);
+
+        return createFacade(patientDao, doctorDao, appointmentDao, healthRecordDao, userDao,
+                transactionManager, dir, DEFAULT_FILE_IMPORT_BATCH_SIZE);
+    }
+
+    /**
+     * Create file-based backend whose patients, appointments and health records are split by
+     * patient over {@code shards} directories ({@code shard-0}, {@code shard-1}, ...) in the data
+     * directory. Each shard file has its own lock, so writes for patients on different shards
+     * do not wait for each other. Doctors, users and the transaction journals stay in the data
+     * directory.
+     * 
+     * @param dataDirectory Directory for unsharded data and the shard directories
+     * @param shards Number of shards; must stay the same for the life of the data
+     */
+    public static BackendFacade createShardedFileBackend(String dataDirectory, int shards) {
+        return createShardedFileBackend(dataDirectory, FileShardLayout.inDataDirectory(dataDirectory, shards));
+    }
+
+    /**
+     * Create file-based backend sharded over the directories of a layout (e.g., one per disk).
+     * An unsharded dataset found in the data directory is split into the shards once; its
+     * files are kept with an {@code .unsharded} suffix.
+     * 
+     * @see #createShardedFileBackend(String, int)
+     */
+    public static BackendFacade createShardedFileBackend(String dataDirectory, FileShardLayout layout) {
+        File dir = new File(dataDirectory);
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+
+        ShardedFilePatientDao patientDao = new ShardedFilePatientDao(layout);
+        FileDoctorDao doctorDao = new FileDoctorDao(dataDirectory + "/doctors.dat");
+        ShardedFileAppointmentDao appointmentDao = new ShardedFileAppointmentDao(layout);
+        ShardedFileHealthRecordDao healthRecordDao = new ShardedFileHealthRecordDao(layout);
+        UserDao userDao = new FileUserDao(dataDirectory + "/users.dat");
+
+        // Every shard is a store of its own; commits lock and rewrite only the shards they touch
+        List<JournaledStore<?>> stores = new ArrayList<>();
+        stores.addAll(patientDao.getShards());
+        stores.add(doctorDao);
+        stores.addAll(appointmentDao.getShards());
+        stores.addAll(healthRecordDao.getShards());
+        TransactionManager transactionManager = new FileTransactionManager(dataDirectory, stores);
+
+        splitUnshardedFiles(dataDirectory, patientDao, appointmentDao, healthRecordDao);
+        System.out.println("✓ Sharding patients, appointments and health records over " + layout.size() + " directories");
+
+        return createFacade(patientDao, doctorDao, appointmentDao, healthRecordDao, userDao,
+                transactionManager, dir, DEFAULT_FILE_IMPORT_BATCH_SIZE);
+    }
+
+    /**
+     * Move the data files of an unsharded backend into the shards. A file is renamed only
+     * after its table has been written to every shard, so an interrupted split is redone on
+     * the next start.
+     */
+    private static void splitUnshardedFiles(String dataDirectory, ShardedFilePatientDao patientDao,
+                                            ShardedFileAppointmentDao appointmentDao,
+                                            ShardedFileHealthRecordDao healthRecordDao) {
+        File patients = new File(dataDirectory, "patients.dat");
+        if (patients.exists()) {
+            patientDao.saveAll(new FilePatientDao(patients.getPath()).loadAll());
+            keepUnsharded(patients);
+        }
+        File appointments = new File(dataDirectory, "appointments.dat");
+        if (appointments.exists()) {
+            appointmentDao.saveAll(new FileAppointmentDao(appointments.getPath()).loadAll());
+            keepUnsharded(appointments);
+        }
+        File records = new File(dataDirectory, "records.dat");
+        if (records.exists()) {
+            healthRecordDao.saveAll(new FileHealthRecordDao(records.getPath()).loadAll());
+            keepUnsharded(records);
+        }
+    }
+
+    private static void keepUnsharded(File file) {
+        File renamed = new File(file.getPath() + ".unsharded");
+        if (!file.renameTo(renamed)) {
+            throw new IllegalStateException("Split " + file + " into shards but could not rename it to " + renamed);
+        }
+        System.out.println("✓ Split " + file + " into shards (original kept as " + renamed.getName() + ")");
     }
 
     private static BackendFacade createFacade(PatientDao patientDao, 
                                              DoctorDao doctorDao,
                                              AppointmentDao appointmentDao, 
                                              HealthRecordDao healthRecordDao,
-                                             UserDao userDao) {
+                                             UserDao userDao,
+                                             TransactionManager transactionManager,
+                                             File dataDirectory,
+                                             int defaultImportBatchSize) {
+        // Time every DAO call; the transaction manager keeps the undecorated file DAOs
+        Properties props = loadProperties();
+        MetricsRegistry metrics = MetricsRegistry.getDefault();
+        SlowOperationLog slowLog = SlowOperationLog.toStandardError(
+            intProperty(props, "dao.slowThresholdMs", DEFAULT_SLOW_DAO_MILLIS));
+        patientDao = new TimedPatientDao(patientDao, metrics, slowLog);
+        doctorDao = new TimedDoctorDao(doctorDao, metrics, slowLog);
+        appointmentDao = new TimedAppointmentDao(appointmentDao, metrics, slowLog);
+        healthRecordDao = new TimedHealthRecordDao(healthRecordDao, metrics, slowLog);
+        userDao = new TimedUserDao(userDao, metrics, slowLog);
+
         // Initialize services
         PatientService patientService = new PatientService(patientDao);
+        patientService.setHistoryLoader(new DaoPatientHistoryLoader(appointmentDao, healthRecordDao));
         DoctorService doctorService = new DoctorService(doctorDao);
         AppointmentService appointmentService = new AppointmentService(
-            appointmentDao, patientService, doctorService);
+            appointmentDao, patientService, doctorService, transactionManager);
         HealthRecordService healthRecordService = new HealthRecordService(
-            healthRecordDao, patientService, doctorService);
+            healthRecordDao, patientService, doctorService, new File(dataDirectory, SEARCH_SNAPSHOT_FILE),
+            intProperty(props, "search.snapshotEveryChanges", HealthRecordService.DEFAULT_SNAPSHOT_EVERY_CHANGES));
         ExportService exportService = new ExportService(
             patientService, healthRecordService, doctorService);
+        ExportJobService exportJobService = new ExportJobService(
+            exportService, patientService, new File(dataDirectory, EXPORT_DIRECTORY),
+            intProperty(props, "export.workers", DEFAULT_EXPORT_WORKERS),
+            intProperty(props, "export.maxRunningPerTenant", DEFAULT_EXPORT_RUNNING_PER_TENANT),
+            intProperty(props, "export.maxQueuedPerTenant", DEFAULT_EXPORT_QUEUED_PER_TENANT),
+            intProperty(props, "export.parallelism", DEFAULT_EXPORT_PARALLELISM));
+        ImportService importService = new ImportService(
+            patientService, doctorService, transactionManager, new File(dataDirectory, IMPORT_DIRECTORY),
+            intProperty(props, "import.batchSize", defaultImportBatchSize));
         AuthService authService = new AuthService(userDao);
 
         return new BackendFacade(
@@ -132,6 +385,9 @@ public class BackendFactory {
             appointmentService, 
             healthRecordService, 
             exportService,
+            exportJobService,
+            new ColumnarSnapshotWriter(appointmentDao, healthRecordDao, doctorDao),
+            importService,
             authService
         );
     }
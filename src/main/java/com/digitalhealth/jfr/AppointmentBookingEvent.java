@@ -0,0 +1,50 @@
+package com.digitalhealth.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One call to AppointmentService.bookAppointment, including optimistic-lock retries.
+ */
+@Name("com.digitalhealth.AppointmentBooking")
+@Label("Appointment Booking")
+@Category({"Digital Health", "Appointments"})
+@Enabled(false)
+@StackTrace(false)
+public class AppointmentBookingEvent extends Event {
+    @Label("Patient ID")
+    public String patientId;
+
+    @Label("Doctor ID")
+    public String doctorId;
+
+    @Label("Slot")
+    public String slot;
+
+    @Label("Appointment ID")
+    public String appointmentId;
+
+    @Label("Attempts")
+    @Description("Transactions tried; more than one means the doctor was updated concurrently")
+    public int attempts;
+
+    @Label("Outcome")
+    @Description("booked, or the simple name of the exception that ended the booking")
+    public String outcome;
+
+    /**
+     * End the event and commit it with the given outcome, if the event is being recorded.
+     */
+    public void complete(String outcome) {
+        end();
+        if (shouldCommit()) {
+            this.outcome = outcome;
+            commit();
+        }
+    }
+}
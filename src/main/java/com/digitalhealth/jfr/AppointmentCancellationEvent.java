@@ -0,0 +1,43 @@
+package com.digitalhealth.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One call to AppointmentService.cancelAppointment, including optimistic-lock retries.
+ */
+@Name("com.digitalhealth.AppointmentCancellation")
+@Label("Appointment Cancellation")
+@Category({"Digital Health", "Appointments"})
+@Enabled(false)
+@StackTrace(false)
+public class AppointmentCancellationEvent extends Event {
+    @Label("Appointment ID")
+    public String appointmentId;
+
+    @Label("Doctor ID")
+    public String doctorId;
+
+    @Label("Attempts")
+    public int attempts;
+
+    @Label("Outcome")
+    @Description("cancelled, already_cancelled, or the simple name of the exception that ended it")
+    public String outcome;
+
+    /**
+     * End the event and commit it with the given outcome, if the event is being recorded.
+     */
+    public void complete(String outcome) {
+        end();
+        if (shouldCommit()) {
+            this.outcome = outcome;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.digitalhealth.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One DAO call, emitted by the timing decorators around every DAO.
+ */
+@Name("com.digitalhealth.DaoCall")
+@Label("DAO Call")
+@Category({"Digital Health", "Persistence"})
+@Enabled(false)
+@StackTrace(false)
+public class DaoCallEvent extends Event {
+    @Label("Entity")
+    public String entity;
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Key")
+    @Description("ID or username the call was made with, if any")
+    public String key;
+
+    @Label("Rows")
+    @Description("Rows returned or written, or -1 if unknown")
+    public int rows;
+
+    @Label("Failed")
+    public boolean failed;
+}
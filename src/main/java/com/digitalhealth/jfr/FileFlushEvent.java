@@ -0,0 +1,54 @@
+package com.digitalhealth.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.io.File;
+
+/**
+ * A data file, journal or index snapshot written to disk.
+ *
+ * Usage:
+ * <pre>
+ * FileFlushEvent event = new FileFlushEvent();
+ * event.begin();
+ * ... write file ...
+ * event.complete(path, false);
+ * </pre>
+ */
+@Name("com.digitalhealth.FileFlush")
+@Label("File Flush")
+@Category({"Digital Health", "Persistence"})
+@Enabled(false)
+@StackTrace(false)
+public class FileFlushEvent extends Event {
+    @Label("Path")
+    public String path;
+
+    @Label("Bytes Written")
+    @DataAmount
+    public long bytes;
+
+    @Label("Fsync")
+    @Description("Whether the write was forced to the storage device")
+    public boolean fsync;
+
+    /**
+     * End the event and commit it with the file's size, if the event is being recorded.
+     */
+    public void complete(String filePath, boolean synced) {
+        end();
+        if (shouldCommit()) {
+            path = filePath;
+            bytes = new File(filePath).length();
+            fsync = synced;
+            commit();
+        }
+    }
+}
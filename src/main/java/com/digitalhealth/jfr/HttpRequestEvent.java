@@ -0,0 +1,33 @@
+package com.digitalhealth.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One HTTP request handled by ApiServer, from dispatch until the response is written.
+ */
+@Name("com.digitalhealth.HttpRequest")
+@Label("HTTP Request")
+@Category({"Digital Health", "HTTP"})
+@Description("Request handled by the API server")
+@Enabled(false)
+@StackTrace(false)
+public class HttpRequestEvent extends Event {
+    @Label("Route")
+    public String route;
+
+    @Label("Method")
+    public String method;
+
+    @Label("Path")
+    public String path;
+
+    @Label("Status")
+    @Description("HTTP status, or -1 if the handler failed before responding")
+    public int status;
+}
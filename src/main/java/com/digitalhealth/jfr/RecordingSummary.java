@@ -0,0 +1,149 @@
+package com.digitalhealth.jfr;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Summarize the Digital Health events in a JFR recording by hot path.
+ * Events are grouped by route (HTTP), outcome (bookings, cancellations), entity and
+ * operation (DAO calls) or file (flushes), and the groups are ranked by total time.
+ *
+ * Usage:
+ * <pre>
+ * java -cp target/classes com.digitalhealth.jfr.RecordingSummary app.jfr [top]
+ * </pre>
+ */
+public class RecordingSummary {
+    private static final String EVENT_PREFIX = "com.digitalhealth.";
+    private static final int DEFAULT_TOP = 25;
+
+    /**
+     * Aggregated events of one hot path.
+     */
+    public static class HotPath {
+        private final String event;
+        private final String key;
+        private long count;
+        private long failures;
+        private long totalNanos;
+        private long maxNanos;
+        private long rows;
+        private long bytes;
+
+        HotPath(String event, String key) {
+            this.event = event;
+            this.key = key;
+        }
+
+        void add(RecordedEvent recorded) {
+            long nanos = recorded.getDuration().toNanos();
+            count++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+            if (recorded.hasField("rows")) {
+                // -1 means the call has no meaningful row count
+                rows += Math.max(0, recorded.getInt("rows"));
+            }
+            if (recorded.hasField("bytes")) {
+                bytes += recorded.getLong("bytes");
+            }
+            if (recorded.hasField("failed") && recorded.getBoolean("failed")) {
+                failures++;
+            }
+            if (recorded.hasField("status") && (recorded.getInt("status") < 0 || recorded.getInt("status") >= 500)) {
+                failures++;
+            }
+        }
+
+        /** Short event name without the package prefix, e.g. "DaoCall". */
+        public String getEvent() { return event; }
+        public String getKey() { return key; }
+        public long getCount() { return count; }
+        public long getFailures() { return failures; }
+        public Duration getTotal() { return Duration.ofNanos(totalNanos); }
+        public Duration getMax() { return Duration.ofNanos(maxNanos); }
+        public Duration getMean() { return Duration.ofNanos(count == 0 ? 0 : totalNanos / count); }
+        public long getRows() { return rows; }
+        public long getBytes() { return bytes; }
+    }
+
+    /**
+     * Read a recording and return its hot paths, most total time first.
+     */
+    public static List<HotPath> summarize(Path recording) throws IOException {
+        Map<String, HotPath> paths = new LinkedHashMap<>();
+        try (RecordingFile file = new RecordingFile(recording)) {
+            while (file.hasMoreEvents()) {
+                RecordedEvent recorded = file.readEvent();
+                String name = recorded.getEventType().getName();
+                if (!name.startsWith(EVENT_PREFIX)) {
+                    continue;
+                }
+                String event = name.substring(EVENT_PREFIX.length());
+                String key = keyOf(event, recorded);
+                paths.computeIfAbsent(event + " " + key, k -> new HotPath(event, key)).add(recorded);
+            }
+        }
+        List<HotPath> result = new ArrayList<>(paths.values());
+        result.sort(Comparator.comparingLong((HotPath p) -> p.totalNanos).reversed());
+        return result;
+    }
+
+    private static String keyOf(String event, RecordedEvent recorded) {
+        switch (event) {
+            case "HttpRequest":
+                return recorded.getString("method") + " " + recorded.getString("route");
+            case "AppointmentBooking":
+            case "AppointmentCancellation":
+                return String.valueOf(recorded.getString("outcome"));
+            case "DaoCall":
+                return recorded.getString("entity") + "." + recorded.getString("operation");
+            case "FileFlush":
+                return Paths.get(recorded.getString("path")).getFileName().toString()
+                        + (recorded.getBoolean("fsync") ? " (fsync)" : "");
+            default:
+                return "";
+        }
+    }
+
+    /**
+     * Render the top hot paths as a fixed-width table.
+     */
+    public static String format(List<HotPath> paths, int top) {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%-24s %-36s %8s %6s %11s %11s %11s %10s %12s%n",
+                "EVENT", "HOT PATH", "COUNT", "FAIL", "TOTAL ms", "MEAN ms", "MAX ms", "ROWS", "BYTES"));
+        for (HotPath path : paths.subList(0, Math.min(top, paths.size()))) {
+            out.append(String.format("%-24s %-36s %8d %6d %11.3f %11.3f %11.3f %10d %12d%n",
+                    path.event, path.key, path.count, path.failures,
+                    path.totalNanos / 1e6, path.getMean().toNanos() / 1e6, path.maxNanos / 1e6,
+                    path.rows, path.bytes));
+        }
+        return out.toString();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: RecordingSummary <recording.jfr> [top]");
+            System.exit(2);
+        }
+        int top = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_TOP;
+        List<HotPath> paths = summarize(Paths.get(args[0]));
+        if (paths.isEmpty()) {
+            System.out.println("No " + EVENT_PREFIX + "* events in " + args[0]
+                    + "; record with settings=digitalhealth.jfc to enable them.");
+            return;
+        }
+        System.out.print(format(paths, top));
+    }
+}
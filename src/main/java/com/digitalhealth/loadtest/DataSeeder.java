@@ -0,0 +1,116 @@
+package com.digitalhealth.loadtest;
+
+import com.digitalhealth.dto.DoctorDTO;
+import com.digitalhealth.dto.PatientDTO;
+import com.digitalhealth.dto.UserDTO;
+import com.digitalhealth.exception.ValidationException;
+import com.digitalhealth.facade.BackendFacade;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Seeds a backend with synthetic patients, doctors and login users for a load run.
+ * The same seed always produces the same data, so runs are reproducible.
+ */
+public class DataSeeder {
+    static final String PASSWORD = "loadtest123";
+
+    private static final String[] FIRST_NAMES = {
+        "James", "Mary", "Robert", "Patricia", "John", "Jennifer", "Michael", "Linda",
+        "Aisha", "Wei", "Carlos", "Priya", "Olga", "Kenji", "Fatima", "Lucas"
+    };
+    private static final String[] LAST_NAMES = {
+        "Smith", "Johnson", "Williams", "Brown", "Garcia", "Miller", "Davis", "Khan",
+        "Chen", "Rodriguez", "Patel", "Ivanova", "Tanaka", "Ali", "Silva", "Wilson"
+    };
+    private static final String[] SPECIALTIES = {
+        "Cardiology", "Dermatology", "Neurology", "Pediatrics", "Orthopedics", "General Practice"
+    };
+
+    private final BackendFacade facade;
+    private final Random random;
+
+    /**
+     * Slots open for booking after seeding, one entry per doctor and time.
+     */
+    public static class Slot {
+        final String doctorId;
+        final LocalDateTime dateTime;
+
+        Slot(String doctorId, LocalDateTime dateTime) {
+            this.doctorId = doctorId;
+            this.dateTime = dateTime;
+        }
+    }
+
+    /**
+     * What was created, for the load generator to build requests from.
+     */
+    public static class SeedData {
+        final List<String> patientIds = new ArrayList<>();
+        final List<String> doctorIds = new ArrayList<>();
+        final List<String> usernames = new ArrayList<>();
+        final List<Slot> slots = new ArrayList<>();
+    }
+
+    public DataSeeder(BackendFacade facade, long seed) {
+        this.facade = facade;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Create the dataset.
+     * 
+     * @param patients Number of patients
+     * @param doctors Number of doctors
+     * @param users Number of patient login users (at most one per patient)
+     * @param slotDays Days of hourly slots (9:00-17:00) per doctor, starting tomorrow
+     */
+    public SeedData seed(int patients, int doctors, int users, int slotDays) throws ValidationException {
+        SeedData data = new SeedData();
+
+        for (int i = 0; i < patients; i++) {
+            String name = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " "
+                    + LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+            String contact = String.format("%010d", 5550000000L + i);
+            String gender = random.nextBoolean() ? "F" : "M";
+            data.patientIds.add(facade.registerPatient(
+                    new PatientDTO(name, 18 + random.nextInt(70), gender, contact)));
+        }
+
+        LocalDate firstDay = LocalDate.now().plusDays(1);
+        for (int i = 0; i < doctors; i++) {
+            List<LocalDateTime> slots = new ArrayList<>();
+            for (int day = 0; day < slotDays; day++) {
+                for (int hour = 9; hour <= 17; hour++) {
+                    slots.add(firstDay.plusDays(day).atTime(hour, 0));
+                }
+            }
+            DoctorDTO dto = new DoctorDTO(null, "Dr. " + LAST_NAMES[i % LAST_NAMES.length] + " " + i,
+                    SPECIALTIES[i % SPECIALTIES.length]);
+            dto.setAvailableSlots(slots);
+            String doctorId = facade.registerDoctor(dto);
+            data.doctorIds.add(doctorId);
+            for (LocalDateTime slot : slots) {
+                data.slots.add(new Slot(doctorId, slot));
+            }
+        }
+        Collections.shuffle(data.slots, random);
+
+        for (int i = 0; i < Math.min(users, patients); i++) {
+            UserDTO user = new UserDTO();
+            user.setUsername("loadtest" + i);
+            user.setPassword(PASSWORD);
+            user.setRole("PATIENT");
+            user.setLinkedEntityId(data.patientIds.get(i));
+            facade.registerUser(user);
+            data.usernames.add(user.getUsername());
+        }
+        return data;
+    }
+}
@@ -0,0 +1,338 @@
+package com.digitalhealth.loadtest;
+
+import com.digitalhealth.api.ApiServer;
+import com.digitalhealth.facade.AsyncBackendFacade;
+import com.digitalhealth.facade.BackendFacade;
+import com.digitalhealth.facade.BackendFactory;
+import com.digitalhealth.metrics.MetricsRegistry;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Open-loop HTTP load generator for {@link ApiServer}.
+ *
+ * Starts an in-process server on a temp data directory, seeds it with {@link DataSeeder},
+ * then sends a weighted mix of login, list, book and cancel requests at a fixed rate.
+ * Requests are scheduled at fixed intervals and latency is measured from the scheduled
+ * send time, so a stalled server shows up in the percentiles instead of silently lowering
+ * the request rate. Book and cancel share a pool of free slots and booked appointments,
+ * so every request is valid and errors are real server failures.
+ *
+ * Usage:
+ * <pre>
+ * java -cp digital-health-server.jar com.digitalhealth.loadtest.LoadGenerator \
+ *      --rps 200 --duration 30 --mix login=10,list=50,book=25,cancel=15
+ * </pre>
+ */
+public class LoadGenerator {
+    private static final Pattern APPOINTMENT_ID = Pattern.compile("\"appointmentId\":\"([^\"]+)\"");
+
+    /**
+     * Request types in the traffic mix.
+     */
+    public enum Operation {
+        LOGIN, LIST, BOOK, CANCEL
+    }
+
+    /**
+     * Command-line settings with their defaults.
+     */
+    public static class Options {
+        double rps = 200;
+        int durationSeconds = 30;
+        int warmupSeconds = 5;
+        Map<Operation, Integer> mix = parseMix("login=10,list=50,book=25,cancel=15");
+        int patients = 200;
+        int doctors = 20;
+        int users = 50;
+        int slotDays = 14;
+        int maxInFlight = 256;
+        int backendConcurrency = 4;
+        long seed = 42;
+        boolean keepData;
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if ("--keep-data".equals(arg)) {
+                    options.keepData = true;
+                    continue;
+                }
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + arg);
+                }
+                String value = args[++i];
+                switch (arg) {
+                    case "--rps": options.rps = Double.parseDouble(value); break;
+                    case "--duration": options.durationSeconds = Integer.parseInt(value); break;
+                    case "--warmup": options.warmupSeconds = Integer.parseInt(value); break;
+                    case "--mix": options.mix = parseMix(value); break;
+                    case "--patients": options.patients = Integer.parseInt(value); break;
+                    case "--doctors": options.doctors = Integer.parseInt(value); break;
+                    case "--users": options.users = Integer.parseInt(value); break;
+                    case "--slot-days": options.slotDays = Integer.parseInt(value); break;
+                    case "--max-in-flight": options.maxInFlight = Integer.parseInt(value); break;
+                    case "--backend-concurrency": options.backendConcurrency = Integer.parseInt(value); break;
+                    case "--seed": options.seed = Long.parseLong(value); break;
+                    default: throw new IllegalArgumentException("Unknown option: " + arg);
+                }
+            }
+            if (options.rps <= 0 || options.durationSeconds <= 0 || options.users <= 0) {
+                throw new IllegalArgumentException("--rps, --duration and --users must be positive");
+            }
+            return options;
+        }
+
+        static Map<Operation, Integer> parseMix(String mix) {
+            Map<Operation, Integer> weights = new LinkedHashMap<>();
+            for (String part : mix.split(",")) {
+                String[] kv = part.trim().split("=");
+                if (kv.length != 2) {
+                    throw new IllegalArgumentException("Mix entries look like name=weight: " + part);
+                }
+                weights.put(Operation.valueOf(kv[0].trim().toUpperCase()), Integer.parseInt(kv[1].trim()));
+            }
+            if (weights.values().stream().mapToInt(Integer::intValue).sum() <= 0) {
+                throw new IllegalArgumentException("Mix weights must add up to more than 0");
+            }
+            return weights;
+        }
+    }
+
+    private static class Booking {
+        final String appointmentId;
+        final DataSeeder.Slot slot;
+
+        Booking(String appointmentId, DataSeeder.Slot slot) {
+            this.appointmentId = appointmentId;
+            this.slot = slot;
+        }
+    }
+
+    private final Options options;
+    private final URI baseUri;
+    private final DataSeeder.SeedData data;
+    private final HttpClient client;
+    private final Random random;
+    private final Semaphore inFlight;
+    private final ConcurrentLinkedQueue<DataSeeder.Slot> freeSlots;
+    private final ConcurrentLinkedQueue<Booking> booked = new ConcurrentLinkedQueue<>();
+    private final LoadReport report = new LoadReport();
+
+    public LoadGenerator(Options options, URI baseUri, DataSeeder.SeedData data) {
+        this.options = options;
+        this.baseUri = baseUri;
+        this.data = data;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        this.random = new Random(options.seed);
+        this.inFlight = new Semaphore(options.maxInFlight);
+        this.freeSlots = new ConcurrentLinkedQueue<>(data.slots);
+    }
+
+    /**
+     * Send requests at the target rate for warmup plus duration, then wait for stragglers.
+     */
+    public LoadReport run() throws InterruptedException {
+        long interval = (long) (1e9 / options.rps);
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(options.warmupSeconds);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(options.durationSeconds);
+
+        for (long i = 0; ; i++) {
+            long scheduled = start + i * interval;
+            if (scheduled >= end) {
+                break;
+            }
+            long wait = scheduled - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            inFlight.acquire();
+            send(pickOperation(), scheduled, scheduled >= measureFrom);
+        }
+
+        if (!inFlight.tryAcquire(options.maxInFlight, 30, TimeUnit.SECONDS)) {
+            System.err.println("Some requests did not complete within 30 seconds");
+        }
+        report.setMeasuredNanos(end - measureFrom);
+        return report;
+    }
+
+    private Operation pickOperation() {
+        int total = options.mix.values().stream().mapToInt(Integer::intValue).sum();
+        int pick = random.nextInt(total);
+        for (Map.Entry<Operation, Integer> entry : options.mix.entrySet()) {
+            pick -= entry.getValue();
+            if (pick < 0) {
+                return entry.getKey();
+            }
+        }
+        return Operation.LIST;
+    }
+
+    private void send(Operation operation, long scheduled, boolean measured) {
+        switch (operation) {
+            case LOGIN: {
+                String username = data.usernames.get(random.nextInt(data.usernames.size()));
+                execute(operation, post("/api/auth/login",
+                        "{\"username\":\"" + username + "\",\"password\":\"" + DataSeeder.PASSWORD + "\"}"),
+                        scheduled, measured, null);
+                break;
+            }
+            case BOOK: {
+                DataSeeder.Slot slot = freeSlots.poll();
+                if (slot == null) {
+                    substitute(scheduled, measured);
+                    return;
+                }
+                String patientId = data.patientIds.get(random.nextInt(data.patientIds.size()));
+                String body = "{\"patientId\":\"" + patientId + "\",\"doctorId\":\"" + slot.doctorId
+                        + "\",\"dateTime\":\"" + slot.dateTime + "\",\"reason\":\"Load test visit\"}";
+                execute(operation, post("/api/appointments/book", body), scheduled, measured, response -> {
+                    Matcher matcher = response == null ? null : APPOINTMENT_ID.matcher(response.body());
+                    if (response != null && response.statusCode() == 201 && matcher.find()) {
+                        booked.add(new Booking(matcher.group(1), slot));
+                    } else {
+                        freeSlots.add(slot);
+                    }
+                });
+                break;
+            }
+            case CANCEL: {
+                Booking booking = booked.poll();
+                if (booking == null) {
+                    substitute(scheduled, measured);
+                    return;
+                }
+                execute(operation, post("/api/appointments/cancel",
+                        "{\"appointmentId\":\"" + booking.appointmentId + "\"}"), scheduled, measured, response -> {
+                    if (response != null && response.statusCode() == 200) {
+                        freeSlots.add(booking.slot);
+                    }
+                });
+                break;
+            }
+            default:
+                execute(Operation.LIST, get("/api/doctors"), scheduled, measured, null);
+        }
+    }
+
+    private void substitute(long scheduled, boolean measured) {
+        if (measured) {
+            report.recordSubstitution();
+        }
+        execute(Operation.LIST, get("/api/doctors"), scheduled, measured, null);
+    }
+
+    private interface ResponseHandler {
+        void handle(HttpResponse<String> responseOrNull);
+    }
+
+    private void execute(Operation operation, HttpRequest request, long scheduled, boolean measured,
+                         ResponseHandler handler) {
+        client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .whenComplete((response, error) -> {
+                    try {
+                        long micros = (System.nanoTime() - scheduled) / 1000;
+                        String failure = null;
+                        if (error != null) {
+                            Throwable cause = error.getCause() != null ? error.getCause() : error;
+                            failure = cause.getClass().getSimpleName();
+                        } else if (response.statusCode() >= 400) {
+                            failure = "HTTP " + response.statusCode();
+                        }
+                        if (measured) {
+                            report.record(operation, micros, failure);
+                        }
+                        if (handler != null) {
+                            handler.handle(error == null ? response : null);
+                        }
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(baseUri.resolve(path))
+                .timeout(Duration.ofSeconds(30))
+                .GET()
+                .build();
+    }
+
+    private HttpRequest post(String path, String json) {
+        return HttpRequest.newBuilder(baseUri.resolve(path))
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Options: --rps N --duration SEC --warmup SEC --mix login=W,list=W,book=W,cancel=W");
+            System.err.println("         --patients N --doctors N --users N --slot-days N --max-in-flight N");
+            System.err.println("         --backend-concurrency N --seed N --keep-data");
+            System.exit(2);
+            return;
+        }
+
+        Path dataDir = Files.createTempDirectory("dh-loadtest");
+        BackendFacade facade = BackendFactory.createFileBackend(dataDir.toString());
+        AsyncBackendFacade async = new AsyncBackendFacade(facade, options.backendConcurrency);
+        async.registerMetrics(MetricsRegistry.getDefault());
+        ApiServer server = new ApiServer(async, 0);
+        server.start();
+        try {
+            System.out.printf("Seeding %d patients, %d doctors, %d users in %s%n",
+                    options.patients, options.doctors, options.users, dataDir);
+            DataSeeder.SeedData data = new DataSeeder(facade, options.seed)
+                    .seed(options.patients, options.doctors, options.users, options.slotDays);
+
+            System.out.printf("Running %.0f req/s for %d s (+%d s warmup), mix %s%n",
+                    options.rps, options.durationSeconds, options.warmupSeconds, options.mix);
+            URI baseUri = URI.create("http://localhost:" + server.getPort() + "/");
+            LoadReport report = new LoadGenerator(options, baseUri, data).run();
+            report.print(System.out, options.rps);
+        } finally {
+            server.stop();
+            if (options.keepData) {
+                System.out.println("Data kept in " + dataDir);
+            } else {
+                deleteRecursively(dataDir);
+            }
+        }
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.digitalhealth.loadtest;
+
+import java.io.PrintStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-operation latency, error and throughput figures of a load run.
+ */
+public class LoadReport {
+    private final Map<LoadGenerator.Operation, OperationStats> stats =
+            new EnumMap<>(LoadGenerator.Operation.class);
+    private final LatencyHistogram overall = new LatencyHistogram();
+    private final LongAdder overallErrors = new LongAdder();
+    private final LongAdder substituted = new LongAdder();
+    private final Map<String, LongAdder> failures = new ConcurrentHashMap<>();
+    private volatile long measuredNanos;
+
+    /**
+     * Latency and error count for one operation type.
+     */
+    public static class OperationStats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+    }
+
+    LoadReport() {
+        for (LoadGenerator.Operation operation : LoadGenerator.Operation.values()) {
+            stats.put(operation, new OperationStats());
+        }
+    }
+
+    /**
+     * @param failure Null for success, otherwise the HTTP status or exception it failed with
+     */
+    void record(LoadGenerator.Operation operation, long micros, String failure) {
+        OperationStats operationStats = stats.get(operation);
+        operationStats.latency.record(micros);
+        overall.record(micros);
+        if (failure != null) {
+            operationStats.errors.increment();
+            overallErrors.increment();
+            failures.computeIfAbsent(failure, key -> new LongAdder()).increment();
+        }
+    }
+
+    /**
+     * A book or cancel was sent as a list because no free slot or booked appointment was left.
+     */
+    void recordSubstitution() {
+        substituted.increment();
+    }
+
+    void setMeasuredNanos(long measuredNanos) {
+        this.measuredNanos = measuredNanos;
+    }
+
+    public OperationStats get(LoadGenerator.Operation operation) {
+        return stats.get(operation);
+    }
+
+    public long totalRequests() {
+        return overall.count();
+    }
+
+    public long totalErrors() {
+        return overallErrors.sum();
+    }
+
+    public double throughput() {
+        return measuredNanos == 0 ? 0 : overall.count() * 1e9 / measuredNanos;
+    }
+
+    public void print(PrintStream out, double targetRps) {
+        out.printf("Target %.0f req/s, achieved %.1f req/s over %.1f s%n",
+                targetRps, throughput(), measuredNanos / 1e9);
+        out.printf("%-8s %9s %8s %7s %9s %9s %9s %9s %9s%n",
+                "op", "requests", "errors", "err%", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        for (Map.Entry<LoadGenerator.Operation, OperationStats> entry : stats.entrySet()) {
+            OperationStats s = entry.getValue();
+            if (s.latency.count() > 0) {
+                printRow(out, entry.getKey().name().toLowerCase(), s.latency, s.errors.sum());
+            }
+        }
+        printRow(out, "all", overall, overallErrors.sum());
+        for (Map.Entry<String, LongAdder> entry : new TreeMap<>(failures).entrySet()) {
+            out.printf("  %d x %s%n", entry.getValue().sum(), entry.getKey());
+        }
+        if (substituted.sum() > 0) {
+            out.printf("%d book/cancel requests were sent as list (slot or booking pool empty)%n",
+                    substituted.sum());
+        }
+    }
+
+    private void printRow(PrintStream out, String name, LatencyHistogram latency, long errors) {
+        long count = latency.count();
+        double rate = measuredNanos == 0 ? 0 : count * 1e9 / measuredNanos;
+        out.printf("%-8s %9d %8d %6.2f%% %9.1f %9.2f %9.2f %9.2f %9.2f%n",
+                name, count, errors, count == 0 ? 0.0 : 100.0 * errors / count, rate,
+                latency.percentile(50) / 1000.0, latency.percentile(99) / 1000.0,
+                latency.percentile(99.9) / 1000.0, latency.max() / 1000.0);
+    }
+}
@@ -0,0 +1,703 @@
+package com.digitalhealth.loadtest;
+
+import com.digitalhealth.dao.AppointmentDao;
+import com.digitalhealth.dao.DoctorDao;
+import com.digitalhealth.dao.HealthRecordDao;
+import com.digitalhealth.dao.PatientDao;
+import com.digitalhealth.dao.UserDao;
+import com.digitalhealth.dao.file.FileAppointmentDao;
+import com.digitalhealth.dao.file.FileDoctorDao;
+import com.digitalhealth.dao.file.FileHealthRecordDao;
+import com.digitalhealth.dao.file.FilePatientDao;
+import com.digitalhealth.dao.file.FileUserDao;
+import com.digitalhealth.dao.mysql.MySQLBulkWriter;
+import com.digitalhealth.model.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.MonthDay;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Deterministic synthetic dataset for scale tests and benchmarks, from a handful of rows up to
+ * millions of patients and tens of millions of health records.
+ *
+ * Every entity is a pure function of the seed and its index, so {@code patient(i)} is the same
+ * whether it is generated alone, in a stream or on another thread, and large tables can be
+ * generated in parallel. The distributions aim to look like a real clinic:
+ * <ul>
+ *   <li>doctor popularity follows a Zipf law (a few doctors see most patients);</li>
+ *   <li>visits peak in winter, dip in summer, and are rare at weekends and on holidays,
+ *       clustered in morning and early-afternoon hours;</li>
+ *   <li>symptom texts are mostly one or two short phrases, with a long tail of free-text
+ *       notes whose length is log-normal;</li>
+ *   <li>patient ages include children, and diagnoses are skewed towards common ones.</li>
+ * </ul>
+ *
+ * IDs follow the services' numeric formats (P1001, D0001, A1001, R1001, U0002 onwards), so the
+ * services keep numbering after the generated rows. Entities are at version 1, as if already
+ * stored, so the services can update them after a {@code saveAll} that keeps versions as given.
+ *
+ * <pre>
+ * new SyntheticDataGenerator(42).patients(1_000_000).doctors(10_000)
+ *         .appointments(5_000_000).healthRecords(20_000_000)
+ *         .writeTo(patientDao, doctorDao, appointmentDao, healthRecordDao, userDao);
+ * </pre>
+ */
+public class SyntheticDataGenerator {
+    /** Password of every generated user. */
+    public static final String PASSWORD = "synthetic123";
+
+    /** Appointments run this many days past the end of the history, records do not. */
+    static final int FUTURE_DAYS = 28;
+
+    private static final String[] FIRST_NAMES = {
+        "James", "Mary", "Robert", "Patricia", "John", "Jennifer", "Michael", "Linda", "David", "Elizabeth",
+        "Aisha", "Wei", "Carlos", "Priya", "Olga", "Kenji", "Fatima", "Lucas", "Amara", "Mateo",
+        "Sofia", "Noah", "Yuki", "Omar", "Chloe", "Ravi", "Ingrid", "Tomasz", "Leila", "Kwame"
+    };
+    private static final String[] LAST_NAMES = {
+        "Smith", "Johnson", "Williams", "Brown", "Garcia", "Miller", "Davis", "Khan", "Chen", "Rodriguez",
+        "Patel", "Ivanova", "Tanaka", "Ali", "Silva", "Wilson", "Nguyen", "Kowalski", "Okafor", "Haddad",
+        "Larsen", "Moreau", "Rossi", "Schmidt", "Kim", "Singh", "Costa", "Novak", "Mensah", "Lopez"
+    };
+    /** Specialties with their share of doctors. */
+    private static final String[] SPECIALTIES = {
+        "General Practice", "General Practice", "General Practice", "General Practice",
+        "Pediatrics", "Pediatrics", "Cardiology", "Dermatology", "Orthopedics", "Neurology",
+        "Psychiatry", "Gynecology", "Ophthalmology", "ENT"
+    };
+    private static final String[] SYMPTOMS = {
+        "Cough", "Fever", "Headache", "Sore throat", "Fatigue", "Back pain", "Runny nose", "Nausea",
+        "Dizziness", "Chest pain", "Shortness of breath", "Rash", "Joint pain", "Abdominal pain",
+        "Insomnia", "Anxiety", "Blurred vision", "Ear ache", "Palpitations", "Muscle cramps",
+        "Loss of appetite", "Itching", "Swollen ankles", "Vomiting", "Diarrhea", "Chills"
+    };
+    private static final String[] NOTE_WORDS = {
+        "patient", "reports", "since", "days", "weeks", "worse", "at", "night", "after", "meals",
+        "mild", "moderate", "severe", "intermittent", "constant", "no", "history", "of", "similar",
+        "episodes", "taking", "over-the-counter", "medication", "with", "little", "relief", "family",
+        "also", "affected", "recent", "travel", "denies", "smoking", "alcohol", "use", "sleep", "poor"
+    };
+    /** Diagnoses from most to least common; picked with a Zipf law. */
+    private static final String[] DIAGNOSES = {
+        "Common cold", "Influenza", "Hypertension", "Viral infection", "Back strain", "Migraine",
+        "Gastroenteritis", "Anxiety disorder", "Type 2 diabetes", "Asthma", "Allergic rhinitis",
+        "Eczema", "Otitis media", "Bronchitis", "Urinary tract infection", "Osteoarthritis",
+        "Depression", "Sinusitis", "Conjunctivitis", "Iron deficiency anemia", "Atrial fibrillation"
+    };
+    private static final String[] TREATMENTS = {
+        "Rest and fluids", "Physiotherapy", "Lifestyle changes", "Follow-up in two weeks",
+        "Referral to specialist", "Dietary advice", "Monitor at home", "Blood tests ordered"
+    };
+    private static final String[] PRESCRIPTIONS = {
+        "Paracetamol 500mg twice daily", "Ibuprofen 400mg as needed", "Amoxicillin 500mg three times daily",
+        "Lisinopril 10mg daily", "Metformin 500mg twice daily", "Salbutamol inhaler as needed",
+        "Cetirizine 10mg daily", "Omeprazole 20mg daily", "Sertraline 50mg daily", "Hydrocortisone cream"
+    };
+    /** Relative visit volume for each clinic hour from 8:00 to 17:00. */
+    private static final double[] HOUR_WEIGHTS = {1.3, 1.5, 1.4, 1.2, 0.6, 0.9, 1.1, 1.0, 0.8, 0.4};
+    private static final MonthDay[] HOLIDAYS = {
+        MonthDay.of(1, 1), MonthDay.of(7, 4), MonthDay.of(12, 24), MonthDay.of(12, 25), MonthDay.of(12, 31)
+    };
+
+    private static final long PATIENT_SALT = 1;
+    private static final long DOCTOR_SALT = 2;
+    private static final long APPOINTMENT_SALT = 3;
+    private static final long RECORD_SALT = 4;
+    private static final long POPULARITY_SALT = 5;
+
+    private final long seed;
+    private int patients = 1000;
+    private int doctors = 50;
+    private int appointments = 10000;
+    private int healthRecords = 10000;
+    private int users;
+    private double doctorSkew = 1.07;
+    private LocalDate start = LocalDate.of(2024, 1, 1);
+    private int days = 730;
+    private int slotDays;
+
+    // Derived tables, rebuilt when a setting changes; the volatile ones are assigned last
+    private volatile double[] doctorCdf;
+    private int[] doctorByRank;
+    private volatile double[] dayCdf;
+    private volatile double[] hourCdf;
+    private double[] diagnosisCdf;
+    private volatile String passwordHash;
+
+    public SyntheticDataGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    // ========== Settings ==========
+
+    public SyntheticDataGenerator patients(int count) {
+        this.patients = positive(count, "patients");
+        return this;
+    }
+
+    public SyntheticDataGenerator doctors(int count) {
+        this.doctors = positive(count, "doctors");
+        doctorCdf = null;
+        return this;
+    }
+
+    public SyntheticDataGenerator appointments(int count) {
+        this.appointments = nonNegative(count, "appointments");
+        return this;
+    }
+
+    public SyntheticDataGenerator healthRecords(int count) {
+        this.healthRecords = nonNegative(count, "health records");
+        return this;
+    }
+
+    /**
+     * Patient login users, one for each of the first {@code count} patients (default none).
+     */
+    public SyntheticDataGenerator users(int count) {
+        this.users = nonNegative(count, "users");
+        return this;
+    }
+
+    /**
+     * Zipf exponent of doctor popularity: 0 spreads visits evenly, higher values concentrate
+     * them on fewer doctors (default 1.07).
+     */
+    public SyntheticDataGenerator doctorSkew(double exponent) {
+        if (exponent < 0) {
+            throw new IllegalArgumentException("Doctor skew must not be negative");
+        }
+        this.doctorSkew = exponent;
+        doctorCdf = null;
+        return this;
+    }
+
+    /**
+     * Days of history from {@code start}; appointments continue {@value #FUTURE_DAYS} days past it.
+     * Defaults to two years from 2024-01-01.
+     */
+    public SyntheticDataGenerator history(LocalDate start, int days) {
+        this.start = Objects.requireNonNull(start);
+        this.days = positive(days, "days");
+        dayCdf = null;
+        return this;
+    }
+
+    /**
+     * Days of open hourly weekday slots per doctor after the history (default none).
+     */
+    public SyntheticDataGenerator slotDays(int days) {
+        this.slotDays = nonNegative(days, "slot days");
+        return this;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getPatientCount() {
+        return patients;
+    }
+
+    public int getDoctorCount() {
+        return doctors;
+    }
+
+    public int getAppointmentCount() {
+        return appointments;
+    }
+
+    public int getHealthRecordCount() {
+        return healthRecords;
+    }
+
+    public int getUserCount() {
+        return Math.min(users, patients);
+    }
+
+    /**
+     * First day after the generated history; appointments from here on are still booked.
+     */
+    public LocalDate getEndOfHistory() {
+        return start.plusDays(days);
+    }
+
+    // ========== IDs ==========
+
+    public static String patientId(int i) {
+        return "P" + (1001 + i);
+    }
+
+    public static String doctorId(int i) {
+        return String.format("D%04d", i + 1);
+    }
+
+    public static String appointmentId(int i) {
+        return "A" + (1001 + i);
+    }
+
+    public static String recordId(int i) {
+        return "R" + (1001 + i);
+    }
+
+    public static String userId(int i) {
+        return String.format("U%04d", i + 2);
+    }
+
+    // ========== Entities ==========
+
+    public Patient patient(int i) {
+        SplittableRandom random = random(PATIENT_SALT, i);
+        String name = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " "
+                + LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+        int age;
+        if (random.nextDouble() < 0.18) {
+            age = random.nextInt(18);
+        } else {
+            age = (int) Math.max(18, Math.min(99, Math.round(48 + 18 * gaussian(random))));
+        }
+        String gender = random.nextDouble() < 0.51 ? "F" : "M";
+        Patient patient = new Patient(patientId(i), name, age, gender, String.format("%010d", 5550000000L + i));
+        patient.setVersion(1);
+        return patient;
+    }
+
+    public Doctor doctor(int i) {
+        SplittableRandom random = random(DOCTOR_SALT, i);
+        Doctor doctor = new Doctor(doctorId(i),
+                "Dr. " + FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " " + LAST_NAMES[random.nextInt(LAST_NAMES.length)],
+                SPECIALTIES[random.nextInt(SPECIALTIES.length)],
+                String.format("%010d", 4440000000L + i), "doctor" + (i + 1) + "@clinic.example",
+                "Mon-Fri 08:00-18:00");
+        List<LocalDateTime> slots = new ArrayList<>();
+        LocalDate first = getEndOfHistory();
+        for (int day = 0; day < slotDays; day++) {
+            LocalDate date = first.plusDays(day);
+            if (date.getDayOfWeek() != DayOfWeek.SATURDAY && date.getDayOfWeek() != DayOfWeek.SUNDAY) {
+                for (int hour = 9; hour <= 16; hour++) {
+                    slots.add(date.atTime(hour, 0));
+                }
+            }
+        }
+        doctor.setAvailableSlots(slots);
+        doctor.setVersion(1);
+        return doctor;
+    }
+
+    public Appointment appointment(int i) {
+        prepare();
+        SplittableRandom random = random(APPOINTMENT_SALT, i);
+        String patientId = patientId(random.nextInt(patients));
+        String doctorId = doctorId(popularDoctor(random));
+        LocalDateTime dateTime = visitTime(random, dayCdf.length);
+        AppointmentStatus status;
+        if (dateTime.toLocalDate().isBefore(getEndOfHistory())) {
+            status = random.nextDouble() < 0.87 ? AppointmentStatus.COMPLETED : AppointmentStatus.CANCELLED;
+        } else {
+            status = random.nextDouble() < 0.93 ? AppointmentStatus.BOOKED : AppointmentStatus.CANCELLED;
+        }
+        Appointment appointment = new Appointment(appointmentId(i), patientId, doctorId, dateTime, status, null);
+        appointment.setVersion(1);
+        return appointment;
+    }
+
+    public HealthRecord healthRecord(int i) {
+        prepare();
+        SplittableRandom random = random(RECORD_SALT, i);
+        String patientId = patientId(random.nextInt(patients));
+        String doctorId = doctorId(popularDoctor(random));
+        LocalDateTime date = visitTime(random, days);
+        String diagnosis = DIAGNOSES[pick(diagnosisCdf, random.nextDouble())];
+        String prescription = random.nextDouble() < 0.7 ? PRESCRIPTIONS[random.nextInt(PRESCRIPTIONS.length)] : null;
+        HealthRecord record = new HealthRecord(recordId(i), patientId, doctorId, date, symptoms(random), diagnosis,
+                TREATMENTS[random.nextInt(TREATMENTS.length)], prescription);
+        record.setVersion(1);
+        return record;
+    }
+
+    public User user(int i) {
+        User user = new User(userId(i), "patient" + (i + 1), passwordHash(), UserRole.PATIENT, patientId(i));
+        user.setCreatedAt(start.atStartOfDay());
+        user.setVersion(1);
+        return user;
+    }
+
+    // ========== Streams ==========
+
+    public Stream<Patient> patients() {
+        return IntStream.range(0, patients).mapToObj(this::patient);
+    }
+
+    public Stream<Doctor> doctors() {
+        return IntStream.range(0, doctors).mapToObj(this::doctor);
+    }
+
+    public Stream<Appointment> appointments() {
+        prepare();
+        return IntStream.range(0, appointments).mapToObj(this::appointment);
+    }
+
+    public Stream<HealthRecord> healthRecords() {
+        prepare();
+        return IntStream.range(0, healthRecords).mapToObj(this::healthRecord);
+    }
+
+    public Stream<User> users() {
+        return IntStream.range(0, getUserCount()).mapToObj(this::user);
+    }
+
+    // ========== Writing ==========
+
+    /**
+     * Generate every table and store each through its DAO's {@code saveAll}, one table at a
+     * time. The file backend rewrites a whole table per call, so each table is collected into
+     * one map first; use {@link #writeTo(MySQLBulkWriter)} to stream rows into MySQL without
+     * holding a table. Any DAO may be null to skip its table; users are only written if
+     * {@link #users(int)} was set.
+     *
+     * @return Rows written per table
+     */
+    public Map<String, Integer> writeTo(PatientDao patientDao, DoctorDao doctorDao, AppointmentDao appointmentDao,
+                                        HealthRecordDao healthRecordDao, UserDao userDao) {
+        prepare();
+        Map<String, Integer> rows = new LinkedHashMap<>();
+        if (patientDao != null) {
+            Map<String, Patient> table = collect(patients, this::patient, Patient::getPatientId);
+            patientDao.saveAll(table);
+            rows.put("patients", table.size());
+        }
+        if (doctorDao != null) {
+            Map<String, Doctor> table = collect(doctors, this::doctor, Doctor::getDoctorId);
+            doctorDao.saveAll(table);
+            rows.put("doctors", table.size());
+        }
+        if (userDao != null && getUserCount() > 0) {
+            Map<String, User> table = collect(getUserCount(), this::user, User::getUserId);
+            userDao.saveAll(table);
+            rows.put("users", table.size());
+        }
+        if (appointmentDao != null) {
+            Map<String, Appointment> table = collect(appointments, this::appointment, Appointment::getAppointmentId);
+            appointmentDao.saveAll(table);
+            rows.put("appointments", table.size());
+        }
+        if (healthRecordDao != null) {
+            Map<String, HealthRecord> table = collect(healthRecords, this::healthRecord, HealthRecord::getRecordId);
+            healthRecordDao.saveAll(table);
+            rows.put("health_records", table.size());
+        }
+        return rows;
+    }
+
+    /**
+     * Generate every table and stream it into MySQL in batches of
+     * {@value MySQLBulkWriter#MAX_BATCH_SIZE} rows, so only one batch is in memory at a time.
+     * Each batch is generated in parallel and committed on its own.
+     *
+     * @return Rows written per table
+     */
+    public Map<String, Integer> writeTo(MySQLBulkWriter writer) {
+        prepare();
+        Map<String, Integer> rows = new LinkedHashMap<>();
+        try {
+            rows.put("patients", stream(writer, patients, this::patient, MySQLBulkWriter::insertPatients));
+            rows.put("doctors", stream(writer, doctors, this::doctor, MySQLBulkWriter::insertDoctors));
+            if (getUserCount() > 0) {
+                rows.put("users", stream(writer, getUserCount(), this::user, MySQLBulkWriter::insertUsers));
+            }
+            rows.put("appointments", stream(writer, appointments, this::appointment,
+                    MySQLBulkWriter::insertAppointments));
+            rows.put("health_records", stream(writer, healthRecords, this::healthRecord,
+                    MySQLBulkWriter::insertHealthRecords));
+        } catch (SQLException e) {
+            throw new RuntimeException("Error writing synthetic data: " + e.getMessage(), e);
+        }
+        return rows;
+    }
+
+    /**
+     * A table as one map, filled a batch at a time so the only copy besides the map is the
+     * batch being generated.
+     */
+    private static <T> Map<String, T> collect(int count, IntFunction<T> entity, Function<T, String> idOf) {
+        Map<String, T> table = new HashMap<>(Math.max(16, count * 4 / 3 + 1));
+        for (int from = 0; from < count; from += MySQLBulkWriter.MAX_BATCH_SIZE) {
+            for (T row : batch(from, Math.min(count, from + MySQLBulkWriter.MAX_BATCH_SIZE), entity)) {
+                table.put(idOf.apply(row), row);
+            }
+        }
+        return table;
+    }
+
+    private static <T> int stream(MySQLBulkWriter writer, int count, IntFunction<T> entity,
+                                  MySQLBulkWriter.BatchInsert<T> insert) throws SQLException {
+        for (int from = 0; from < count; from += MySQLBulkWriter.MAX_BATCH_SIZE) {
+            insert.insert(writer, batch(from, Math.min(count, from + MySQLBulkWriter.MAX_BATCH_SIZE), entity));
+        }
+        return count;
+    }
+
+    /**
+     * Rows {@code from} (inclusive) to {@code to} (exclusive), generated in parallel and
+     * returned in index order.
+     */
+    private static <T> List<T> batch(int from, int to, IntFunction<T> entity) {
+        return IntStream.range(from, to).parallel().mapToObj(entity).collect(Collectors.toList());
+    }
+
+    // ========== Distributions ==========
+
+    private void prepare() {
+        if (doctorCdf == null || dayCdf == null || hourCdf == null) {
+            buildDistributions();
+        }
+    }
+
+    private synchronized void buildDistributions() {
+        if (doctorCdf == null) {
+            double[] weights = new double[doctors];
+            for (int rank = 0; rank < doctors; rank++) {
+                weights[rank] = 1.0 / Math.pow(rank + 1, doctorSkew);
+            }
+            // Popularity ranks are shuffled, so the busiest doctor is not always D0001
+            int[] byRank = new int[doctors];
+            for (int i = 0; i < doctors; i++) {
+                byRank[i] = i;
+            }
+            SplittableRandom random = random(POPULARITY_SALT, 0);
+            for (int i = doctors - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int swap = byRank[i];
+                byRank[i] = byRank[j];
+                byRank[j] = swap;
+            }
+            doctorByRank = byRank;
+            doctorCdf = cumulative(weights);
+        }
+        if (dayCdf == null) {
+            double[] weights = new double[days + FUTURE_DAYS];
+            for (int day = 0; day < weights.length; day++) {
+                weights[day] = dayWeight(start.plusDays(day));
+            }
+            // Not normalised: records draw from the first `days` entries only
+            double total = 0;
+            for (int day = 0; day < weights.length; day++) {
+                total += weights[day];
+                weights[day] = total;
+            }
+            dayCdf = weights;
+        }
+        if (hourCdf == null) {
+            double[] weights = new double[DIAGNOSES.length];
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] = 1.0 / (i + 1);
+            }
+            diagnosisCdf = cumulative(weights);
+            hourCdf = cumulative(HOUR_WEIGHTS);
+        }
+    }
+
+    /**
+     * Relative visit volume of a day: a winter peak around 20 January, a summer low, far fewer
+     * visits at weekends and almost none on public holidays.
+     */
+    static double dayWeight(LocalDate date) {
+        double season = 1 + 0.35 * Math.cos(2 * Math.PI * (date.getDayOfYear() - 20) / 365.25);
+        double weekday;
+        switch (date.getDayOfWeek()) {
+            case MONDAY: weekday = 1.15; break;
+            case FRIDAY: weekday = 0.9; break;
+            case SATURDAY: weekday = 0.3; break;
+            case SUNDAY: weekday = 0.08; break;
+            default: weekday = 1.0;
+        }
+        MonthDay monthDay = MonthDay.from(date);
+        for (MonthDay holiday : HOLIDAYS) {
+            if (holiday.equals(monthDay)) {
+                return season * 0.05;
+            }
+        }
+        return season * weekday;
+    }
+
+    private int popularDoctor(SplittableRandom random) {
+        return doctorByRank[pick(doctorCdf, random.nextDouble())];
+    }
+
+    /**
+     * A visit on one of the first {@code dayLimit} days, at a quarter hour during clinic hours.
+     */
+    private LocalDateTime visitTime(SplittableRandom random, int dayLimit) {
+        double u = random.nextDouble() * dayCdf[dayLimit - 1];
+        int day = Arrays.binarySearch(dayCdf, 0, dayLimit, u);
+        day = day >= 0 ? day : Math.min(dayLimit - 1, -day - 1);
+        int hour = 8 + pick(hourCdf, random.nextDouble());
+        return start.plusDays(day).atTime(hour, 15 * random.nextInt(4));
+    }
+
+    /**
+     * One to six symptoms (one or two most of the time), and for about one visit in six a
+     * free-text note of log-normal length (median 12 words).
+     */
+    private static String symptoms(SplittableRandom random) {
+        int count = 1;
+        while (count < 6 && random.nextDouble() < 0.45) {
+            count++;
+        }
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            text.append(i == 0 ? "" : ", ").append(SYMPTOMS[random.nextInt(SYMPTOMS.length)]);
+        }
+        if (random.nextDouble() < 0.16) {
+            int words = (int) Math.max(3, Math.min(300, Math.round(Math.exp(Math.log(12) + 0.9 * gaussian(random)))));
+            text.append(". ");
+            for (int i = 0; i < words; i++) {
+                text.append(i == 0 ? "" : " ").append(NOTE_WORDS[random.nextInt(NOTE_WORDS.length)]);
+            }
+        }
+        return text.toString();
+    }
+
+    private String passwordHash() {
+        if (passwordHash == null) {
+            try {
+                byte[] hash = MessageDigest.getInstance("SHA-256").digest(PASSWORD.getBytes(StandardCharsets.UTF_8));
+                StringBuilder hex = new StringBuilder();
+                for (byte b : hash) {
+                    hex.append(String.format("%02x", b));
+                }
+                passwordHash = hex.toString();
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 not available", e);
+            }
+        }
+        return passwordHash;
+    }
+
+    private SplittableRandom random(long salt, int index) {
+        return new SplittableRandom(seed * 0x9E3779B97F4A7C15L + salt * 0xBF58476D1CE4E5B9L + index);
+    }
+
+    private static double gaussian(SplittableRandom random) {
+        // Box-Muller; SplittableRandom has no nextGaussian
+        double u = 1 - random.nextDouble();
+        return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * random.nextDouble());
+    }
+
+    private static double[] cumulative(double[] weights) {
+        double[] cdf = new double[weights.length];
+        double total = 0;
+        for (int i = 0; i < weights.length; i++) {
+            total += weights[i];
+            cdf[i] = total;
+        }
+        for (int i = 0; i < cdf.length; i++) {
+            cdf[i] /= total;
+        }
+        return cdf;
+    }
+
+    private static int pick(double[] cdf, double u) {
+        int index = Arrays.binarySearch(cdf, u);
+        return Math.min(cdf.length - 1, index >= 0 ? index : -index - 1);
+    }
+
+    private static int positive(int value, String name) {
+        if (value < 1) {
+            throw new IllegalArgumentException("Number of " + name + " must be positive");
+        }
+        return value;
+    }
+
+    private static int nonNegative(int value, String name) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Number of " + name + " must not be negative");
+        }
+        return value;
+    }
+
+    // ========== Command line ==========
+
+    /**
+     * Usage: java com.digitalhealth.loadtest.SyntheticDataGenerator [--backend file|mysql]
+     *        [--data-dir DIR] [--patients N] [--doctors N] [--appointments N] [--records N]
+     *        [--users N] [--slot-days N] [--seed N]
+     */
+    public static void main(String[] args) {
+        String backend = "file";
+        String dataDir = "data";
+        SyntheticDataGenerator generator;
+        try {
+            Map<String, String> options = new HashMap<>();
+            for (int i = 0; i < args.length; i += 2) {
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + args[i]);
+                }
+                options.put(args[i], args[i + 1]);
+            }
+            backend = options.getOrDefault("--backend", backend);
+            dataDir = options.getOrDefault("--data-dir", dataDir);
+            generator = new SyntheticDataGenerator(Long.parseLong(options.getOrDefault("--seed", "42")));
+            for (Map.Entry<String, String> option : options.entrySet()) {
+                switch (option.getKey()) {
+                    case "--backend":
+                    case "--data-dir":
+                    case "--seed": break;
+                    case "--patients": generator.patients(Integer.parseInt(option.getValue())); break;
+                    case "--doctors": generator.doctors(Integer.parseInt(option.getValue())); break;
+                    case "--appointments": generator.appointments(Integer.parseInt(option.getValue())); break;
+                    case "--records": generator.healthRecords(Integer.parseInt(option.getValue())); break;
+                    case "--users": generator.users(Integer.parseInt(option.getValue())); break;
+                    case "--slot-days": generator.slotDays(Integer.parseInt(option.getValue())); break;
+                    default: throw new IllegalArgumentException("Unknown option: " + option.getKey());
+                }
+            }
+            if (!backend.equals("file") && !backend.equals("mysql")) {
+                throw new IllegalArgumentException("--backend is file or mysql");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Options: --backend file|mysql --data-dir DIR --patients N --doctors N");
+            System.err.println("         --appointments N --records N --users N --slot-days N --seed N");
+            System.exit(2);
+            return;
+        }
+
+        System.out.printf("Generating %,d patients, %,d doctors, %,d appointments, %,d health records, "
+                        + "%,d users (seed %d) into %s%n", generator.getPatientCount(), generator.getDoctorCount(),
+                generator.getAppointmentCount(), generator.getHealthRecordCount(), generator.getUserCount(),
+                generator.getSeed(), backend.equals("file") ? dataDir : "MySQL");
+        long start = System.nanoTime();
+        Map<String, Integer> rows;
+        if (backend.equals("file")) {
+            new File(dataDir).mkdirs();
+            rows = generator.writeTo(new FilePatientDao(dataDir + "/patients.dat"),
+                    new FileDoctorDao(dataDir + "/doctors.dat"),
+                    new FileAppointmentDao(dataDir + "/appointments.dat"),
+                    new FileHealthRecordDao(dataDir + "/records.dat"),
+                    generator.getUserCount() > 0 ? new FileUserDao(dataDir + "/users.dat") : null);
+        } else {
+            try (MySQLBulkWriter writer = new MySQLBulkWriter()) {
+                rows = generator.writeTo(writer);
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long total = rows.values().stream().mapToLong(Integer::longValue).sum();
+        System.out.println(rows.entrySet().stream().map(e -> String.format("%s=%,d", e.getKey(), e.getValue()))
+                .collect(Collectors.joining(", ")));
+        System.out.printf("Wrote %,d rows in %.1f s (%,.0f rows/s)%n", total, seconds, total / seconds);
+    }
+}
@@ -0,0 +1,33 @@
+package com.digitalhealth.metrics;
+
+/**
+ * Hit and miss counters for one cache, exported as cache_requests_total{cache,result}
+ * together with a cache_hit_ratio gauge.
+ */
+public class CacheMetrics {
+    private final Counter hits;
+    private final Counter misses;
+
+    public CacheMetrics(MetricsRegistry registry, String cache) {
+        this.hits = registry.counter("cache_requests_total", "Cache lookups by result",
+                "cache", cache, "result", "hit");
+        this.misses = registry.counter("cache_requests_total", "Cache lookups by result",
+                "cache", cache, "result", "miss");
+        registry.gauge("cache_hit_ratio", "Share of cache lookups served from the cache",
+                this::hitRatio, "cache", cache);
+    }
+
+    public void hit() {
+        hits.inc();
+    }
+
+    public void miss() {
+        misses.inc();
+    }
+
+    public double hitRatio() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+}
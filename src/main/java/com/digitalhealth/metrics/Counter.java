@@ -0,0 +1,25 @@
+package com.digitalhealth.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonic counter. Increments are a LongAdder add, so hot paths never contend.
+ */
+public class Counter {
+    private final LongAdder count = new LongAdder();
+
+    Counter() {
+    }
+
+    public void inc() {
+        count.increment();
+    }
+
+    public void add(long amount) {
+        count.add(amount);
+    }
+
+    public long get() {
+        return count.sum();
+    }
+}
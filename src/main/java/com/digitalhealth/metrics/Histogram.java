@@ -0,0 +1,106 @@
+package com.digitalhealth.metrics;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HDR-style log-linear histogram of durations in nanoseconds.
+ *
+ * Each power of two is split into 16 linear sub-buckets, so quantiles are accurate to
+ * about 6% from 1ns up to 18 minutes (longer values land in the last bucket). Buckets are
+ * LongAdders created on first use, so recording is lock-free and an idle histogram costs
+ * little more than its bucket array.
+ */
+public class Histogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_MAGNITUDE = 40;
+    private static final int BUCKETS = SUB_BUCKETS + (MAX_MAGNITUDE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicReferenceArray<LongAdder> buckets = new AtomicReferenceArray<>(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+
+    Histogram() {
+    }
+
+    /**
+     * Record a duration in nanoseconds.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        int bucket = bucketOf(value);
+        LongAdder adder = buckets.get(bucket);
+        if (adder == null) {
+            buckets.compareAndSet(bucket, null, new LongAdder());
+            adder = buckets.get(bucket);
+        }
+        adder.increment();
+        count.increment();
+        sum.add(value);
+    }
+
+    /**
+     * Record the time elapsed since a {@link System#nanoTime()} reading.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public long sumNanos() {
+        return sum.sum();
+    }
+
+    /**
+     * Value at the given quantile (0-1) in nanoseconds, as the upper bound of its bucket.
+     */
+    public long quantile(double quantile) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            LongAdder adder = buckets.get(i);
+            if (adder != null) {
+                counts[i] = adder.sum();
+                total += counts[i];
+            }
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return upperBoundOf(i);
+            }
+        }
+        return upperBoundOf(BUCKETS - 1);
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        if (magnitude >= MAX_MAGNITUDE) {
+            return BUCKETS - 1;
+        }
+        int shift = magnitude - SUB_BUCKET_BITS;
+        int sub = (int) (value >>> shift) - SUB_BUCKETS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + sub;
+    }
+
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        int sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,177 @@
+package com.digitalhealth.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Named counters, gauges and histograms, exported in the Prometheus text format.
+ *
+ * Metrics are identified by name plus label pairs, e.g.
+ * {@code counter("http_requests_total", "...", "route", "/api/patients", "status", "200")}.
+ * Looking a metric up builds a key string, so hot paths should keep the returned object
+ * instead of looking it up per call. Histograms are exported as summaries in seconds.
+ *
+ * Usage Example:
+ * <pre>
+ * Histogram latency = MetricsRegistry.getDefault()
+ *         .histogram("dao_operation_seconds", "DAO call latency", "entity", "patient", "operation", "save");
+ * long start = System.nanoTime();
+ * ...
+ * latency.recordSince(start);
+ * </pre>
+ */
+public class MetricsRegistry {
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private enum Type {
+        COUNTER("counter"), GAUGE("gauge"), SUMMARY("summary");
+
+        final String text;
+
+        Type(String text) {
+            this.text = text;
+        }
+    }
+
+    private static final class Family {
+        final String name;
+        final String help;
+        final Type type;
+        final Map<String, Object> metrics = new ConcurrentHashMap<>();
+
+        Family(String name, String help, Type type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    private final Map<String, Family> families = new ConcurrentHashMap<>();
+
+    /**
+     * The process-wide registry scraped by /api/metrics.
+     */
+    public static MetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Get or create a counter.
+     * 
+     * @param labels Alternating label names and values
+     */
+    public Counter counter(String name, String help, String... labels) {
+        return (Counter) family(name, help, Type.COUNTER).metrics
+                .computeIfAbsent(labelKey(labels), key -> new Counter());
+    }
+
+    /**
+     * Get or create a histogram of durations in nanoseconds.
+     * 
+     * @param labels Alternating label names and values
+     */
+    public Histogram histogram(String name, String help, String... labels) {
+        return (Histogram) family(name, help, Type.SUMMARY).metrics
+                .computeIfAbsent(labelKey(labels), key -> new Histogram());
+    }
+
+    /**
+     * Register a gauge read at scrape time. Registering the same name and labels again
+     * replaces the previous supplier.
+     * 
+     * @param labels Alternating label names and values
+     */
+    public void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        family(name, help, Type.GAUGE).metrics.put(labelKey(labels), value);
+    }
+
+    /**
+     * Render every metric in the Prometheus text exposition format (version 0.0.4).
+     */
+    public String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+        for (Family family : new TreeMap<>(families).values()) {
+            out.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(family.name).append(' ').append(family.type.text).append('\n');
+            for (Map.Entry<String, Object> entry : new TreeMap<>(family.metrics).entrySet()) {
+                writeMetric(out, family, entry.getKey(), entry.getValue());
+            }
+        }
+        return out.toString();
+    }
+
+    private void writeMetric(StringBuilder out, Family family, String labels, Object metric) {
+        switch (family.type) {
+            case COUNTER:
+                sample(out, family.name, labels, ((Counter) metric).get());
+                break;
+            case GAUGE:
+                sample(out, family.name, labels, ((DoubleSupplier) metric).getAsDouble());
+                break;
+            default:
+                Histogram histogram = (Histogram) metric;
+                for (double quantile : QUANTILES) {
+                    String quantileLabel = "quantile=\"" + quantile + "\"";
+                    String withQuantile = labels.isEmpty()
+                            ? "{" + quantileLabel + "}"
+                            : labels.substring(0, labels.length() - 1) + "," + quantileLabel + "}";
+                    sample(out, family.name, withQuantile, histogram.quantile(quantile) / 1e9);
+                }
+                sample(out, family.name + "_sum", labels, histogram.sumNanos() / 1e9);
+                sample(out, family.name + "_count", labels, histogram.count());
+        }
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name).append(labels).append(' ');
+        if (value == Math.rint(value) && !Double.isInfinite(value)) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+
+    private Family family(String name, String help, Type type) {
+        Family family = families.computeIfAbsent(name, key -> new Family(name, help, type));
+        if (family.type != type) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as a " + family.type.text);
+        }
+        return family;
+    }
+
+    /**
+     * Render label pairs as {a="1",b="2"}; this string is also the lookup key.
+     */
+    private static String labelKey(String... labels) {
+        if (labels.length == 0) {
+            return "";
+        }
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be name/value pairs");
+        }
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(labels[i]).append("=\"");
+            String value = labels[i + 1] == null ? "" : labels[i + 1];
+            for (int c = 0; c < value.length(); c++) {
+                char ch = value.charAt(c);
+                if (ch == '\\' || ch == '"') {
+                    sb.append('\\').append(ch);
+                } else if (ch == '\n') {
+                    sb.append("\\n");
+                } else {
+                    sb.append(ch);
+                }
+            }
+            sb.append('"');
+        }
+        return sb.append('}').toString();
+    }
+}
@@ -1,5 +1,7 @@
 package com.digitalhealth.model;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.time.LocalDateTime;
 import java.util.Objects;
@@ -7,7 +9,7 @@ import java.util.Objects;
 /**
  * Domain model representing an appointment.
  */
-public class Appointment implements Serializable, Comparable<Appointment> {
+public class Appointment implements Serializable, Comparable<Appointment>, Versioned {
     private static final long serialVersionUID = 1L;
 
     private String appointmentId;
@@ -16,6 +18,7 @@ public class Appointment implements Serializable, Comparable<Appointment> {
     private LocalDateTime dateTime;
     private AppointmentStatus status;
     private String reason;
+    private long version;
 
     public Appointment() {
         this.status = AppointmentStatus.BOOKED;
@@ -89,6 +92,26 @@ public class Appointment implements Serializable, Comparable<Appointment> {
         this.reason = reason;
     }
 
+    @Override
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    /**
+     * Entities stored before versioning have no version; read them as the first stored version.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (version == 0) {
+            version = 1;
+        }
+    }
+
     @Override
     public int compareTo(Appointment other) {
         return this.dateTime.compareTo(other.dateTime);
@@ -1,5 +1,7 @@
 package com.digitalhealth.model;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
@@ -9,7 +11,7 @@ import java.util.Objects;
 /**
  * Domain model representing a doctor in the system.
  */
-public class Doctor implements Serializable {
+public class Doctor implements Serializable, Versioned {
     private static final long serialVersionUID = 1L;
 
     private String doctorId;
@@ -19,6 +21,7 @@ public class Doctor implements Serializable {
     private String email;
     private String schedule;
     private List<LocalDateTime> availableSlots;
+    private long version;
 
     public Doctor() {
         this.availableSlots = new ArrayList<>();
@@ -128,6 +131,26 @@ public class Doctor implements Serializable {
         }
     }
 
+    @Override
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    /**
+     * Entities stored before versioning have no version; read them as the first stored version.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (version == 0) {
+            version = 1;
+        }
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -0,0 +1,38 @@
+package com.digitalhealth.model;
+
+/**
+ * Directory entry for a doctor: ID, name and specialty only, for display next to
+ * appointments and records without loading the doctor's slots.
+ */
+public final class DoctorSummary {
+    private final String doctorId;
+    private final String name;
+    private final String specialty;
+
+    public DoctorSummary(String doctorId, String name, String specialty) {
+        this.doctorId = doctorId;
+        this.name = name;
+        this.specialty = specialty;
+    }
+
+    public String getDoctorId() {
+        return doctorId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getSpecialty() {
+        return specialty;
+    }
+
+    @Override
+    public String toString() {
+        return "DoctorSummary{" +
+                "doctorId='" + doctorId + '\'' +
+                ", name='" + name + '\'' +
+                ", specialty='" + specialty + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,126 @@
+package com.digitalhealth.model;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * Domain model representing an asynchronous export of patient histories.
+ * A job exports one patient's history, or every patient's if {@code patientId} is null.
+ */
+public class ExportJob implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private String jobId;
+    private String tenantId;
+    private String patientId;
+    private ExportJobStatus status;
+    private LocalDateTime submittedAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+    private int exported;
+    private int total;
+    private String resultFile;
+    private long resultBytes;
+    private String error;
+
+    public ExportJob() {
+    }
+
+    public ExportJob(String jobId, String tenantId, String patientId, LocalDateTime submittedAt) {
+        this.jobId = jobId;
+        this.tenantId = tenantId;
+        this.patientId = patientId;
+        this.submittedAt = submittedAt;
+        this.status = ExportJobStatus.QUEUED;
+    }
+
+    // Getters and setters
+    public String getJobId() {
+        return jobId;
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    public String getPatientId() {
+        return patientId;
+    }
+
+    public ExportJobStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(ExportJobStatus status) {
+        this.status = status;
+    }
+
+    public LocalDateTime getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(LocalDateTime startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(LocalDateTime finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+
+    public int getExported() {
+        return exported;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public void setProgress(int exported, int total) {
+        this.exported = exported;
+        this.total = total;
+    }
+
+    public String getResultFile() {
+        return resultFile;
+    }
+
+    public void setResultFile(String resultFile) {
+        this.resultFile = resultFile;
+    }
+
+    public long getResultBytes() {
+        return resultBytes;
+    }
+
+    public void setResultBytes(long resultBytes) {
+        this.resultBytes = resultBytes;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    @Override
+    public String toString() {
+        return "ExportJob{" +
+                "jobId='" + jobId + '\'' +
+                ", tenantId='" + tenantId + '\'' +
+                ", patientId='" + patientId + '\'' +
+                ", status=" + status +
+                ", exported=" + exported +
+                ", total=" + total +
+                '}';
+    }
+}
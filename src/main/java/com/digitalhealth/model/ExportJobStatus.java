@@ -0,0 +1,19 @@
+package com.digitalhealth.model;
+
+/**
+ * Enum representing the state of an export job.
+ */
+public enum ExportJobStatus {
+    QUEUED,
+    RUNNING,
+    SUCCEEDED,
+    FAILED,
+    CANCELLED;
+
+    /**
+     * Whether the job has stopped for good.
+     */
+    public boolean isFinished() {
+        return this == SUCCEEDED || this == FAILED || this == CANCELLED;
+    }
+}
@@ -1,5 +1,7 @@
 package com.digitalhealth.model;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.time.LocalDateTime;
 import java.util.Objects;
@@ -7,7 +9,7 @@ import java.util.Objects;
 /**
  * Domain model representing a health record for a patient.
  */
-public class HealthRecord implements Serializable, Comparable<HealthRecord> {
+public class HealthRecord implements Serializable, Comparable<HealthRecord>, Versioned {
     private static final long serialVersionUID = 1L;
 
     private String recordId;
@@ -18,6 +20,7 @@ public class HealthRecord implements Serializable, Comparable<HealthRecord> {
     private String diagnosis;
     private String treatment;
     private String prescription;
+    private long version;
 
     public HealthRecord() {
     }
@@ -111,6 +114,26 @@ public class HealthRecord implements Serializable, Comparable<HealthRecord> {
         this.prescription = prescription;
     }
 
+    @Override
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    /**
+     * Entities stored before versioning have no version; read them as the first stored version.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (version == 0) {
+            version = 1;
+        }
+    }
+
     @Override
     public int compareTo(HealthRecord other) {
         return this.date.compareTo(other.date);
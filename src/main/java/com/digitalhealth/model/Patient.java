@@ -1,14 +1,19 @@
 package com.digitalhealth.model;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 
 /**
  * Domain model representing a patient in the system.
+ * Appointments and health records are not persisted with the patient; they live in
+ * their own stores and are resolved lazily by patientId through a {@link PatientHistoryLoader}.
  */
-public class Patient implements Serializable {
+public class Patient implements Serializable, Versioned {
     private static final long serialVersionUID = 1L;
 
     private String patientId;
@@ -16,12 +21,17 @@ public class Patient implements Serializable {
     private int age;
     private String gender;
     private String contact;
-    private List<HealthRecord> healthRecords;
-    private List<Appointment> appointments;
+    private long version;
+    private transient List<HealthRecord> healthRecords;
+    private transient List<Appointment> appointments;
+    private transient PatientHistoryLoader historyLoader;
+
+    // Embedded history read from files written before history was stored by reference.
+    // Only used by the one-time migration; never written back.
+    private transient List<HealthRecord> legacyHealthRecords;
+    private transient List<Appointment> legacyAppointments;
 
     public Patient() {
-        this.healthRecords = new ArrayList<>();
-        this.appointments = new ArrayList<>();
     }
 
     public Patient(String patientId, String name, int age, String gender, String contact) {
@@ -30,8 +40,6 @@ public class Patient implements Serializable {
         this.age = age;
         this.gender = gender;
         this.contact = contact;
-        this.healthRecords = new ArrayList<>();
-        this.appointments = new ArrayList<>();
     }
 
     // Getters and setters
@@ -75,7 +83,15 @@ public class Patient implements Serializable {
         this.contact = contact;
     }
 
+    /**
+     * Get the patient's health records, loading them on first access.
+     */
     public List<HealthRecord> getHealthRecords() {
+        if (healthRecords == null) {
+            healthRecords = historyLoader != null
+                    ? new ArrayList<>(historyLoader.loadHealthRecords(patientId))
+                    : new ArrayList<>();
+        }
         return healthRecords;
     }
 
@@ -83,7 +99,15 @@ public class Patient implements Serializable {
         this.healthRecords = healthRecords;
     }
 
+    /**
+     * Get the patient's appointments, loading them on first access.
+     */
     public List<Appointment> getAppointments() {
+        if (appointments == null) {
+            appointments = historyLoader != null
+                    ? new ArrayList<>(historyLoader.loadAppointments(patientId))
+                    : new ArrayList<>();
+        }
         return appointments;
     }
 
@@ -91,6 +115,68 @@ public class Patient implements Serializable {
         this.appointments = appointments;
     }
 
+    /**
+     * Set the loader used to resolve history lazily.
+     * Clears any previously loaded history so it is re-read on next access.
+     */
+    public void setHistoryLoader(PatientHistoryLoader historyLoader) {
+        this.historyLoader = historyLoader;
+        this.healthRecords = null;
+        this.appointments = null;
+    }
+
+    /**
+     * Health records embedded in a legacy serialized patient, or an empty list.
+     */
+    public List<HealthRecord> getLegacyHealthRecords() {
+        return legacyHealthRecords != null ? legacyHealthRecords : Collections.emptyList();
+    }
+
+    /**
+     * Appointments embedded in a legacy serialized patient, or an empty list.
+     */
+    public List<Appointment> getLegacyAppointments() {
+        return legacyAppointments != null ? legacyAppointments : Collections.emptyList();
+    }
+
+    @Override
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    /**
+     * Read both current and legacy streams.
+     * Legacy streams carry the full embedded history; it is kept aside for migration
+     * instead of being silently dropped.
+     */
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        patientId = (String) fields.get("patientId", null);
+        name = (String) fields.get("name", null);
+        age = fields.get("age", 0);
+        gender = (String) fields.get("gender", null);
+        contact = (String) fields.get("contact", null);
+        // Patients stored before versioning have none; read them as the first stored version
+        version = Math.max(1, fields.get("version", 0L));
+        legacyHealthRecords = (List<HealthRecord>) readLegacyField(fields, "healthRecords");
+        legacyAppointments = (List<Appointment>) readLegacyField(fields, "appointments");
+    }
+
+    private static Object readLegacyField(ObjectInputStream.GetField fields, String fieldName) throws IOException {
+        try {
+            return fields.get(fieldName, null);
+        } catch (IllegalArgumentException e) {
+            // Field not present in this stream (written by the current version)
+            return null;
+        }
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
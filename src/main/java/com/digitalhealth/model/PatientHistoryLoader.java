@@ -0,0 +1,20 @@
+package com.digitalhealth.model;
+
+import java.util.List;
+
+/**
+ * Resolves a patient's history on demand.
+ * Appointments and health records are stored only in their own DAOs and referenced
+ * by patientId, so a Patient loads them lazily through this loader.
+ */
+public interface PatientHistoryLoader {
+    /**
+     * Load all appointments of a patient.
+     */
+    List<Appointment> loadAppointments(String patientId);
+
+    /**
+     * Load all health records of a patient.
+     */
+    List<HealthRecord> loadHealthRecords(String patientId);
+}
@@ -1,12 +1,14 @@
 package com.digitalhealth.model;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.time.LocalDateTime;
 
 /**
  * Domain model representing a user account for authentication.
  */
-public class User implements Serializable {
+public class User implements Serializable, Versioned {
     private static final long serialVersionUID = 1L;
 
     private String userId;
@@ -17,6 +19,7 @@ public class User implements Serializable {
     private LocalDateTime createdAt;
     private LocalDateTime lastLogin;
     private boolean isActive;
+    private long version;
 
     public User() {
         this.createdAt = LocalDateTime.now();
@@ -98,6 +101,26 @@ public class User implements Serializable {
         isActive = active;
     }
 
+    @Override
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    /**
+     * Entities stored before versioning have no version; read them as the first stored version.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (version == 0) {
+            version = 1;
+        }
+    }
+
     @Override
     public String toString() {
         return "User{" +
@@ -0,0 +1,15 @@
+package com.digitalhealth.model;
+
+/**
+ * Entity carrying an optimistic-concurrency version.
+ * Version 0 means "not read from a store": saving it inserts a new entity and fails if one
+ * with the same ID is already stored. Any other value must match the stored version. Either
+ * failure is an {@link com.digitalhealth.exception.OptimisticLockException}.
+ * A successful save stores and sets the next version; a failed one leaves the version as it was.
+ * A stored entity is at version 1 or later; entities stored before versioning read back as 1.
+ */
+public interface Versioned {
+    long getVersion();
+
+    void setVersion(long version);
+}
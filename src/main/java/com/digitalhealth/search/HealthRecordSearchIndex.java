@@ -0,0 +1,339 @@
+package com.digitalhealth.search;
+
+import com.digitalhealth.jfr.FileFlushEvent;
+import com.digitalhealth.model.HealthRecord;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-process inverted index over the symptoms, diagnosis and prescription of health records.
+ * Each record is assigned a document number; each term maps to the sorted document numbers
+ * containing it, so AND/OR queries are merges of sorted int arrays and prefix queries are a
+ * range scan over the sorted term dictionary.
+ *
+ * Query syntax: whitespace-separated words are ANDed ({@code AND} may be written explicitly),
+ * {@code OR} separates alternatives (AND binds tighter), and a trailing {@code *} makes a word a
+ * prefix match. Example: {@code "fever cough OR migrain*"}.
+ *
+ * Thread-safe with a read-write lock. The index can be saved as a compact snapshot and
+ * reconciled with the record store at startup instead of being rebuilt.
+ */
+public class HealthRecordSearchIndex {
+    private static final int SNAPSHOT_MAGIC = 0x48524958; // "HRIX"
+    private static final int SNAPSHOT_FORMAT = 1;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Integer> docByRecordId = new HashMap<>();
+    // Document number -> record ID; null for removed records
+    private final List<String> recordIdByDoc = new ArrayList<>();
+    // Document number -> its terms (the dictionary's own strings), so a removal only touches
+    // the record's posting lists; null for removed records
+    private final List<String[]> termsByDoc = new ArrayList<>();
+    private final TreeMap<String, PostingList> postings = new TreeMap<>();
+
+    /**
+     * Add a record, replacing any previous version of it.
+     */
+    public void index(HealthRecord record) {
+        lock.writeLock().lock();
+        try {
+            removeInternal(record.getRecordId());
+            int doc = recordIdByDoc.size();
+            recordIdByDoc.add(record.getRecordId());
+            docByRecordId.put(record.getRecordId(), doc);
+            Set<String> terms = termsOf(record);
+            String[] docTerms = new String[terms.size()];
+            int i = 0;
+            for (String term : terms) {
+                PostingList list = postings.get(term);
+                String key = term;
+                if (list == null) {
+                    list = new PostingList();
+                    postings.put(term, list);
+                } else {
+                    // Keep the dictionary's copy so documents share one string per term
+                    key = postings.floorKey(term);
+                }
+                list.add(doc);
+                docTerms[i++] = key;
+            }
+            termsByDoc.add(docTerms);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove a record from the index. Unknown IDs are ignored.
+     */
+    public void remove(String recordId) {
+        lock.writeLock().lock();
+        try {
+            removeInternal(recordId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Make the index match the given records: index missing ones, drop ones no longer present.
+     * Records are immutable once written, so records already indexed are not re-tokenized.
+     *
+     * @return number of records added or removed
+     */
+    public int synchronize(Collection<HealthRecord> records) {
+        lock.writeLock().lock();
+        try {
+            Set<String> current = new HashSet<>();
+            int changes = 0;
+            for (HealthRecord record : records) {
+                current.add(record.getRecordId());
+                if (!docByRecordId.containsKey(record.getRecordId())) {
+                    index(record);
+                    changes++;
+                }
+            }
+            for (String recordId : new ArrayList<>(docByRecordId.keySet())) {
+                if (!current.contains(recordId)) {
+                    removeInternal(recordId);
+                    changes++;
+                }
+            }
+            return changes;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Run a query.
+     *
+     * @param query Query text (see class documentation)
+     * @return IDs of matching records, oldest indexed first; empty if the query has no indexable words
+     */
+    public List<String> search(String query) {
+        List<List<String>> groups = parse(query);
+        lock.readLock().lock();
+        try {
+            int[] result = new int[0];
+            for (List<String> group : groups) {
+                result = PostingList.union(result, evaluateGroup(group));
+            }
+            List<String> recordIds = new ArrayList<>(result.length);
+            for (int doc : result) {
+                recordIds.add(recordIdByDoc.get(doc));
+            }
+            return recordIds;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Number of indexed records.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return docByRecordId.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Number of distinct terms.
+     */
+    public int termCount() {
+        lock.readLock().lock();
+        try {
+            return postings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ========== Snapshots ==========
+
+    /**
+     * Write the index to a file (atomically replaced).
+     * Removed records are compacted away, so document numbers are renumbered densely.
+     */
+    public void saveSnapshot(File file) throws IOException {
+        FileFlushEvent flush = new FileFlushEvent();
+        flush.begin();
+        File tmp = new File(file.getPath() + ".tmp");
+        lock.readLock().lock();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            // Dense renumbering: old document number -> new one
+            int[] renumber = new int[recordIdByDoc.size()];
+            int live = 0;
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_FORMAT);
+            out.writeInt(docByRecordId.size());
+            for (int doc = 0; doc < recordIdByDoc.size(); doc++) {
+                String recordId = recordIdByDoc.get(doc);
+                if (recordId != null) {
+                    renumber[doc] = live++;
+                    out.writeUTF(recordId);
+                }
+            }
+            out.writeInt(postings.size());
+            for (Map.Entry<String, PostingList> entry : postings.entrySet()) {
+                out.writeUTF(entry.getKey());
+                PostingList renumbered = new PostingList();
+                for (int doc : entry.getValue().toArray()) {
+                    renumbered.add(renumber[doc]);
+                }
+                renumbered.writeTo(out);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        Files.move(tmp.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        flush.complete(file.getPath(), false);
+    }
+
+    /**
+     * Load an index from a snapshot, or return an empty index if there is no usable snapshot.
+     */
+    public static HealthRecordSearchIndex loadSnapshot(File file) {
+        HealthRecordSearchIndex index = new HealthRecordSearchIndex();
+        if (!file.exists()) {
+            return index;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_FORMAT) {
+                System.err.println("Warning: Ignoring search index snapshot with unknown format: " + file);
+                return index;
+            }
+            int docCount = in.readInt();
+            for (int doc = 0; doc < docCount; doc++) {
+                String recordId = in.readUTF();
+                index.recordIdByDoc.add(recordId);
+                index.docByRecordId.put(recordId, doc);
+            }
+            int termCount = in.readInt();
+            int[] termCounts = new int[docCount];
+            for (int i = 0; i < termCount; i++) {
+                String term = in.readUTF();
+                PostingList list = PostingList.readFrom(in);
+                index.postings.put(term, list);
+                for (int doc : list.toArray()) {
+                    if (doc >= docCount) {
+                        throw new IOException("Document " + doc + " out of range");
+                    }
+                    termCounts[doc]++;
+                }
+            }
+            // Invert the postings into each document's terms
+            for (int doc = 0; doc < docCount; doc++) {
+                index.termsByDoc.add(new String[termCounts[doc]]);
+            }
+            for (Map.Entry<String, PostingList> entry : index.postings.entrySet()) {
+                for (int doc : entry.getValue().toArray()) {
+                    index.termsByDoc.get(doc)[--termCounts[doc]] = entry.getKey();
+                }
+            }
+            return index;
+        } catch (IOException e) {
+            System.err.println("Warning: Could not read search index snapshot " + file + ": " + e.getMessage());
+            return new HealthRecordSearchIndex();
+        }
+    }
+
+    // ========== Internals ==========
+
+    private void removeInternal(String recordId) {
+        Integer doc = docByRecordId.remove(recordId);
+        if (doc == null) {
+            return;
+        }
+        recordIdByDoc.set(doc, null);
+        for (String term : termsByDoc.set(doc, null)) {
+            PostingList list = postings.get(term);
+            if (list.remove(doc) && list.isEmpty()) {
+                postings.remove(term);
+            }
+        }
+    }
+
+    private int[] evaluateGroup(List<String> group) {
+        List<int[]> matches = new ArrayList<>(group.size());
+        for (String word : group) {
+            matches.add(word.endsWith("*")
+                    ? prefixMatches(word.substring(0, word.length() - 1))
+                    : termMatches(word));
+        }
+        // Intersect smallest first so intermediate results stay small
+        matches.sort(Comparator.comparingInt(docs -> docs.length));
+        int[] result = matches.get(0);
+        for (int i = 1; i < matches.size() && result.length > 0; i++) {
+            result = PostingList.intersect(result, matches.get(i));
+        }
+        return result;
+    }
+
+    private int[] termMatches(String term) {
+        PostingList list = postings.get(term);
+        return list != null ? list.toArray() : new int[0];
+    }
+
+    private int[] prefixMatches(String prefix) {
+        int[] result = new int[0];
+        for (PostingList list : postings.subMap(prefix, true, prefix + Character.MAX_VALUE, true).values()) {
+            result = PostingList.union(result, list.toArray());
+        }
+        return result;
+    }
+
+    /**
+     * Parse a query into OR-ed groups of AND-ed words; prefix words keep their trailing '*'.
+     */
+    static List<List<String>> parse(String query) {
+        List<List<String>> groups = new ArrayList<>();
+        if (query == null) {
+            return groups;
+        }
+        List<String> group = new ArrayList<>();
+        for (String word : query.trim().split("\\s+")) {
+            if (word.equals("OR")) {
+                addGroup(groups, group);
+                group = new ArrayList<>();
+            } else if (word.equals("AND") || word.isEmpty()) {
+                continue;
+            } else if (word.endsWith("*")) {
+                String prefix = word.substring(0, word.length() - 1).toLowerCase(Locale.ROOT);
+                if (!prefix.isEmpty()) {
+                    group.add(prefix + "*");
+                }
+            } else {
+                group.addAll(Tokenizer.tokenize(word));
+            }
+        }
+        addGroup(groups, group);
+        return groups;
+    }
+
+    private static void addGroup(List<List<String>> groups, List<String> group) {
+        if (!group.isEmpty()) {
+            groups.add(group);
+        }
+    }
+
+    private static Set<String> termsOf(HealthRecord record) {
+        Set<String> terms = new HashSet<>();
+        terms.addAll(Tokenizer.tokenize(record.getSymptoms()));
+        terms.addAll(Tokenizer.tokenize(record.getDiagnosis()));
+        terms.addAll(Tokenizer.tokenize(record.getPrescription()));
+        return terms;
+    }
+}
@@ -0,0 +1,446 @@
+package com.digitalhealth.search;
+
+import com.digitalhealth.model.Patient;
+
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Prefix index over patient names and contact numbers for type-ahead search.
+ *
+ * Keys are normalized (lower case, accents and punctuation stripped) and stored as UTF-8 in
+ * one shared byte array with a sorted offset table, so a million patients cost a few bytes
+ * per key instead of a String object per key. A patient "John Ronald Doe" with contact
+ * 5551234567 gets the keys "john ronald doe", "ronald doe", "doe" and "5551234567", so any
+ * word of the name or the start of the number finds it. Lookups are a binary search plus
+ * a scan of the matching range.
+ *
+ * Updates go to a small sorted buffer and replaced/deleted patients are tombstoned; the
+ * buffer is merged into the sorted arrays once it grows past a fraction of the index.
+ * Thread-safe with a read-write lock.
+ */
+public class PatientPrefixIndex {
+    private static final int MIN_MERGE_THRESHOLD = 4096;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Patient ordinals: every add gets a new ordinal, the old one becomes dead
+    private final List<String> patientIdByOrdinal = new ArrayList<>();
+    private final Map<String, Integer> ordinalByPatientId = new HashMap<>();
+    private final BitSet dead = new BitSet();
+    private int deadCount;
+
+    private KeyBlock base = KeyBlock.EMPTY;
+    private final TreeSet<Entry> pending = new TreeSet<>();
+
+    /**
+     * Rebuild the index from scratch with a single sort.
+     */
+    public void build(Collection<Patient> patients) {
+        lock.writeLock().lock();
+        try {
+            patientIdByOrdinal.clear();
+            ordinalByPatientId.clear();
+            dead.clear();
+            deadCount = 0;
+            pending.clear();
+            List<Entry> entries = new ArrayList<>();
+            for (Patient patient : patients) {
+                int ordinal = newOrdinal(patient.getPatientId());
+                addEntries(entries, patient, ordinal);
+            }
+            Collections.sort(entries);
+            base = KeyBlock.of(entries);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Add a patient, replacing the keys of any previous version.
+     */
+    public void add(Patient patient) {
+        lock.writeLock().lock();
+        try {
+            kill(patient.getPatientId());
+            int ordinal = newOrdinal(patient.getPatientId());
+            List<Entry> entries = new ArrayList<>(4);
+            addEntries(entries, patient, ordinal);
+            pending.addAll(entries);
+            mergeIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove a patient. Unknown IDs are ignored.
+     */
+    public void remove(String patientId) {
+        lock.writeLock().lock();
+        try {
+            kill(patientId);
+            mergeIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Find patients whose name (any word onwards) or contact number starts with the prefix.
+     *
+     * @param prefix Partial name or phone number; punctuation in phone numbers is ignored
+     * @param limit Maximum number of patients to return
+     * @return Patient IDs ordered by matching key, without duplicates
+     */
+    public List<String> search(String prefix, int limit) {
+        List<String> result = new ArrayList<>();
+        String normalized = normalizeQuery(prefix);
+        if (normalized.isEmpty() || limit <= 0) {
+            return result;
+        }
+        byte[] key = normalized.getBytes(StandardCharsets.UTF_8);
+
+        lock.readLock().lock();
+        try {
+            Set<Integer> seen = new HashSet<>();
+            int i = base.lowerBound(key);
+            Iterator<Entry> buffered = pending.tailSet(new Entry(key, -1), true).iterator();
+            Entry next = nextMatching(buffered, key);
+
+            // Merge the base range and the buffered range in key order
+            while (result.size() < limit) {
+                boolean baseHas = i < base.size() && base.startsWith(i, key);
+                if (!baseHas && next == null) {
+                    break;
+                }
+                int ordinal;
+                if (baseHas && (next == null || base.compareTo(i, next.key) <= 0)) {
+                    ordinal = base.owner(i++);
+                } else {
+                    ordinal = next.ordinal;
+                    next = nextMatching(buffered, key);
+                }
+                if (!dead.get(ordinal) && seen.add(ordinal)) {
+                    result.add(patientIdByOrdinal.get(ordinal));
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Number of indexed patients.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return ordinalByPatientId.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ========== Normalization ==========
+
+    /**
+     * Lower-case, strip accents, turn punctuation into single spaces.
+     */
+    static String normalizeName(String name) {
+        if (name == null) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(name, Normalizer.Form.NFD);
+        StringBuilder sb = new StringBuilder(decomposed.length());
+        boolean space = false;
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                if (space && sb.length() > 0) {
+                    sb.append(' ');
+                }
+                sb.append(Character.toLowerCase(c));
+                space = false;
+            } else {
+                space = true;
+            }
+        }
+        return sb.toString();
+    }
+
+    static String digitsOnly(String text) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.isDigit(text.charAt(i))) {
+                sb.append(text.charAt(i));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Queries made of digits and phone punctuation match contact numbers; others match names.
+     * A trailing separator is kept for names so "john " only matches the whole word "john".
+     */
+    static String normalizeQuery(String query) {
+        if (query == null) {
+            return "";
+        }
+        if (query.matches("[\\d\\s()+.-]*\\d[\\d\\s()+.-]*")) {
+            return digitsOnly(query);
+        }
+        String normalized = normalizeName(query);
+        if (!normalized.isEmpty() && Character.isWhitespace(query.charAt(query.length() - 1))) {
+            normalized += " ";
+        }
+        return normalized;
+    }
+
+    // ========== Internals ==========
+
+    private static void addEntries(List<Entry> entries, Patient patient, int ordinal) {
+        String name = normalizeName(patient.getName());
+        if (!name.isEmpty()) {
+            entries.add(new Entry(name.getBytes(StandardCharsets.UTF_8), ordinal));
+            for (int i = name.indexOf(' '); i >= 0; i = name.indexOf(' ', i + 1)) {
+                entries.add(new Entry(name.substring(i + 1).getBytes(StandardCharsets.UTF_8), ordinal));
+            }
+        }
+        if (patient.getContact() != null) {
+            String contact = digitsOnly(patient.getContact());
+            if (!contact.isEmpty()) {
+                entries.add(new Entry(contact.getBytes(StandardCharsets.UTF_8), ordinal));
+            }
+        }
+    }
+
+    private int newOrdinal(String patientId) {
+        int ordinal = patientIdByOrdinal.size();
+        patientIdByOrdinal.add(patientId);
+        ordinalByPatientId.put(patientId, ordinal);
+        return ordinal;
+    }
+
+    private void kill(String patientId) {
+        Integer ordinal = ordinalByPatientId.remove(patientId);
+        if (ordinal != null) {
+            dead.set(ordinal);
+            deadCount++;
+        }
+    }
+
+    private void mergeIfNeeded() {
+        int threshold = Math.max(MIN_MERGE_THRESHOLD, base.size() / 8);
+        if (pending.size() > threshold || deadCount > threshold) {
+            merge();
+        }
+    }
+
+    /**
+     * Merge the buffer into the base arrays, dropping dead entries and renumbering ordinals.
+     * Both inputs are already sorted, so this is a linear merge.
+     */
+    private void merge() {
+        int[] remap = new int[patientIdByOrdinal.size()];
+        List<String> liveIds = new ArrayList<>(ordinalByPatientId.size());
+        for (int ordinal = 0; ordinal < remap.length; ordinal++) {
+            if (dead.get(ordinal)) {
+                remap[ordinal] = -1;
+            } else {
+                remap[ordinal] = liveIds.size();
+                liveIds.add(patientIdByOrdinal.get(ordinal));
+            }
+        }
+
+        KeyBlock.Builder builder = new KeyBlock.Builder(base.size() + pending.size());
+        Iterator<Entry> buffered = pending.iterator();
+        Entry next = buffered.hasNext() ? buffered.next() : null;
+        int i = 0;
+        while (i < base.size() || next != null) {
+            if (i < base.size() && (next == null || base.compareTo(i, next.key) <= 0)) {
+                int owner = remap[base.owner(i)];
+                if (owner >= 0) {
+                    builder.add(base, i, owner);
+                }
+                i++;
+            } else {
+                int owner = remap[next.ordinal];
+                if (owner >= 0) {
+                    builder.add(next.key, owner);
+                }
+                next = buffered.hasNext() ? buffered.next() : null;
+            }
+        }
+        base = builder.build();
+        pending.clear();
+
+        patientIdByOrdinal.clear();
+        patientIdByOrdinal.addAll(liveIds);
+        ordinalByPatientId.clear();
+        for (int ordinal = 0; ordinal < liveIds.size(); ordinal++) {
+            ordinalByPatientId.put(liveIds.get(ordinal), ordinal);
+        }
+        dead.clear();
+        deadCount = 0;
+    }
+
+    private static Entry nextMatching(Iterator<Entry> it, byte[] prefix) {
+        if (it.hasNext()) {
+            Entry entry = it.next();
+            if (startsWith(entry.key, 0, entry.key.length, prefix)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    static int compareBytes(byte[] a, int aFrom, int aTo, byte[] b) {
+        int length = Math.min(aTo - aFrom, b.length);
+        for (int i = 0; i < length; i++) {
+            int cmp = (a[aFrom + i] & 0xFF) - (b[i] & 0xFF);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return (aTo - aFrom) - b.length;
+    }
+
+    static boolean startsWith(byte[] data, int from, int to, byte[] prefix) {
+        if (to - from < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[from + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A key with the ordinal of the patient it belongs to, ordered by UTF-8 bytes.
+     */
+    private static final class Entry implements Comparable<Entry> {
+        final byte[] key;
+        final int ordinal;
+
+        Entry(byte[] key, int ordinal) {
+            this.key = key;
+            this.ordinal = ordinal;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int cmp = compareBytes(key, 0, key.length, other.key);
+            return cmp != 0 ? cmp : Integer.compare(ordinal, other.ordinal);
+        }
+    }
+
+    /**
+     * Immutable sorted keys packed into one byte array.
+     */
+    private static final class KeyBlock {
+        static final KeyBlock EMPTY = new KeyBlock(new byte[0], new int[] {0}, new int[0]);
+
+        private final byte[] data;
+        private final int[] offsets; // size + 1 entries; key i is data[offsets[i], offsets[i+1])
+        private final int[] owners;
+
+        private KeyBlock(byte[] data, int[] offsets, int[] owners) {
+            this.data = data;
+            this.offsets = offsets;
+            this.owners = owners;
+        }
+
+        static KeyBlock of(List<Entry> sorted) {
+            Builder builder = new Builder(sorted.size());
+            for (Entry entry : sorted) {
+                builder.add(entry.key, entry.ordinal);
+            }
+            return builder.build();
+        }
+
+        int size() {
+            return owners.length;
+        }
+
+        int owner(int i) {
+            return owners[i];
+        }
+
+        int compareTo(int i, byte[] key) {
+            return compareBytes(data, offsets[i], offsets[i + 1], key);
+        }
+
+        boolean startsWith(int i, byte[] prefix) {
+            return PatientPrefixIndex.startsWith(data, offsets[i], offsets[i + 1], prefix);
+        }
+
+        /**
+         * Index of the first key not less than the given key.
+         */
+        int lowerBound(byte[] key) {
+            int lo = 0;
+            int hi = size();
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (compareTo(mid, key) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        static final class Builder {
+            private byte[] data;
+            private int[] offsets;
+            private int[] owners;
+            private int size;
+            private int length;
+
+            Builder(int expectedKeys) {
+                this.data = new byte[Math.max(16, expectedKeys * 12)];
+                this.offsets = new int[expectedKeys + 1];
+                this.owners = new int[Math.max(1, expectedKeys)];
+            }
+
+            void add(byte[] key, int owner) {
+                append(key, 0, key.length, owner);
+            }
+
+            void add(KeyBlock block, int i, int owner) {
+                append(block.data, block.offsets[i], block.offsets[i + 1] - block.offsets[i], owner);
+            }
+
+            private void append(byte[] src, int from, int count, int owner) {
+                if (length + count > data.length) {
+                    data = Arrays.copyOf(data, Math.max(length + count, data.length + (data.length >> 1)));
+                }
+                if (size + 1 >= offsets.length) {
+                    offsets = Arrays.copyOf(offsets, offsets.length + (offsets.length >> 1) + 2);
+                    owners = Arrays.copyOf(owners, offsets.length - 1);
+                }
+                System.arraycopy(src, from, data, length, count);
+                length += count;
+                owners[size] = owner;
+                offsets[++size] = length;
+            }
+
+            KeyBlock build() {
+                return new KeyBlock(Arrays.copyOf(data, length),
+                        Arrays.copyOf(offsets, size + 1),
+                        Arrays.copyOf(owners, size));
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.digitalhealth.search;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Sorted set of document numbers backed by a growable int array.
+ * Appending increasing document numbers (the common case, since new records get the
+ * highest number) is amortized O(1); snapshots store the gaps between entries as varints,
+ * which usually takes one or two bytes per entry.
+ */
+final class PostingList {
+    private static final int[] EMPTY = new int[0];
+
+    private int[] docs;
+    private int size;
+
+    PostingList() {
+        this.docs = EMPTY;
+    }
+
+    private PostingList(int[] docs, int size) {
+        this.docs = docs;
+        this.size = size;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void add(int doc) {
+        if (size > 0 && docs[size - 1] >= doc) {
+            int pos = Arrays.binarySearch(docs, 0, size, doc);
+            if (pos >= 0) {
+                return;
+            }
+            insertAt(-pos - 1, doc);
+            return;
+        }
+        insertAt(size, doc);
+    }
+
+    boolean remove(int doc) {
+        int pos = Arrays.binarySearch(docs, 0, size, doc);
+        if (pos < 0) {
+            return false;
+        }
+        System.arraycopy(docs, pos + 1, docs, pos, size - pos - 1);
+        size--;
+        return true;
+    }
+
+    /**
+     * Copy of the entries as a sorted array.
+     */
+    int[] toArray() {
+        return Arrays.copyOf(docs, size);
+    }
+
+    private void insertAt(int pos, int doc) {
+        if (size == docs.length) {
+            docs = Arrays.copyOf(docs, Math.max(4, size + (size >> 1)));
+        }
+        System.arraycopy(docs, pos, docs, pos + 1, size - pos);
+        docs[pos] = doc;
+        size++;
+    }
+
+    // ========== Set operations on sorted arrays ==========
+
+    static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    static int[] union(int[] a, int[] b) {
+        int[] result = new int[a.length + b.length];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length || j < b.length) {
+            if (j >= b.length || (i < a.length && a[i] < b[j])) {
+                result[n++] = a[i++];
+            } else if (i >= a.length || b[j] < a[i]) {
+                result[n++] = b[j++];
+            } else {
+                result[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    // ========== Snapshot encoding ==========
+
+    void writeTo(DataOutput out) throws IOException {
+        writeVarInt(out, size);
+        int previous = 0;
+        for (int i = 0; i < size; i++) {
+            writeVarInt(out, docs[i] - previous);
+            previous = docs[i];
+        }
+    }
+
+    static PostingList readFrom(DataInput in) throws IOException {
+        int size = readVarInt(in);
+        int[] docs = new int[size];
+        int previous = 0;
+        for (int i = 0; i < size; i++) {
+            previous += readVarInt(in);
+            docs[i] = previous;
+        }
+        return new PostingList(docs, size);
+    }
+
+    static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in search index snapshot");
+    }
+}
@@ -0,0 +1,60 @@
+package com.digitalhealth.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Splits clinical free text into index terms.
+ * Terms are maximal runs of letters and digits, lower-cased; single characters
+ * and common English stop words are dropped.
+ */
+public final class Tokenizer {
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+            "a", "an", "and", "are", "as", "at", "be", "by", "for", "from", "has", "in", "is",
+            "it", "of", "on", "or", "the", "to", "was", "with"));
+
+    private Tokenizer() {
+    }
+
+    /**
+     * Tokenize text into terms, in order of appearance (duplicates kept).
+     */
+    public static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+        int length = text.length();
+        int start = -1;
+        for (int i = 0; i <= length; i++) {
+            boolean wordChar = i < length && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                String term = normalize(text.substring(start, i));
+                if (term != null) {
+                    terms.add(term);
+                }
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Normalize a single word the same way {@link #tokenize(String)} does.
+     *
+     * @return the term, or null if the word is not indexed
+     */
+    public static String normalize(String word) {
+        String term = word.toLowerCase(Locale.ROOT);
+        if (term.length() < 2 || STOP_WORDS.contains(term)) {
+            return null;
+        }
+        return term;
+    }
+}
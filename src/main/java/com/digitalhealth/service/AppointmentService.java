@@ -1,15 +1,18 @@
 package com.digitalhealth.service;
 
 import com.digitalhealth.dao.AppointmentDao;
+import com.digitalhealth.dao.TransactionManager;
+import com.digitalhealth.dao.UnitOfWork;
 import com.digitalhealth.dto.AppointmentDTO;
-import com.digitalhealth.dto.DoctorDTO;
 import com.digitalhealth.exception.EntityNotFoundException;
+import com.digitalhealth.exception.OptimisticLockException;
 import com.digitalhealth.exception.SlotUnavailableException;
 import com.digitalhealth.exception.ValidationException;
+import com.digitalhealth.jfr.AppointmentBookingEvent;
+import com.digitalhealth.jfr.AppointmentCancellationEvent;
 import com.digitalhealth.model.Appointment;
 import com.digitalhealth.model.AppointmentStatus;
 import com.digitalhealth.model.Doctor;
-import com.digitalhealth.model.Patient;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -19,24 +22,48 @@ import java.util.stream.Collectors;
 
 /**
  * Service layer for Appointment operations.
- * Handles booking, cancellation, rescheduling with thread-safe slot management.
+ * Handles booking, cancellation, rescheduling with thread-safe slot management: there is
+ * no service-wide lock; each operation runs in a unit of work and relies on the doctor and
+ * appointment versions, so concurrent changes to the same doctor are detected on save and
+ * retried according to the {@link RetryPolicy}. Slot changes are reported to
+ * {@link DoctorService#getChangeCount()} again after commit, when they become visible.
  */
 public class AppointmentService {
     private final AppointmentDao appointmentDao;
     private final PatientService patientService;
     private final DoctorService doctorService;
+    private final TransactionManager transactionManager;
     private final AtomicInteger idCounter = new AtomicInteger(5000);
-    private final Object lockObject = new Object();
+    private RetryPolicy retryPolicy = RetryPolicy.defaultPolicy();
 
     public AppointmentService(AppointmentDao appointmentDao, 
                              PatientService patientService,
                              DoctorService doctorService) {
+        this(appointmentDao, patientService, doctorService, TransactionManager.none());
+    }
+
+    /**
+     * @param transactionManager Groups the appointment and doctor writes of each
+     *                           booking/cancel/reschedule into one unit of work
+     */
+    public AppointmentService(AppointmentDao appointmentDao,
+                             PatientService patientService,
+                             DoctorService doctorService,
+                             TransactionManager transactionManager) {
         this.appointmentDao = appointmentDao;
         this.patientService = patientService;
         this.doctorService = doctorService;
+        this.transactionManager = transactionManager;
         initializeIdCounter();
     }
 
+    /**
+     * Set the policy used when an operation loses an optimistic-concurrency race.
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
     private void initializeIdCounter() {
         Map<String, Appointment> appointments = appointmentDao.loadAll();
         if (!appointments.isEmpty()) {
@@ -65,34 +92,53 @@ public class AppointmentService {
         
         validateBookingInput(patientId, doctorId, dateTime);
 
-        synchronized (lockObject) {
-            // Verify entities exist
-            Patient patient = patientService.getPatientEntity(patientId);
-            Doctor doctor = doctorService.getDoctorEntity(doctorId);
-
-            // Check slot availability
-            if (!doctor.hasSlot(dateTime)) {
-                throw new SlotUnavailableException(
-                    "Slot not available for doctor " + doctorId + " at " + dateTime);
+        AppointmentBookingEvent event = new AppointmentBookingEvent();
+        event.begin();
+        event.patientId = patientId;
+        event.doctorId = doctorId;
+        event.slot = dateTime.toString();
+        String outcome = null;
+        try {
+            for (int attempt = 1; ; attempt++) {
+                event.attempts = attempt;
+                try (UnitOfWork uow = transactionManager.begin()) {
+                    // Verify entities exist
+                    patientService.getPatientEntity(patientId);
+                    Doctor doctor = doctorService.getDoctorEntity(doctorId);
+
+                    // Check slot availability
+                    if (!doctor.hasSlot(dateTime)) {
+                        throw new SlotUnavailableException(
+                            "Slot not available for doctor " + doctorId + " at " + dateTime);
+                    }
+
+                    // Create appointment
+                    String appointmentId = "A" + idCounter.getAndIncrement();
+                    Appointment appointment = new Appointment(
+                        appointmentId, patientId, doctorId, dateTime, AppointmentStatus.BOOKED);
+
+                    // Remove slot from doctor's availability
+                    doctor.removeSlot(dateTime);
+
+                    // Save changes; the doctor's version guards the slot against concurrent bookings
+                    // (the patient references the appointment by patientId)
+                    doctorService.saveDoctorEntity(doctor);
+                    appointmentDao.save(appointment);
+
+                    uow.commit();
+                    doctorService.recordChange();
+                    event.appointmentId = appointmentId;
+                    outcome = "booked";
+                    return toDTO(appointment);
+                } catch (OptimisticLockException e) {
+                    retryPolicy.onConflict(attempt, e);
+                }
             }
-
-            // Create appointment
-            String appointmentId = "A" + idCounter.getAndIncrement();
-            Appointment appointment = new Appointment(
-                appointmentId, patientId, doctorId, dateTime, AppointmentStatus.BOOKED);
-
-            // Remove slot from doctor's availability
-            doctor.removeSlot(dateTime);
-
-            // Save changes
-            appointmentDao.save(appointment);
-            doctorService.saveDoctorEntity(doctor);
-            
-            // Add appointment to patient
-            patient.getAppointments().add(appointment);
-            patientService.savePatientEntity(patient);
-
-            return toDTO(appointment);
+        } catch (Exception e) {
+            outcome = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            event.complete(outcome);
         }
     }
 
@@ -109,43 +155,85 @@ public class AppointmentService {
      */
     public AppointmentDTO bookAppointment(String patientId, String doctorId, LocalDateTime dateTime, String reason) 
             throws EntityNotFoundException, SlotUnavailableException, ValidationException {
+        return bookAppointment(patientId, doctorId, dateTime, reason, false);
+    }
+
+    /**
+     * Book an appointment with a reason for the visit, for a caller that has already checked
+     * that the patient and doctor exist (AsyncBackendFacade runs both checks concurrently).
+     * The patient is then not read again; the doctor is read in the unit of work either way,
+     * since the booking needs its slots and version.
+     * 
+     * @param patientId ID of the patient
+     * @param doctorId ID of the doctor
+     * @param dateTime Desired appointment time
+     * @param reason Reason for the appointment
+     * @param partiesChecked True if the patient and doctor were found by the caller
+     * @return AppointmentDTO of the newly created appointment
+     * @throws EntityNotFoundException if patient or doctor not found
+     * @throws SlotUnavailableException if slot is not available
+     */
+    public AppointmentDTO bookAppointment(String patientId, String doctorId, LocalDateTime dateTime, String reason,
+                                          boolean partiesChecked)
+            throws EntityNotFoundException, SlotUnavailableException, ValidationException {
         
         validateBookingInput(patientId, doctorId, dateTime);
 
-        synchronized (lockObject) {
-            // Verify entities exist
-            Patient patient = patientService.getPatientEntity(patientId);
-            Doctor doctor = doctorService.getDoctorEntity(doctorId);
-
-            // Auto-generate slots if doctor has none (for backward compatibility)
-            if (doctor.getAvailableSlots() == null || doctor.getAvailableSlots().isEmpty()) {
-                doctor.setAvailableSlots(doctorService.generateDefaultSlotsForDoctor());
-                doctorService.saveDoctorEntity(doctor);
-            }
-
-            // Check slot availability
-            if (!doctor.hasSlot(dateTime)) {
-                throw new SlotUnavailableException(
-                    "Slot not available for doctor " + doctorId + " at " + dateTime);
+        AppointmentBookingEvent event = new AppointmentBookingEvent();
+        event.begin();
+        event.patientId = patientId;
+        event.doctorId = doctorId;
+        event.slot = dateTime.toString();
+        String outcome = null;
+        try {
+            for (int attempt = 1; ; attempt++) {
+                event.attempts = attempt;
+                try (UnitOfWork uow = transactionManager.begin()) {
+                    // Verify entities exist
+                    if (!partiesChecked) {
+                        patientService.getPatientEntity(patientId);
+                    }
+                    Doctor doctor = doctorService.getDoctorEntity(doctorId);
+
+                    // Auto-generate slots if doctor has none (for backward compatibility)
+                    if (doctor.getAvailableSlots() == null || doctor.getAvailableSlots().isEmpty()) {
+                        doctor.setAvailableSlots(doctorService.generateDefaultSlotsForDoctor());
+                        doctorService.saveDoctorEntity(doctor);
+                    }
+
+                    // Check slot availability
+                    if (!doctor.hasSlot(dateTime)) {
+                        throw new SlotUnavailableException(
+                            "Slot not available for doctor " + doctorId + " at " + dateTime);
+                    }
+
+                    // Create appointment with reason
+                    String appointmentId = "A" + idCounter.getAndIncrement();
+                    Appointment appointment = new Appointment(
+                        appointmentId, patientId, doctorId, dateTime, AppointmentStatus.BOOKED, reason);
+
+                    // Remove slot from doctor's availability
+                    doctor.removeSlot(dateTime);
+
+                    // Save changes; the doctor's version guards the slot against concurrent bookings
+                    // (the patient references the appointment by patientId)
+                    doctorService.saveDoctorEntity(doctor);
+                    appointmentDao.save(appointment);
+
+                    uow.commit();
+                    doctorService.recordChange();
+                    event.appointmentId = appointmentId;
+                    outcome = "booked";
+                    return toDTO(appointment);
+                } catch (OptimisticLockException e) {
+                    retryPolicy.onConflict(attempt, e);
+                }
             }
-
-            // Create appointment with reason
-            String appointmentId = "A" + idCounter.getAndIncrement();
-            Appointment appointment = new Appointment(
-                appointmentId, patientId, doctorId, dateTime, AppointmentStatus.BOOKED, reason);
-
-            // Remove slot from doctor's availability
-            doctor.removeSlot(dateTime);
-
-            // Save changes
-            appointmentDao.save(appointment);
-            doctorService.saveDoctorEntity(doctor);
-            
-            // Add appointment to patient
-            patient.getAppointments().add(appointment);
-            patientService.savePatientEntity(patient);
-
-            return toDTO(appointment);
+        } catch (Exception e) {
+            outcome = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            event.complete(outcome);
         }
     }
 
@@ -157,24 +245,67 @@ public class AppointmentService {
      * @throws EntityNotFoundException if appointment not found
      */
     public boolean cancelAppointment(String appointmentId) throws EntityNotFoundException {
-        synchronized (lockObject) {
-            Appointment appointment = appointmentDao.findById(appointmentId)
-                    .orElseThrow(() -> new EntityNotFoundException("Appointment not found: " + appointmentId));
+        return cancelAppointment(appointmentId, 0);
+    }
 
-            if (appointment.getStatus() == AppointmentStatus.CANCELLED) {
-                return false; // Already cancelled
+    /**
+     * Cancel an appointment the caller read at a known version and restore the slot.
+     * 
+     * @param appointmentId Appointment ID
+     * @param expectedVersion Version the caller read the appointment at, or 0 for any version
+     * @return true if cancelled successfully
+     * @throws EntityNotFoundException if appointment not found
+     * @throws OptimisticLockException if the appointment is no longer at the expected version
+     */
+    public boolean cancelAppointment(String appointmentId, long expectedVersion) throws EntityNotFoundException {
+        AppointmentCancellationEvent event = new AppointmentCancellationEvent();
+        event.begin();
+        event.appointmentId = appointmentId;
+        String outcome = null;
+        try {
+            for (int attempt = 1; ; attempt++) {
+                event.attempts = attempt;
+                OptimisticLockException stale = null;
+                try (UnitOfWork uow = transactionManager.begin()) {
+                    Appointment appointment = appointmentDao.findById(appointmentId)
+                            .orElseThrow(() -> new EntityNotFoundException("Appointment not found: " + appointmentId));
+                    event.doctorId = appointment.getDoctorId();
+
+                    if (expectedVersion != 0 && appointment.getVersion() != expectedVersion) {
+                        // Changed since the caller read it; retrying would not change that
+                        stale = new OptimisticLockException("Appointment", appointmentId, expectedVersion);
+                        throw stale;
+                    }
+                    if (appointment.getStatus() == AppointmentStatus.CANCELLED) {
+                        outcome = "already_cancelled";
+                        return false; // Already cancelled
+                    }
+
+                    // Update status
+                    appointment.setStatus(AppointmentStatus.CANCELLED);
+                    appointmentDao.save(appointment);
+
+                    // Restore slot to doctor
+                    Doctor doctor = doctorService.getDoctorEntity(appointment.getDoctorId());
+                    doctor.addSlot(appointment.getDateTime());
+                    doctorService.saveDoctorEntity(doctor);
+
+                    uow.commit();
+                    doctorService.recordChange();
+                    outcome = "cancelled";
+                    return true;
+                } catch (OptimisticLockException e) {
+                    if (e == stale) {
+                        throw e;
+                    }
+                    retryPolicy.onConflict(attempt, e);
+                }
             }
-
-            // Update status
-            appointment.setStatus(AppointmentStatus.CANCELLED);
-            appointmentDao.save(appointment);
-
-            // Restore slot to doctor
-            Doctor doctor = doctorService.getDoctorEntity(appointment.getDoctorId());
-            doctor.addSlot(appointment.getDateTime());
-            doctorService.saveDoctorEntity(doctor);
-
-            return true;
+        } catch (Exception e) {
+            outcome = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            event.complete(outcome);
         }
     }
 
@@ -194,34 +325,40 @@ public class AppointmentService {
             throw new ValidationException("New date time is required");
         }
 
-        synchronized (lockObject) {
-            Appointment appointment = appointmentDao.findById(appointmentId)
-                    .orElseThrow(() -> new EntityNotFoundException("Appointment not found: " + appointmentId));
+        for (int attempt = 1; ; attempt++) {
+            try (UnitOfWork uow = transactionManager.begin()) {
+                Appointment appointment = appointmentDao.findById(appointmentId)
+                        .orElseThrow(() -> new EntityNotFoundException("Appointment not found: " + appointmentId));
 
-            if (appointment.getStatus() == AppointmentStatus.CANCELLED) {
-                throw new ValidationException("Cannot reschedule a cancelled appointment");
-            }
+                if (appointment.getStatus() == AppointmentStatus.CANCELLED) {
+                    throw new ValidationException("Cannot reschedule a cancelled appointment");
+                }
 
-            Doctor doctor = doctorService.getDoctorEntity(appointment.getDoctorId());
+                Doctor doctor = doctorService.getDoctorEntity(appointment.getDoctorId());
 
-            // Check if new slot is available
-            if (!doctor.hasSlot(newDateTime)) {
-                throw new SlotUnavailableException(
-                    "New slot not available for doctor " + appointment.getDoctorId() + " at " + newDateTime);
-            }
+                // Check if new slot is available
+                if (!doctor.hasSlot(newDateTime)) {
+                    throw new SlotUnavailableException(
+                        "New slot not available for doctor " + appointment.getDoctorId() + " at " + newDateTime);
+                }
 
-            LocalDateTime oldDateTime = appointment.getDateTime();
+                LocalDateTime oldDateTime = appointment.getDateTime();
 
-            // Update appointment
-            appointment.setDateTime(newDateTime);
-            appointmentDao.save(appointment);
+                // Update appointment
+                appointment.setDateTime(newDateTime);
+                appointmentDao.save(appointment);
 
-            // Restore old slot and remove new slot
-            doctor.addSlot(oldDateTime);
-            doctor.removeSlot(newDateTime);
-            doctorService.saveDoctorEntity(doctor);
+                // Restore old slot and remove new slot
+                doctor.addSlot(oldDateTime);
+                doctor.removeSlot(newDateTime);
+                doctorService.saveDoctorEntity(doctor);
 
-            return toDTO(appointment);
+                uow.commit();
+                doctorService.recordChange();
+                return toDTO(appointment);
+            } catch (OptimisticLockException e) {
+                retryPolicy.onConflict(attempt, e);
+            }
         }
     }
 
@@ -238,9 +375,7 @@ public class AppointmentService {
      * Get appointments for a patient.
      */
     public List<AppointmentDTO> getAppointmentsByPatient(String patientId) {
-        Map<String, Appointment> appointments = appointmentDao.loadAll();
-        return appointments.values().stream()
-                .filter(a -> a.getPatientId().equals(patientId))
+        return appointmentDao.findByPatientId(patientId).stream()
                 .sorted()
                 .map(this::toDTO)
                 .collect(Collectors.toList());
@@ -250,9 +385,7 @@ public class AppointmentService {
      * Get appointments for a doctor.
      */
     public List<AppointmentDTO> getAppointmentsByDoctor(String doctorId) {
-        Map<String, Appointment> appointments = appointmentDao.loadAll();
-        return appointments.values().stream()
-                .filter(a -> a.getDoctorId().equals(doctorId))
+        return appointmentDao.findByDoctorId(doctorId).stream()
                 .sorted()
                 .map(this::toDTO)
                 .collect(Collectors.toList());
@@ -285,11 +418,18 @@ public class AppointmentService {
      * Mark appointment as completed.
      */
     public void completeAppointment(String appointmentId) throws EntityNotFoundException {
-        Appointment appointment = appointmentDao.findById(appointmentId)
-                .orElseThrow(() -> new EntityNotFoundException("Appointment not found: " + appointmentId));
-        
-        appointment.setStatus(AppointmentStatus.COMPLETED);
-        appointmentDao.save(appointment);
+        for (int attempt = 1; ; attempt++) {
+            try {
+                Appointment appointment = appointmentDao.findById(appointmentId)
+                        .orElseThrow(() -> new EntityNotFoundException("Appointment not found: " + appointmentId));
+                
+                appointment.setStatus(AppointmentStatus.COMPLETED);
+                appointmentDao.save(appointment);
+                return;
+            } catch (OptimisticLockException e) {
+                retryPolicy.onConflict(attempt, e);
+            }
+        }
     }
 
     private void validateBookingInput(String patientId, String doctorId, LocalDateTime dateTime) 
@@ -315,37 +455,42 @@ public class AppointmentService {
      * @throws EntityNotFoundException if appointment doesn't exist
      */
     public void deleteAppointment(String appointmentId) throws EntityNotFoundException {
-        Appointment appointment = appointmentDao.findById(appointmentId)
-                .orElseThrow(() -> new EntityNotFoundException("Appointment not found: " + appointmentId));
-        
-        // Return the slot to doctor's available slots if appointment is not completed
-        if (appointment.getStatus() != AppointmentStatus.COMPLETED && 
-            appointment.getStatus() != AppointmentStatus.CANCELLED) {
-            try {
-                DoctorDTO doctorDTO = doctorService.getDoctor(appointment.getDoctorId());
-                Doctor doctor = new Doctor(
-                    doctorDTO.getDoctorId(),
-                    doctorDTO.getName(),
-                    doctorDTO.getSpecialty(),
-                    doctorDTO.getAvailableSlots()
-                );
-                doctor.addSlot(appointment.getDateTime());
-                doctorService.saveDoctorEntity(doctor);
-            } catch (Exception e) {
-                System.err.println("Warning: Could not return slot to doctor: " + e.getMessage());
+        for (int attempt = 1; ; attempt++) {
+            try (UnitOfWork uow = transactionManager.begin()) {
+                Appointment appointment = appointmentDao.findById(appointmentId)
+                        .orElseThrow(() -> new EntityNotFoundException("Appointment not found: " + appointmentId));
+                
+                // Return the slot to doctor's available slots if appointment is not completed
+                if (appointment.getStatus() != AppointmentStatus.COMPLETED && 
+                    appointment.getStatus() != AppointmentStatus.CANCELLED) {
+                    try {
+                        Doctor doctor = doctorService.getDoctorEntity(appointment.getDoctorId());
+                        doctor.addSlot(appointment.getDateTime());
+                        doctorService.saveDoctorEntity(doctor);
+                    } catch (EntityNotFoundException e) {
+                        System.err.println("Warning: Could not return slot to doctor: " + e.getMessage());
+                    }
+                }
+                
+                appointmentDao.delete(appointmentId);
+                uow.commit();
+                doctorService.recordChange();
+                return;
+            } catch (OptimisticLockException e) {
+                retryPolicy.onConflict(attempt, e);
             }
         }
-        
-        appointmentDao.delete(appointmentId);
     }
 
     private AppointmentDTO toDTO(Appointment appointment) {
-        return new AppointmentDTO(
+        AppointmentDTO dto = new AppointmentDTO(
                 appointment.getAppointmentId(),
                 appointment.getPatientId(),
                 appointment.getDoctorId(),
                 appointment.getDateTime(),
                 appointment.getStatus()
         );
+        dto.setVersion(appointment.getVersion());
+        return dto;
     }
 }
@@ -4,6 +4,7 @@ import com.digitalhealth.dao.UserDao;
 import com.digitalhealth.dto.LoginRequestDTO;
 import com.digitalhealth.dto.LoginResponseDTO;
 import com.digitalhealth.dto.UserDTO;
+import com.digitalhealth.exception.OptimisticLockException;
 import com.digitalhealth.exception.ValidationException;
 import com.digitalhealth.model.User;
 import com.digitalhealth.model.UserRole;
@@ -20,12 +21,20 @@ import java.util.UUID;
 public class AuthService {
     private final UserDao userDao;
     private int userCounter = 1;
+    private RetryPolicy retryPolicy = RetryPolicy.defaultPolicy();
 
     public AuthService(UserDao userDao) {
         this.userDao = userDao;
         initializeUserCounter();
     }
 
+    /**
+     * Set the policy used when a user update loses an optimistic-concurrency race.
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
     private void initializeUserCounter() {
         userDao.findAll().stream()
                 .map(User::getUserId)
@@ -94,9 +103,13 @@ public class AuthService {
             throw new ValidationException("Account is inactive");
         }
 
-        // Update last login
+        // Update last login; a concurrent login of the same user only needs one of the timestamps
         user.setLastLogin(LocalDateTime.now());
-        userDao.update(user);
+        try {
+            userDao.update(user);
+        } catch (OptimisticLockException e) {
+            System.err.println("Warning: last login not recorded for " + user.getUsername() + ": " + e.getMessage());
+        }
 
         // Generate token
         String token = generateToken(user);
@@ -149,15 +162,22 @@ public class AuthService {
      * Link user to a patient or doctor entity.
      */
     public void linkUserToEntity(String userId, String entityId) throws ValidationException {
-        Optional<User> userOpt = userDao.findById(userId);
-        
-        if (!userOpt.isPresent()) {
-            throw new ValidationException("User not found");
-        }
+        for (int attempt = 1; ; attempt++) {
+            Optional<User> userOpt = userDao.findById(userId);
+            
+            if (!userOpt.isPresent()) {
+                throw new ValidationException("User not found");
+            }
 
-        User user = userOpt.get();
-        user.setLinkedEntityId(entityId);
-        userDao.update(user);
+            User user = userOpt.get();
+            user.setLinkedEntityId(entityId);
+            try {
+                userDao.update(user);
+                break;
+            } catch (OptimisticLockException e) {
+                retryPolicy.onConflict(attempt, e);
+            }
+        }
         System.out.println("User " + userId + " linked to entity " + entityId);
     }
 
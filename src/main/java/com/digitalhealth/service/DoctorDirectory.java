@@ -0,0 +1,164 @@
+package com.digitalhealth.service;
+
+import com.digitalhealth.dao.DoctorDao;
+import com.digitalhealth.metrics.CacheMetrics;
+import com.digitalhealth.metrics.MetricsRegistry;
+import com.digitalhealth.model.DoctorSummary;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cached doctor directory (ID to name and specialty) for reports and API responses that
+ * show doctor names next to appointments and records.
+ *
+ * Each doctor is looked up once through {@link DoctorDao#findSummaryById}, which skips the
+ * doctor's slots, and then served from memory; unknown IDs are cached too. Concurrent misses on
+ * the same doctor wait for one lookup, which runs outside the map's locks. Bulk callers call {@link #preload()} first so that all
+ * doctors are read at once rather than one miss at a time. {@link DoctorService}
+ * invalidates a doctor's entry when it adds, re-adds or deletes that doctor. Slot changes do
+ * not touch the directory. Entries also expire after {@link #DEFAULT_TTL_MILLIS}, which bounds
+ * staleness from changes made by other processes sharing the database.
+ */
+public class DoctorDirectory {
+    static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    /** Doctor counts are small; past this the cache is simply emptied rather than evicted piecemeal. */
+    private static final int MAX_ENTRIES = 10_000;
+
+    private final DoctorDao doctorDao;
+    private final long ttlNanos;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final CacheMetrics cacheMetrics;
+    /** Bumped by every invalidation, so a preload that raced with a change is not kept. */
+    private final AtomicLong generation = new AtomicLong();
+
+    private static final class Entry {
+        /** Completes with null if no such doctor; pending while the lookup runs. */
+        final CompletableFuture<DoctorSummary> summary;
+        final long loadedAt;
+
+        Entry(CompletableFuture<DoctorSummary> summary, long loadedAt) {
+            this.summary = summary;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    public DoctorDirectory(DoctorDao doctorDao) {
+        this(doctorDao, DEFAULT_TTL_MILLIS, MetricsRegistry.getDefault());
+    }
+
+    DoctorDirectory(DoctorDao doctorDao, long ttlMillis, MetricsRegistry metrics) {
+        this.doctorDao = doctorDao;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.cacheMetrics = new CacheMetrics(metrics, "doctor_directory");
+    }
+
+    /**
+     * Look up a doctor.
+     *
+     * @param doctorId Doctor ID
+     * @return The doctor's summary, or null if there is no such doctor
+     */
+    public DoctorSummary find(String doctorId) {
+        if (doctorId == null) {
+            return null;
+        }
+        Entry entry = entries.get(doctorId);
+        if (entry != null && isFresh(entry)) {
+            cacheMetrics.hit();
+            return await(entry);
+        }
+        if (entries.size() >= MAX_ENTRIES) {
+            entries.clear();
+        }
+        // Claim the miss with a pending entry, then look up without holding the map's lock.
+        // Other threads missing on this doctor wait for the pending entry. An invalidation
+        // removes it at once, so later calls read again.
+        Entry pending = new Entry(new CompletableFuture<>(), System.nanoTime());
+        entry = entries.compute(doctorId, (id, current) -> current != null && isFresh(current) ? current : pending);
+        if (entry != pending) {
+            cacheMetrics.hit();
+            return await(entry);
+        }
+        cacheMetrics.miss();
+        DoctorSummary summary;
+        try {
+            summary = doctorDao.findSummaryById(doctorId).orElse(null);
+        } catch (RuntimeException | Error e) {
+            // Nothing is cached; the waiters fail alike and the next call reads again
+            entries.remove(doctorId, pending);
+            pending.summary.completeExceptionally(e);
+            throw e;
+        }
+        pending.summary.complete(summary);
+        return summary;
+    }
+
+    private static DoctorSummary await(Entry entry) {
+        try {
+            return entry.summary.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Load every doctor with one {@link DoctorDao#findAllSummaries()} call, e.g. before a bulk
+     * export looks up the doctors of many records. Does nothing if there are more doctors than
+     * the directory holds.
+     */
+    public void preload() {
+        long loadedAt = System.nanoTime();
+        long loadGeneration = generation.get();
+        Map<String, DoctorSummary> summaries = doctorDao.findAllSummaries();
+        if (summaries.size() > MAX_ENTRIES) {
+            return;
+        }
+        if (entries.size() + summaries.size() > MAX_ENTRIES) {
+            entries.clear();
+        }
+        for (Map.Entry<String, DoctorSummary> summary : summaries.entrySet()) {
+            entries.put(summary.getKey(), new Entry(CompletableFuture.completedFuture(summary.getValue()), loadedAt));
+        }
+        if (generation.get() != loadGeneration) {
+            // A doctor changed while they were read; keep none of this copy
+            entries.keySet().removeAll(summaries.keySet());
+        }
+    }
+
+    private boolean isFresh(Entry entry) {
+        return System.nanoTime() - entry.loadedAt < ttlNanos;
+    }
+
+    /**
+     * Get a doctor's name, or null if there is no such doctor.
+     */
+    public String findName(String doctorId) {
+        DoctorSummary summary = find(doctorId);
+        return summary != null ? summary.getName() : null;
+    }
+
+    /**
+     * Drop a doctor's entry after the doctor was added, changed or deleted.
+     */
+    public void invalidate(String doctorId) {
+        generation.incrementAndGet();
+        entries.remove(doctorId);
+    }
+
+    /**
+     * Drop all entries.
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        entries.clear();
+    }
+}
@@ -1,22 +1,64 @@
 package com.digitalhealth.service;
 
 import com.digitalhealth.dao.DoctorDao;
+import com.digitalhealth.dao.TransactionManager;
+import com.digitalhealth.dao.UnitOfWork;
 import com.digitalhealth.dto.DoctorDTO;
 import com.digitalhealth.exception.EntityNotFoundException;
+import com.digitalhealth.exception.OptimisticLockException;
 import com.digitalhealth.exception.ValidationException;
 import com.digitalhealth.model.Doctor;
 
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Service layer for Doctor operations.
  */
 public class DoctorService {
     private final DoctorDao doctorDao;
+    // Number of the next generated ID; seeded once from the stored doctors
+    private final AtomicInteger idCounter = new AtomicInteger(1);
+    private RetryPolicy retryPolicy = RetryPolicy.defaultPolicy();
+    private final AtomicLong changeCount = new AtomicLong();
+    private final DoctorDirectory directory;
 
     public DoctorService(DoctorDao doctorDao) {
         this.doctorDao = doctorDao;
+        this.directory = new DoctorDirectory(doctorDao);
+        initializeIdCounter();
+    }
+
+    /**
+     * Set the policy used when an update loses an optimistic-concurrency race.
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Number of doctor changes made through this service since it was created.
+     * Bumped only after a change is visible to readers, so a count read before listing
+     * doctors never describes a newer list than the one returned.
+     */
+    public long getChangeCount() {
+        return changeCount.get();
+    }
+
+    /**
+     * Cached ID to name and specialty lookup, kept in step with changes made through this service.
+     */
+    public DoctorDirectory getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Record a doctor change, e.g. once the unit of work that saved it has committed.
+     */
+    void recordChange() {
+        changeCount.incrementAndGet();
     }
 
     /**
@@ -29,9 +71,8 @@ public class DoctorService {
     public String registerDoctor(DoctorDTO dto) throws ValidationException {
         validateDoctorRegistrationDTO(dto);
 
-        // Auto-generate doctor ID
-        String doctorId = generateDoctorId();
-        
+        String doctorId = formatDoctorId(idCounter.getAndIncrement());
+
         Doctor doctor = new Doctor(doctorId, dto.getName(), dto.getSpecialty(), 
                                    dto.getContact(), dto.getEmail(), dto.getSchedule());
         if (dto.getAvailableSlots() != null) {
@@ -42,11 +83,43 @@ public class DoctorService {
         }
 
         doctorDao.save(doctor);
+        directory.invalidate(doctor.getDoctorId());
+        recordChange();
         return doctor.getDoctorId();
     }
 
     /**
-     * Add a new doctor.
+     * Register already validated doctors in one unit of work (for bulk imports). The batch
+     * reserves a block of consecutive IDs, assigned in list order; if the unit of work fails,
+     * none of the batch is stored and its IDs are not reused.
+     * 
+     * @param dtos Doctors that passed {@link #validateDoctorRegistrationDTO(DoctorDTO)}
+     * @return Generated doctor IDs, in the order of the DTOs
+     */
+    List<String> registerDoctors(List<DoctorDTO> dtos, TransactionManager transactionManager) {
+        int nextNum = idCounter.getAndAdd(dtos.size());
+        List<String> doctorIds = new ArrayList<>(dtos.size());
+        try (UnitOfWork uow = transactionManager.begin()) {
+            for (DoctorDTO dto : dtos) {
+                Doctor doctor = new Doctor(formatDoctorId(nextNum++), dto.getName(), dto.getSpecialty(),
+                                           dto.getContact(), dto.getEmail(), dto.getSchedule());
+                doctor.setAvailableSlots(dto.getAvailableSlots() != null
+                        ? new ArrayList<>(dto.getAvailableSlots()) : generateDefaultSlots());
+                doctorDao.save(doctor);
+                doctorIds.add(doctor.getDoctorId());
+            }
+            uow.commit();
+        }
+
+        for (String doctorId : doctorIds) {
+            directory.invalidate(doctorId);
+        }
+        changeCount.addAndGet(doctorIds.size());
+        return doctorIds;
+    }
+
+    /**
+     * Add a doctor with a given ID, replacing the doctor stored under that ID if there is one.
      * 
      * @param dto DoctorDTO
      * @return Doctor ID
@@ -60,7 +133,19 @@ public class DoctorService {
             doctor.setAvailableSlots(new ArrayList<>(dto.getAvailableSlots()));
         }
 
-        doctorDao.save(doctor);
+        // A new doctor is inserted; an existing one is replaced at the version just read
+        for (int attempt = 1; ; attempt++) {
+            doctor.setVersion(doctorDao.findById(doctor.getDoctorId()).map(Doctor::getVersion).orElse(0L));
+            try {
+                doctorDao.save(doctor);
+                break;
+            } catch (OptimisticLockException e) {
+                retryPolicy.onConflict(attempt, e);
+            }
+        }
+        reserveDoctorId(doctor.getDoctorId());
+        directory.invalidate(doctor.getDoctorId());
+        recordChange();
         return doctor.getDoctorId();
     }
 
@@ -99,9 +184,18 @@ public class DoctorService {
      * @throws EntityNotFoundException if doctor not found
      */
     public void addAvailableSlot(String doctorId, LocalDateTime slot) throws EntityNotFoundException {
-        Doctor doctor = getDoctorEntity(doctorId);
-        doctor.addSlot(slot);
-        doctorDao.save(doctor);
+        // Re-read and re-apply if a booking changed the doctor's slots in between
+        for (int attempt = 1; ; attempt++) {
+            Doctor doctor = getDoctorEntity(doctorId);
+            doctor.addSlot(slot);
+            try {
+                doctorDao.save(doctor);
+                recordChange();
+                return;
+            } catch (OptimisticLockException e) {
+                retryPolicy.onConflict(attempt, e);
+            }
+        }
     }
 
     /**
@@ -124,6 +218,7 @@ public class DoctorService {
      */
     void saveDoctorEntity(Doctor doctor) {
         doctorDao.save(doctor);
+        recordChange();
     }
 
     private void validateDoctorDTO(DoctorDTO dto) throws ValidationException {
@@ -138,7 +233,7 @@ public class DoctorService {
         }
     }
 
-    private void validateDoctorRegistrationDTO(DoctorDTO dto) throws ValidationException {
+    void validateDoctorRegistrationDTO(DoctorDTO dto) throws ValidationException {
         if (dto.getName() == null || dto.getName().trim().isEmpty()) {
             throw new ValidationException("Doctor name is required");
         }
@@ -147,20 +242,28 @@ public class DoctorService {
         }
     }
 
-    private String generateDoctorId() {
-        Map<String, Doctor> allDoctors = doctorDao.loadAll();
-        int maxNum = 0;
-        for (String id : allDoctors.keySet()) {
-            if (id.startsWith("D")) {
-                try {
-                    int num = Integer.parseInt(id.substring(1));
-                    if (num > maxNum) maxNum = num;
-                } catch (NumberFormatException e) {
-                    // Skip non-numeric IDs
-                }
+    private void initializeIdCounter() {
+        for (String id : doctorDao.findAllSummaries().keySet()) {
+            reserveDoctorId(id);
+        }
+    }
+
+    /**
+     * Keep generated IDs above a numeric ID that is already taken.
+     */
+    private void reserveDoctorId(String id) {
+        if (id.startsWith("D")) {
+            try {
+                int num = Integer.parseInt(id.substring(1));
+                idCounter.accumulateAndGet(num + 1, Math::max);
+            } catch (NumberFormatException e) {
+                // Skip non-numeric IDs
             }
         }
-        return String.format("D%04d", maxNum + 1);
+    }
+
+    private static String formatDoctorId(int num) {
+        return String.format("D%04d", num);
     }
 
     private DoctorDTO toDTO(Doctor doctor) {
@@ -183,6 +286,8 @@ public class DoctorService {
             throw new EntityNotFoundException("Doctor not found with ID: " + doctorId);
         }
         doctorDao.delete(doctorId);
+        directory.invalidate(doctorId);
+        recordChange();
     }
 
     /**
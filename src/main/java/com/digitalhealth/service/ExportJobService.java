@@ -0,0 +1,417 @@
+package com.digitalhealth.service;
+
+import com.digitalhealth.dto.ExportJobDTO;
+import com.digitalhealth.exception.EntityNotFoundException;
+import com.digitalhealth.exception.QuotaExceededException;
+import com.digitalhealth.metrics.Counter;
+import com.digitalhealth.metrics.MetricsRegistry;
+import com.digitalhealth.model.ExportJob;
+import com.digitalhealth.model.ExportJobStatus;
+
+import java.io.*;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs patient history exports in the background.
+ *
+ * Jobs are queued and run on a small pool of low-priority worker threads, so exports
+ * never hold a request thread and cannot take more than a few cores from interactive
+ * traffic. Each tenant (the user who submitted the job) may have a limited number of jobs
+ * running and queued; the next job to start is the oldest queued job whose tenant is
+ * below its running limit, so one tenant's backlog does not block others.
+ *
+ * Job state is saved to {@code jobs.dat} in the export directory on every state change,
+ * next to the result files. After a restart, queued jobs are queued again; jobs that were
+ * running when the process died are marked failed, while {@link #close()} re-queues them.
+ *
+ * Usage Example:
+ * <pre>
+ * ExportJobDTO job = exportJobs.submit("U1001", null);   // all patients, as a ZIP
+ * ...
+ * if (exportJobs.getJob("U1001", job.getJobId()).getStatus() == ExportJobStatus.SUCCEEDED) {
+ *     File zip = exportJobs.getResult("U1001", job.getJobId());
+ * }
+ * </pre>
+ */
+public class ExportJobService implements AutoCloseable {
+    static final int DEFAULT_WORKERS = 2;
+    static final int DEFAULT_MAX_RUNNING_PER_TENANT = 1;
+    static final int DEFAULT_MAX_QUEUED_PER_TENANT = 5;
+    private static final String STATE_FILE = "jobs.dat";
+    private static final String PARTIAL_SUFFIX = ".part";
+
+    private final ExportService exportService;
+    private final PatientService patientService;
+    private final File directory;
+    private final int workers;
+    private final int maxRunningPerTenant;
+    private final int maxQueuedPerTenant;
+    private final int exportParallelism;
+    private final ExecutorService executor;
+
+    // Guarded by this
+    private final Map<String, ExportJob> jobs = new LinkedHashMap<>();
+    private final Deque<String> queue = new ArrayDeque<>();
+    private final Map<String, Integer> runningByTenant = new HashMap<>();
+    private final Set<String> cancelRequested = new HashSet<>();
+    private int running;
+    private boolean closed;
+
+    private final Map<ExportJobStatus, Counter> finishedCounters = new EnumMap<>(ExportJobStatus.class);
+
+    public ExportJobService(ExportService exportService, PatientService patientService, File directory) {
+        this(exportService, patientService, directory, DEFAULT_WORKERS, DEFAULT_MAX_RUNNING_PER_TENANT,
+                DEFAULT_MAX_QUEUED_PER_TENANT, 1);
+    }
+
+    /**
+     * @param directory Where results and job state are kept
+     * @param workers Jobs run at the same time, across tenants
+     * @param maxRunningPerTenant Jobs of one tenant run at the same time
+     * @param maxQueuedPerTenant Unfinished jobs one tenant may have; more are refused
+     * @param exportParallelism Threads each all-patient export writes reports with
+     */
+    public ExportJobService(ExportService exportService, PatientService patientService, File directory,
+                            int workers, int maxRunningPerTenant, int maxQueuedPerTenant, int exportParallelism) {
+        if (workers <= 0 || maxRunningPerTenant <= 0 || maxQueuedPerTenant <= 0 || exportParallelism <= 0) {
+            throw new IllegalArgumentException("Export job limits must be positive");
+        }
+        this.exportService = exportService;
+        this.patientService = patientService;
+        this.directory = directory;
+        this.workers = workers;
+        this.maxRunningPerTenant = maxRunningPerTenant;
+        this.maxQueuedPerTenant = maxQueuedPerTenant;
+        this.exportParallelism = exportParallelism;
+
+        AtomicInteger threadCount = new AtomicInteger(1);
+        this.executor = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "export-job-" + threadCount.getAndIncrement());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+
+        MetricsRegistry metrics = MetricsRegistry.getDefault();
+        for (ExportJobStatus status : ExportJobStatus.values()) {
+            if (status.isFinished()) {
+                finishedCounters.put(status, metrics.counter("export_jobs_finished_total",
+                        "Export jobs finished, by outcome", "status", status.name().toLowerCase()));
+            }
+        }
+        metrics.gauge("export_jobs_queued", "Export jobs waiting for a worker", this::queuedCount);
+        metrics.gauge("export_jobs_running", "Export jobs running", this::runningCount);
+
+        recover();
+    }
+
+    /**
+     * Queue an export.
+     *
+     * @param tenantId User submitting the job; only this user can see it
+     * @param patientId Patient to export, or null to export every patient as a ZIP archive
+     * @return The queued job
+     * @throws EntityNotFoundException if the patient does not exist
+     * @throws QuotaExceededException if the tenant already has the maximum number of unfinished jobs
+     */
+    public ExportJobDTO submit(String tenantId, String patientId)
+            throws EntityNotFoundException, QuotaExceededException {
+        if (patientId != null && !patientService.patientExists(patientId)) {
+            throw new EntityNotFoundException("Patient not found: " + patientId);
+        }
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Export job service is closed");
+            }
+            long unfinished = jobs.values().stream()
+                    .filter(job -> job.getTenantId().equals(tenantId) && !job.getStatus().isFinished())
+                    .count();
+            if (unfinished >= maxQueuedPerTenant) {
+                throw new QuotaExceededException("Too many unfinished exports (limit " + maxQueuedPerTenant + ")");
+            }
+            ExportJob job = new ExportJob(UUID.randomUUID().toString(), tenantId, patientId, LocalDateTime.now());
+            jobs.put(job.getJobId(), job);
+            queue.addLast(job.getJobId());
+            saveState();
+            startJobs();
+            return toDTO(job);
+        }
+    }
+
+    /**
+     * Get a job's current state.
+     *
+     * @throws EntityNotFoundException if the tenant has no such job
+     */
+    public synchronized ExportJobDTO getJob(String tenantId, String jobId) throws EntityNotFoundException {
+        return toDTO(findJob(tenantId, jobId));
+    }
+
+    /**
+     * List a tenant's jobs, oldest first.
+     */
+    public synchronized List<ExportJobDTO> listJobs(String tenantId) {
+        List<ExportJobDTO> result = new ArrayList<>();
+        for (ExportJob job : jobs.values()) {
+            if (job.getTenantId().equals(tenantId)) {
+                result.add(toDTO(job));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Cancel a job. A queued job is cancelled at once. A running job stops at its next progress
+     * update, or is discarded if it completes first, so it always ends cancelled and its
+     * output is removed.
+     *
+     * @return The job's state after the request: cancelled, or running until it stops
+     * @throws EntityNotFoundException if the tenant has no such job
+     * @throws IllegalStateException if the job had already finished, so nothing was cancelled
+     */
+    public synchronized ExportJobDTO cancel(String tenantId, String jobId) throws EntityNotFoundException {
+        ExportJob job = findJob(tenantId, jobId);
+        if (job.getStatus().isFinished()) {
+            throw new IllegalStateException("Export job already " + job.getStatus().name().toLowerCase());
+        }
+        if (job.getStatus() == ExportJobStatus.QUEUED) {
+            queue.remove(jobId);
+            finish(job, ExportJobStatus.CANCELLED, null);
+            saveState();
+        } else {
+            cancelRequested.add(jobId);
+        }
+        return toDTO(job);
+    }
+
+    /**
+     * Remove a finished job and its result file.
+     *
+     * @throws EntityNotFoundException if the tenant has no such job
+     * @throws IllegalStateException if the job has not finished; cancel it first
+     */
+    public synchronized void delete(String tenantId, String jobId) throws EntityNotFoundException {
+        ExportJob job = findJob(tenantId, jobId);
+        if (!job.getStatus().isFinished()) {
+            throw new IllegalStateException("Export job is still " + job.getStatus().name().toLowerCase());
+        }
+        if (job.getResultFile() != null) {
+            new File(directory, job.getResultFile()).delete();
+        }
+        jobs.remove(jobId);
+        saveState();
+    }
+
+    /**
+     * Get the result file of a successful job.
+     *
+     * @throws EntityNotFoundException if the tenant has no such job
+     * @throws IllegalStateException if the job has not succeeded
+     */
+    public synchronized File getResult(String tenantId, String jobId) throws EntityNotFoundException {
+        ExportJob job = findJob(tenantId, jobId);
+        if (job.getStatus() != ExportJobStatus.SUCCEEDED) {
+            throw new IllegalStateException("Export job is " + job.getStatus().name().toLowerCase());
+        }
+        return new File(directory, job.getResultFile());
+    }
+
+    private ExportJob findJob(String tenantId, String jobId) throws EntityNotFoundException {
+        ExportJob job = jobs.get(jobId);
+        if (job == null || !job.getTenantId().equals(tenantId)) {
+            throw new EntityNotFoundException("Export job not found: " + jobId);
+        }
+        return job;
+    }
+
+    // ========== Scheduling ==========
+
+    /**
+     * Start queued jobs while workers are free, oldest first, skipping tenants at their limit.
+     */
+    private void startJobs() {
+        Iterator<String> candidates = queue.iterator();
+        while (running < workers && !closed && candidates.hasNext()) {
+            ExportJob job = jobs.get(candidates.next());
+            int tenantRunning = runningByTenant.getOrDefault(job.getTenantId(), 0);
+            if (tenantRunning >= maxRunningPerTenant) {
+                continue;
+            }
+            candidates.remove();
+            running++;
+            runningByTenant.put(job.getTenantId(), tenantRunning + 1);
+            job.setStatus(ExportJobStatus.RUNNING);
+            job.setStartedAt(LocalDateTime.now());
+            saveState();
+            executor.execute(() -> run(job));
+        }
+    }
+
+    private void run(ExportJob job) {
+        String jobId = job.getJobId();
+        boolean all = job.getPatientId() == null;
+        String resultName = jobId + (all ? ".zip" : ".txt");
+        File partial = new File(directory, resultName + PARTIAL_SUFFIX);
+        ExportJobStatus outcome;
+        String error = null;
+        try {
+            // The job may have been cancelled between being started and reaching a worker
+            checkCancelled(job);
+            if (all) {
+                exportService.exportAllPatientHistories(partial.getPath(), ExportService.BulkFormat.ZIP,
+                        exportParallelism, (exported, total) -> onProgress(job, exported, total));
+            } else {
+                exportService.exportPatientHistory(job.getPatientId(), partial.getPath());
+                onProgress(job, 1, 1);
+            }
+            Files.move(partial.toPath(), new File(directory, resultName).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            outcome = ExportJobStatus.SUCCEEDED;
+        } catch (CancellationException e) {
+            outcome = ExportJobStatus.CANCELLED;
+        } catch (Exception e) {
+            outcome = ExportJobStatus.FAILED;
+            error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            System.err.println("Export job " + jobId + " failed: " + error);
+        }
+        if (outcome != ExportJobStatus.SUCCEEDED) {
+            partial.delete();
+        }
+
+        synchronized (this) {
+            if (outcome == ExportJobStatus.SUCCEEDED && cancelRequested.contains(jobId)) {
+                // Cancelled after the last progress update; the caller was told it would stop
+                new File(directory, resultName).delete();
+                outcome = ExportJobStatus.CANCELLED;
+            }
+            if (outcome == ExportJobStatus.SUCCEEDED) {
+                File result = new File(directory, resultName);
+                job.setResultFile(resultName);
+                job.setResultBytes(result.length());
+            }
+            if (outcome == ExportJobStatus.CANCELLED && !cancelRequested.contains(jobId)) {
+                // Stopped by shutdown rather than by the user; run it again after the next start
+                job.setStatus(ExportJobStatus.QUEUED);
+                job.setStartedAt(null);
+                job.setProgress(0, 0);
+            } else {
+                finish(job, outcome, error);
+            }
+            cancelRequested.remove(jobId);
+            running--;
+            runningByTenant.merge(job.getTenantId(), -1, Integer::sum);
+            saveState();
+            startJobs();
+        }
+    }
+
+    /**
+     * Record progress, and stop the export if the job was cancelled.
+     */
+    private synchronized void onProgress(ExportJob job, int exported, int total) {
+        checkCancelled(job);
+        job.setProgress(exported, total);
+    }
+
+    private synchronized void checkCancelled(ExportJob job) {
+        if (closed || cancelRequested.contains(job.getJobId())) {
+            throw new CancellationException("Export job cancelled");
+        }
+    }
+
+    private void finish(ExportJob job, ExportJobStatus status, String error) {
+        job.setStatus(status);
+        job.setError(error);
+        job.setFinishedAt(LocalDateTime.now());
+        finishedCounters.get(status).inc();
+    }
+
+    private synchronized double queuedCount() {
+        return queue.size();
+    }
+
+    private synchronized double runningCount() {
+        return running;
+    }
+
+    // ========== Persistence ==========
+
+    /**
+     * Load saved jobs: queue the queued ones again, fail the ones a restart interrupted,
+     * and remove partial output.
+     */
+    private synchronized void recover() {
+        // Created before the workers may run, so no job can be in progress yet
+        directory.mkdirs();
+        File[] partials = directory.listFiles((dir, name) -> name.endsWith(PARTIAL_SUFFIX));
+        if (partials != null) {
+            for (File partial : partials) {
+                partial.delete();
+            }
+        }
+        File state = new File(directory, STATE_FILE);
+        if (!state.exists()) {
+            return;
+        }
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(state)))) {
+            @SuppressWarnings("unchecked")
+            List<ExportJob> saved = (List<ExportJob>) ois.readObject();
+            for (ExportJob job : saved) {
+                jobs.put(job.getJobId(), job);
+                if (job.getStatus() == ExportJobStatus.QUEUED) {
+                    queue.addLast(job.getJobId());
+                } else if (job.getStatus() == ExportJobStatus.RUNNING) {
+                    finish(job, ExportJobStatus.FAILED, "Interrupted by server restart");
+                }
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            System.err.println("Warning: Could not load export jobs: " + e.getMessage());
+        }
+        startJobs();
+    }
+
+    /**
+     * Write all jobs to the state file, replacing it atomically.
+     */
+    private void saveState() {
+        File state = new File(directory, STATE_FILE);
+        File temp = new File(directory, STATE_FILE + ".tmp");
+        try {
+            try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                oos.writeObject(new ArrayList<>(jobs.values()));
+            }
+            Files.move(temp.toPath(), state.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Warning: Could not save export jobs: " + e.getMessage());
+        }
+    }
+
+    private ExportJobDTO toDTO(ExportJob job) {
+        return new ExportJobDTO(job.getJobId(), job.getPatientId(), job.getStatus(),
+                job.getSubmittedAt(), job.getStartedAt(), job.getFinishedAt(),
+                job.getExported(), job.getTotal(), job.getResultBytes(), job.getError());
+    }
+
+    /**
+     * Stop starting jobs and stop running ones at their next progress update. Running and
+     * queued jobs are saved as queued and run again after the next start.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
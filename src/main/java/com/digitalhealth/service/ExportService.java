@@ -4,20 +4,49 @@ import com.digitalhealth.dto.HealthRecordDTO;
 import com.digitalhealth.dto.PatientDTO;
 import com.digitalhealth.exception.EntityNotFoundException;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
-import java.io.IOException;
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 /**
  * Service for exporting patient data to files.
  */
 public class ExportService {
+    /** Patients per fork-join leaf task; reports are small, so leaves batch several. */
+    private static final int PATIENTS_PER_TASK = 32;
+
     private final PatientService patientService;
     private final HealthRecordService healthRecordService;
     private final DoctorService doctorService;
 
+    /**
+     * Output layout of a bulk export.
+     */
+    public enum BulkFormat {
+        /** One {@code history_<patientId>.txt} per patient in the output directory. */
+        FILES,
+        /** A single ZIP archive with one {@code history_<patientId>.txt} entry per patient. */
+        ZIP
+    }
+
+    /**
+     * Receives bulk export progress. Called from worker threads, at most about a hundred
+     * times per export and always once when the last report is written.
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        void onProgress(int exported, int total);
+    }
+
     public ExportService(PatientService patientService, 
                         HealthRecordService healthRecordService,
                         DoctorService doctorService) {
@@ -41,55 +70,319 @@ public class ExportService {
         List<HealthRecordDTO> records = healthRecordService.getRecordsByPatient(patientId);
 
         try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputPath))) {
-            writer.write("========================================\n");
-            writer.write("    PATIENT HEALTH HISTORY REPORT\n");
-            writer.write("========================================\n\n");
-
-            // Patient Demographics
-            writer.write("PATIENT INFORMATION:\n");
-            writer.write("--------------------\n");
-            writer.write(String.format("Patient ID: %s\n", patient.getPatientId()));
-            writer.write(String.format("Name: %s\n", patient.getName()));
-            writer.write(String.format("Age: %d years\n", patient.getAge()));
-            writer.write(String.format("Gender: %s\n", patient.getGender()));
-            writer.write(String.format("Contact: %s\n", patient.getContact()));
-            writer.write("\n");
-
-            // Medical History
-            writer.write("MEDICAL HISTORY:\n");
-            writer.write("----------------\n");
-            writer.write(String.format("Total Visits: %d\n\n", records.size()));
-
-            if (records.isEmpty()) {
-                writer.write("No medical records found.\n");
-            } else {
-                DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
-                
-                for (int i = 0; i < records.size(); i++) {
-                    HealthRecordDTO record = records.get(i);
-                    writer.write(String.format("VISIT #%d\n", i + 1));
-                    writer.write("--------\n");
-                    writer.write(String.format("Record ID: %s\n", record.getRecordId()));
-                    writer.write(String.format("Date: %s\n", record.getDate().format(formatter)));
-                    
-                    try {
-                        String doctorName = doctorService.getDoctor(record.getDoctorId()).getName();
-                        writer.write(String.format("Doctor: %s (ID: %s)\n", doctorName, record.getDoctorId()));
-                    } catch (EntityNotFoundException e) {
-                        writer.write(String.format("Doctor ID: %s\n", record.getDoctorId()));
+            writeReport(writer, patient, records, doctorService.getDirectory()::findName);
+        }
+    }
+
+    /**
+     * Export the history of every patient in one pass.
+     *
+     * Patients and health records are each loaded once (instead of once per patient),
+     * records are grouped by patient, doctor names come from the {@link DoctorDirectory},
+     * and the reports are written in parallel on a fork-join pool. Each worker holds at most
+     * one rendered report at a time; for ZIP output, entries are appended to the archive one
+     * at a time in completion order.
+     *
+     * @param outputPath Directory for {@link BulkFormat#FILES} (created if missing), or the
+     *                   archive file for {@link BulkFormat#ZIP}
+     * @param format Output layout
+     * @param parallelism Number of worker threads
+     * @param progress Progress listener, or null
+     * @return Number of patient reports written
+     * @throws IOException if writing any report fails; files already written are left in place
+     */
+    public int exportAllPatientHistories(String outputPath, BulkFormat format, int parallelism,
+                                         ProgressListener progress) throws IOException {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        List<PatientDTO> patients = patientService.listAllPatients();
+        patients.sort(Comparator.comparing(PatientDTO::getPatientId));
+        Map<String, List<HealthRecordDTO>> recordsByPatient = healthRecordService.getRecordsGroupedByPatient();
+
+        File output = new File(outputPath);
+        ReportSink sink;
+        if (format == BulkFormat.ZIP) {
+            File parent = output.getAbsoluteFile().getParentFile();
+            if (parent != null) {
+                Files.createDirectories(parent.toPath());
+            }
+            sink = new ZipSink(output);
+        } else {
+            Files.createDirectories(output.toPath());
+            sink = new DirectorySink(output);
+        }
+
+        // Every doctor in one read instead of one lookup per doctor the workers meet
+        DoctorDirectory directory = doctorService.getDirectory();
+        directory.preload();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try (ReportSink reports = sink) {
+            BulkExport export = new BulkExport(patients, recordsByPatient, directory::findName, reports, progress);
+            pool.invoke(export.task(0, patients.size()));
+            return export.exported.get();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Export health records as newline-delimited JSON, one object per line, streamed from the
+     * store so memory use does not grow with the number of records.
+     *
+     * @param writer Destination; flushed but not closed
+     * @param from Earliest record date (inclusive), or null for no lower bound
+     * @param to Latest record date (exclusive), or null for no upper bound
+     * @return Number of records written
+     * @throws IOException if writing fails; the lines written so far are left in place
+     */
+    public int exportHealthRecordsNdjson(Writer writer, LocalDateTime from, LocalDateTime to) throws IOException {
+        StringBuilder line = new StringBuilder(256);
+        int count;
+        try {
+            count = healthRecordService.forEachRecord(from, to, record -> {
+                line.setLength(0);
+                appendNdjson(line, record);
+                try {
+                    writer.append(line);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+        return count;
+    }
+
+    private static void appendNdjson(StringBuilder out, HealthRecordDTO record) {
+        out.append("{\"recordId\":");
+        appendJsonString(out, record.getRecordId());
+        out.append(",\"patientId\":");
+        appendJsonString(out, record.getPatientId());
+        out.append(",\"doctorId\":");
+        appendJsonString(out, record.getDoctorId());
+        out.append(",\"date\":");
+        appendJsonString(out, record.getDate() != null ? record.getDate().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME) : null);
+        out.append(",\"symptoms\":");
+        appendJsonString(out, record.getSymptoms());
+        out.append(",\"diagnosis\":");
+        appendJsonString(out, record.getDiagnosis());
+        out.append(",\"prescription\":");
+        appendJsonString(out, record.getPrescription());
+        out.append("}\n");
+    }
+
+    /**
+     * Append a JSON string literal, or null. Escapes everything JSON requires, so a record
+     * always stays on one line.
+     */
+    private static void appendJsonString(StringBuilder out, String value) {
+        if (value == null) {
+            out.append("null");
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                default:
+                    if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
                     }
-                    
-                    writer.write(String.format("Symptoms: %s\n", record.getSymptoms()));
-                    writer.write(String.format("Diagnosis: %s\n", record.getDiagnosis()));
-                    writer.write(String.format("Prescription: %s\n", 
-                        record.getPrescription() != null ? record.getPrescription() : "None"));
-                    writer.write("\n");
+            }
+        }
+        out.append('"');
+    }
+
+    /**
+     * Write one patient's history report.
+     *
+     * @param doctorNames Doctor name by ID, or null if the doctor is unknown
+     */
+    private static void writeReport(Writer writer, PatientDTO patient, List<HealthRecordDTO> records,
+                                    Function<String, String> doctorNames) throws IOException {
+        writer.write("========================================\n");
+        writer.write("    PATIENT HEALTH HISTORY REPORT\n");
+        writer.write("========================================\n\n");
+
+        // Patient Demographics
+        writer.write("PATIENT INFORMATION:\n");
+        writer.write("--------------------\n");
+        writer.write(String.format("Patient ID: %s\n", patient.getPatientId()));
+        writer.write(String.format("Name: %s\n", patient.getName()));
+        writer.write(String.format("Age: %d years\n", patient.getAge()));
+        writer.write(String.format("Gender: %s\n", patient.getGender()));
+        writer.write(String.format("Contact: %s\n", patient.getContact()));
+        writer.write("\n");
+
+        // Medical History
+        writer.write("MEDICAL HISTORY:\n");
+        writer.write("----------------\n");
+        writer.write(String.format("Total Visits: %d\n\n", records.size()));
+
+        if (records.isEmpty()) {
+            writer.write("No medical records found.\n");
+        } else {
+            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+            for (int i = 0; i < records.size(); i++) {
+                HealthRecordDTO record = records.get(i);
+                writer.write(String.format("VISIT #%d\n", i + 1));
+                writer.write("--------\n");
+                writer.write(String.format("Record ID: %s\n", record.getRecordId()));
+                writer.write(String.format("Date: %s\n", record.getDate().format(formatter)));
+
+                String doctorName = doctorNames.apply(record.getDoctorId());
+                if (doctorName != null) {
+                    writer.write(String.format("Doctor: %s (ID: %s)\n", doctorName, record.getDoctorId()));
+                } else {
+                    writer.write(String.format("Doctor ID: %s\n", record.getDoctorId()));
                 }
+
+                writer.write(String.format("Symptoms: %s\n", record.getSymptoms()));
+                writer.write(String.format("Diagnosis: %s\n", record.getDiagnosis()));
+                writer.write(String.format("Prescription: %s\n",
+                    record.getPrescription() != null ? record.getPrescription() : "None"));
+                writer.write("\n");
             }
+        }
 
-            writer.write("========================================\n");
-            writer.write("        END OF REPORT\n");
-            writer.write("========================================\n");
+        writer.write("========================================\n");
+        writer.write("        END OF REPORT\n");
+        writer.write("========================================\n");
+    }
+
+    private static String reportFileName(String patientId) {
+        return "history_" + patientId + ".txt";
+    }
+
+    // ========== Bulk Export ==========
+
+    /**
+     * Shared state of one bulk export.
+     */
+    private static final class BulkExport {
+        final List<PatientDTO> patients;
+        final Map<String, List<HealthRecordDTO>> recordsByPatient;
+        final Function<String, String> doctorNames;
+        final ReportSink sink;
+        final ProgressListener progress;
+        final int progressStep;
+        final AtomicInteger exported = new AtomicInteger();
+
+        BulkExport(List<PatientDTO> patients, Map<String, List<HealthRecordDTO>> recordsByPatient,
+                   Function<String, String> doctorNames, ReportSink sink, ProgressListener progress) {
+            this.patients = patients;
+            this.recordsByPatient = recordsByPatient;
+            this.doctorNames = doctorNames;
+            this.sink = sink;
+            this.progress = progress;
+            this.progressStep = Math.max(1, patients.size() / 100);
+        }
+
+        RecursiveAction task(int from, int to) {
+            return new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    if (to - from > PATIENTS_PER_TASK) {
+                        int middle = (from + to) >>> 1;
+                        invokeAll(task(from, middle), task(middle, to));
+                        return;
+                    }
+                    for (int i = from; i < to; i++) {
+                        export(patients.get(i));
+                    }
+                }
+            };
+        }
+
+        private void export(PatientDTO patient) {
+            List<HealthRecordDTO> records = recordsByPatient.getOrDefault(patient.getPatientId(),
+                    Collections.emptyList());
+            try {
+                sink.write(patient.getPatientId(), writer -> writeReport(writer, patient, records, doctorNames));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            int done = exported.incrementAndGet();
+            if (progress != null && (done % progressStep == 0 || done == patients.size())) {
+                progress.onProgress(done, patients.size());
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface ReportWriter {
+        void writeTo(Writer writer) throws IOException;
+    }
+
+    /**
+     * Destination of bulk export reports; {@link #write} is called from several threads.
+     */
+    private interface ReportSink extends Closeable {
+        void write(String patientId, ReportWriter report) throws IOException;
+    }
+
+    private static final class DirectorySink implements ReportSink {
+        private final File directory;
+
+        DirectorySink(File directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        public void write(String patientId, ReportWriter report) throws IOException {
+            File file = new File(directory, reportFileName(patientId));
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+                report.writeTo(writer);
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Renders reports on the calling worker and appends them to the archive under a lock,
+     * so only compression is serialized.
+     */
+    private static final class ZipSink implements ReportSink {
+        private final ZipOutputStream zip;
+
+        ZipSink(File file) throws IOException {
+            this.zip = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        }
+
+        @Override
+        public void write(String patientId, ReportWriter report) throws IOException {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(2048);
+            try (Writer writer = new OutputStreamWriter(buffer, Charset.defaultCharset())) {
+                report.writeTo(writer);
+            }
+            synchronized (zip) {
+                zip.putNextEntry(new ZipEntry(reportFileName(patientId)));
+                buffer.writeTo(zip);
+                zip.closeEntry();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            synchronized (zip) {
+                zip.close();
+            }
         }
     }
 }
@@ -5,33 +5,88 @@ import com.digitalhealth.dto.HealthRecordDTO;
 import com.digitalhealth.exception.EntityNotFoundException;
 import com.digitalhealth.exception.ValidationException;
 import com.digitalhealth.model.HealthRecord;
-import com.digitalhealth.model.Patient;
+import com.digitalhealth.search.HealthRecordSearchIndex;
 
+import java.io.File;
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
  * Service layer for Health Record operations.
  */
 public class HealthRecordService {
+    /** Index changes after which the snapshot is saved in the background. */
+    public static final int DEFAULT_SNAPSHOT_EVERY_CHANGES = 1000;
+
     private final HealthRecordDao healthRecordDao;
     private final PatientService patientService;
     private final DoctorService doctorService;
     private final AtomicInteger idCounter = new AtomicInteger(3000);
+    private final HealthRecordSearchIndex searchIndex;
+    private final File searchSnapshot;
+    private final int snapshotEveryChanges;
+    // Index changes since the snapshot was last saved
+    private final AtomicInteger unsavedChanges = new AtomicInteger();
+    private final AtomicBoolean snapshotRunning = new AtomicBoolean();
 
     public HealthRecordService(HealthRecordDao healthRecordDao,
                               PatientService patientService,
                               DoctorService doctorService) {
+        this(healthRecordDao, patientService, doctorService, null);
+    }
+
+    /**
+     * @param searchSnapshot File the full-text index is loaded from at startup and saved to by
+     *                       {@link #saveSearchSnapshot()}; null to always build the index in memory
+     */
+    public HealthRecordService(HealthRecordDao healthRecordDao,
+                              PatientService patientService,
+                              DoctorService doctorService,
+                              File searchSnapshot) {
+        this(healthRecordDao, patientService, doctorService, searchSnapshot, DEFAULT_SNAPSHOT_EVERY_CHANGES);
+    }
+
+    /**
+     * @param searchSnapshot File the full-text index is loaded from at startup and saved to by
+     *                       {@link #saveSearchSnapshot()}; null to always build the index in memory
+     * @param snapshotEveryChanges Also save the snapshot in the background once this many records
+     *                             have been indexed or removed since it was last saved, so a crash
+     *                             loses at most that much; 0 to save it only when asked
+     */
+    public HealthRecordService(HealthRecordDao healthRecordDao,
+                              PatientService patientService,
+                              DoctorService doctorService,
+                              File searchSnapshot,
+                              int snapshotEveryChanges) {
+        if (snapshotEveryChanges < 0) {
+            throw new IllegalArgumentException("Snapshot interval must not be negative");
+        }
         this.healthRecordDao = healthRecordDao;
         this.patientService = patientService;
         this.doctorService = doctorService;
-        initializeIdCounter();
+        this.searchSnapshot = searchSnapshot;
+        this.snapshotEveryChanges = snapshotEveryChanges;
+        this.searchIndex = searchSnapshot != null
+                ? HealthRecordSearchIndex.loadSnapshot(searchSnapshot)
+                : new HealthRecordSearchIndex();
+        initialize();
     }
 
-    private void initializeIdCounter() {
+    private void initialize() {
         Map<String, HealthRecord> records = healthRecordDao.loadAll();
+
+        // Only records added or deleted since the snapshot was taken are (re)indexed
+        int changes = searchIndex.synchronize(records.values());
+        if (searchSnapshot != null && changes > 0) {
+            System.out.println("Search index: " + changes + " record(s) reindexed since last snapshot");
+            indexChanged(changes);
+        }
+
         if (!records.isEmpty()) {
             int maxId = records.keySet().stream()
                     .map(id -> id.replace("R", ""))
@@ -52,13 +107,30 @@ public class HealthRecordService {
      */
     public String addHealthRecord(HealthRecordDTO dto) 
             throws EntityNotFoundException, ValidationException {
+        return addHealthRecord(dto, false);
+    }
+
+    /**
+     * Add a health record to a patient, for a caller that has already checked that the patient
+     * and doctor exist (AsyncBackendFacade runs both checks concurrently); neither is read again.
+     * 
+     * @param dto HealthRecordDTO
+     * @param partiesChecked True if the patient and doctor were found by the caller
+     * @return Generated record ID
+     * @throws EntityNotFoundException if patient or doctor not found
+     * @throws ValidationException if validation fails
+     */
+    public String addHealthRecord(HealthRecordDTO dto, boolean partiesChecked)
+            throws EntityNotFoundException, ValidationException {
         
         validateHealthRecordDTO(dto);
 
         // Verify patient and doctor exist
-        Patient patient = patientService.getPatientEntity(dto.getPatientId());
-        if (!doctorService.doctorExists(dto.getDoctorId())) {
-            throw new EntityNotFoundException("Doctor not found: " + dto.getDoctorId());
+        if (!partiesChecked) {
+            patientService.getPatientEntity(dto.getPatientId());
+            if (!doctorService.doctorExists(dto.getDoctorId())) {
+                throw new EntityNotFoundException("Doctor not found: " + dto.getDoctorId());
+            }
         }
 
         String recordId = "R" + idCounter.getAndIncrement();
@@ -72,11 +144,10 @@ public class HealthRecordService {
                 dto.getPrescription()
         );
 
+        // The patient references the record by patientId; no patient rewrite needed
         healthRecordDao.save(record);
-        
-        // Add to patient's records
-        patient.getHealthRecords().add(record);
-        patientService.savePatientEntity(patient);
+        searchIndex.index(record);
+        indexChanged(1);
 
         return recordId;
     }
@@ -97,9 +168,7 @@ public class HealthRecordService {
      * @return List of HealthRecordDTOs sorted by date
      */
     public List<HealthRecordDTO> getRecordsByPatient(String patientId) {
-        Map<String, HealthRecord> records = healthRecordDao.loadAll();
-        return records.values().stream()
-                .filter(r -> r.getPatientId().equals(patientId))
+        return healthRecordDao.findByPatientId(patientId).stream()
                 .sorted()
                 .map(this::toDTO)
                 .collect(Collectors.toList());
@@ -109,9 +178,7 @@ public class HealthRecordService {
      * Get records by doctor.
      */
     public List<HealthRecordDTO> getRecordsByDoctor(String doctorId) {
-        Map<String, HealthRecord> records = healthRecordDao.loadAll();
-        return records.values().stream()
-                .filter(r -> r.getDoctorId().equals(doctorId))
+        return healthRecordDao.findByDoctorId(doctorId).stream()
                 .sorted()
                 .map(this::toDTO)
                 .collect(Collectors.toList());
@@ -128,6 +195,40 @@ public class HealthRecordService {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * All health records grouped by patient, each patient's records sorted by date.
+     * Loads the record store once, for bulk jobs that would otherwise query per patient.
+     * 
+     * @return Map from patient ID to that patient's records; patients without records are absent
+     */
+    public Map<String, List<HealthRecordDTO>> getRecordsGroupedByPatient() {
+        Map<String, List<HealthRecord>> grouped = new HashMap<>();
+        for (HealthRecord record : healthRecordDao.loadAll().values()) {
+            grouped.computeIfAbsent(record.getPatientId(), id -> new ArrayList<>()).add(record);
+        }
+        Map<String, List<HealthRecordDTO>> result = new HashMap<>(grouped.size() * 2);
+        for (Map.Entry<String, List<HealthRecord>> entry : grouped.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().stream()
+                    .sorted()
+                    .map(this::toDTO)
+                    .collect(Collectors.toList()));
+        }
+        return result;
+    }
+
+    /**
+     * Stream health records dated in [from, to) from the store one at a time, unordered,
+     * for exports too large to hold as a list.
+     * 
+     * @param from Earliest record date (inclusive), or null for no lower bound
+     * @param to Latest record date (exclusive), or null for no upper bound
+     * @param action Called once per record; exceptions it throws end the scan
+     * @return Number of records streamed
+     */
+    public int forEachRecord(LocalDateTime from, LocalDateTime to, Consumer<HealthRecordDTO> action) {
+        return healthRecordDao.scan(from, to, record -> action.accept(toDTO(record)));
+    }
+
     private void validateHealthRecordDTO(HealthRecordDTO dto) throws ValidationException {
         if (dto.getPatientId() == null || dto.getPatientId().trim().isEmpty()) {
             throw new ValidationException("Patient ID is required");
@@ -153,6 +254,71 @@ public class HealthRecordService {
         HealthRecord record = healthRecordDao.findById(recordId)
                 .orElseThrow(() -> new EntityNotFoundException("Health record not found with ID: " + recordId));
         healthRecordDao.delete(recordId);
+        searchIndex.remove(recordId);
+        indexChanged(1);
+    }
+
+    /**
+     * Full-text search over symptoms, diagnosis and prescription.
+     * 
+     * @param query Words to match (all must match); {@code OR} between alternatives,
+     *              trailing {@code *} for prefix matches
+     * @return Matching HealthRecordDTOs sorted by date
+     * @throws ValidationException if the query is blank
+     */
+    public List<HealthRecordDTO> searchRecords(String query) throws ValidationException {
+        if (query == null || query.trim().isEmpty()) {
+            throw new ValidationException("Search query is required");
+        }
+        List<String> recordIds = searchIndex.search(query);
+        if (recordIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return healthRecordDao.findAllById(recordIds).stream()
+                .sorted()
+                .map(this::toDTO)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Save the full-text index snapshot, if one is configured. Waits for a background save
+     * that is already running.
+     */
+    public synchronized void saveSearchSnapshot() {
+        if (searchSnapshot == null) {
+            return;
+        }
+        unsavedChanges.set(0);
+        try {
+            File parent = searchSnapshot.getAbsoluteFile().getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
+            }
+            searchIndex.saveSnapshot(searchSnapshot);
+        } catch (IOException e) {
+            System.err.println("Warning: Could not save search index snapshot: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Count index changes and start a background snapshot save once enough have built up.
+     * At most one background save runs at a time; changes made during it count towards the next.
+     */
+    private void indexChanged(int changes) {
+        if (searchSnapshot == null || snapshotEveryChanges == 0
+                || unsavedChanges.addAndGet(changes) < snapshotEveryChanges
+                || !snapshotRunning.compareAndSet(false, true)) {
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                saveSearchSnapshot();
+            } finally {
+                snapshotRunning.set(false);
+            }
+        }, "search-snapshot");
+        thread.setDaemon(true);
+        thread.start();
     }
 
     private HealthRecordDTO toDTO(HealthRecord record) {
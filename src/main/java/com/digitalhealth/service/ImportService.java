@@ -0,0 +1,491 @@
+package com.digitalhealth.service;
+
+import com.digitalhealth.dao.TransactionManager;
+import com.digitalhealth.dto.DoctorDTO;
+import com.digitalhealth.dto.ImportResultDTO;
+import com.digitalhealth.dto.PatientDTO;
+import com.digitalhealth.exception.EntityNotFoundException;
+import com.digitalhealth.exception.ValidationException;
+import com.digitalhealth.util.CsvReader;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Bulk import of patients and doctors from CSV.
+ * Each import runs as a pipeline of three stages joined by bounded queues, so a file of any
+ * size is imported in constant memory and a slow stage holds back the ones before it:
+ * <ol>
+ *   <li>parse: the calling thread reads CSV records;</li>
+ *   <li>validate: a few worker threads convert records to DTOs and apply the same checks as
+ *       single registrations; failing rows go to the reject file with their line number and
+ *       reason;</li>
+ *   <li>persist: one thread stores valid rows in batches, each batch in one unit of work, so
+ *       the file backend rewrites its data file once per batch instead of once per row and
+ *       MySQL commits once per batch.</li>
+ * </ol>
+ * The first line must be a header naming the columns, in any order:
+ * {@code name,age,gender,contact} for patients, {@code name,specialty} and optionally
+ * {@code contact,email,schedule} for doctors. Other columns are ignored.
+ */
+public class ImportService {
+    static final int DEFAULT_BATCH_SIZE = 500;
+    static final int DEFAULT_QUEUE_CAPACITY = 1024;
+    static final int MAX_LISTED_REJECTS = 10;
+    private static final String REJECTS_SUFFIX = ".rejects.csv";
+
+    private static final String[] PATIENT_COLUMNS = {"name", "age", "gender", "contact"};
+    private static final String[] DOCTOR_COLUMNS = {"name", "specialty"};
+
+    private final PatientService patientService;
+    private final DoctorService doctorService;
+    private final TransactionManager transactionManager;
+    private final File directory;
+    private final int batchSize;
+    private final int validatorThreads;
+    private final int queueCapacity;
+
+    public ImportService(PatientService patientService, DoctorService doctorService,
+                         TransactionManager transactionManager, File directory) {
+        this(patientService, doctorService, transactionManager, directory, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param batchSize Rows stored per unit of work; the file backend rewrites a whole data
+     *                  file per batch, so it imports fastest with large batches
+     */
+    public ImportService(PatientService patientService, DoctorService doctorService,
+                         TransactionManager transactionManager, File directory, int batchSize) {
+        this(patientService, doctorService, transactionManager, directory, batchSize,
+                Math.min(4, Runtime.getRuntime().availableProcessors()), DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param directory Where reject files of {@link #importPatients(Reader)} and
+     *                  {@link #importDoctors(Reader)} are kept
+     * @param batchSize Rows stored per unit of work
+     * @param validatorThreads Threads of the validate stage
+     * @param queueCapacity Rows buffered between two stages
+     */
+    public ImportService(PatientService patientService, DoctorService doctorService,
+                         TransactionManager transactionManager, File directory,
+                         int batchSize, int validatorThreads, int queueCapacity) {
+        if (batchSize <= 0 || validatorThreads <= 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException("Import batch size, threads and queue capacity must be positive");
+        }
+        this.patientService = patientService;
+        this.doctorService = doctorService;
+        this.transactionManager = transactionManager;
+        this.directory = directory;
+        this.batchSize = batchSize;
+        this.validatorThreads = validatorThreads;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Import patients, keeping rejected rows in a reject file for {@link #getRejectsFile(String)}.
+     *
+     * @param csv CSV with a header line; read to the end but not closed
+     * @return Counts; its import ID names the reject file if any row was rejected
+     * @throws ValidationException if the header lacks a required column
+     * @throws IOException if reading the CSV or writing the reject file fails
+     */
+    public ImportResultDTO importPatients(Reader csv) throws IOException, ValidationException {
+        return importWithRejectsFile(csv, patientImport());
+    }
+
+    /**
+     * Import patients, writing rejected rows to the given writer.
+     *
+     * @param csv CSV with a header line; read to the end but not closed
+     * @param rejects Receives a CSV of the rejected rows with their line number and reason;
+     *                flushed but not closed
+     * @throws ValidationException if the header lacks a required column
+     * @throws IOException if reading the CSV or writing the rejects fails
+     */
+    public ImportResultDTO importPatients(Reader csv, Writer rejects) throws IOException, ValidationException {
+        return run(null, csv, rejects, patientImport());
+    }
+
+    /**
+     * Import doctors, keeping rejected rows in a reject file for {@link #getRejectsFile(String)}.
+     * Doctors without slots in the CSV get the default slots of a single registration.
+     *
+     * @see #importPatients(Reader)
+     */
+    public ImportResultDTO importDoctors(Reader csv) throws IOException, ValidationException {
+        return importWithRejectsFile(csv, doctorImport());
+    }
+
+    /**
+     * Import doctors, writing rejected rows to the given writer.
+     *
+     * @see #importPatients(Reader, Writer)
+     */
+    public ImportResultDTO importDoctors(Reader csv, Writer rejects) throws IOException, ValidationException {
+        return run(null, csv, rejects, doctorImport());
+    }
+
+    /**
+     * Reject file of an earlier import.
+     *
+     * @throws EntityNotFoundException if no import with rejects has this ID
+     */
+    public File getRejectsFile(String importId) throws EntityNotFoundException {
+        // IDs are UUIDs; anything else could point outside the directory
+        File file = importId != null && importId.matches("[0-9a-f-]{36}")
+                ? new File(directory, importId + REJECTS_SUFFIX) : null;
+        if (file == null || !file.isFile()) {
+            throw new EntityNotFoundException("Import not found: " + importId);
+        }
+        return file;
+    }
+
+    private ImportResultDTO importWithRejectsFile(Reader csv, EntityImport<?> entity)
+            throws IOException, ValidationException {
+        directory.mkdirs();
+        String importId = UUID.randomUUID().toString();
+        File file = new File(directory, importId + REJECTS_SUFFIX);
+        ImportResultDTO result;
+        try (Writer rejects = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), 16384)) {
+            result = run(importId, csv, rejects, entity);
+        } catch (IOException | ValidationException | RuntimeException e) {
+            file.delete();
+            throw e;
+        }
+        if (result.getRejected() == 0) {
+            file.delete();
+        }
+        return result;
+    }
+
+    private EntityImport<PatientDTO> patientImport() {
+        return new EntityImport<PatientDTO>("patients", PATIENT_COLUMNS) {
+            @Override
+            PatientDTO toDTO(Row row) throws ValidationException {
+                int age;
+                try {
+                    age = Integer.parseInt(row.get("age"));
+                } catch (NumberFormatException e) {
+                    throw new ValidationException("Invalid age: must be a whole number");
+                }
+                PatientDTO dto = new PatientDTO(row.get("name"), age, row.get("gender"), row.get("contact"));
+                patientService.validatePatientDTO(dto);
+                return dto;
+            }
+
+            @Override
+            List<String> store(List<PatientDTO> batch) {
+                return patientService.registerPatients(batch, transactionManager);
+            }
+        };
+    }
+
+    private EntityImport<DoctorDTO> doctorImport() {
+        return new EntityImport<DoctorDTO>("doctors", DOCTOR_COLUMNS) {
+            @Override
+            DoctorDTO toDTO(Row row) throws ValidationException {
+                DoctorDTO dto = new DoctorDTO(null, row.get("name"), row.get("specialty"),
+                        row.get("contact"), row.get("email"), row.get("schedule"));
+                // No slots column: registration generates the default slots
+                dto.setAvailableSlots(null);
+                doctorService.validateDoctorRegistrationDTO(dto);
+                return dto;
+            }
+
+            @Override
+            List<String> store(List<DoctorDTO> batch) {
+                return doctorService.registerDoctors(batch, transactionManager);
+            }
+        };
+    }
+
+    /**
+     * Run the parse, validate and persist stages until the CSV is exhausted.
+     */
+    private <T> ImportResultDTO run(String importId, Reader csv, Writer rejectsOut, EntityImport<T> entity)
+            throws IOException, ValidationException {
+        long start = System.nanoTime();
+        CsvReader reader = new CsvReader(csv);
+        String[] header = reader.readRecord();
+        if (header == null) {
+            throw new ValidationException("CSV is empty; expected a header line");
+        }
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < header.length; i++) {
+            columns.putIfAbsent(header[i].trim().toLowerCase(Locale.ROOT), i);
+        }
+        for (String required : entity.requiredColumns) {
+            if (!columns.containsKey(required)) {
+                throw new ValidationException("CSV header must contain the columns: "
+                        + String.join(", ", entity.requiredColumns));
+            }
+        }
+
+        Rejects rejects = new Rejects(rejectsOut, header);
+        Pipeline<T> pipeline = new Pipeline<>(entity, rejects, header.length);
+        ExecutorService workers = Executors.newFixedThreadPool(validatorThreads + 1, r -> {
+            Thread thread = new Thread(r, "import-" + entity.name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        int rowsRead = 0;
+        try {
+            List<Future<?>> stages = new ArrayList<>();
+            for (int i = 0; i < validatorThreads; i++) {
+                stages.add(workers.submit(pipeline::validate));
+            }
+            stages.add(workers.submit(pipeline::persist));
+
+            // Parse stage
+            String[] fields;
+            while ((fields = reader.readRecord()) != null) {
+                if (fields.length == 1 && fields[0].isEmpty() && !reader.isTruncated()) {
+                    continue;
+                }
+                rowsRead++;
+                Row row = new Row(reader.getRecordLine(), fields, columns);
+                if (reader.isTruncated()) {
+                    rejects.add(row, "Unterminated quoted field");
+                } else {
+                    pipeline.put(pipeline.parsed, row);
+                }
+            }
+            for (int i = 0; i < validatorThreads; i++) {
+                pipeline.put(pipeline.parsed, Row.END);
+            }
+            for (Future<?> stage : stages) {
+                stage.get();
+            }
+        } catch (IOException | RuntimeException e) {
+            // Stops the other stages
+            pipeline.failure.compareAndSet(null, e);
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pipeline.failure.compareAndSet(null, e);
+            throw new InterruptedIOException("Import interrupted");
+        } catch (ExecutionException e) {
+            // The first stage to fail holds the cause; the others only gave up after it
+            pipeline.failure.compareAndSet(null, e.getCause());
+            Throwable cause = pipeline.failure.get();
+            throw new IOException("Import failed: " + cause.getMessage(), cause);
+        } finally {
+            workers.shutdownNow();
+        }
+        rejectsOut.flush();
+
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        return new ImportResultDTO(rejects.count > 0 ? importId : null, entity.name, rowsRead,
+                pipeline.imported.get(), rejects.count, pipeline.batches.get(), elapsedMillis, rejects.first);
+    }
+
+    /**
+     * Column layout, conversion and storage of one importable entity.
+     */
+    private abstract static class EntityImport<T> {
+        final String name;
+        final String[] requiredColumns;
+
+        EntityImport(String name, String[] requiredColumns) {
+            this.name = name;
+            this.requiredColumns = requiredColumns;
+        }
+
+        /** Convert and validate a row. */
+        abstract T toDTO(Row row) throws ValidationException;
+
+        /** Store a batch of valid rows in one unit of work. */
+        abstract List<String> store(List<T> batch);
+    }
+
+    /**
+     * A parsed CSV record with the line it started on.
+     */
+    private static final class Row {
+        static final Row END = new Row(0, new String[0], Collections.emptyMap());
+
+        final int line;
+        final String[] fields;
+        private final Map<String, Integer> columns;
+
+        Row(int line, String[] fields, Map<String, Integer> columns) {
+            this.line = line;
+            this.fields = fields;
+            this.columns = columns;
+        }
+
+        /** Trimmed value of a column, or null if the column or the value is missing. */
+        String get(String column) {
+            Integer index = columns.get(column);
+            if (index == null || index >= fields.length) {
+                return null;
+            }
+            String value = fields[index].trim();
+            return value.isEmpty() ? null : value;
+        }
+    }
+
+    /**
+     * A row that passed validation.
+     */
+    private static final class Valid<T> {
+        final Row row;
+        final T dto;
+
+        Valid(Row row, T dto) {
+            this.row = row;
+            this.dto = dto;
+        }
+    }
+
+    /**
+     * The queues and workers of one import.
+     */
+    private final class Pipeline<T> {
+        final BlockingQueue<Row> parsed = new ArrayBlockingQueue<>(queueCapacity);
+        final BlockingQueue<Valid<T>> valid = new ArrayBlockingQueue<>(queueCapacity);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final AtomicInteger validatorsRunning = new AtomicInteger(validatorThreads);
+        final AtomicInteger imported = new AtomicInteger();
+        final AtomicInteger batches = new AtomicInteger();
+        private final EntityImport<T> entity;
+        private final Rejects rejects;
+        private final int columnCount;
+
+        Pipeline(EntityImport<T> entity, Rejects rejects, int columnCount) {
+            this.entity = entity;
+            this.rejects = rejects;
+            this.columnCount = columnCount;
+        }
+
+        /** Validate stage: runs until it takes an end marker; the last one out ends the persist stage. */
+        Void validate() throws Exception {
+            try {
+                Row row;
+                while ((row = take(parsed)) != Row.END) {
+                    if (row.fields.length != columnCount) {
+                        rejects.add(row, "Expected " + columnCount + " columns, found " + row.fields.length);
+                        continue;
+                    }
+                    try {
+                        put(valid, new Valid<>(row, entity.toDTO(row)));
+                    } catch (ValidationException e) {
+                        rejects.add(row, e.getMessage());
+                    }
+                }
+                if (validatorsRunning.decrementAndGet() == 0) {
+                    put(valid, new Valid<>(Row.END, null));
+                }
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+                throw t;
+            }
+            return null;
+        }
+
+        /** Persist stage: stores full batches, then the remainder once validation has ended. */
+        Void persist() throws Exception {
+            try {
+                List<Valid<T>> batch = new ArrayList<>(batchSize);
+                Valid<T> item;
+                while ((item = take(valid)).row != Row.END) {
+                    batch.add(item);
+                    if (batch.size() == batchSize) {
+                        store(batch);
+                    }
+                }
+                store(batch);
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+                throw t;
+            }
+            return null;
+        }
+
+        private void store(List<Valid<T>> batch) throws IOException {
+            if (batch.isEmpty()) {
+                return;
+            }
+            List<T> dtos = new ArrayList<>(batch.size());
+            for (Valid<T> item : batch) {
+                dtos.add(item.dto);
+            }
+            try {
+                entity.store(dtos);
+                imported.addAndGet(batch.size());
+                batches.incrementAndGet();
+            } catch (RuntimeException e) {
+                // Nothing of a failed batch was stored; the rows can be fixed and imported again
+                for (Valid<T> item : batch) {
+                    rejects.add(item.row, "Not saved: " + e.getMessage());
+                }
+            }
+            batch.clear();
+        }
+
+        /** Queue an item, giving up if another stage has failed and will never take it. */
+        <E> void put(BlockingQueue<E> queue, E item) throws InterruptedException {
+            while (!queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                checkFailure();
+            }
+        }
+
+        private <E> E take(BlockingQueue<E> queue) throws InterruptedException {
+            E item;
+            while ((item = queue.poll(100, TimeUnit.MILLISECONDS)) == null) {
+                checkFailure();
+            }
+            return item;
+        }
+
+        private void checkFailure() throws InterruptedException {
+            if (failure.get() != null) {
+                throw new InterruptedException("Import stage failed: " + failure.get());
+            }
+        }
+    }
+
+    /**
+     * Reject file writer shared by the stages: a CSV of line number, reason and the original columns.
+     */
+    private static final class Rejects {
+        private final Writer out;
+        private final String[] header;
+        private boolean headerWritten;
+        int count;
+        final List<String> first = new ArrayList<>();
+
+        Rejects(Writer out, String[] header) {
+            this.out = out;
+            this.header = header;
+        }
+
+        synchronized void add(Row row, String reason) throws IOException {
+            if (!headerWritten) {
+                out.write(CsvReader.formatRecord(concat("line", "error", header)));
+                out.write('\n');
+                headerWritten = true;
+            }
+            out.write(CsvReader.formatRecord(concat(String.valueOf(row.line), reason, row.fields)));
+            out.write('\n');
+            count++;
+            if (first.size() < MAX_LISTED_REJECTS) {
+                first.add("line " + row.line + ": " + reason);
+            }
+        }
+
+        private static String[] concat(String line, String reason, String[] fields) {
+            String[] record = new String[fields.length + 2];
+            record[0] = line;
+            record[1] = reason;
+            System.arraycopy(fields, 0, record, 2, fields.length);
+            return record;
+        }
+    }
+}
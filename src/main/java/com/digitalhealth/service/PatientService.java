@@ -1,14 +1,20 @@
 package com.digitalhealth.service;
 
 import com.digitalhealth.dao.PatientDao;
+import com.digitalhealth.dao.TransactionManager;
+import com.digitalhealth.dao.UnitOfWork;
 import com.digitalhealth.dto.PatientDTO;
 import com.digitalhealth.exception.DuplicateEntityException;
 import com.digitalhealth.exception.EntityNotFoundException;
+import com.digitalhealth.exception.OptimisticLockException;
 import com.digitalhealth.exception.ValidationException;
 import com.digitalhealth.model.Patient;
+import com.digitalhealth.model.PatientHistoryLoader;
+import com.digitalhealth.search.PatientPrefixIndex;
 
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Service layer for Patient operations.
@@ -17,14 +23,45 @@ import java.util.concurrent.atomic.AtomicInteger;
 public class PatientService {
     private final PatientDao patientDao;
     private final AtomicInteger idCounter = new AtomicInteger(1000);
+    private volatile PatientHistoryLoader historyLoader;
+    private RetryPolicy retryPolicy = RetryPolicy.defaultPolicy();
+    private final PatientPrefixIndex searchIndex = new PatientPrefixIndex();
+    private final AtomicLong changeCount = new AtomicLong();
+
+    static final int DEFAULT_SEARCH_LIMIT = 20;
+    static final int MAX_SEARCH_LIMIT = 100;
 
     public PatientService(PatientDao patientDao) {
         this.patientDao = patientDao;
         initializeIdCounter();
     }
 
+    /**
+     * Set the loader that resolves a patient's appointments and health records lazily.
+     */
+    public void setHistoryLoader(PatientHistoryLoader historyLoader) {
+        this.historyLoader = historyLoader;
+    }
+
+    /**
+     * Set the policy used when an update loses an optimistic-concurrency race.
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Number of patient changes made through this service since it was created.
+     * Bumped only after a change is visible to readers, so a count read before listing
+     * patients never describes a newer list than the one returned.
+     */
+    public long getChangeCount() {
+        return changeCount.get();
+    }
+
     private void initializeIdCounter() {
         Map<String, Patient> patients = patientDao.loadAll();
+        searchIndex.build(patients.values());
         if (!patients.isEmpty()) {
             int maxId = patients.keySet().stream()
                     .map(id -> id.replace("P", ""))
@@ -50,9 +87,40 @@ public class PatientService {
                                      dto.getGender(), dto.getContact());
 
         patientDao.save(patient);
+        searchIndex.add(patient);
+        changeCount.incrementAndGet();
         return patientId;
     }
 
+    /**
+     * Register already validated patients in one unit of work (for bulk imports): one file
+     * write or one database commit for the whole batch. IDs are assigned in list order;
+     * if the unit of work fails, none of the batch is stored.
+     * 
+     * @param dtos Patients that passed {@link #validatePatientDTO(PatientDTO)}
+     * @return Generated patient IDs, in the order of the DTOs
+     */
+    List<String> registerPatients(List<PatientDTO> dtos, TransactionManager transactionManager) {
+        List<Patient> patients = new ArrayList<>(dtos.size());
+        try (UnitOfWork uow = transactionManager.begin()) {
+            for (PatientDTO dto : dtos) {
+                Patient patient = new Patient("P" + idCounter.getAndIncrement(), dto.getName(), dto.getAge(),
+                                              dto.getGender(), dto.getContact());
+                patientDao.save(patient);
+                patients.add(patient);
+            }
+            uow.commit();
+        }
+
+        List<String> patientIds = new ArrayList<>(patients.size());
+        for (Patient patient : patients) {
+            searchIndex.add(patient);
+            patientIds.add(patient.getPatientId());
+        }
+        changeCount.addAndGet(patients.size());
+        return patientIds;
+    }
+
     /**
      * Get patient by ID.
      * 
@@ -68,27 +136,48 @@ public class PatientService {
 
     /**
      * Update patient details.
+     * A DTO carrying the version the patient was read at (from {@link #getPatient(String)}) is
+     * only applied if the patient is still at that version. A DTO with version 0 is applied
+     * over whatever is stored, re-reading the patient if another update got in between.
      * 
      * @param dto PatientDTO with updated information (must include patientId)
      * @throws EntityNotFoundException if patient not found
      * @throws ValidationException if validation fails
+     * @throws OptimisticLockException if the DTO's version is no longer the stored one
      */
     public void updatePatient(PatientDTO dto) throws EntityNotFoundException, ValidationException {
         if (dto.getPatientId() == null || dto.getPatientId().isEmpty()) {
             throw new ValidationException("Patient ID is required for update");
         }
 
-        Patient patient = patientDao.findById(dto.getPatientId())
-                .orElseThrow(() -> new EntityNotFoundException("Patient not found: " + dto.getPatientId()));
+        for (int attempt = 1; ; attempt++) {
+            Patient patient = patientDao.findById(dto.getPatientId())
+                    .orElseThrow(() -> new EntityNotFoundException("Patient not found: " + dto.getPatientId()));
 
-        validatePatientDTO(dto);
+            validatePatientDTO(dto);
 
-        patient.setName(dto.getName());
-        patient.setAge(dto.getAge());
-        patient.setGender(dto.getGender());
-        patient.setContact(dto.getContact());
+            if (dto.getVersion() != 0) {
+                patient.setVersion(dto.getVersion());
+            }
+            patient.setName(dto.getName());
+            patient.setAge(dto.getAge());
+            patient.setGender(dto.getGender());
+            patient.setContact(dto.getContact());
 
-        patientDao.save(patient);
+            try {
+                patientDao.save(patient);
+                searchIndex.add(patient);
+                changeCount.incrementAndGet();
+                dto.setVersion(patient.getVersion());
+                return;
+            } catch (OptimisticLockException e) {
+                if (dto.getVersion() != 0) {
+                    // The caller edited a copy that is now stale; re-applying would lose the other change
+                    throw e;
+                }
+                retryPolicy.onConflict(attempt, e);
+            }
+        }
     }
 
     /**
@@ -105,6 +194,31 @@ public class PatientService {
         return result;
     }
 
+    /**
+     * Find patients by the start of any word of their name or of their contact number.
+     * Only the matching patients are loaded, so this stays cheap on large registries.
+     * 
+     * @param prefix Partial name (e.g. "jo", "doe") or phone number (e.g. "555-12")
+     * @param limit Maximum number of results; values outside 1..100 fall back to 20 or 100
+     * @return Matching patients ordered by the matched name or number
+     * @throws ValidationException if the prefix is blank
+     */
+    public List<PatientDTO> searchPatients(String prefix, int limit) throws ValidationException {
+        if (prefix == null || prefix.trim().isEmpty()) {
+            throw new ValidationException("Search prefix is required");
+        }
+        int effectiveLimit = limit <= 0 ? DEFAULT_SEARCH_LIMIT : Math.min(limit, MAX_SEARCH_LIMIT);
+        List<String> patientIds = searchIndex.search(prefix, effectiveLimit);
+        List<PatientDTO> result = new ArrayList<>(patientIds.size());
+        if (patientIds.isEmpty()) {
+            return result;
+        }
+        for (Patient patient : patientDao.findAllById(patientIds)) {
+            result.add(toDTO(patient));
+        }
+        return result;
+    }
+
     /**
      * Check if a patient exists.
      */
@@ -116,8 +230,10 @@ public class PatientService {
      * Get the Patient entity (for internal use by other services).
      */
     Patient getPatientEntity(String patientId) throws EntityNotFoundException {
-        return patientDao.findById(patientId)
+        Patient patient = patientDao.findById(patientId)
                 .orElseThrow(() -> new EntityNotFoundException("Patient not found: " + patientId));
+        patient.setHistoryLoader(historyLoader);
+        return patient;
     }
 
     /**
@@ -125,9 +241,11 @@ public class PatientService {
      */
     void savePatientEntity(Patient patient) {
         patientDao.save(patient);
+        searchIndex.add(patient);
+        changeCount.incrementAndGet();
     }
 
-    private void validatePatientDTO(PatientDTO dto) throws ValidationException {
+    void validatePatientDTO(PatientDTO dto) throws ValidationException {
         if (dto.getName() == null || dto.getName().trim().isEmpty()) {
             throw new ValidationException("Patient name is required");
         }
@@ -157,15 +275,19 @@ public class PatientService {
             throw new EntityNotFoundException("Patient not found with ID: " + patientId);
         }
         patientDao.delete(patientId);
+        searchIndex.remove(patientId);
+        changeCount.incrementAndGet();
     }
 
     private PatientDTO toDTO(Patient patient) {
-        return new PatientDTO(
+        PatientDTO dto = new PatientDTO(
                 patient.getPatientId(),
                 patient.getName(),
                 patient.getAge(),
                 patient.getGender(),
                 patient.getContact()
         );
+        dto.setVersion(patient.getVersion());
+        return dto;
     }
 }
@@ -0,0 +1,79 @@
+package com.digitalhealth.service;
+
+import com.digitalhealth.exception.OptimisticLockException;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How often and how patiently a service retries an operation that lost an
+ * optimistic-concurrency race. Each retry re-reads the entities and re-applies the
+ * business rules, so a retry may still end in a business exception (e.g. the slot is gone).
+ *
+ * Usage:
+ * <pre>
+ * for (int attempt = 1; ; attempt++) {
+ *     try {
+ *         return doUpdate();
+ *     } catch (OptimisticLockException e) {
+ *         retryPolicy.onConflict(attempt, e);
+ *     }
+ * }
+ * </pre>
+ */
+public class RetryPolicy {
+    private static final RetryPolicy DEFAULT = new RetryPolicy(5, 2);
+
+    private final int maxAttempts;
+    private final long baseBackoffMillis;
+
+    /**
+     * @param maxAttempts Total attempts including the first one
+     * @param baseBackoffMillis Backoff before the first retry; doubled for each further retry, with jitter
+     */
+    public RetryPolicy(int maxAttempts, long baseBackoffMillis) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be at least 1: " + maxAttempts);
+        }
+        this.maxAttempts = maxAttempts;
+        this.baseBackoffMillis = Math.max(0, baseBackoffMillis);
+    }
+
+    /**
+     * Default policy used by the services: 5 attempts, 2 ms base backoff.
+     */
+    public static RetryPolicy defaultPolicy() {
+        return DEFAULT;
+    }
+
+    /**
+     * Policy that never retries.
+     */
+    public static RetryPolicy noRetry() {
+        return new RetryPolicy(1, 0);
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Handle a conflict on the given attempt (1-based).
+     * Rethrows the conflict when attempts are exhausted, otherwise waits before the next attempt.
+     */
+    public void onConflict(int attempt, OptimisticLockException conflict) {
+        if (attempt >= maxAttempts) {
+            throw conflict;
+        }
+        if (baseBackoffMillis == 0) {
+            return;
+        }
+        long ceiling = baseBackoffMillis << Math.min(attempt - 1, 10);
+        long backoff = ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+        try {
+            Thread.sleep(backoff);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw conflict;
+        }
+    }
+}
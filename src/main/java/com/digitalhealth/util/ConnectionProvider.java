@@ -0,0 +1,42 @@
+package com.digitalhealth.util;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Source of connections to one MySQL database.
+ * Works like the static methods of {@link DatabaseConnection}, which is the provider of the
+ * configured database ({@link DatabaseConnection#provider()}); a sharded backend has one
+ * provider per database, each with its own unit-of-work binding.
+ */
+public interface ConnectionProvider {
+    /**
+     * Get a connection, joining the unit of work bound on the current thread if there is one.
+     */
+    Connection getConnection() throws SQLException;
+
+    /**
+     * Open a new physical connection, ignoring any unit of work on the current thread.
+     */
+    Connection openConnection() throws SQLException;
+
+    /**
+     * Route {@link #getConnection()} on the current thread to the given connection.
+     */
+    void bindTransaction(Connection connection);
+
+    /**
+     * Stop routing {@link #getConnection()} on the current thread to a unit of work.
+     */
+    void unbindTransaction();
+
+    /**
+     * Check if a unit of work is bound on the current thread.
+     */
+    boolean inTransaction();
+
+    /**
+     * JDBC URL of the database, for messages.
+     */
+    String getUrl();
+}
@@ -0,0 +1,130 @@
+package com.digitalhealth.util;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming reader for comma-separated values (RFC 4180).
+ * Fields may be quoted; quoted fields can contain commas, line breaks and doubled quotes.
+ * Records are read one at a time, so files of any size can be processed in constant memory.
+ */
+public class CsvReader implements Closeable {
+    private final BufferedReader reader;
+    private int line = 1;
+    private int recordLine;
+    private boolean truncated;
+
+    public CsvReader(Reader reader) {
+        this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader, 65536);
+    }
+
+    /**
+     * Read the next record.
+     *
+     * @return The record's fields, or null at the end of the input
+     * @throws IOException if reading fails
+     */
+    public String[] readRecord() throws IOException {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean inQuotes = false;
+        truncated = false;
+        recordLine = line;
+
+        int c = reader.read();
+        if (c == -1) {
+            return null;
+        }
+        while (true) {
+            if (inQuotes) {
+                if (c == -1) {
+                    // Unterminated quote: hand back what was read so the caller can reject it
+                    truncated = true;
+                    fields.add(field.toString());
+                    return fields.toArray(new String[0]);
+                }
+                if (c == '"') {
+                    reader.mark(1);
+                    if (reader.read() == '"') {
+                        field.append('"');
+                    } else {
+                        reader.reset();
+                        inQuotes = false;
+                    }
+                } else {
+                    if (c == '\n') {
+                        line++;
+                    }
+                    field.append((char) c);
+                }
+            } else if (c == ',') {
+                fields.add(quoted ? field.toString() : field.toString().trim());
+                field.setLength(0);
+                quoted = false;
+            } else if (c == '\n' || c == '\r' || c == -1) {
+                if (c == '\r') {
+                    reader.mark(1);
+                    if (reader.read() != '\n') {
+                        reader.reset();
+                    }
+                }
+                if (c != -1) {
+                    line++;
+                }
+                fields.add(quoted ? field.toString() : field.toString().trim());
+                return fields.toArray(new String[0]);
+            } else if (c == '"' && field.toString().trim().isEmpty() && !quoted) {
+                field.setLength(0);
+                quoted = true;
+                inQuotes = true;
+            } else {
+                field.append((char) c);
+            }
+            c = reader.read();
+        }
+    }
+
+    /**
+     * Line number (1-based) on which the last record returned by {@link #readRecord()} starts.
+     */
+    public int getRecordLine() {
+        return recordLine;
+    }
+
+    /**
+     * Whether the last record ended inside a quoted field because the input ran out.
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * Format fields as one CSV record (without line terminator), quoting where needed.
+     */
+    public static String formatRecord(String... fields) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            String value = fields[i] == null ? "" : fields[i];
+            if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+                    || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+                sb.append('"').append(value.replace("\"", "\"\"")).append('"');
+            } else {
+                sb.append(value);
+            }
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,186 @@
+package com.digitalhealth.util;
+
+import com.digitalhealth.dao.file.FileAppointmentDao;
+import com.digitalhealth.dao.file.FileDoctorDao;
+import com.digitalhealth.dao.file.FileHealthRecordDao;
+import com.digitalhealth.dao.file.FilePatientDao;
+import com.digitalhealth.dao.file.FileUserDao;
+import com.digitalhealth.dao.mysql.MySQLAppointmentDao;
+import com.digitalhealth.dao.mysql.MySQLBulkWriter;
+import com.digitalhealth.dao.mysql.MySQLDoctorDao;
+import com.digitalhealth.dao.mysql.MySQLHealthRecordDao;
+import com.digitalhealth.dao.mysql.MySQLPatientDao;
+import com.digitalhealth.dao.mysql.MySQLUserDao;
+import com.digitalhealth.model.Appointment;
+import com.digitalhealth.model.Doctor;
+import com.digitalhealth.model.HealthRecord;
+import com.digitalhealth.model.Patient;
+import com.digitalhealth.model.User;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Copies the whole dataset between file-based storage and MySQL, in either direction.
+ *
+ * to-mysql loads every .dat file and writes it with multi-row upserts in batches, each batch
+ * committed on its own; patients, doctors (with their slots) and users are copied in parallel,
+ * then appointments and health records. An interrupted run resumes from its checkpoint when
+ * started again with the same arguments.
+ *
+ * to-file writes a snapshot of the MySQL tables into the .dat files, replacing them. Each file is
+ * written in one go, so a resumed run redoes any table that was not complete.
+ *
+ * Usage: java com.digitalhealth.util.DataMigrationUtil to-mysql|to-file [dataDirectory]
+ *        [--batch-size N] [--restart]
+ */
+public class DataMigrationUtil {
+    private static final int DEFAULT_BATCH_SIZE = 500;
+
+    public static void main(String[] args) {
+        String direction = null;
+        String dataDir = "data";
+        int batchSize = DEFAULT_BATCH_SIZE;
+        boolean restart = false;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--batch-size")) {
+                    batchSize = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--restart")) {
+                    restart = true;
+                } else if (direction == null) {
+                    direction = args[i];
+                } else {
+                    dataDir = args[i];
+                }
+            }
+        } catch (RuntimeException e) {
+            direction = null;
+        }
+        if (!"to-mysql".equals(direction) && !"to-file".equals(direction)
+                || batchSize < 1 || batchSize > MySQLBulkWriter.MAX_BATCH_SIZE) {
+            System.err.println("Usage: java com.digitalhealth.util.DataMigrationUtil to-mysql|to-file "
+                    + "[dataDirectory] [--batch-size 1-" + MySQLBulkWriter.MAX_BATCH_SIZE + "] [--restart]");
+            System.exit(2);
+            return;
+        }
+
+        System.out.println("========================================");
+        System.out.println("  Data Migration: " + ("to-mysql".equals(direction) ? "File to MySQL" : "MySQL to File")
+                + " (" + dataDir + ")");
+        System.out.println("========================================");
+
+        if (!DatabaseConnection.testConnection()) {
+            System.err.println("✗ Cannot connect to MySQL - check database.properties");
+            System.exit(1);
+            return;
+        }
+
+        File checkpoint = new File(dataDir, "migration-" + direction + ".checkpoint");
+        if (restart && checkpoint.delete()) {
+            System.out.println("Discarded checkpoint " + checkpoint);
+        }
+        DataMigrator migrator = new DataMigrator(checkpoint, batchSize, System.out);
+        if ("to-mysql".equals(direction)) {
+            addFileToMySQL(migrator, dataDir);
+        } else {
+            new File(dataDir).mkdirs();
+            addMySQLToFile(migrator, dataDir);
+        }
+
+        try {
+            migrator.run();
+            System.out.println("✓ Migration complete");
+        } catch (ExecutionException e) {
+            System.err.println("✗ Migration failed: " + e.getCause().getMessage());
+            System.err.println("  Run the same command again to resume from " + checkpoint);
+            System.exit(1);
+        } catch (Exception e) {
+            System.err.println("✗ Migration failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void addFileToMySQL(DataMigrator migrator, String dataDir) {
+        FilePatientDao patients = new FilePatientDao(dataDir + "/patients.dat");
+        FileDoctorDao doctors = new FileDoctorDao(dataDir + "/doctors.dat");
+        FileUserDao users = new FileUserDao(dataDir + "/users.dat");
+        FileAppointmentDao appointments = new FileAppointmentDao(dataDir + "/appointments.dat");
+        FileHealthRecordDao records = new FileHealthRecordDao(dataDir + "/records.dat");
+
+        migrator.addTable("patients", 0, () -> patients.loadAll().values(), Patient::getPatientId,
+                mysqlSink(MySQLBulkWriter::insertPatients));
+        migrator.addTable("doctors", 0, () -> doctors.loadAll().values(), Doctor::getDoctorId,
+                mysqlSink(MySQLBulkWriter::insertDoctors));
+        migrator.addTable("users", 0, users::findAll, User::getUserId,
+                mysqlSink(MySQLBulkWriter::insertUsers));
+        migrator.addTable("appointments", 1, () -> appointments.loadAll().values(), Appointment::getAppointmentId,
+                mysqlSink(MySQLBulkWriter::insertAppointments));
+        migrator.addTable("health_records", 1, () -> records.loadAll().values(), HealthRecord::getRecordId,
+                mysqlSink(MySQLBulkWriter::insertHealthRecords));
+    }
+
+    private static void addMySQLToFile(DataMigrator migrator, String dataDir) {
+        MySQLHealthRecordDao records = new MySQLHealthRecordDao();
+
+        migrator.addTable("patients", 0, () -> new MySQLPatientDao().loadAll().values(), Patient::getPatientId,
+                fileSink(Patient::getPatientId, new FilePatientDao(dataDir + "/patients.dat")::saveAll));
+        migrator.addTable("doctors", 0, () -> new MySQLDoctorDao().loadAll().values(), Doctor::getDoctorId,
+                fileSink(Doctor::getDoctorId, new FileDoctorDao(dataDir + "/doctors.dat")::saveAll));
+        migrator.addTable("users", 0, () -> new MySQLUserDao().findAll(), User::getUserId,
+                fileSink(User::getUserId, new FileUserDao(dataDir + "/users.dat")::saveAll));
+        migrator.addTable("appointments", 1, () -> new MySQLAppointmentDao().loadAll().values(),
+                Appointment::getAppointmentId,
+                fileSink(Appointment::getAppointmentId, new FileAppointmentDao(dataDir + "/appointments.dat")::saveAll));
+        migrator.addTable("health_records", 1, () -> {
+                    List<HealthRecord> rows = new ArrayList<>();
+                    records.scan(null, null, rows::add);
+                    return rows;
+                }, HealthRecord::getRecordId,
+                fileSink(HealthRecord::getRecordId, new FileHealthRecordDao(dataDir + "/records.dat")::saveAll));
+    }
+
+    private static <T> DataMigrator.TableSink<T> mysqlSink(MySQLBulkWriter.BatchInsert<T> insert) {
+        MySQLBulkWriter writer = new MySQLBulkWriter();
+        return new DataMigrator.TableSink<T>() {
+            @Override
+            public boolean write(List<T> batch) throws SQLException {
+                insert.insert(writer, batch);
+                return true;
+            }
+
+            @Override
+            public void close() {
+                writer.close();
+            }
+        };
+    }
+
+    /**
+     * Collects a table in memory and writes its file once every row has been read.
+     */
+    private static <T> DataMigrator.TableSink<T> fileSink(Function<T, String> idOf, Consumer<Map<String, T>> saveAll) {
+        Map<String, T> rows = new HashMap<>();
+        return new DataMigrator.TableSink<T>() {
+            @Override
+            public boolean write(List<T> batch) {
+                for (T row : batch) {
+                    rows.put(idOf.apply(row), row);
+                }
+                return false;
+            }
+
+            @Override
+            public void finish() {
+                saveAll.accept(rows);
+            }
+        };
+    }
+}
@@ -0,0 +1,290 @@
+package com.digitalhealth.util;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Copies tables from one store to another in batches, used by {@link DataMigrationUtil}.
+ *
+ * Tables are grouped into stages that run one after the other, so a table is only loaded once
+ * every table it references is complete (patients and doctors before appointments, for
+ * example). The tables of one stage are copied in parallel, one worker per table.
+ *
+ * Each table's rows are written in id order. After every batch its sink reports as durable,
+ * the last id written is recorded in a checkpoint file; a later run with the same checkpoint
+ * skips finished tables and resumes the others after that id. Sinks must therefore tolerate a
+ * batch being written twice (the one in flight when a run stopped). The checkpoint is deleted
+ * once every table has been copied.
+ */
+public class DataMigrator {
+
+    /**
+     * Destination of one table.
+     */
+    public interface TableSink<T> {
+        /**
+         * Write one batch of rows.
+         *
+         * @return true if the batch is stored once this returns, false if it is only buffered
+         *         until {@link #finish()}
+         */
+        boolean write(List<T> batch) throws Exception;
+
+        /**
+         * Called after the last batch of a table that was copied without error.
+         */
+        default void finish() throws Exception {
+        }
+
+        /**
+         * Called when the table is done, whether it succeeded or not.
+         */
+        default void close() throws Exception {
+        }
+    }
+
+    private final File checkpointFile;
+    private final int batchSize;
+    private final PrintStream out;
+    private final Properties checkpoint = new Properties();
+    private final Map<Integer, List<Table<?>>> stages = new TreeMap<>();
+    private long reportIntervalMillis = 5000;
+
+    /**
+     * @param checkpointFile Where progress is recorded; an existing file resumes a previous run
+     * @param batchSize Rows per batch
+     * @param out Where progress is reported
+     */
+    public DataMigrator(File checkpointFile, int batchSize, PrintStream out) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.checkpointFile = checkpointFile;
+        this.batchSize = batchSize;
+        this.out = out;
+    }
+
+    /**
+     * Add a table to copy.
+     *
+     * @param name Table name, used in the checkpoint and the report
+     * @param stage Stages run in ascending order; tables in the same stage run in parallel
+     * @param source Loads the rows to copy
+     * @param idOf The unique id of a row
+     * @param sink Where the rows go
+     */
+    public <T> DataMigrator addTable(String name, int stage, Callable<? extends Collection<T>> source,
+                                     Function<T, String> idOf, TableSink<T> sink) {
+        stages.computeIfAbsent(stage, s -> new ArrayList<>()).add(new Table<>(name, source, idOf, sink));
+        return this;
+    }
+
+    /**
+     * How often progress is printed while tables are copied; 0 for only the final summary.
+     */
+    public void setReportInterval(long millis) {
+        this.reportIntervalMillis = millis;
+    }
+
+    /**
+     * Copy every table. If a table fails, the other tables of its stage still finish (and keep
+     * their checkpoints) but later stages are not started.
+     *
+     * @return Rows written per table by this run
+     * @throws ExecutionException if a table failed; the cause is the first failure
+     */
+    public Map<String, Long> run() throws IOException, ExecutionException, InterruptedException {
+        if (checkpointFile.exists()) {
+            try (InputStream in = new FileInputStream(checkpointFile)) {
+                checkpoint.load(in);
+            }
+            out.println("Resuming from checkpoint " + checkpointFile);
+        }
+
+        List<Table<?>> all = new ArrayList<>();
+        stages.values().forEach(all::addAll);
+        long start = System.nanoTime();
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "migration-report");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (reportIntervalMillis > 0) {
+            reporter.scheduleAtFixedRate(() -> report(all), reportIntervalMillis, reportIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+        try {
+            for (List<Table<?>> stage : stages.values()) {
+                runStage(stage);
+            }
+        } finally {
+            reporter.shutdownNow();
+            summary(all, System.nanoTime() - start);
+        }
+
+        Files.deleteIfExists(checkpointFile.toPath());
+        Map<String, Long> written = new LinkedHashMap<>();
+        for (Table<?> table : all) {
+            written.put(table.name, table.written.get());
+        }
+        return written;
+    }
+
+    private void runStage(List<Table<?>> stage) throws ExecutionException, InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(stage.size(), r -> new Thread(r, "migration-worker"));
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (Table<?> table : stage) {
+                futures.add(workers.submit(() -> {
+                    Thread.currentThread().setName("migration-" + table.name);
+                    copy(table);
+                    return null;
+                }));
+            }
+            ExecutionException failure = null;
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e;
+                    } else {
+                        failure.getCause().addSuppressed(e.getCause());
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private <T> void copy(Table<T> table) throws Exception {
+        if (Boolean.parseBoolean(checkpoint.getProperty(table.name + ".done"))) {
+            table.state = "done earlier";
+            return;
+        }
+        table.state = "loading";
+        List<T> rows = new ArrayList<>(table.source.call());
+        rows.sort(Comparator.comparing(table.idOf));
+
+        int from = 0;
+        String lastId = checkpoint.getProperty(table.name + ".lastId");
+        if (lastId != null) {
+            while (from < rows.size() && table.idOf.apply(rows.get(from)).compareTo(lastId) <= 0) {
+                from++;
+            }
+        }
+        table.total = rows.size();
+        table.done.set(from);
+        table.startNanos = System.nanoTime();
+        table.state = "copying";
+
+        try {
+            for (int i = from; i < rows.size(); i += batchSize) {
+                List<T> batch = rows.subList(i, Math.min(rows.size(), i + batchSize));
+                boolean stored = table.sink.write(batch);
+                table.done.addAndGet(batch.size());
+                table.written.addAndGet(batch.size());
+                if (stored) {
+                    saveCheckpoint(table.name, table.idOf.apply(batch.get(batch.size() - 1)), false);
+                }
+            }
+            table.sink.finish();
+            saveCheckpoint(table.name, null, true);
+            table.state = "done";
+        } catch (Exception e) {
+            table.state = "failed";
+            throw e;
+        } finally {
+            table.endNanos = System.nanoTime();
+            table.sink.close();
+        }
+    }
+
+    private synchronized void saveCheckpoint(String table, String lastId, boolean done) throws IOException {
+        if (lastId != null) {
+            checkpoint.setProperty(table + ".lastId", lastId);
+        }
+        if (done) {
+            checkpoint.setProperty(table + ".done", "true");
+        }
+        File parent = checkpointFile.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            Files.createDirectories(parent.toPath());
+        }
+        File temp = new File(checkpointFile.getPath() + ".tmp");
+        try (OutputStream stream = new FileOutputStream(temp)) {
+            checkpoint.store(stream, "Data migration checkpoint");
+        }
+        Files.move(temp.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // ========== Reporting ==========
+
+    private void report(List<Table<?>> tables) {
+        StringBuilder line = new StringBuilder();
+        for (Table<?> table : tables) {
+            if (!"copying".equals(table.state)) {
+                continue;
+            }
+            long done = table.done.get();
+            double seconds = (System.nanoTime() - table.startNanos) / 1e9;
+            double rate = seconds > 0 ? table.written.get() / seconds : 0;
+            line.append(String.format("%n  %-16s %,12d / %,d (%5.1f%%)  %,10.0f rows/s  ETA %s",
+                    table.name, done, table.total, table.total == 0 ? 100.0 : 100.0 * done / table.total,
+                    rate, rate > 0 ? duration((long) ((table.total - done) / rate)) : "?"));
+        }
+        if (line.length() > 0) {
+            out.println("Progress:" + line);
+        }
+    }
+
+    private void summary(List<Table<?>> tables, long nanos) {
+        long rows = 0;
+        out.println();
+        out.println("Migration Summary:");
+        for (Table<?> table : tables) {
+            long written = table.written.get();
+            rows += written;
+            double seconds = table.endNanos > table.startNanos ? (table.endNanos - table.startNanos) / 1e9 : 0;
+            out.println(String.format("  %-16s %-13s %,10d rows  %7.1fs  %,10.0f rows/s", table.name, table.state,
+                    written, seconds, seconds > 0 ? written / seconds : 0));
+        }
+        double seconds = nanos / 1e9;
+        out.println(String.format("  Total: %,d rows in %.1fs (%,.0f rows/s)", rows, seconds,
+                seconds > 0 ? rows / seconds : 0));
+    }
+
+    private static String duration(long seconds) {
+        return String.format("%d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+    }
+
+    private static final class Table<T> {
+        final String name;
+        final Callable<? extends Collection<T>> source;
+        final Function<T, String> idOf;
+        final TableSink<T> sink;
+        final AtomicLong done = new AtomicLong();
+        final AtomicLong written = new AtomicLong();
+        volatile String state = "waiting";
+        volatile long total;
+        volatile long startNanos;
+        volatile long endNanos;
+
+        Table(String name, Callable<? extends Collection<T>> source, Function<T, String> idOf, TableSink<T> sink) {
+            this.name = name;
+            this.source = source;
+            this.idOf = idOf;
+            this.sink = sink;
+        }
+    }
+}
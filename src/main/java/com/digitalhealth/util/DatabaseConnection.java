@@ -1,7 +1,12 @@
 package com.digitalhealth.util;
 
+import com.digitalhealth.metrics.Histogram;
+import com.digitalhealth.metrics.MetricsRegistry;
+
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
@@ -16,6 +21,12 @@ public class DatabaseConnection {
     private static String DB_USERNAME;
     private static String DB_PASSWORD;
     private static String DB_DRIVER;
+
+    // Connection of the unit of work open on the current thread, if any
+    private static final ThreadLocal<Connection> TRANSACTION_CONNECTION = new ThreadLocal<>();
+    private static final ConnectionProvider PROVIDER = new DefaultProvider();
+    private static final Histogram CONNECT_LATENCY = MetricsRegistry.getDefault()
+            .histogram("db_connect_seconds", "Time to open a physical MySQL connection");
     
     static {
         loadConfiguration();
@@ -59,12 +70,85 @@ public class DatabaseConnection {
     
     /**
      * Get a database connection.
+     * If a unit of work is open on the current thread, its connection is returned wrapped so
+     * that the DAO's own commit/rollback/setAutoCommit/close calls are ignored.
      * 
      * @return Connection object
      * @throws SQLException if connection fails
      */
     public static Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(DB_URL, DB_USERNAME, DB_PASSWORD);
+        Connection transactionConnection = TRANSACTION_CONNECTION.get();
+        if (transactionConnection != null) {
+            return joinTransaction(transactionConnection);
+        }
+        return openConnection();
+    }
+
+    /**
+     * Open a new physical connection, ignoring any unit of work on the current thread.
+     */
+    public static Connection openConnection() throws SQLException {
+        return openConnection(DB_URL, DB_USERNAME, DB_PASSWORD);
+    }
+
+    /**
+     * Open a physical connection to any database, timed like the configured one.
+     */
+    static Connection openConnection(String url, String username, String password) throws SQLException {
+        long start = System.nanoTime();
+        Connection connection = DriverManager.getConnection(url, username, password);
+        CONNECT_LATENCY.recordSince(start);
+        return connection;
+    }
+
+    /**
+     * The configured database as a {@link ConnectionProvider}, for DAOs that can also be
+     * pointed at another database.
+     */
+    public static ConnectionProvider provider() {
+        return PROVIDER;
+    }
+
+    /**
+     * Route {@link #getConnection()} on the current thread to the given connection.
+     */
+    public static void bindTransaction(Connection connection) {
+        TRANSACTION_CONNECTION.set(connection);
+    }
+
+    /**
+     * Stop routing {@link #getConnection()} on the current thread to a unit of work.
+     */
+    public static void unbindTransaction() {
+        TRANSACTION_CONNECTION.remove();
+    }
+
+    /**
+     * Wrap the connection of a unit of work so that a DAO's own commit/rollback/setAutoCommit/close
+     * calls on it are ignored.
+     */
+    static Connection joinTransaction(Connection target) {
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[] {Connection.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "close":
+                        case "commit":
+                        case "rollback":
+                        case "setAutoCommit":
+                            // Owned by the unit of work
+                            return null;
+                        case "isClosed":
+                            return false;
+                        default:
+                            try {
+                                return method.invoke(target, args);
+                            } catch (InvocationTargetException e) {
+                                throw e.getCause();
+                            }
+                    }
+                });
     }
     
     /**
@@ -112,4 +196,36 @@ public class DatabaseConnection {
     public static String getDatabaseUrl() {
         return DB_URL;
     }
+
+    private static class DefaultProvider implements ConnectionProvider {
+        @Override
+        public Connection getConnection() throws SQLException {
+            return DatabaseConnection.getConnection();
+        }
+
+        @Override
+        public Connection openConnection() throws SQLException {
+            return DatabaseConnection.openConnection();
+        }
+
+        @Override
+        public void bindTransaction(Connection connection) {
+            DatabaseConnection.bindTransaction(connection);
+        }
+
+        @Override
+        public void unbindTransaction() {
+            DatabaseConnection.unbindTransaction();
+        }
+
+        @Override
+        public boolean inTransaction() {
+            return TRANSACTION_CONNECTION.get() != null;
+        }
+
+        @Override
+        public String getUrl() {
+            return DB_URL;
+        }
+    }
 }
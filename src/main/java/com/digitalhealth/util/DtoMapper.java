@@ -14,13 +14,15 @@ public class DtoMapper {
      */
     public static PatientDTO toDTO(Patient patient) {
         if (patient == null) return null;
-        return new PatientDTO(
+        PatientDTO dto = new PatientDTO(
             patient.getPatientId(),
             patient.getName(),
             patient.getAge(),
             patient.getGender(),
             patient.getContact()
         );
+        dto.setVersion(patient.getVersion());
+        return dto;
     }
 
     /**
@@ -29,13 +31,15 @@ public class DtoMapper {
      */
     public static Patient toEntity(PatientDTO dto) {
         if (dto == null) return null;
-        return new Patient(
+        Patient patient = new Patient(
             dto.getPatientId(),
             dto.getName(),
             dto.getAge(),
             dto.getGender(),
             dto.getContact()
         );
+        patient.setVersion(dto.getVersion());
+        return patient;
     }
 
     /**
@@ -77,7 +81,7 @@ public class DtoMapper {
      */
     public static AppointmentDTO toDTO(Appointment appointment) {
         if (appointment == null) return null;
-        return new AppointmentDTO(
+        AppointmentDTO dto = new AppointmentDTO(
             appointment.getAppointmentId(),
             appointment.getPatientId(),
             appointment.getDoctorId(),
@@ -85,6 +89,8 @@ public class DtoMapper {
             appointment.getStatus(),
             appointment.getReason()
         );
+        dto.setVersion(appointment.getVersion());
+        return dto;
     }
 
     /**
@@ -92,7 +98,7 @@ public class DtoMapper {
      */
     public static Appointment toEntity(AppointmentDTO dto) {
         if (dto == null) return null;
-        return new Appointment(
+        Appointment appointment = new Appointment(
             dto.getAppointmentId(),
             dto.getPatientId(),
             dto.getDoctorId(),
@@ -100,6 +106,8 @@ public class DtoMapper {
             dto.getStatus(),
             dto.getReason()
         );
+        appointment.setVersion(dto.getVersion());
+        return appointment;
     }
 
     /**
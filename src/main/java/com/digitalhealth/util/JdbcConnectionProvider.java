@@ -0,0 +1,55 @@
+package com.digitalhealth.util;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Connections to a database given by URL and credentials, such as one shard of a sharded
+ * MySQL backend. Connections are opened per call like {@link DatabaseConnection}'s.
+ */
+public class JdbcConnectionProvider implements ConnectionProvider {
+    private final String url;
+    private final String username;
+    private final String password;
+    private final ThreadLocal<Connection> transactionConnection = new ThreadLocal<>();
+
+    public JdbcConnectionProvider(String url, String username, String password) {
+        this.url = url;
+        this.username = username;
+        this.password = password;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Connection connection = transactionConnection.get();
+        if (connection != null) {
+            return DatabaseConnection.joinTransaction(connection);
+        }
+        return openConnection();
+    }
+
+    @Override
+    public Connection openConnection() throws SQLException {
+        return DatabaseConnection.openConnection(url, username, password);
+    }
+
+    @Override
+    public void bindTransaction(Connection connection) {
+        transactionConnection.set(connection);
+    }
+
+    @Override
+    public void unbindTransaction() {
+        transactionConnection.remove();
+    }
+
+    @Override
+    public boolean inTransaction() {
+        return transactionConnection.get() != null;
+    }
+
+    @Override
+    public String getUrl() {
+        return url;
+    }
+}
@@ -0,0 +1,87 @@
+package com.digitalhealth.util;
+
+import com.digitalhealth.dao.file.FileAppointmentDao;
+import com.digitalhealth.dao.file.FileHealthRecordDao;
+import com.digitalhealth.dao.file.FilePatientDao;
+import com.digitalhealth.model.Appointment;
+import com.digitalhealth.model.HealthRecord;
+import com.digitalhealth.model.Patient;
+
+import java.io.File;
+import java.util.Map;
+
+/**
+ * One-time migration for file-based storage.
+ * Older versions embedded every appointment and health record inside the serialized
+ * Patient, duplicating appointments.dat and records.dat. This utility moves any
+ * embedded entries missing from the standalone stores into them and rewrites
+ * patients.dat without the embedded history.
+ *
+ * Usage: java com.digitalhealth.util.PatientHistoryMigrationUtil [dataDirectory]
+ */
+public class PatientHistoryMigrationUtil {
+
+    public static void main(String[] args) {
+        String dataDir = args.length > 0 ? args[0] : "data";
+
+        System.out.println("========================================");
+        System.out.println("  Patient History Migration (" + dataDir + ")");
+        System.out.println("========================================");
+
+        File patientsFile = new File(dataDir, "patients.dat");
+        if (!patientsFile.exists()) {
+            System.out.println("No patients.dat found - nothing to migrate");
+            return;
+        }
+        long sizeBefore = patientsFile.length();
+
+        FilePatientDao patientDao = new FilePatientDao(patientsFile.getPath());
+        FileAppointmentDao appointmentDao = new FileAppointmentDao(dataDir + "/appointments.dat");
+        FileHealthRecordDao recordDao = new FileHealthRecordDao(dataDir + "/records.dat");
+
+        Map<String, Patient> patients = patientDao.loadAll();
+        Map<String, Appointment> appointments = appointmentDao.loadAll();
+        Map<String, HealthRecord> records = recordDao.loadAll();
+
+        int recoveredAppointments = 0;
+        int recoveredRecords = 0;
+        int legacyPatients = 0;
+
+        for (Patient patient : patients.values()) {
+            boolean legacy = false;
+            for (Appointment appointment : patient.getLegacyAppointments()) {
+                legacy = true;
+                if (appointments.putIfAbsent(appointment.getAppointmentId(), appointment) == null) {
+                    recoveredAppointments++;
+                }
+            }
+            for (HealthRecord record : patient.getLegacyHealthRecords()) {
+                legacy = true;
+                if (records.putIfAbsent(record.getRecordId(), record) == null) {
+                    recoveredRecords++;
+                }
+            }
+            if (legacy) {
+                legacyPatients++;
+            }
+        }
+
+        // Standalone stores first, so a crash in between never loses history
+        if (recoveredAppointments > 0) {
+            appointmentDao.saveAll(appointments);
+        }
+        if (recoveredRecords > 0) {
+            recordDao.saveAll(records);
+        }
+        patientDao.saveAll(patients);
+
+        long sizeAfter = patientsFile.length();
+
+        System.out.println("\nMigration Summary:");
+        System.out.println("  Patients: " + patients.size() + " (" + legacyPatients + " with embedded history)");
+        System.out.println("  Appointments recovered into appointments.dat: " + recoveredAppointments);
+        System.out.println("  Health records recovered into records.dat: " + recoveredRecords);
+        System.out.println("  patients.dat: " + sizeBefore + " -> " + sizeAfter + " bytes");
+        System.out.println("========================================");
+    }
+}
@@ -0,0 +1,51 @@
+-- Digital Health Repository Shard Database Schema
+-- Patients, appointments and health records of a sharded MySQL backend (db.shards).
+-- Run in every shard database; doctors, slots and users stay in the database of schema.sql.
+-- Doctor IDs are not foreign keys here since doctors live in that other database.
+
+CREATE TABLE IF NOT EXISTS patients (
+    patient_id VARCHAR(10) PRIMARY KEY,
+    name VARCHAR(100) NOT NULL,
+    age INT NOT NULL CHECK (age > 0 AND age <= 150),
+    gender VARCHAR(10) NOT NULL,
+    contact VARCHAR(15) NOT NULL,
+    version BIGINT NOT NULL DEFAULT 1,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
+);
+
+CREATE TABLE IF NOT EXISTS appointments (
+    appointment_id VARCHAR(10) PRIMARY KEY,
+    patient_id VARCHAR(10) NOT NULL,
+    doctor_id VARCHAR(10) NOT NULL,
+    appointment_datetime DATETIME NOT NULL,
+    status VARCHAR(20) NOT NULL DEFAULT 'SCHEDULED',
+    version BIGINT NOT NULL DEFAULT 1,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    FOREIGN KEY (patient_id) REFERENCES patients(patient_id) ON DELETE CASCADE,
+    INDEX idx_patient_id (patient_id),
+    INDEX idx_doctor_id (doctor_id),
+    INDEX idx_appointment_datetime (appointment_datetime)
+);
+
+CREATE TABLE IF NOT EXISTS health_records (
+    record_id VARCHAR(10) PRIMARY KEY,
+    patient_id VARCHAR(10) NOT NULL,
+    doctor_id VARCHAR(10) NOT NULL,
+    symptoms TEXT NOT NULL,
+    diagnosis TEXT NOT NULL,
+    prescription TEXT,
+    record_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    version BIGINT NOT NULL DEFAULT 1,
+    FOREIGN KEY (patient_id) REFERENCES patients(patient_id) ON DELETE CASCADE,
+    INDEX idx_patient_id (patient_id),
+    INDEX idx_doctor_id (doctor_id),
+    INDEX idx_record_date (record_date)
+);
+
+-- Name of the shard this database holds: recorded on first start, checked on every start
+CREATE TABLE IF NOT EXISTS shard_identity (
+    id TINYINT PRIMARY KEY CHECK (id = 1),
+    shard_name VARCHAR(100) NOT NULL
+);
@@ -11,6 +11,7 @@ CREATE TABLE IF NOT EXISTS patients (
     age INT NOT NULL CHECK (age > 0 AND age <= 150),
     gender VARCHAR(10) NOT NULL,
     contact VARCHAR(15) NOT NULL,
+    version BIGINT NOT NULL DEFAULT 1,
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
 );
@@ -20,6 +21,7 @@ CREATE TABLE IF NOT EXISTS doctors (
     doctor_id VARCHAR(10) PRIMARY KEY,
     name VARCHAR(100) NOT NULL,
     specialty VARCHAR(100) NOT NULL,
+    version BIGINT NOT NULL DEFAULT 1,
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
 );
@@ -31,6 +33,7 @@ CREATE TABLE IF NOT EXISTS appointments (
     doctor_id VARCHAR(10) NOT NULL,
     appointment_datetime DATETIME NOT NULL,
     status VARCHAR(20) NOT NULL DEFAULT 'SCHEDULED',
+    version BIGINT NOT NULL DEFAULT 1,
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
     FOREIGN KEY (patient_id) REFERENCES patients(patient_id) ON DELETE CASCADE,
@@ -49,10 +52,12 @@ CREATE TABLE IF NOT EXISTS health_records (
     diagnosis TEXT NOT NULL,
     prescription TEXT,
     record_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    version BIGINT NOT NULL DEFAULT 1,
     FOREIGN KEY (patient_id) REFERENCES patients(patient_id) ON DELETE CASCADE,
     FOREIGN KEY (doctor_id) REFERENCES doctors(doctor_id) ON DELETE CASCADE,
     INDEX idx_patient_id (patient_id),
-    INDEX idx_doctor_id (doctor_id)
+    INDEX idx_doctor_id (doctor_id),
+    INDEX idx_record_date (record_date)
 );
 
 -- Doctor Available Slots table
@@ -67,3 +72,26 @@ CREATE TABLE IF NOT EXISTS doctor_slots (
     INDEX idx_slot_datetime (slot_datetime),
     UNIQUE KEY unique_doctor_slot (doctor_id, slot_datetime)
 );
+
+-- Users table
+CREATE TABLE IF NOT EXISTS users (
+    user_id VARCHAR(10) PRIMARY KEY,
+    username VARCHAR(50) NOT NULL UNIQUE,
+    password_hash VARCHAR(64) NOT NULL,
+    role VARCHAR(20) NOT NULL,
+    linked_entity_id VARCHAR(10),
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    last_login TIMESTAMP NULL,
+    is_active BOOLEAN DEFAULT TRUE,
+    version BIGINT NOT NULL DEFAULT 1
+);
+
+-- Upgrade existing databases with optimistic-concurrency version columns (run once)
+-- ALTER TABLE patients ADD COLUMN version BIGINT NOT NULL DEFAULT 1;
+-- ALTER TABLE doctors ADD COLUMN version BIGINT NOT NULL DEFAULT 1;
+-- ALTER TABLE appointments ADD COLUMN version BIGINT NOT NULL DEFAULT 1;
+-- ALTER TABLE health_records ADD COLUMN version BIGINT NOT NULL DEFAULT 1;
+-- ALTER TABLE users ADD COLUMN version BIGINT NOT NULL DEFAULT 1;
+
+-- Upgrade existing databases with the record date index used by date-range exports (run once)
+-- ALTER TABLE health_records ADD INDEX idx_record_date (record_date);
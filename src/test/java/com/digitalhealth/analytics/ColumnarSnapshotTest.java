@@ -0,0 +1,172 @@
+package com.digitalhealth.analytics;
+
+import com.digitalhealth.dao.file.FileAppointmentDao;
+import com.digitalhealth.dao.file.FileDoctorDao;
+import com.digitalhealth.dao.file.FileHealthRecordDao;
+import com.digitalhealth.model.Appointment;
+import com.digitalhealth.model.AppointmentStatus;
+import com.digitalhealth.model.Doctor;
+import com.digitalhealth.model.HealthRecord;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for ColumnarSnapshotWriter and ColumnarSnapshot.
+ */
+public class ColumnarSnapshotTest {
+    private static final int APPOINTMENTS = 10000;
+    private static final String[] SPECIALTIES = {"Cardiology", "General", "Pediatrics"};
+    private static final LocalDateTime START = LocalDateTime.of(2025, 1, 1, 8, 0);
+
+    private final String testDir = "test-data-columnar";
+    private final File snapshotDir = new File(testDir, "snapshot");
+    private FileAppointmentDao appointmentDao;
+    private FileHealthRecordDao recordDao;
+    private FileDoctorDao doctorDao;
+
+    @Before
+    public void setUp() {
+        new File(testDir).mkdirs();
+        appointmentDao = new FileAppointmentDao(testDir + "/appointments.dat");
+        recordDao = new FileHealthRecordDao(testDir + "/records.dat");
+        doctorDao = new FileDoctorDao(testDir + "/doctors.dat");
+
+        Map<String, Doctor> doctors = new HashMap<>();
+        for (int d = 0; d < 6; d++) {
+            String id = "D" + (100 + d);
+            doctors.put(id, new Doctor(id, "Dr. " + d, SPECIALTIES[d % SPECIALTIES.length]));
+        }
+        doctorDao.saveAll(doctors);
+
+        // Appointments every 30 minutes from START, in shuffled order
+        Map<String, Appointment> appointments = new HashMap<>();
+        for (int i = 0; i < APPOINTMENTS; i++) {
+            String id = "A" + (100000 + i);
+            AppointmentStatus status = i % 10 == 0 ? AppointmentStatus.CANCELLED
+                    : i % 10 < 7 ? AppointmentStatus.COMPLETED : AppointmentStatus.BOOKED;
+            appointments.put(id, new Appointment(id, "P" + (i % 500), "D" + (100 + i % 6),
+                    START.plusMinutes(30L * i), status));
+        }
+        appointments.put("A999999", new Appointment("A999999", "P1", "D999", START.plusSeconds(17), AppointmentStatus.BOOKED));
+        appointmentDao.saveAll(appointments);
+
+        Map<String, HealthRecord> records = new HashMap<>();
+        for (int i = 0; i < 300; i++) {
+            String id = "R" + (5000 + i);
+            records.put(id, new HealthRecord(id, "P" + (i % 50), "D" + (100 + i % 6), START.plusDays(i),
+                    "Cough", i % 3 == 0 ? "Flu" : "Cold", null));
+        }
+        recordDao.saveAll(records);
+    }
+
+    @After
+    public void tearDown() {
+        for (String table : new String[] {"appointments", "health_records"}) {
+            File[] files = new File(snapshotDir, table).listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            new File(snapshotDir, table).delete();
+        }
+        new File(snapshotDir, ColumnarSnapshot.MANIFEST).delete();
+        snapshotDir.delete();
+        new File(testDir + "/appointments.dat").delete();
+        new File(testDir + "/records.dat").delete();
+        new File(testDir + "/doctors.dat").delete();
+        new File(testDir).delete();
+    }
+
+    @Test
+    public void testWriteAndScan_RoundTripsEveryColumn() throws Exception {
+        Map<String, Integer> rows = new ColumnarSnapshotWriter(appointmentDao, recordDao, doctorDao).write(snapshotDir);
+        assertEquals(Integer.valueOf(APPOINTMENTS + 1), rows.get("appointments"));
+        assertEquals(Integer.valueOf(300), rows.get("health_records"));
+
+        ColumnarSnapshot snapshot = ColumnarSnapshot.open(snapshotDir);
+        assertEquals(Arrays.asList("appointments", "health_records"), snapshot.getTables());
+        assertEquals(APPOINTMENTS + 1, snapshot.getRowCount("appointments"));
+
+        Map<String, Appointment> expected = appointmentDao.loadAll();
+        List<LocalDateTime> times = new ArrayList<>();
+        long count = snapshot.scan("appointments").forEach(row -> {
+            Appointment appointment = expected.get(row.getString("appointment_id"));
+            assertEquals(appointment.getPatientId(), row.getString("patient_id"));
+            assertEquals(appointment.getDoctorId(), row.getString("doctor_id"));
+            assertEquals(appointment.getStatus().name(), row.getString("status"));
+            assertEquals(appointment.getDateTime(), row.getTimestamp("date_time"));
+            String doctorId = appointment.getDoctorId();
+            assertEquals(doctorId.equals("D999") ? null : SPECIALTIES[(doctorId.charAt(3) - '0') % 3],
+                    row.getString("specialty"));
+            times.add(row.getTimestamp("date_time"));
+        });
+        assertEquals(APPOINTMENTS + 1, count);
+        List<LocalDateTime> sorted = new ArrayList<>(times);
+        Collections.sort(sorted);
+        assertEquals("Rows are stored in time order", sorted, times);
+
+        // Columns are much smaller than the serialized entities
+        long columnBytes = 0;
+        for (File file : new File(snapshotDir, "appointments").listFiles()) {
+            columnBytes += file.length();
+        }
+        assertTrue(columnBytes * 4 < new File(testDir + "/appointments.dat").length());
+    }
+
+    @Test
+    public void testScan_PushesPredicatesDownToRowGroups() throws Exception {
+        new ColumnarSnapshotWriter(appointmentDao, recordDao, doctorDao).write(snapshotDir);
+        ColumnarSnapshot snapshot = ColumnarSnapshot.open(snapshotDir);
+
+        // Visits by specialty in January: only the first row group can hold January
+        Map<String, Integer> bySpecialty = new TreeMap<>();
+        ColumnarSnapshot.Scan january = snapshot.scan("appointments")
+                .select("specialty")
+                .where(ColumnPredicate.equalTo("status", "COMPLETED"))
+                .where(ColumnPredicate.between("date_time", START, LocalDateTime.of(2025, 2, 1, 0, 0)));
+        long matched = january.forEach(row -> bySpecialty.merge(row.getString("specialty"), 1, Integer::sum));
+
+        int expected = 0;
+        for (int i = 0; START.plusMinutes(30L * i).getMonthValue() == 1; i++) {
+            if (i % 10 != 0 && i % 10 < 7) {
+                expected++;
+            }
+        }
+        assertEquals(expected, matched);
+        assertEquals(expected, bySpecialty.values().stream().mapToInt(Integer::intValue).sum());
+        assertEquals(1, january.getGroupsRead());
+        assertEquals(2, january.getGroupsSkipped());
+
+        // A value missing from the dictionary rules out every group
+        ColumnarSnapshot.Scan missing = snapshot.scan("appointments").where(ColumnPredicate.equalTo("doctor_id", "D404"));
+        assertEquals(0, missing.forEach(row -> fail("No row should match")));
+        assertEquals(0, missing.getGroupsRead());
+
+        // Unknown doctor keeps a null specialty
+        assertEquals(1, snapshot.scan("appointments").where(ColumnPredicate.in("specialty", Collections.singleton(null)))
+                .forEach(row -> assertEquals("A999999", row.getString("appointment_id"))));
+
+        // Health records: diagnoses by specialty
+        Map<String, Integer> flu = new HashMap<>();
+        snapshot.scan("health_records")
+                .select("specialty")
+                .where(ColumnPredicate.equalTo("diagnosis", "Flu"))
+                .forEach(row -> flu.merge(row.getString("specialty"), 1, Integer::sum));
+        assertEquals(100, flu.values().stream().mapToInt(Integer::intValue).sum());
+
+        try {
+            snapshot.scan("appointments").select("specialty").forEach(row -> row.getString("status"));
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expectedError) {
+            // Columns outside the scan cannot be read
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package com.digitalhealth.api;
+
+import com.digitalhealth.metrics.MetricsRegistry;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for AdmissionController.
+ */
+public class AdmissionControllerTest {
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * A response sent by the rejection callback.
+     */
+    private static final class Rejected {
+        final StubExchange exchange;
+        final int status;
+        final long retryAfterSeconds;
+
+        Rejected(StubExchange exchange, int status, long retryAfterSeconds) {
+            this.exchange = exchange;
+            this.status = status;
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+    }
+
+    private final BlockingQueue<Rejected> rejected = new LinkedBlockingQueue<>();
+    // Exchanges whose handler has started, in start order
+    private final BlockingQueue<StubExchange> started = new LinkedBlockingQueue<>();
+    private AdmissionController controller;
+
+    @Before
+    public void setUp() {
+        controller = new AdmissionController(new MetricsRegistry(),
+                (exchange, status, retryAfter, message) -> rejected.add(
+                        new Rejected((StubExchange) exchange, status, retryAfter)));
+    }
+
+    @After
+    public void tearDown() {
+        controller.close();
+    }
+
+    /**
+     * Submit a request whose handler holds its slot until the test closes the response body.
+     */
+    private StubExchange submit(AdmissionController.RouteClass routeClass, String name) throws IOException {
+        StubExchange exchange = new StubExchange(name);
+        controller.submit(exchange, routeClass, () -> {
+            exchange.thread = Thread.currentThread();
+            started.add(exchange);
+        });
+        return exchange;
+    }
+
+    private StubExchange nextStarted() throws InterruptedException {
+        StubExchange exchange = started.poll(5, TimeUnit.SECONDS);
+        assertNotNull("Expected a handler to start", exchange);
+        return exchange;
+    }
+
+    @Test
+    public void testLimit_GrowsWhileLatencyHoldsAndShrinksWhenItClimbs() {
+        AdmissionController.Lane lane = new AdmissionController.Lane(
+                AdmissionController.RouteClass.READ, new MetricsRegistry());
+        assertEquals(8, lane.currentLimit());
+
+        // Fully used at steady latency: the limit grows up to the class maximum
+        for (int i = 0; i < 200; i++) {
+            lane.inFlight = lane.currentLimit();
+            lane.onComplete(10 * MILLIS);
+        }
+        assertEquals(64, lane.currentLimit());
+
+        // Latency well past twice the baseline: the limit is halved each round until only the
+        // sqrt(limit) headroom is left, at 4
+        for (int i = 0; i < 200; i++) {
+            lane.inFlight = lane.currentLimit();
+            lane.onComplete(100 * MILLIS);
+        }
+        assertEquals(4, lane.currentLimit());
+    }
+
+    @Test
+    public void testLimit_DoesNotGrowWhileUnused() {
+        AdmissionController.Lane lane = new AdmissionController.Lane(
+                AdmissionController.RouteClass.READ, new MetricsRegistry());
+        for (int i = 0; i < 200; i++) {
+            lane.inFlight = 1;
+            lane.onComplete(10 * MILLIS);
+        }
+        assertEquals(8, lane.currentLimit());
+    }
+
+    @Test
+    public void testAdmittedRequestsRunOffTheCallingThread() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        StubExchange slow = new StubExchange("slow");
+        controller.submit(slow, AdmissionController.RouteClass.WRITE, () -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            slow.getResponseBody().close();
+        });
+        // submit returned while the handler is still blocked, so the dispatcher is free
+        StubExchange next = submit(AdmissionController.RouteClass.WRITE, "next");
+        assertSame(next, nextStarted());
+        assertNotSame(Thread.currentThread(), next.thread);
+        assertTrue(next.thread.getName().startsWith("admission-"));
+        release.countDown();
+    }
+
+    @Test
+    public void testQueueFull_429WithRetryAfter() throws Exception {
+        // Export: one in flight and four queued
+        StubExchange running = submit(AdmissionController.RouteClass.EXPORT, "running");
+        nextStarted();
+        for (int i = 0; i < 4; i++) {
+            submit(AdmissionController.RouteClass.EXPORT, "queued-" + i);
+        }
+        assertTrue(rejected.isEmpty());
+
+        StubExchange turnedAway = submit(AdmissionController.RouteClass.EXPORT, "turned-away");
+        Rejected rejection = rejected.poll(5, TimeUnit.SECONDS);
+        assertNotNull(rejection);
+        assertSame(turnedAway, rejection.exchange);
+        assertEquals(429, rejection.status);
+        assertTrue(rejection.retryAfterSeconds >= 1);
+
+        // Finishing the running export admits the first queued one
+        running.getResponseBody().close();
+        assertEquals("queued-0", nextStarted().name);
+    }
+
+    @Test
+    public void testQueueBudgetExpired_503WithRetryAfter() throws Exception {
+        // Reads: eight in flight, the ninth waits at most 100 ms
+        List<StubExchange> running = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            running.add(submit(AdmissionController.RouteClass.READ, "running-" + i));
+            nextStarted();
+        }
+        long queuedAt = System.nanoTime();
+        StubExchange waiting = submit(AdmissionController.RouteClass.READ, "waiting");
+
+        Rejected rejection = rejected.poll(5, TimeUnit.SECONDS);
+        assertNotNull(rejection);
+        assertTrue(System.nanoTime() - queuedAt >= 90 * MILLIS);
+        assertSame(waiting, rejection.exchange);
+        assertEquals(503, rejection.status);
+        assertTrue(rejection.retryAfterSeconds >= 1);
+
+        // An expired request is not run when capacity frees up later
+        running.get(0).getResponseBody().close();
+        assertNull(started.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testWaitingWritesGoBeforeListReads() throws Exception {
+        List<StubExchange> writes = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            writes.add(submit(AdmissionController.RouteClass.WRITE, "write-" + i));
+            nextStarted();
+        }
+        submit(AdmissionController.RouteClass.WRITE, "write-queued");
+
+        // While a write waits, reads get half their limit
+        for (int i = 0; i < 5; i++) {
+            submit(AdmissionController.RouteClass.READ, "read-" + i);
+        }
+        for (int i = 0; i < 4; i++) {
+            assertTrue(nextStarted().name.startsWith("read-"));
+        }
+        // The fifth read was queued inside submit; it must be admitted within the 100 ms read budget
+        assertTrue(started.isEmpty());
+
+        // Freed write capacity goes to the waiting write; with no write waiting, reads get their
+        // full limit back. Both are admitted by the same release and start on their own threads.
+        writes.get(0).getResponseBody().close();
+        Set<String> admitted = new HashSet<>(Arrays.asList(nextStarted().name, nextStarted().name));
+        assertEquals(new HashSet<>(Arrays.asList("write-queued", "read-4")), admitted);
+        assertTrue(rejected.isEmpty());
+    }
+
+    /**
+     * Exchange with an in-memory body; closing the body ends the request.
+     */
+    private static final class StubExchange extends HttpExchange {
+        final String name;
+        volatile Thread thread;
+        private final Headers requestHeaders = new Headers();
+        private final Headers responseHeaders = new Headers();
+        private InputStream requestBody = new ByteArrayInputStream(new byte[0]);
+        private OutputStream responseBody = new ByteArrayOutputStream();
+        private int responseCode = -1;
+
+        StubExchange(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Headers getRequestHeaders() {
+            return requestHeaders;
+        }
+
+        @Override
+        public Headers getResponseHeaders() {
+            return responseHeaders;
+        }
+
+        @Override
+        public URI getRequestURI() {
+            return URI.create("/api/test");
+        }
+
+        @Override
+        public String getRequestMethod() {
+            return "GET";
+        }
+
+        @Override
+        public HttpContext getHttpContext() {
+            return null;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public InputStream getRequestBody() {
+            return requestBody;
+        }
+
+        @Override
+        public OutputStream getResponseBody() {
+            return responseBody;
+        }
+
+        @Override
+        public void sendResponseHeaders(int rCode, long responseLength) {
+            responseCode = rCode;
+        }
+
+        @Override
+        public InetSocketAddress getRemoteAddress() {
+            return null;
+        }
+
+        @Override
+        public int getResponseCode() {
+            return responseCode;
+        }
+
+        @Override
+        public InetSocketAddress getLocalAddress() {
+            return null;
+        }
+
+        @Override
+        public String getProtocol() {
+            return "HTTP/1.1";
+        }
+
+        @Override
+        public Object getAttribute(String name) {
+            return null;
+        }
+
+        @Override
+        public void setAttribute(String name, Object value) {
+        }
+
+        @Override
+        public void setStreams(InputStream i, OutputStream o) {
+            if (i != null) {
+                requestBody = i;
+            }
+            if (o != null) {
+                responseBody = o;
+            }
+        }
+
+        @Override
+        public HttpPrincipal getPrincipal() {
+            return null;
+        }
+    }
+}
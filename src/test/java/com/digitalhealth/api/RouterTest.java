@@ -0,0 +1,122 @@
+package com.digitalhealth.api;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for Router.
+ */
+public class RouterTest {
+    private Router router;
+    private final Router.PathParams params = new Router.PathParams();
+
+    // Distinct handlers, told apart by identity
+    private final Router.Handler getPatient = (exchange, p) -> { };
+    private final Router.Handler deletePatient = (exchange, p) -> { };
+    private final Router.Handler searchPatients = (exchange, p) -> { };
+    private final Router.Handler getRecord = (exchange, p) -> { };
+    private final Router.Handler exportRecords = (exchange, p) -> { };
+    private final Router.Handler downloadExport = (exchange, p) -> { };
+    private final Router.Handler staticFiles = (exchange, p) -> { };
+
+    @Before
+    public void setUp() {
+        router = new Router();
+        // Parameters registered before the literals they compete with
+        router.add("GET", "/api/patients/{patientId}", getPatient);
+        router.add("DELETE", "/api/patients/{patientId}", deletePatient);
+        router.add("GET", "/api/patients/search", searchPatients);
+        router.add("GET", "/api/health-records/{recordId}", getRecord);
+        router.add("GET", "/api/health-records/export.ndjson", exportRecords);
+        router.add("GET", "/api/exports/{jobId}/download", downloadExport);
+        router.add("GET", "/*", staticFiles);
+    }
+
+    private Router.Route match(String method, String path) {
+        Router.Route route = router.match(method, path, params);
+        assertNotNull("No route for " + method + " " + path, route);
+        return route;
+    }
+
+    @Test
+    public void testLiteralsWinOverParameters() {
+        Router.Route route = match("GET", "/api/patients/search");
+        assertSame(searchPatients, route.handler());
+        assertEquals("/api/patients/search", route.pattern());
+        assertEquals(0, params.size());
+
+        assertSame(getPatient, match("GET", "/api/patients/P1001").handler());
+        assertSame(exportRecords, match("GET", "/api/health-records/export.ndjson").handler());
+        assertSame(getRecord, match("GET", "/api/health-records/export.csv").handler());
+        assertEquals("export.csv", params.get("recordId"));
+    }
+
+    @Test
+    public void testParametersExtracted() {
+        Router.Route route = match("GET", "/api/exports/J-42/download");
+        assertSame(downloadExport, route.handler());
+        assertEquals("/api/exports/{jobId}/download", route.pattern());
+        assertEquals(1, params.size());
+        assertEquals("J-42", params.get("jobId"));
+        assertNull(params.get("patientId"));
+
+        // Parameters of an earlier match do not leak into the next one
+        match("GET", "/api/patients/P1002");
+        assertEquals(1, params.size());
+        assertEquals("P1002", params.get("patientId"));
+        assertNull(params.get("jobId"));
+    }
+
+    @Test
+    public void testMethodNotAllowed_HasAllowHeader() {
+        Router.Route route = match("PUT", "/api/patients/P1001");
+        assertNull(route.handler());
+        assertEquals("GET, DELETE", route.allow());
+        assertEquals("/api/patients/{patientId}", route.pattern());
+
+        assertSame(deletePatient, match("DELETE", "/api/patients/P1001").handler());
+        assertEquals("GET", match("POST", "/api/patients/search").allow());
+    }
+
+    @Test
+    public void testWildcardFallback() {
+        Router.Route route = match("GET", "/index.html");
+        assertSame(staticFiles, route.handler());
+        assertEquals("index.html", params.get("*"));
+
+        assertSame(staticFiles, match("GET", "/").handler());
+        assertEquals("", params.get("*"));
+
+        // A path that only partly matches an API route falls back to the rest of the path
+        assertSame(staticFiles, match("GET", "/api/exports/J-42/other").handler());
+        assertEquals("api/exports/J-42/other", params.get("*"));
+        assertNull(params.get("jobId"));
+    }
+
+    @Test
+    public void testTrailingAndRepeatedSlashesIgnored() {
+        assertSame(searchPatients, match("GET", "/api/patients/search/").handler());
+        assertSame(getPatient, match("GET", "//api//patients/P1001/").handler());
+        assertEquals("P1001", params.get("patientId"));
+    }
+
+    @Test
+    public void testNoMatchWithoutFallback() {
+        Router bare = new Router();
+        bare.add("GET", "/api/patients/{patientId}", getPatient);
+        assertNull(bare.match("GET", "/api/doctors/D0001", params));
+        assertNull(bare.match("GET", "/api/patients", params));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConflictingParameterNamesRejected() {
+        router.add("PUT", "/api/patients/{id}", getPatient);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicateRouteRejected() {
+        router.add("GET", "/api/patients/search", getPatient);
+    }
+}
@@ -0,0 +1,135 @@
+package com.digitalhealth.dao.file;
+
+import com.digitalhealth.dao.UnitOfWork;
+import com.digitalhealth.model.Patient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for file units of work whose data file cannot be rewritten.
+ */
+public class FileTransactionManagerTest {
+    private final String testDir = "test-data-journal";
+    private final String patientsFile = testDir + "/patients.dat";
+
+    /**
+     * Patient DAO whose next writes fail, like a full disk.
+     */
+    private static class FailingPatientDao extends FilePatientDao {
+        int failuresLeft;
+
+        FailingPatientDao(String filePath) {
+            super(filePath);
+        }
+
+        @Override
+        public void writeFile(Map<String, Patient> patients) {
+            if (failuresLeft > 0) {
+                failuresLeft--;
+                throw new RuntimeException("Disk full");
+            }
+            super.writeFile(patients);
+        }
+    }
+
+    private FailingPatientDao patientDao;
+    private FileTransactionManager transactionManager;
+
+    @Before
+    public void setUp() {
+        new File(testDir).mkdirs();
+        patientDao = new FailingPatientDao(patientsFile);
+        transactionManager = new FileTransactionManager(testDir, patientDao);
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = new File(testDir).listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        new File(testDir).delete();
+    }
+
+    private void commit(Patient patient) {
+        try (UnitOfWork uow = transactionManager.begin()) {
+            patientDao.save(patient);
+            uow.commit();
+        }
+    }
+
+    private File[] journals() {
+        return new File(testDir).listFiles((dir, name) -> name.endsWith(".journal"));
+    }
+
+    @Test
+    public void testFailedWrite_RolledForwardUnderLock() {
+        Patient patient = new Patient("P1001", "John Doe", 30, "M", "5550000000");
+        patientDao.failuresLeft = 1;
+        commit(patient);
+
+        assertEquals(1, patient.getVersion());
+        assertEquals(0, journals().length);
+
+        // The next commit reuses the journal slot and nothing is replayed over it on restart
+        patient.setName("John A. Doe");
+        commit(patient);
+        new FileTransactionManager(testDir, new FilePatientDao(patientsFile));
+        assertEquals("John A. Doe", new FilePatientDao(patientsFile).findById("P1001").get().getName());
+    }
+
+    @Test
+    public void testFailedRollForward_RefusesWritesUntilReplayed() {
+        Patient patient = new Patient("P1001", "John Doe", 30, "M", "5550000000");
+        commit(patient);
+
+        patient.setName("John A. Doe");
+        patientDao.failuresLeft = 2;
+        try {
+            commit(patient);
+            fail("Expected the commit to fail");
+        } catch (RuntimeException expected) {
+            assertEquals("Disk full", expected.getMessage());
+        }
+        assertEquals("The version still matches the stored patient", 1, patient.getVersion());
+        assertEquals(1, journals().length);
+
+        // A later write would be undone by the replay, so it is refused
+        patient.setName("Johnny Doe");
+        try {
+            commit(patient);
+            fail("Expected the data file to refuse writes");
+        } catch (IllegalStateException expected) {
+            // Until restart
+        }
+        try {
+            patientDao.save(new Patient("P1002", "Jane Doe", 28, "F", "5550000001"));
+            fail("Expected the data file to refuse writes");
+        } catch (IllegalStateException expected) {
+            // Outside a unit of work too
+        }
+
+        // Restart: the journaled commit is replayed and the file takes writes again
+        FilePatientDao restarted = new FilePatientDao(patientsFile);
+        FileTransactionManager recovered = new FileTransactionManager(testDir, restarted);
+        assertEquals(0, journals().length);
+        Patient stored = restarted.findById("P1001").get();
+        assertEquals("John A. Doe", stored.getName());
+        assertEquals(2, stored.getVersion());
+
+        stored.setName("Johnny Doe");
+        try (UnitOfWork uow = recovered.begin()) {
+            restarted.save(stored);
+            uow.commit();
+        }
+        assertEquals("Johnny Doe", restarted.findById("P1001").get().getName());
+    }
+}
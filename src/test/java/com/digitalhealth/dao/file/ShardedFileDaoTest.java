@@ -0,0 +1,156 @@
+package com.digitalhealth.dao.file;
+
+import com.digitalhealth.dao.TransactionManager;
+import com.digitalhealth.dao.UnitOfWork;
+import com.digitalhealth.model.Appointment;
+import com.digitalhealth.model.AppointmentStatus;
+import com.digitalhealth.model.HealthRecord;
+import com.digitalhealth.model.Patient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the sharded file DAOs.
+ */
+public class ShardedFileDaoTest {
+    private final String testDir = "test-data-shards";
+    private FileShardLayout layout;
+    private ShardedFilePatientDao patientDao;
+    private ShardedFileAppointmentDao appointmentDao;
+    private ShardedFileHealthRecordDao recordDao;
+    private TransactionManager transactionManager;
+
+    @Before
+    public void setUp() {
+        layout = FileShardLayout.inDataDirectory(testDir, 4);
+        patientDao = new ShardedFilePatientDao(layout);
+        appointmentDao = new ShardedFileAppointmentDao(layout);
+        recordDao = new ShardedFileHealthRecordDao(layout);
+        List<JournaledStore<?>> stores = new ArrayList<>();
+        stores.addAll(patientDao.getShards());
+        stores.addAll(appointmentDao.getShards());
+        stores.addAll(recordDao.getShards());
+        transactionManager = new FileTransactionManager(testDir, stores);
+    }
+
+    @After
+    public void tearDown() {
+        delete(new File(testDir));
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    @Test
+    public void testPatientDataSharesAShard() {
+        LocalDateTime when = LocalDateTime.of(2025, 3, 3, 10, 0);
+        for (int i = 0; i < 40; i++) {
+            String patientId = "P" + (1001 + i);
+            patientDao.save(new Patient(patientId, "Patient " + i, 30, "F", "5550000000"));
+            appointmentDao.save(new Appointment("A" + (1001 + i), patientId, i % 2 == 0 ? "D0001" : "D0002",
+                    when.plusDays(i), AppointmentStatus.BOOKED));
+            recordDao.save(new HealthRecord("R" + (1001 + i), patientId, "D0001", when.plusDays(i),
+                    "Cough", "Cold", "Rest"));
+        }
+
+        // Every shard got some patients, and each patient's rows sit in the patient's shard
+        for (int shard = 0; shard < layout.size(); shard++) {
+            Map<String, Patient> patients = patientDao.getShards().get(shard).readFile();
+            assertFalse("Shard " + shard + " is empty", patients.isEmpty());
+            for (Appointment appointment : appointmentDao.getShards().get(shard).readFile().values()) {
+                assertTrue(patients.containsKey(appointment.getPatientId()));
+            }
+            for (HealthRecord record : recordDao.getShards().get(shard).readFile().values()) {
+                assertTrue(patients.containsKey(record.getPatientId()));
+            }
+        }
+
+        assertEquals(40, patientDao.loadAll().size());
+        assertEquals("Patient 7", patientDao.findById("P1008").get().getName());
+        List<Patient> someById = patientDao.findAllById(Arrays.asList("P1030", "P9999", "P1002", "P1017"));
+        assertEquals(Arrays.asList("P1030", "P1002", "P1017"),
+                Arrays.asList(someById.get(0).getPatientId(), someById.get(1).getPatientId(), someById.get(2).getPatientId()));
+        assertEquals("P1013", appointmentDao.findById("A1013").get().getPatientId());
+        assertEquals(1, appointmentDao.findByPatientId("P1013").size());
+        assertEquals(20, appointmentDao.findByDoctorId("D0002").size());
+        assertEquals(40, recordDao.findByDoctorId("D0001").size());
+        assertEquals(10, recordDao.scan(when, when.plusDays(10), record -> { }));
+
+        appointmentDao.delete("A1013");
+        assertFalse(appointmentDao.exists("A1013"));
+        assertEquals(39, appointmentDao.loadAll().size());
+    }
+
+    @Test
+    public void testUnitOfWork_SpansShardsAndCommitsConcurrently() throws Exception {
+        // One unit of work over patients on several shards
+        try (UnitOfWork uow = transactionManager.begin()) {
+            for (int i = 0; i < 8; i++) {
+                patientDao.save(new Patient("P" + (2001 + i), "Batch " + i, 40, "M", "5550000000"));
+            }
+            assertEquals("Staged writes are visible in the unit of work", 8, patientDao.loadAll().size());
+            assertTrue(patientDao.exists("P2005"));
+            uow.commit();
+        }
+        assertEquals(8, patientDao.loadAll().size());
+
+        try (UnitOfWork uow = transactionManager.begin()) {
+            patientDao.save(new Patient("P3001", "Rolled back", 40, "M", "5550000000"));
+        }
+        assertFalse(patientDao.exists("P3001"));
+
+        // Commits on many threads; the ones on different shards overlap, each with its own journal
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<?>> commits = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            int thread = t;
+            commits.add(pool.submit(() -> {
+                for (int i = 0; i < 10; i++) {
+                    String patientId = "P" + (5000 + thread * 100 + i);
+                    try (UnitOfWork uow = transactionManager.begin()) {
+                        patientDao.save(new Patient(patientId, "Concurrent", 50, "F", "5550000000"));
+                        appointmentDao.save(new Appointment("A" + (5000 + thread * 100 + i), patientId, "D0001",
+                                LocalDateTime.of(2025, 1, 1, 9, 0), AppointmentStatus.BOOKED));
+                        uow.commit();
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> commit : commits) {
+            commit.get();
+        }
+        pool.shutdown();
+
+        assertEquals(88, patientDao.loadAll().size());
+        assertEquals(80, appointmentDao.loadAll().size());
+        String[] journals = new File(testDir).list((dir, name) -> name.endsWith(".journal"));
+        assertEquals(0, journals.length);
+    }
+
+    @Test
+    public void testLayout_RefusesAnotherShardCount() {
+        try {
+            FileShardLayout.inDataDirectory(testDir, 3);
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("re-sharded"));
+        }
+        assertEquals(4, FileShardLayout.inDataDirectory(testDir, 4).size());
+    }
+}
@@ -0,0 +1,63 @@
+package com.digitalhealth.dao.mysql;
+
+import com.digitalhealth.util.ConnectionProvider;
+import com.digitalhealth.util.JdbcConnectionProvider;
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the consistent-hash placement of MySQLShardLayout (no database needed).
+ */
+public class MySQLShardLayoutTest {
+
+    private static MySQLShardLayout layout(String... names) {
+        Map<String, ConnectionProvider> shards = new LinkedHashMap<>();
+        for (String name : names) {
+            shards.put(name, new JdbcConnectionProvider("jdbc:mysql://localhost:3306/" + name, "root", "root"));
+        }
+        return new MySQLShardLayout(shards);
+    }
+
+    @Test
+    public void testSpreadsSequentialPatientIdsEvenly() {
+        MySQLShardLayout layout = layout("s1", "s2", "s3", "s4");
+        int[] counts = new int[layout.size()];
+        for (int i = 1; i <= 20000; i++) {
+            counts[layout.shardOf(String.format("P%05d", i))]++;
+        }
+        for (int shard = 0; shard < counts.length; shard++) {
+            assertTrue("Shard " + shard + " has " + counts[shard], counts[shard] > 4000 && counts[shard] < 6000);
+        }
+    }
+
+    @Test
+    public void testPlacementDependsOnNamesNotOrder() {
+        MySQLShardLayout forward = layout("s1", "s2", "s3");
+        MySQLShardLayout reversed = layout("s3", "s2", "s1");
+        for (int i = 1; i <= 2000; i++) {
+            String patientId = String.format("P%05d", i);
+            assertEquals(forward.getName(forward.shardOf(patientId)), reversed.getName(reversed.shardOf(patientId)));
+        }
+    }
+
+    @Test
+    public void testAddingAShardOnlyMovesPatientsToIt() {
+        MySQLShardLayout before = layout("s1", "s2", "s3", "s4");
+        MySQLShardLayout after = layout("s1", "s2", "s3", "s4", "s5");
+        int moved = 0;
+        for (int i = 1; i <= 20000; i++) {
+            String patientId = String.format("P%05d", i);
+            String from = before.getName(before.shardOf(patientId));
+            String to = after.getName(after.shardOf(patientId));
+            if (!from.equals(to)) {
+                assertEquals("Patients only move to the new shard", "s5", to);
+                moved++;
+            }
+        }
+        assertTrue("About a fifth of the patients move, not " + moved, moved > 3000 && moved < 5000);
+    }
+}
@@ -0,0 +1,167 @@
+package com.digitalhealth.dao.mysql;
+
+import com.digitalhealth.dao.TransactionManager;
+import com.digitalhealth.dao.UnitOfWork;
+import com.digitalhealth.model.Appointment;
+import com.digitalhealth.model.AppointmentStatus;
+import com.digitalhealth.model.HealthRecord;
+import com.digitalhealth.model.Patient;
+import com.digitalhealth.util.ConnectionProvider;
+import com.digitalhealth.util.JdbcConnectionProvider;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the sharded MySQL DAOs against three throwaway schemas on a local MySQL server.
+ * Skipped unless -Dtest.mysql.url (a server URL such as jdbc:mysql://localhost:3306/) is set;
+ * test.mysql.username and test.mysql.password default to root.
+ */
+public class ShardedMySQLDaoTest {
+    private static final String[] SCHEMAS = {"dh_shard_test_a", "dh_shard_test_b", "dh_shard_test_c"};
+
+    private JdbcConnectionProvider server;
+    private MySQLShardLayout layout;
+    private ShardedMySQLPatientDao patientDao;
+    private ShardedMySQLAppointmentDao appointmentDao;
+    private ShardedMySQLHealthRecordDao recordDao;
+    private TransactionManager transactionManager;
+
+    @Before
+    public void setUp() throws Exception {
+        String serverUrl = System.getProperty("test.mysql.url");
+        Assume.assumeTrue("test.mysql.url not set", serverUrl != null);
+        String username = System.getProperty("test.mysql.username", "root");
+        String password = System.getProperty("test.mysql.password", "root");
+        server = new JdbcConnectionProvider(serverUrl, username, password);
+
+        String[] urlParts = serverUrl.split("\\?", 2);
+        String options = urlParts.length > 1 ? "?" + urlParts[1]
+                : "?useSSL=false&serverTimezone=UTC&allowPublicKeyRetrieval=true";
+        List<String> ddl = shardSchema();
+        Map<String, ConnectionProvider> shards = new LinkedHashMap<>();
+        try (Connection conn = server.openConnection(); Statement stmt = conn.createStatement()) {
+            for (String schema : SCHEMAS) {
+                stmt.executeUpdate("DROP DATABASE IF EXISTS " + schema);
+                stmt.executeUpdate("CREATE DATABASE " + schema);
+                stmt.execute("USE " + schema);
+                for (String sql : ddl) {
+                    stmt.executeUpdate(sql);
+                }
+                shards.put(schema, new JdbcConnectionProvider(urlParts[0] + schema + options, username, password));
+            }
+        }
+
+        layout = new MySQLShardLayout(shards);
+        layout.checkShardIdentities();
+        patientDao = new ShardedMySQLPatientDao(layout);
+        appointmentDao = new ShardedMySQLAppointmentDao(layout);
+        recordDao = new ShardedMySQLHealthRecordDao(layout);
+        transactionManager = new MySQLTransactionManager(layout.getDatabases());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (server == null) {
+            return;
+        }
+        try (Connection conn = server.openConnection(); Statement stmt = conn.createStatement()) {
+            for (String schema : SCHEMAS) {
+                stmt.executeUpdate("DROP DATABASE IF EXISTS " + schema);
+            }
+        }
+    }
+
+    private static List<String> shardSchema() throws Exception {
+        try (InputStream in = ShardedMySQLDaoTest.class.getClassLoader().getResourceAsStream("schema-shard.sql")) {
+            assertNotNull("schema-shard.sql on the classpath", in);
+            String script = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)).lines()
+                    .filter(line -> !line.trim().startsWith("--"))
+                    .collect(Collectors.joining("\n"));
+            List<String> statements = new ArrayList<>();
+            for (String sql : script.split(";")) {
+                if (!sql.trim().isEmpty()) {
+                    statements.add(sql.trim());
+                }
+            }
+            return statements;
+        }
+    }
+
+    @Test
+    public void testPatientDataSharesADatabase() {
+        LocalDateTime when = LocalDateTime.of(2025, 3, 3, 10, 0);
+        Map<String, Patient> patients = new HashMap<>();
+        for (int i = 0; i < 30; i++) {
+            String patientId = "P" + (1001 + i);
+            patients.put(patientId, new Patient(patientId, "Patient " + i, 30, "F", "5550000000"));
+        }
+        patientDao.saveAll(patients);
+        for (int i = 0; i < 30; i++) {
+            String patientId = "P" + (1001 + i);
+            appointmentDao.save(new Appointment("A" + (1001 + i), patientId, i % 2 == 0 ? "D0001" : "D0002",
+                    when.plusDays(i), AppointmentStatus.BOOKED));
+            recordDao.save(new HealthRecord("R" + (1001 + i), patientId, "D0001", when.plusDays(i),
+                    "Cough", "Cold", "Rest"));
+        }
+
+        for (int shard = 0; shard < layout.size(); shard++) {
+            Set<String> shardPatients = patientDao.getShards().get(shard).loadAll().keySet();
+            assertFalse("Shard " + layout.getName(shard) + " is empty", shardPatients.isEmpty());
+            for (Appointment appointment : appointmentDao.getShards().get(shard).loadAll().values()) {
+                assertTrue(shardPatients.contains(appointment.getPatientId()));
+            }
+            for (HealthRecord record : recordDao.getShards().get(shard).loadAll().values()) {
+                assertTrue(shardPatients.contains(record.getPatientId()));
+            }
+        }
+
+        assertEquals(30, patientDao.loadAll().size());
+        assertEquals("Patient 7", patientDao.findById("P1008").get().getName());
+        List<Patient> someById = patientDao.findAllById(Arrays.asList("P1030", "P9999", "P1002"));
+        assertEquals("P1030", someById.get(0).getPatientId());
+        assertEquals("P1002", someById.get(1).getPatientId());
+        assertEquals("P1013", appointmentDao.findById("A1013").get().getPatientId());
+        assertEquals(1, appointmentDao.findByPatientId("P1013").size());
+        assertEquals(15, appointmentDao.findByDoctorId("D0002").size());
+        assertEquals(30, recordDao.findByDoctorId("D0001").size());
+        assertEquals(2, recordDao.findAllById(Arrays.asList("R1005", "R1025")).size());
+        assertEquals(10, recordDao.scan(when, when.plusDays(10), record -> { }));
+
+        appointmentDao.delete("A1013");
+        assertFalse(appointmentDao.exists("A1013"));
+        assertEquals(29, appointmentDao.loadAll().size());
+    }
+
+    @Test
+    public void testUnitOfWork_SpansDatabases() {
+        try (UnitOfWork uow = transactionManager.begin()) {
+            for (int i = 0; i < 9; i++) {
+                patientDao.save(new Patient("P" + (2001 + i), "Batch " + i, 40, "M", "5550000000"));
+            }
+            assertEquals("Reads inside the unit of work see its writes", 9, patientDao.loadAll().size());
+            uow.commit();
+        }
+        assertEquals(9, patientDao.loadAll().size());
+
+        try (UnitOfWork uow = transactionManager.begin()) {
+            for (int i = 0; i < 9; i++) {
+                patientDao.save(new Patient("P" + (3001 + i), "Rolled back", 40, "M", "5550000000"));
+            }
+        }
+        assertEquals(9, patientDao.loadAll().size());
+    }
+}
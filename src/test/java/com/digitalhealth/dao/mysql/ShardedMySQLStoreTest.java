@@ -0,0 +1,302 @@
+package com.digitalhealth.dao.mysql;
+
+import com.digitalhealth.dao.UnitOfWork;
+import com.digitalhealth.util.ConnectionProvider;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests routing, scatter-gather and the shard identity check of the sharded MySQL backend
+ * against stub databases, so they run without a MySQL server (see ShardedMySQLDaoTest for
+ * the DAOs against a real one).
+ */
+public class ShardedMySQLStoreTest {
+    private Map<String, StubDatabase> databases;
+    private MySQLShardLayout layout;
+    private TestStore store;
+
+    /**
+     * Shard database without a server. Units of work bind like JdbcConnectionProvider's, and
+     * connections only answer the shard_identity statements.
+     */
+    private static final class StubDatabase implements ConnectionProvider {
+        private final String url;
+        private final ThreadLocal<Connection> transaction = new ThreadLocal<>();
+        private String identity;
+
+        StubDatabase(String url) {
+            this.url = url;
+        }
+
+        synchronized String getIdentity() {
+            return identity;
+        }
+
+        @Override
+        public Connection getConnection() {
+            Connection connection = transaction.get();
+            return connection != null ? connection : openConnection();
+        }
+
+        @Override
+        public Connection openConnection() {
+            return proxy(Connection.class, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "prepareStatement":
+                        return statement((String) args[0]);
+                    case "close":
+                        return null;
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            });
+        }
+
+        private PreparedStatement statement(String sql) {
+            String[] parameter = new String[1];
+            return proxy(PreparedStatement.class, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "setString":
+                        parameter[0] = (String) args[1];
+                        return null;
+                    case "executeUpdate":
+                        assertTrue(sql, sql.startsWith("INSERT IGNORE INTO shard_identity "));
+                        synchronized (this) {
+                            if (identity != null) {
+                                return 0;
+                            }
+                            identity = parameter[0];
+                            return 1;
+                        }
+                    case "executeQuery":
+                        assertTrue(sql, sql.startsWith("SELECT shard_name FROM shard_identity "));
+                        return resultSet(getIdentity());
+                    case "close":
+                        return null;
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            });
+        }
+
+        private static ResultSet resultSet(String value) {
+            boolean[] read = new boolean[1];
+            return proxy(ResultSet.class, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "next":
+                        boolean hasRow = value != null && !read[0];
+                        read[0] = true;
+                        return hasRow;
+                    case "getString":
+                        return value;
+                    case "close":
+                        return null;
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            });
+        }
+
+        @Override
+        public void bindTransaction(Connection connection) {
+            transaction.set(connection);
+        }
+
+        @Override
+        public void unbindTransaction() {
+            transaction.remove();
+        }
+
+        @Override
+        public boolean inTransaction() {
+            return transaction.get() != null;
+        }
+
+        @Override
+        public String getUrl() {
+            return url;
+        }
+    }
+
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, handler));
+    }
+
+    /**
+     * Per-shard DAO of the test store: rows in memory, keyed like the real DAOs.
+     */
+    private static final class ShardRows {
+        final ConnectionProvider database;
+        final Map<String, String> rows = new ConcurrentHashMap<>();
+
+        ShardRows(ConnectionProvider database) {
+            this.database = database;
+        }
+
+        Map<String, String> loadAll() {
+            return new HashMap<>(rows);
+        }
+    }
+
+    private static final class TestStore extends ShardedMySQLStore<ShardRows> {
+        TestStore(MySQLShardLayout layout) {
+            super(layout, ShardRows::new);
+        }
+    }
+
+    private static Map<String, StubDatabase> stubDatabases(String... names) {
+        Map<String, StubDatabase> stubs = new LinkedHashMap<>();
+        for (String name : names) {
+            stubs.put(name, new StubDatabase("jdbc:stub://" + name));
+        }
+        return stubs;
+    }
+
+    @Before
+    public void setUp() {
+        databases = stubDatabases("s1", "s2", "s3");
+        layout = new MySQLShardLayout(databases);
+        store = new TestStore(layout);
+    }
+
+    /**
+     * Rows "patientId/name" of patients P1001 upwards, by patient ID.
+     */
+    private static Map<String, String> patients(int count) {
+        Map<String, String> patients = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            patients.put("P" + (1001 + i), "P" + (1001 + i) + "/Patient " + i);
+        }
+        return patients;
+    }
+
+    private static String patientIdOf(String row) {
+        return row.substring(0, row.indexOf('/'));
+    }
+
+    @Test
+    public void testSaveAll_RoutesEachPatientToItsShard() {
+        store.saveAllShards(patients(60), ShardedMySQLStoreTest::patientIdOf, (shard, part) -> shard.rows.putAll(part));
+
+        int total = 0;
+        for (int shard = 0; shard < layout.size(); shard++) {
+            ShardRows rows = store.getShards().get(shard);
+            assertSame(databases.get(layout.getName(shard)), rows.database);
+            assertFalse("Shard " + layout.getName(shard) + " is empty", rows.rows.isEmpty());
+            for (String patientId : rows.rows.keySet()) {
+                assertEquals(shard, layout.shardOf(patientId));
+                assertSame(rows, store.shardFor(patientId));
+            }
+            total += rows.rows.size();
+        }
+        assertEquals(60, total);
+    }
+
+    @Test
+    public void testScatterGather_MergesEveryShard() {
+        store.saveAllShards(patients(60), ShardedMySQLStoreTest::patientIdOf, (shard, part) -> shard.rows.putAll(part));
+
+        assertEquals(patients(60), store.loadAllShards(ShardRows::loadAll));
+        List<String> listed = store.listShards(shard -> new ArrayList<>(shard.rows.keySet()));
+        assertEquals(60, listed.size());
+        assertEquals(patients(60).keySet(), new HashSet<>(listed));
+        assertEquals("P1042/Patient 41", store.findInShards(shard -> Optional.ofNullable(shard.rows.get("P1042"))).get());
+        assertFalse(store.findInShards(shard -> Optional.ofNullable(shard.rows.get("P9999"))).isPresent());
+
+        // Outside a unit of work every shard is queried on a shard thread
+        for (Thread thread : store.queryShards(shard -> Thread.currentThread())) {
+            assertNotSame(Thread.currentThread(), thread);
+            assertTrue(thread.getName(), thread.getName().startsWith("mysql-shard-"));
+        }
+    }
+
+    @Test
+    public void testRunAll_RethrowsAfterEveryShardFinished() {
+        Set<String> finished = ConcurrentHashMap.newKeySet();
+        try {
+            store.queryShards(shard -> {
+                if (shard == store.getShards().get(0)) {
+                    throw new IllegalStateException("shard down");
+                }
+                finished.add(shard.database.getUrl());
+                return null;
+            });
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+            assertEquals("shard down", expected.getMessage());
+        }
+        assertEquals(layout.size() - 1, finished.size());
+    }
+
+    @Test
+    public void testRunAll_InsideUnitOfWorkRunsOnCallingThread() {
+        MySQLTransactionManager transactionManager = new MySQLTransactionManager(layout.getDatabases());
+        try (UnitOfWork uow = transactionManager.begin()) {
+            List<Thread> threads = store.queryShards(shard -> Thread.currentThread());
+            List<Boolean> joined = store.queryShards(shard -> shard.database.inTransaction());
+            assertEquals(Collections.nCopies(layout.size(), Thread.currentThread()), threads);
+            assertEquals(Collections.nCopies(layout.size(), true), joined);
+        }
+        for (StubDatabase database : databases.values()) {
+            assertFalse(database.inTransaction());
+        }
+        assertTrue(store.queryShards(shard -> Thread.currentThread()).stream()
+                .noneMatch(thread -> thread == Thread.currentThread()));
+    }
+
+    @Test
+    public void testShardIdentities_RecordedOnFirstCheck() {
+        layout.checkShardIdentities();
+        for (Map.Entry<String, StubDatabase> entry : databases.entrySet()) {
+            assertEquals(entry.getKey(), entry.getValue().getIdentity());
+        }
+
+        // Restarting with the same layout, in any order, is accepted
+        Map<String, StubDatabase> reordered = new LinkedHashMap<>();
+        reordered.put("s3", databases.get("s3"));
+        reordered.put("s1", databases.get("s1"));
+        reordered.put("s2", databases.get("s2"));
+        new MySQLShardLayout(reordered).checkShardIdentities();
+
+        // A new, empty database joins as a new shard
+        reordered.put("s4", new StubDatabase("jdbc:stub://s4"));
+        new MySQLShardLayout(reordered).checkShardIdentities();
+        assertEquals("s4", reordered.get("s4").getIdentity());
+    }
+
+    @Test
+    public void testShardIdentities_SwappedDatabasesRefused() {
+        layout.checkShardIdentities();
+        Map<String, StubDatabase> swapped = new LinkedHashMap<>();
+        swapped.put("s1", databases.get("s2"));
+        swapped.put("s2", databases.get("s1"));
+        swapped.put("s3", databases.get("s3"));
+        try {
+            new MySQLShardLayout(swapped).checkShardIdentities();
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().startsWith(
+                    "Shard database jdbc:stub://s2 holds shard s2 but is configured as shard s1"));
+        }
+        assertEquals("Identities are never overwritten", "s2", databases.get("s2").getIdentity());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testShardIdentities_OneDatabaseForTwoShardsRefused() {
+        StubDatabase shared = new StubDatabase("jdbc:stub://shared");
+        Map<String, StubDatabase> twice = new LinkedHashMap<>();
+        twice.put("s1", shared);
+        twice.put("s2", shared);
+        new MySQLShardLayout(twice).checkShardIdentities();
+    }
+}
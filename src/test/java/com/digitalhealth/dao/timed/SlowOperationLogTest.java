@@ -0,0 +1,109 @@
+package com.digitalhealth.dao.timed;
+
+import com.digitalhealth.metrics.MetricsRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for SlowOperationLog and the OperationTimer that feeds it.
+ */
+public class SlowOperationLogTest {
+    private MetricsRegistry registry;
+    private List<SlowOperationLog.SlowOperation> reported;
+
+    @Before
+    public void setUp() {
+        registry = new MetricsRegistry();
+        reported = new ArrayList<>();
+    }
+
+    private OperationTimer timer(long thresholdMillis, String operation) {
+        return new OperationTimer(registry, new SlowOperationLog(thresholdMillis, reported::add), "patient", operation);
+    }
+
+    @Test
+    public void testFastCallsNotReported() {
+        OperationTimer timer = timer(1_000, "findById");
+        assertEquals("P1001", timer.call("P1001", () -> "P1001"));
+        timer.run("P1001", 1, () -> { });
+
+        assertTrue(reported.isEmpty());
+        String scrape = registry.scrape();
+        assertTrue(scrape.contains("dao_slow_operations_total{entity=\"patient\",operation=\"findById\"} 0\n"));
+        assertTrue(scrape.contains("dao_operation_seconds_count{entity=\"patient\",operation=\"findById\"} 2\n"));
+    }
+
+    @Test
+    public void testZeroThresholdReportsEveryCall() {
+        OperationTimer timer = timer(0, "loadAll");
+        List<String> rows = timer.call(null, () -> Arrays.asList("P1001", "P1002", "P1003"), List::size);
+        assertEquals(3, rows.size());
+        timer.call("P1004", () -> "no row count");
+
+        assertEquals(2, reported.size());
+        SlowOperationLog.SlowOperation first = reported.get(0);
+        assertEquals("patient", first.getEntity());
+        assertEquals("loadAll", first.getOperation());
+        assertNull(first.getKey());
+        assertEquals(3, first.getRows());
+        assertFalse(first.isFailed());
+        assertEquals(Thread.currentThread().getName(), first.getThread());
+        assertTrue(first.getDurationNanos() >= 0);
+        assertEquals(-1, reported.get(1).getRows());
+
+        String scrape = registry.scrape();
+        assertTrue(scrape.contains("dao_slow_operations_total{entity=\"patient\",operation=\"loadAll\"} 2\n"));
+        assertTrue(scrape.contains("dao_rows_total{entity=\"patient\",operation=\"loadAll\"} 3\n"));
+    }
+
+    @Test
+    public void testFailedCallReportedAsError() {
+        OperationTimer timer = timer(0, "save");
+        try {
+            timer.run("P1001", 1, () -> {
+                throw new IllegalStateException("boom");
+            });
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+        }
+
+        assertEquals(1, reported.size());
+        assertTrue(reported.get(0).isFailed());
+        assertTrue(reported.get(0).toString().endsWith(" outcome=error"));
+        String scrape = registry.scrape();
+        assertTrue(scrape.contains("dao_errors_total{entity=\"patient\",operation=\"save\"} 1\n"));
+        assertTrue("Failed writes count no rows",
+                scrape.contains("dao_rows_total{entity=\"patient\",operation=\"save\"} 0\n"));
+    }
+
+    @Test
+    public void testLogLineFormat() {
+        SlowOperationLog log = new SlowOperationLog(5, reported::add);
+        assertEquals(5_000_000L, log.thresholdNanos());
+        log.report("user", "findByUsername", "dr \"who\"", 153_210_000L, 1, false);
+        log.report("doctor", "loadAll", null, 2_500_000L, -1, false);
+
+        String line = reported.get(0).toString();
+        String prefix = "slow_dao_op ts=" + reported.get(0).getTimestamp() + " ";
+        assertTrue(line, line.startsWith(prefix));
+        String thread = Thread.currentThread().getName();
+        String quotedThread = thread.matches("[^ \"=]*") ? thread : "\"" + thread.replace("\"", "\\\"") + "\"";
+        assertEquals("entity=user operation=findByUsername duration_ms=153.210 key=\"dr \\\"who\\\"\" rows=1 thread="
+                + quotedThread + " outcome=ok", line.substring(prefix.length()));
+
+        // No key or row count, so neither field is written
+        String bare = reported.get(1).toString();
+        assertTrue(bare, bare.contains(" entity=doctor operation=loadAll duration_ms=2.500 thread="));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeThresholdRejected() {
+        new SlowOperationLog(-1, reported::add);
+    }
+}
@@ -0,0 +1,184 @@
+package com.digitalhealth.loadtest;
+
+import com.digitalhealth.dao.file.FileAppointmentDao;
+import com.digitalhealth.dao.file.FileTransactionManager;
+import com.digitalhealth.dao.file.FileDoctorDao;
+import com.digitalhealth.dao.file.FileHealthRecordDao;
+import com.digitalhealth.dao.file.FilePatientDao;
+import com.digitalhealth.dao.file.FileUserDao;
+import com.digitalhealth.model.Appointment;
+import com.digitalhealth.dto.AppointmentDTO;
+import com.digitalhealth.dto.PatientDTO;
+import com.digitalhealth.model.AppointmentStatus;
+import com.digitalhealth.model.HealthRecord;
+import com.digitalhealth.model.Patient;
+import com.digitalhealth.model.User;
+import com.digitalhealth.service.AppointmentService;
+import com.digitalhealth.service.DoctorService;
+import com.digitalhealth.service.PatientService;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for SyntheticDataGenerator.
+ */
+public class SyntheticDataGeneratorTest {
+    private final String testDir = "test-data-synthetic";
+
+    @After
+    public void tearDown() {
+        File[] files = new File(testDir).listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        new File(testDir).delete();
+    }
+
+    @Test
+    public void testEntities_DependOnlyOnSeedAndIndex() {
+        SyntheticDataGenerator generator = new SyntheticDataGenerator(7).patients(500).doctors(40);
+        List<String> sequential = generator.appointments().limit(200)
+                .map(a -> a.getPatientId() + a.getDoctorId() + a.getDateTime() + a.getStatus())
+                .collect(Collectors.toList());
+        List<String> parallel = generator.appointments().parallel().limit(200)
+                .map(a -> a.getPatientId() + a.getDoctorId() + a.getDateTime() + a.getStatus())
+                .collect(Collectors.toList());
+        assertEquals(sequential, parallel);
+
+        SyntheticDataGenerator again = new SyntheticDataGenerator(7).patients(500).doctors(40);
+        HealthRecord first = generator.healthRecord(123);
+        HealthRecord second = again.healthRecord(123);
+        assertEquals(first.getSymptoms(), second.getSymptoms());
+        assertEquals(first.getDate(), second.getDate());
+        assertEquals(generator.patient(9).getName(), again.patient(9).getName());
+
+        SyntheticDataGenerator other = new SyntheticDataGenerator(8).patients(500).doctors(40);
+        long same = generator.appointments().limit(200)
+                .filter(a -> a.getDateTime().equals(other.appointment(idIndex(a.getAppointmentId())).getDateTime()))
+                .count();
+        assertTrue("Another seed gives other data", same < 20);
+    }
+
+    @Test
+    public void testDistributions_ZipfSeasonalAndLongTailed() {
+        SyntheticDataGenerator generator = new SyntheticDataGenerator(42)
+                .patients(2000).doctors(200).appointments(40000).healthRecords(20000);
+
+        // A few doctors take a large share of appointments
+        Map<String, Long> perDoctor = generator.appointments()
+                .collect(Collectors.groupingBy(Appointment::getDoctorId, Collectors.counting()));
+        List<Long> counts = new ArrayList<>(perDoctor.values());
+        counts.sort(Comparator.reverseOrder());
+        long topTen = counts.stream().limit(10).mapToLong(Long::longValue).sum();
+        assertTrue("Top 5% of doctors get over a third of visits", topTen * 3 > 40000);
+        assertTrue("Unpopular doctors still get some visits", perDoctor.size() > 150);
+
+        // Winter busier than summer, weekends quiet, clinic hours only
+        Map<Month, Long> perMonth = generator.healthRecords()
+                .collect(Collectors.groupingBy(r -> r.getDate().getMonth(), Collectors.counting()));
+        assertTrue(perMonth.get(Month.JANUARY) > perMonth.get(Month.JULY) * 1.5);
+        long sundays = generator.healthRecords().filter(r -> r.getDate().getDayOfWeek() == DayOfWeek.SUNDAY).count();
+        long mondays = generator.healthRecords().filter(r -> r.getDate().getDayOfWeek() == DayOfWeek.MONDAY).count();
+        assertTrue(sundays * 5 < mondays);
+        assertTrue(generator.healthRecords().allMatch(r -> r.getDate().getHour() >= 8 && r.getDate().getHour() < 18
+                && r.getDate().toLocalDate().isBefore(generator.getEndOfHistory())));
+
+        // Appointments in the future are still booked
+        assertTrue(generator.appointments().allMatch(a ->
+                a.getDateTime().toLocalDate().isBefore(generator.getEndOfHistory())
+                        ? a.getStatus() != AppointmentStatus.BOOKED
+                        : a.getStatus() != AppointmentStatus.COMPLETED));
+
+        // Symptom texts: mostly short, with a long tail
+        int[] lengths = generator.healthRecords().mapToInt(r -> r.getSymptoms().length()).sorted().toArray();
+        assertTrue("Median is a phrase or two", lengths[lengths.length / 2] < 30);
+        assertTrue("Long notes exist", lengths[lengths.length - 1] > 300);
+
+        assertTrue(generator.patients().anyMatch(p -> p.getAge() < 18));
+        assertTrue(generator.patients().allMatch(p -> p.getAge() >= 0 && p.getAge() <= 99));
+    }
+
+    @Test
+    public void testWriteTo_FileDaos() {
+        new File(testDir).mkdirs();
+        SyntheticDataGenerator generator = new SyntheticDataGenerator(3)
+                .patients(300).doctors(12).appointments(2000).healthRecords(1500).users(25).slotDays(7);
+        FilePatientDao patientDao = new FilePatientDao(testDir + "/patients.dat");
+        FileDoctorDao doctorDao = new FileDoctorDao(testDir + "/doctors.dat");
+        FileAppointmentDao appointmentDao = new FileAppointmentDao(testDir + "/appointments.dat");
+        FileHealthRecordDao recordDao = new FileHealthRecordDao(testDir + "/records.dat");
+        FileUserDao userDao = new FileUserDao(testDir + "/users.dat");
+
+        Map<String, Integer> rows = generator.writeTo(patientDao, doctorDao, appointmentDao, recordDao, userDao);
+        assertEquals(Arrays.asList("patients", "doctors", "users", "appointments", "health_records"),
+                new ArrayList<>(rows.keySet()));
+
+        Map<String, Patient> patients = patientDao.loadAll();
+        assertEquals(300, patients.size());
+        assertEquals(generator.patient(17).getName(), patients.get(SyntheticDataGenerator.patientId(17)).getName());
+        assertEquals(12, doctorDao.loadAll().size());
+        assertEquals(5 * 8, doctorDao.findById("D0001").get().getAvailableSlots().size());
+        assertEquals(2000, appointmentDao.loadAll().size());
+        assertEquals(1500, recordDao.loadAll().size());
+        for (Appointment appointment : appointmentDao.loadAll().values()) {
+            assertTrue(patients.containsKey(appointment.getPatientId()));
+        }
+        assertEquals(25, userDao.findAll().size());
+        assertEquals(SyntheticDataGenerator.patientId(0), userDao.findByUsername("patient1").get().getLinkedEntityId());
+    }
+
+    @Test
+    public void testWriteTo_FileDaosUsableByServices() throws Exception {
+        new File(testDir).mkdirs();
+        // History up to today, so the open slots are in the future
+        SyntheticDataGenerator generator = new SyntheticDataGenerator(5).history(LocalDate.now().minusDays(90), 90)
+                .patients(50).doctors(4).appointments(100).healthRecords(50).users(5).slotDays(7);
+        assertEquals("Generated rows are already stored versions", 1, generator.patient(0).getVersion());
+        assertEquals(1, generator.doctor(0).getVersion());
+        FilePatientDao patientDao = new FilePatientDao(testDir + "/patients.dat");
+        FileDoctorDao doctorDao = new FileDoctorDao(testDir + "/doctors.dat");
+        FileAppointmentDao appointmentDao = new FileAppointmentDao(testDir + "/appointments.dat");
+        FileUserDao userDao = new FileUserDao(testDir + "/users.dat");
+        generator.writeTo(patientDao, doctorDao, appointmentDao,
+                new FileHealthRecordDao(testDir + "/records.dat"), userDao);
+
+        PatientService patients = new PatientService(patientDao);
+        DoctorService doctors = new DoctorService(doctorDao);
+        AppointmentService appointments = new AppointmentService(appointmentDao, patients, doctors,
+                new FileTransactionManager(testDir, patientDao, doctorDao, appointmentDao));
+
+        String patientId = SyntheticDataGenerator.patientId(3);
+        PatientDTO update = patients.getPatient(patientId);
+        update.setContact("5559998888");
+        patients.updatePatient(update);
+        assertEquals("5559998888", patients.getPatient(patientId).getContact());
+
+        String doctorId = SyntheticDataGenerator.doctorId(0);
+        List<LocalDateTime> slots = doctors.getDoctor(doctorId).getAvailableSlots();
+        LocalDateTime slot = slots.get(slots.size() - 1);
+        AppointmentDTO booked = appointments.bookAppointment(patientId, doctorId, slot);
+        assertEquals(AppointmentStatus.BOOKED, booked.getStatus());
+        assertFalse(doctors.getDoctor(doctorId).getAvailableSlots().contains(slot));
+
+        User user = userDao.findByUsername("patient1").get();
+        user.setLastLogin(LocalDateTime.now());
+        userDao.update(user);
+        assertEquals(2, userDao.findByUsername("patient1").get().getVersion());
+    }
+
+    private static int idIndex(String appointmentId) {
+        return Integer.parseInt(appointmentId.substring(1)) - 1001;
+    }
+}
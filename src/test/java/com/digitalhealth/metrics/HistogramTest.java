@@ -0,0 +1,77 @@
+package com.digitalhealth.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for Histogram.
+ */
+public class HistogramTest {
+
+    @Test
+    public void testBucketOf_ExactBelowSixteen() {
+        for (int value = 0; value < 16; value++) {
+            assertEquals(value, Histogram.bucketOf(value));
+            assertEquals(value, Histogram.upperBoundOf(value));
+        }
+    }
+
+    @Test
+    public void testBucketOf_SixteenLinearStepsPerPowerOfTwo() {
+        // 16-31 are still exact; from 32 on each bucket spans two values, from 64 on four
+        assertEquals(16, Histogram.bucketOf(16));
+        assertEquals(31, Histogram.bucketOf(31));
+        assertEquals(32, Histogram.bucketOf(32));
+        assertEquals(32, Histogram.bucketOf(33));
+        assertEquals(33, Histogram.upperBoundOf(32));
+        assertEquals(33, Histogram.bucketOf(34));
+        assertEquals(48, Histogram.bucketOf(64));
+        assertEquals(48, Histogram.bucketOf(67));
+        assertEquals(67, Histogram.upperBoundOf(48));
+    }
+
+    @Test
+    public void testBucketOf_UpperBoundWithinOneSixteenth() {
+        int previous = 0;
+        for (long value = 1; value < (1L << 39); value += 1 + value / 7) {
+            int bucket = Histogram.bucketOf(value);
+            long upper = Histogram.upperBoundOf(bucket);
+            assertTrue("Buckets grow with the value at " + value, bucket >= previous);
+            assertTrue(value + " <= " + upper, value <= upper);
+            assertTrue(value + " close to " + upper, upper - value <= value / 16);
+            previous = bucket;
+        }
+    }
+
+    @Test
+    public void testBucketOf_HugeValuesInLastBucket() {
+        int last = Histogram.bucketOf(Long.MAX_VALUE);
+        assertEquals(last, Histogram.bucketOf(1L << 40));
+        assertEquals(last, Histogram.bucketOf(1L << 50));
+        assertTrue(Histogram.bucketOf(1L << 39) < last);
+        assertTrue(Histogram.upperBoundOf(last) >= (1L << 40) - 1);
+    }
+
+    @Test
+    public void testQuantiles() {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.quantile(0.5));
+
+        for (int i = 0; i < 90; i++) {
+            histogram.record(1_000);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(1_000_000);
+        }
+        histogram.record(-5);
+
+        assertEquals(101, histogram.count());
+        assertEquals(90 * 1_000L + 10 * 1_000_000L, histogram.sumNanos());
+        assertEquals(0, histogram.quantile(0));
+        assertEquals(Histogram.upperBoundOf(Histogram.bucketOf(1_000)), histogram.quantile(0.5));
+        assertEquals(Histogram.upperBoundOf(Histogram.bucketOf(1_000)), histogram.quantile(0.89));
+        assertEquals(Histogram.upperBoundOf(Histogram.bucketOf(1_000_000)), histogram.quantile(0.99));
+        assertEquals(Histogram.upperBoundOf(Histogram.bucketOf(1_000_000)), histogram.quantile(1));
+    }
+}
@@ -0,0 +1,96 @@
+package com.digitalhealth.metrics;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for MetricsRegistry.
+ */
+public class MetricsRegistryTest {
+    private MetricsRegistry registry;
+
+    @Before
+    public void setUp() {
+        registry = new MetricsRegistry();
+    }
+
+    @Test
+    public void testScrape_CountersAndGaugesSortedByName() {
+        Counter ok = registry.counter("http_requests_total", "HTTP requests", "route", "/api/patients", "status", "200");
+        Counter missing = registry.counter("http_requests_total", "HTTP requests", "route", "/api/patients", "status", "404");
+        ok.add(3);
+        missing.inc();
+        registry.gauge("cache_size", "Entries in the cache", () -> 2.5);
+
+        // Looking a counter up again returns the same one
+        assertSame(ok, registry.counter("http_requests_total", "HTTP requests", "route", "/api/patients", "status", "200"));
+
+        assertEquals("# HELP cache_size Entries in the cache\n"
+                + "# TYPE cache_size gauge\n"
+                + "cache_size 2.5\n"
+                + "# HELP http_requests_total HTTP requests\n"
+                + "# TYPE http_requests_total counter\n"
+                + "http_requests_total{route=\"/api/patients\",status=\"200\"} 3\n"
+                + "http_requests_total{route=\"/api/patients\",status=\"404\"} 1\n",
+                registry.scrape());
+    }
+
+    @Test
+    public void testScrape_LabelValuesEscaped() {
+        registry.counter("odd_total", "Odd labels", "value", "a\\b \"c\"\nd", "empty", null).inc();
+        assertEquals("# HELP odd_total Odd labels\n"
+                + "# TYPE odd_total counter\n"
+                + "odd_total{value=\"a\\\\b \\\"c\\\"\\nd\",empty=\"\"} 1\n",
+                registry.scrape());
+    }
+
+    @Test
+    public void testScrape_HistogramAsSummaryInSeconds() {
+        Histogram latency = registry.histogram("dao_operation_seconds", "DAO call latency", "entity", "patient");
+        latency.record(1_000_000);
+        registry.histogram("plain_seconds", "No labels").record(2_000_000_000L);
+
+        // 1ms lands in the bucket ending at 1015807ns
+        assertEquals("# HELP dao_operation_seconds DAO call latency\n"
+                + "# TYPE dao_operation_seconds summary\n"
+                + "dao_operation_seconds{entity=\"patient\",quantile=\"0.5\"} 0.001015807\n"
+                + "dao_operation_seconds{entity=\"patient\",quantile=\"0.9\"} 0.001015807\n"
+                + "dao_operation_seconds{entity=\"patient\",quantile=\"0.99\"} 0.001015807\n"
+                + "dao_operation_seconds{entity=\"patient\",quantile=\"0.999\"} 0.001015807\n"
+                + "dao_operation_seconds_sum{entity=\"patient\"} 0.001\n"
+                + "dao_operation_seconds_count{entity=\"patient\"} 1\n"
+                + "# HELP plain_seconds No labels\n"
+                + "# TYPE plain_seconds summary\n"
+                + "plain_seconds{quantile=\"0.5\"} 2.013265919\n"
+                + "plain_seconds{quantile=\"0.9\"} 2.013265919\n"
+                + "plain_seconds{quantile=\"0.99\"} 2.013265919\n"
+                + "plain_seconds{quantile=\"0.999\"} 2.013265919\n"
+                + "plain_seconds_sum 2\n"
+                + "plain_seconds_count 1\n",
+                registry.scrape());
+    }
+
+    @Test
+    public void testGauge_ReadAtScrapeAndReplaced() {
+        double[] value = {1};
+        registry.gauge("queue_depth", "Queued jobs", () -> value[0], "queue", "export");
+        value[0] = 7;
+        assertTrue(registry.scrape().contains("queue_depth{queue=\"export\"} 7\n"));
+
+        registry.gauge("queue_depth", "Queued jobs", () -> 9, "queue", "export");
+        assertTrue(registry.scrape().contains("queue_depth{queue=\"export\"} 9\n"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTypeConflictRejected() {
+        registry.counter("requests", "Requests");
+        registry.histogram("requests", "Requests");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnpairedLabelsRejected() {
+        registry.counter("requests", "Requests", "route");
+    }
+}
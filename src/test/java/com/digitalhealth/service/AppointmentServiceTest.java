@@ -6,14 +6,28 @@ import com.digitalhealth.dto.AppointmentDTO;
 import com.digitalhealth.dto.DoctorDTO;
 import com.digitalhealth.dto.PatientDTO;
 import com.digitalhealth.exception.*;
+import com.digitalhealth.jfr.AppointmentBookingEvent;
+import com.digitalhealth.jfr.AppointmentCancellationEvent;
+import com.digitalhealth.jfr.FileFlushEvent;
+import com.digitalhealth.jfr.RecordingSummary;
+import com.digitalhealth.model.Appointment;
 import com.digitalhealth.model.AppointmentStatus;
+import com.digitalhealth.model.Doctor;
+import com.digitalhealth.model.Patient;
+import jdk.jfr.Recording;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.*;
 
@@ -24,6 +38,8 @@ public class AppointmentServiceTest {
     private AppointmentService appointmentService;
     private PatientService patientService;
     private DoctorService doctorService;
+    private AppointmentDao appointmentDao;
+    private TransactionManager transactionManager;
     private String testDir = "test-data-appt";
 
     private String patientId;
@@ -35,13 +51,16 @@ public class AppointmentServiceTest {
     public void setUp() throws Exception {
         new File(testDir).mkdirs();
 
-        PatientDao patientDao = new FilePatientDao(testDir + "/patients.dat");
-        DoctorDao doctorDao = new FileDoctorDao(testDir + "/doctors.dat");
-        AppointmentDao appointmentDao = new FileAppointmentDao(testDir + "/appointments.dat");
+        FilePatientDao patientDao = new FilePatientDao(testDir + "/patients.dat");
+        FileDoctorDao doctorDao = new FileDoctorDao(testDir + "/doctors.dat");
+        FileAppointmentDao fileAppointmentDao = new FileAppointmentDao(testDir + "/appointments.dat");
+        appointmentDao = fileAppointmentDao;
+        transactionManager = new FileTransactionManager(testDir, patientDao, doctorDao, fileAppointmentDao);
 
         patientService = new PatientService(patientDao);
         doctorService = new DoctorService(doctorDao);
-        appointmentService = new AppointmentService(appointmentDao, patientService, doctorService);
+        appointmentService = new AppointmentService(
+            appointmentDao, patientService, doctorService, transactionManager);
 
         // Setup test data
         PatientDTO patientDto = new PatientDTO("Test Patient", 30, "M", "1234567890");
@@ -61,6 +80,7 @@ public class AppointmentServiceTest {
         new File(testDir + "/patients.dat").delete();
         new File(testDir + "/doctors.dat").delete();
         new File(testDir + "/appointments.dat").delete();
+        new File(testDir + "/transaction.journal").delete();
         new File(testDir).delete();
     }
 
@@ -82,6 +102,73 @@ public class AppointmentServiceTest {
         assertTrue(doctor.getAvailableSlots().contains(slot2));
     }
 
+    @Test
+    public void testUnversionedDataFiles_UpdateAndBook() throws Exception {
+        File dir = new File(testDir + "/unversioned");
+        try {
+            // Rows written before entities had versions read back with version 0
+            FilePatientDao patientDao = new FilePatientDao(dir + "/patients.dat");
+            FileDoctorDao doctorDao = new FileDoctorDao(dir + "/doctors.dat");
+            FileAppointmentDao fileAppointmentDao = new FileAppointmentDao(dir + "/appointments.dat");
+            Doctor doctor = new Doctor("D0001", "Dr. Old", "General");
+            doctor.getAvailableSlots().add(slot1);
+            Map<String, Patient> oldPatients = new HashMap<>();
+            oldPatients.put("P1000", new Patient("P1000", "Old Patient", 40, "F", "5550001111"));
+            Map<String, Doctor> oldDoctors = new HashMap<>();
+            oldDoctors.put("D0001", doctor);
+            patientDao.saveAll(oldPatients);
+            doctorDao.saveAll(oldDoctors);
+            assertEquals("Stored as the first version", 1, patientDao.findById("P1000").get().getVersion());
+
+            PatientService patients = new PatientService(patientDao);
+            DoctorService doctors = new DoctorService(doctorDao);
+            AppointmentService appointments = new AppointmentService(fileAppointmentDao, patients, doctors,
+                new FileTransactionManager(dir.getPath(), patientDao, doctorDao, fileAppointmentDao));
+
+            PatientDTO update = patients.getPatient("P1000");
+            update.setContact("5559998888");
+            patients.updatePatient(update);
+            assertEquals("5559998888", patients.getPatient("P1000").getContact());
+
+            AppointmentDTO booked = appointments.bookAppointment("P1000", "D0001", slot1);
+            assertEquals(AppointmentStatus.BOOKED, booked.getStatus());
+            assertFalse(doctors.getDoctor("D0001").getAvailableSlots().contains(slot1));
+        } finally {
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void testBookAppointment_PatientHistoryByReference() throws Exception {
+        patientService.setHistoryLoader(new DaoPatientHistoryLoader(appointmentDao, null));
+
+        AppointmentDTO appointment = appointmentService.bookAppointment(patientId, doctorId, slot1);
+
+        // History is resolved from the appointment store, not embedded in the patient
+        List<Appointment> history = patientService.getPatientEntity(patientId).getAppointments();
+        assertEquals(1, history.size());
+        assertEquals(appointment.getAppointmentId(), history.get(0).getAppointmentId());
+    }
+
+    @Test
+    public void testUnitOfWork_RollbackDiscardsWrites() throws Exception {
+        try (UnitOfWork uow = transactionManager.begin()) {
+            appointmentDao.save(new Appointment("A9001", patientId, doctorId, slot1, AppointmentStatus.BOOKED));
+            // Staged writes are visible to the owning thread
+            assertTrue(appointmentDao.exists("A9001"));
+            // Closed without commit
+        }
+
+        assertFalse(appointmentDao.exists("A9001"));
+        assertFalse(new File(testDir + "/transaction.journal").exists());
+    }
+
     @Test(expected = SlotUnavailableException.class)
     public void testBookAppointment_SlotNotAvailable() throws Exception {
         LocalDateTime unavailableSlot = LocalDateTime.now().plusDays(10);
@@ -135,6 +222,60 @@ public class AppointmentServiceTest {
         assertFalse(secondCancel);
     }
 
+    @Test
+    public void testFlightRecorderEvents_SummarizedByHotPath() throws Exception {
+        Path dump = Files.createTempFile("appointments", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(AppointmentBookingEvent.class).withThreshold(Duration.ZERO);
+            recording.enable(AppointmentCancellationEvent.class).withThreshold(Duration.ZERO);
+            recording.enable(FileFlushEvent.class).withThreshold(Duration.ZERO);
+            recording.start();
+
+            AppointmentDTO appointment = appointmentService.bookAppointment(patientId, doctorId, slot1);
+            try {
+                appointmentService.bookAppointment(patientId, doctorId, slot1);
+                fail("Slot should already be taken");
+            } catch (SlotUnavailableException expected) {
+            }
+            appointmentService.cancelAppointment(appointment.getAppointmentId());
+
+            recording.stop();
+            recording.dump(dump);
+        }
+
+        try {
+            List<String> paths = RecordingSummary.summarize(dump).stream()
+                    .map(path -> path.getEvent() + " " + path.getKey())
+                    .collect(Collectors.toList());
+            assertTrue(paths.toString(), paths.contains("AppointmentBooking booked"));
+            assertTrue(paths.toString(), paths.contains("AppointmentBooking SlotUnavailableException"));
+            assertTrue(paths.toString(), paths.contains("AppointmentCancellation cancelled"));
+            assertTrue(paths.toString(), paths.contains("FileFlush appointments.dat"));
+            assertTrue(paths.toString(), paths.contains("FileFlush transaction.journal (fsync)"));
+        } finally {
+            Files.deleteIfExists(dump);
+        }
+    }
+
+    @Test
+    public void testDoctorChangeCount_AdvancesAfterBookingAndCancellation() throws Exception {
+        long initial = doctorService.getChangeCount();
+
+        AppointmentDTO appointment = appointmentService.bookAppointment(patientId, doctorId, slot1);
+        long afterBooking = doctorService.getChangeCount();
+        assertTrue(afterBooking > initial);
+
+        try {
+            appointmentService.bookAppointment(patientId, doctorId, slot1);
+            fail("Slot should already be taken");
+        } catch (SlotUnavailableException expected) {
+        }
+        assertEquals(afterBooking, doctorService.getChangeCount());
+
+        appointmentService.cancelAppointment(appointment.getAppointmentId());
+        assertTrue(doctorService.getChangeCount() > afterBooking);
+    }
+
     @Test
     public void testRescheduleAppointment_Success() throws Exception {
         AppointmentDTO appointment = appointmentService.bookAppointment(patientId, doctorId, slot1);
@@ -0,0 +1,172 @@
+package com.digitalhealth.service;
+
+import com.digitalhealth.dao.file.FileDoctorDao;
+import com.digitalhealth.dao.file.FileHealthRecordDao;
+import com.digitalhealth.dao.file.FilePatientDao;
+import com.digitalhealth.dto.DoctorDTO;
+import com.digitalhealth.dto.ExportJobDTO;
+import com.digitalhealth.dto.HealthRecordDTO;
+import com.digitalhealth.dto.PatientDTO;
+import com.digitalhealth.exception.EntityNotFoundException;
+import com.digitalhealth.exception.QuotaExceededException;
+import com.digitalhealth.model.ExportJobStatus;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for ExportJobService.
+ */
+public class ExportJobServiceTest {
+    private HealthRecordService healthRecordService;
+    private PatientService patientService;
+    private DoctorService doctorService;
+    private String testDir = "test-data-export-jobs";
+    private File directory = new File(testDir + "/exports");
+
+    private String patientId;
+    private final CountDownLatch release = new CountDownLatch(1);
+    private ExportService blocking;
+
+    @Before
+    public void setUp() throws Exception {
+        new File(testDir).mkdirs();
+
+        patientService = new PatientService(new FilePatientDao(testDir + "/patients.dat"));
+        doctorService = new DoctorService(new FileDoctorDao(testDir + "/doctors.dat"));
+        healthRecordService = new HealthRecordService(new FileHealthRecordDao(testDir + "/records.dat"),
+                patientService, doctorService);
+
+        patientId = patientService.registerPatient(new PatientDTO("Test Patient", 30, "M", "1234567890"));
+        String doctorId = doctorService.addDoctor(new DoctorDTO("D001", "Dr. Test", "General"));
+        healthRecordService.addHealthRecord(new HealthRecordDTO(
+            patientId, doctorId, LocalDateTime.of(2025, 6, 1, 9, 0), "Cough", "Cold", null));
+
+        // Single-patient exports wait for the test to release them
+        blocking = new ExportService(patientService, healthRecordService, doctorService) {
+            @Override
+            public void exportPatientHistory(String id, String outputPath) throws EntityNotFoundException, IOException {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                super.exportPatientHistory(id, outputPath);
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+        new File(testDir + "/patients.dat").delete();
+        new File(testDir + "/doctors.dat").delete();
+        new File(testDir + "/records.dat").delete();
+        new File(testDir + "/records.idx").delete();
+        new File(testDir).delete();
+    }
+
+    @Test
+    public void testExportJobs_QueueQuotaCancelAndRestart() throws Exception {
+        ExportJobService jobs = new ExportJobService(blocking, patientService, directory, 1, 1, 2, 1);
+
+        ExportJobDTO first = jobs.submit("U1", patientId);
+        ExportJobDTO second = jobs.submit("U1", null);
+        try {
+            jobs.submit("U1", patientId);
+            fail("Expected QuotaExceededException");
+        } catch (QuotaExceededException expected) {
+        }
+        try {
+            jobs.submit("U2", "P-missing");
+            fail("Expected EntityNotFoundException");
+        } catch (EntityNotFoundException expected) {
+        }
+        try {
+            jobs.getJob("U2", first.getJobId());
+            fail("Jobs are private to their tenant");
+        } catch (EntityNotFoundException expected) {
+        }
+
+        // Only one worker, so the second job waits and can be cancelled without running
+        assertEquals(ExportJobStatus.QUEUED, jobs.getJob("U1", second.getJobId()).getStatus());
+        assertEquals(ExportJobStatus.CANCELLED, jobs.cancel("U1", second.getJobId()).getStatus());
+        try {
+            jobs.delete("U1", first.getJobId());
+            fail("Unfinished jobs cannot be deleted");
+        } catch (IllegalStateException expected) {
+        }
+
+        release.countDown();
+        ExportJobDTO done = awaitExportJob(jobs, "U1", first.getJobId());
+        assertEquals(ExportJobStatus.SUCCEEDED, done.getStatus());
+        File result = jobs.getResult("U1", first.getJobId());
+        assertEquals(result.length(), done.getResultBytes());
+        assertTrue(new String(Files.readAllBytes(result.toPath())).contains("Total Visits: 1"));
+
+        ExportJobDTO all = jobs.submit("U1", null);
+        assertEquals(ExportJobStatus.SUCCEEDED, awaitExportJob(jobs, "U1", all.getJobId()).getStatus());
+        assertTrue(jobs.getResult("U1", all.getJobId()).getName().endsWith(".zip"));
+        jobs.close();
+
+        // Job state survives a restart
+        ExportJobService restarted = new ExportJobService(blocking, patientService, directory, 1, 1, 2, 1);
+        List<ExportJobDTO> saved = restarted.listJobs("U1");
+        assertEquals(3, saved.size());
+        assertEquals(ExportJobStatus.CANCELLED, saved.get(1).getStatus());
+        assertEquals(result, restarted.getResult("U1", first.getJobId()));
+        restarted.delete("U1", first.getJobId());
+        assertFalse(result.exists());
+        restarted.close();
+    }
+
+    @Test
+    public void testCancel_RunningSinglePatientJobEndsCancelled() throws Exception {
+        ExportJobService jobs = new ExportJobService(blocking, patientService, directory, 1, 1, 2, 1);
+        ExportJobDTO job = jobs.submit("U1", patientId);
+        assertEquals(ExportJobStatus.RUNNING, job.getStatus());
+
+        // The export is already under way, so the cancel takes effect when it returns
+        assertEquals(ExportJobStatus.RUNNING, jobs.cancel("U1", job.getJobId()).getStatus());
+        release.countDown();
+        assertEquals(ExportJobStatus.CANCELLED, awaitExportJob(jobs, "U1", job.getJobId()).getStatus());
+        assertEquals("Partial and finished output removed", 0,
+                directory.listFiles((dir, name) -> name.startsWith(job.getJobId())).length);
+
+        // Cancelling a finished job has no effect and says so
+        try {
+            jobs.cancel("U1", job.getJobId());
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+            assertEquals("Export job already cancelled", expected.getMessage());
+        }
+        jobs.close();
+    }
+
+    private static ExportJobDTO awaitExportJob(ExportJobService jobs, String tenantId, String jobId) throws Exception {
+        long deadline = System.currentTimeMillis() + 10_000;
+        ExportJobDTO job = jobs.getJob(tenantId, jobId);
+        while (!job.getStatus().isFinished() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            job = jobs.getJob(tenantId, jobId);
+        }
+        return job;
+    }
+}
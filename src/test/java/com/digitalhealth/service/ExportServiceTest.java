@@ -0,0 +1,229 @@
+package com.digitalhealth.service;
+
+import com.digitalhealth.dao.DoctorDao;
+import com.digitalhealth.dao.HealthRecordDao;
+import com.digitalhealth.dao.PatientDao;
+import com.digitalhealth.dao.file.FileDoctorDao;
+import com.digitalhealth.dao.file.FileHealthRecordDao;
+import com.digitalhealth.dao.file.FilePatientDao;
+import com.digitalhealth.dto.DoctorDTO;
+import com.digitalhealth.dto.HealthRecordDTO;
+import com.digitalhealth.dto.PatientDTO;
+import com.digitalhealth.model.Doctor;
+import com.digitalhealth.model.DoctorSummary;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipFile;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for ExportService.
+ */
+public class ExportServiceTest {
+    private HealthRecordService healthRecordService;
+    private PatientService patientService;
+    private DoctorService doctorService;
+    private HealthRecordDao recordDao;
+    private String testDir = "test-data-export";
+
+    private String patientId;
+    private String doctorId;
+
+    @Before
+    public void setUp() throws Exception {
+        new File(testDir).mkdirs();
+
+        PatientDao patientDao = new FilePatientDao(testDir + "/patients.dat");
+        DoctorDao doctorDao = new FileDoctorDao(testDir + "/doctors.dat");
+        recordDao = new FileHealthRecordDao(testDir + "/records.dat");
+
+        patientService = new PatientService(patientDao);
+        doctorService = new DoctorService(doctorDao);
+        healthRecordService = new HealthRecordService(recordDao, patientService, doctorService);
+
+        patientId = patientService.registerPatient(new PatientDTO("Test Patient", 30, "M", "1234567890"));
+        doctorId = doctorService.addDoctor(new DoctorDTO("D001", "Dr. Test", "General"));
+    }
+
+    @After
+    public void tearDown() {
+        new File(testDir + "/patients.dat").delete();
+        new File(testDir + "/doctors.dat").delete();
+        new File(testDir + "/records.dat").delete();
+        new File(testDir + "/records.idx").delete();
+        new File(testDir).delete();
+    }
+
+    @Test
+    public void testExportAllPatientHistories_FilesAndZip() throws Exception {
+        String otherPatient = patientService.registerPatient(new PatientDTO("Other Patient", 45, "F", "5550001111"));
+        String noRecords = patientService.registerPatient(new PatientDTO("Quiet Patient", 60, "M", "5550002222"));
+        for (int i = 0; i < 3; i++) {
+            healthRecordService.addHealthRecord(new HealthRecordDTO(
+                patientId, doctorId, LocalDateTime.of(2025, 3, 1 + i, 9, 0), "Cough", "Bronchitis", null));
+        }
+        healthRecordService.addHealthRecord(new HealthRecordDTO(
+            otherPatient, doctorId, LocalDateTime.of(2025, 4, 2, 10, 0), "Rash", "Eczema", "Cream"));
+        ExportService exportService = new ExportService(patientService, healthRecordService, doctorService);
+
+        AtomicInteger lastProgress = new AtomicInteger();
+        File directory = new File(testDir + "/export");
+        int exported = exportService.exportAllPatientHistories(directory.getPath(), ExportService.BulkFormat.FILES, 4,
+            (done, total) -> lastProgress.accumulateAndGet(done, Math::max));
+        assertEquals(3, exported);
+        assertEquals(3, lastProgress.get());
+
+        // Same report as the single-patient export
+        File single = new File(testDir + "/single.txt");
+        exportService.exportPatientHistory(patientId, single.getPath());
+        String report = new String(Files.readAllBytes(new File(directory, "history_" + patientId + ".txt").toPath()));
+        assertEquals(new String(Files.readAllBytes(single.toPath())), report);
+        assertTrue(report.contains("Total Visits: 3"));
+        assertTrue(report.contains("Doctor: Dr. Test (ID: " + doctorId + ")"));
+        String quiet = new String(Files.readAllBytes(new File(directory, "history_" + noRecords + ".txt").toPath()));
+        assertTrue(quiet.contains("No medical records found."));
+
+        File archive = new File(testDir + "/export.zip");
+        assertEquals(3, exportService.exportAllPatientHistories(archive.getPath(), ExportService.BulkFormat.ZIP, 2, null));
+        List<String> entries = new ArrayList<>();
+        try (ZipFile zip = new ZipFile(archive)) {
+            zip.stream().forEach(entry -> entries.add(entry.getName()));
+            try (InputStream in = zip.getInputStream(zip.getEntry("history_" + patientId + ".txt"))) {
+                assertEquals(report, new String(in.readAllBytes()));
+            }
+        }
+        assertEquals(3, entries.size());
+        assertTrue(entries.contains("history_" + otherPatient + ".txt"));
+
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+        single.delete();
+        archive.delete();
+    }
+
+    @Test
+    public void testExportPatientHistory_DoctorNamesFromDirectory() throws Exception {
+        AtomicInteger fullLoads = new AtomicInteger();
+        AtomicInteger summaryLoads = new AtomicInteger();
+        DoctorDao doctorDao = new FileDoctorDao(testDir + "/doctors.dat") {
+            @Override
+            public Optional<Doctor> findById(String id) {
+                fullLoads.incrementAndGet();
+                return super.findById(id);
+            }
+
+            @Override
+            public Optional<DoctorSummary> findSummaryById(String id) {
+                summaryLoads.incrementAndGet();
+                return super.findSummaryById(id);
+            }
+        };
+        DoctorService countingDoctors = new DoctorService(doctorDao);
+        String otherDoctor = countingDoctors.addDoctor(new DoctorDTO("D002", "Dr. Other", "Cardiology"));
+        HealthRecordService records = new HealthRecordService(recordDao, patientService, countingDoctors);
+        for (int i = 0; i < 5; i++) {
+            records.addHealthRecord(new HealthRecordDTO(
+                patientId, i % 2 == 0 ? doctorId : otherDoctor, LocalDateTime.of(2025, 5, 1 + i, 9, 0), "Cough", "Cold", null));
+        }
+        ExportService exportService = new ExportService(patientService, records, countingDoctors);
+
+        File report = new File(testDir + "/directory.txt");
+        fullLoads.set(0);
+        exportService.exportPatientHistory(patientId, report.getPath());
+        exportService.exportPatientHistory(patientId, report.getPath());
+        assertEquals("One lookup per distinct doctor", 2, summaryLoads.get());
+        assertEquals("Slots are never loaded for names", 0, fullLoads.get());
+        String text = new String(Files.readAllBytes(report.toPath()));
+        assertTrue(text.contains("Doctor: Dr. Other (ID: " + otherDoctor + ")"));
+
+        // Deleting through the service invalidates the cached name
+        countingDoctors.deleteDoctor(otherDoctor);
+        exportService.exportPatientHistory(patientId, report.getPath());
+        text = new String(Files.readAllBytes(report.toPath()));
+        assertTrue(text.contains("Doctor ID: " + otherDoctor));
+        assertTrue(text.contains("Doctor: Dr. Test (ID: " + doctorId + ")"));
+        report.delete();
+    }
+
+    @Test
+    public void testDoctorDirectory_InvalidateDoesNotWaitForLookup() throws Exception {
+        CountDownLatch lookupStarted = new CountDownLatch(1);
+        CountDownLatch finishLookup = new CountDownLatch(1);
+        AtomicInteger summaryLoads = new AtomicInteger();
+        DoctorDao slowDao = new FileDoctorDao(testDir + "/doctors.dat") {
+            @Override
+            public Optional<DoctorSummary> findSummaryById(String id) {
+                summaryLoads.incrementAndGet();
+                lookupStarted.countDown();
+                try {
+                    finishLookup.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.findSummaryById(id);
+            }
+        };
+        DoctorDirectory directory = new DoctorDirectory(slowDao);
+        ExecutorService threads = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> name = threads.submit(() -> directory.findName(doctorId));
+            assertTrue(lookupStarted.await(5, TimeUnit.SECONDS));
+
+            // The lookup holds no lock on the doctor's entry
+            threads.submit(() -> directory.invalidate(doctorId)).get(1, TimeUnit.SECONDS);
+            finishLookup.countDown();
+            assertEquals("Dr. Test", name.get(5, TimeUnit.SECONDS));
+        } finally {
+            finishLookup.countDown();
+            threads.shutdown();
+        }
+
+        // What the invalidated lookup read was not cached
+        assertEquals("Dr. Test", directory.findName(doctorId));
+        assertEquals(2, summaryLoads.get());
+        assertEquals("Dr. Test", directory.findName(doctorId));
+        assertEquals(2, summaryLoads.get());
+    }
+
+    @Test
+    public void testExportHealthRecordsNdjson_DateRangeAndEscaping() throws Exception {
+        String march = healthRecordService.addHealthRecord(new HealthRecordDTO(
+            patientId, doctorId, LocalDateTime.of(2025, 3, 31, 23, 59), "Said \"ouch\"\nthen left", "Sprain", null));
+        healthRecordService.addHealthRecord(new HealthRecordDTO(
+            patientId, doctorId, LocalDateTime.of(2025, 4, 1, 0, 0), "Cough", "Cold", "Rest"));
+        healthRecordService.addHealthRecord(new HealthRecordDTO(
+            patientId, doctorId, LocalDateTime.of(2025, 2, 28, 12, 0), "Fever", "Flu", "Fluids"));
+        ExportService exportService = new ExportService(patientService, healthRecordService, doctorService);
+
+        StringWriter all = new StringWriter();
+        assertEquals(3, exportService.exportHealthRecordsNdjson(all, null, null));
+        assertEquals(3, all.toString().split("\n").length);
+        assertTrue(all.toString().endsWith("}\n"));
+
+        StringWriter range = new StringWriter();
+        assertEquals(1, exportService.exportHealthRecordsNdjson(range,
+            LocalDateTime.of(2025, 3, 1, 0, 0), LocalDateTime.of(2025, 4, 1, 0, 0)));
+        assertEquals("{\"recordId\":\"" + march + "\",\"patientId\":\"" + patientId + "\",\"doctorId\":\"" + doctorId
+            + "\",\"date\":\"2025-03-31T23:59:00\",\"symptoms\":\"Said \\\"ouch\\\"\\nthen left\",\"diagnosis\":\"Sprain\","
+            + "\"prescription\":null}\n", range.toString());
+    }
+}
@@ -7,12 +7,15 @@ import com.digitalhealth.dto.HealthRecordDTO;
 import com.digitalhealth.dto.PatientDTO;
 import com.digitalhealth.exception.EntityNotFoundException;
 import com.digitalhealth.exception.ValidationException;
+import com.digitalhealth.search.HealthRecordSearchIndex;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.File;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.Assert.*;
@@ -24,6 +27,7 @@ public class HealthRecordServiceTest {
     private HealthRecordService healthRecordService;
     private PatientService patientService;
     private DoctorService doctorService;
+    private HealthRecordDao recordDao;
     private String testDir = "test-data-record";
 
     private String patientId;
@@ -35,7 +39,7 @@ public class HealthRecordServiceTest {
 
         PatientDao patientDao = new FilePatientDao(testDir + "/patients.dat");
         DoctorDao doctorDao = new FileDoctorDao(testDir + "/doctors.dat");
-        HealthRecordDao recordDao = new FileHealthRecordDao(testDir + "/records.dat");
+        recordDao = new FileHealthRecordDao(testDir + "/records.dat");
 
         patientService = new PatientService(patientDao);
         doctorService = new DoctorService(doctorDao);
@@ -54,6 +58,7 @@ public class HealthRecordServiceTest {
         new File(testDir + "/patients.dat").delete();
         new File(testDir + "/doctors.dat").delete();
         new File(testDir + "/records.dat").delete();
+        new File(testDir + "/records.idx").delete();
         new File(testDir).delete();
     }
 
@@ -130,4 +135,79 @@ public class HealthRecordServiceTest {
         assertEquals(1, records.size());
         assertEquals(doctorId, records.get(0).getDoctorId());
     }
+
+    @Test
+    public void testSearchRecords_AndOrPrefix() throws Exception {
+        String flu = healthRecordService.addHealthRecord(new HealthRecordDTO(
+            patientId, doctorId, LocalDateTime.now().minusDays(2), "High fever and cough", "Influenza", "Oseltamivir"));
+        String cold = healthRecordService.addHealthRecord(new HealthRecordDTO(
+            patientId, doctorId, LocalDateTime.now().minusDays(1), "Mild fever", "Common cold", "Rest and fluids"));
+        String migraine = healthRecordService.addHealthRecord(new HealthRecordDTO(
+            patientId, doctorId, LocalDateTime.now(), "Headache", "Migraine", "Ibuprofen"));
+
+        assertEquals(recordIds(flu, cold), recordIds(healthRecordService.searchRecords("fever")));
+        assertEquals(recordIds(flu), recordIds(healthRecordService.searchRecords("Fever COUGH")));
+        assertEquals(recordIds(flu, migraine), recordIds(healthRecordService.searchRecords("cough OR migraine")));
+        assertEquals(recordIds(migraine), recordIds(healthRecordService.searchRecords("ibu*")));
+        assertTrue(healthRecordService.searchRecords("asthma").isEmpty());
+
+        healthRecordService.deleteHealthRecord(flu);
+        assertEquals(recordIds(cold), recordIds(healthRecordService.searchRecords("fever")));
+    }
+
+    @Test
+    public void testSearchRecords_Snapshot() throws Exception {
+        File snapshot = new File(testDir + "/records.idx");
+        HealthRecordService indexed = new HealthRecordService(recordDao, patientService, doctorService, snapshot);
+        String cold = indexed.addHealthRecord(new HealthRecordDTO(
+            patientId, doctorId, LocalDateTime.now(), "Sneezing", "Common cold", "Rest"));
+        indexed.saveSearchSnapshot();
+        assertTrue(snapshot.exists());
+
+        // Added after the snapshot; picked up by reconciliation on startup
+        String flu = indexed.addHealthRecord(new HealthRecordDTO(
+            patientId, doctorId, LocalDateTime.now(), "Fever", "Influenza", "Rest"));
+
+        HealthRecordService restarted = new HealthRecordService(recordDao, patientService, doctorService, snapshot);
+        assertEquals(recordIds(cold), recordIds(restarted.searchRecords("sneezing")));
+        assertEquals(recordIds(cold, flu), recordIds(restarted.searchRecords("rest")));
+
+        // Removing a record loaded from the snapshot drops it from its terms only
+        restarted.deleteHealthRecord(cold);
+        assertTrue(restarted.searchRecords("sneezing").isEmpty());
+        assertEquals(recordIds(flu), recordIds(restarted.searchRecords("rest")));
+        assertEquals(recordIds(flu), recordIds(restarted.searchRecords("influenza")));
+    }
+
+    @Test
+    public void testSearchSnapshot_SavedAfterEnoughChanges() throws Exception {
+        File snapshot = new File(testDir + "/records.idx");
+        HealthRecordService indexed = new HealthRecordService(recordDao, patientService, doctorService, snapshot, 3);
+        for (int i = 0; i < 2; i++) {
+            indexed.addHealthRecord(new HealthRecordDTO(
+                patientId, doctorId, LocalDateTime.now(), "Cough", "Cold", "Rest"));
+        }
+        assertFalse(snapshot.exists());
+
+        indexed.addHealthRecord(new HealthRecordDTO(
+            patientId, doctorId, LocalDateTime.now(), "Fever", "Influenza", "Rest"));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!snapshot.exists() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue("Saved in the background without shutdown", snapshot.exists());
+        assertEquals(3, HealthRecordSearchIndex.loadSnapshot(snapshot).size());
+    }
+
+    private static List<String> recordIds(String... ids) {
+        return Arrays.asList(ids);
+    }
+
+    private static List<String> recordIds(List<HealthRecordDTO> records) {
+        List<String> ids = new ArrayList<>();
+        for (HealthRecordDTO record : records) {
+            ids.add(record.getRecordId());
+        }
+        return ids;
+    }
 }
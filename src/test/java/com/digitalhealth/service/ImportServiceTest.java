@@ -0,0 +1,186 @@
+package com.digitalhealth.service;
+
+import com.digitalhealth.dao.TransactionManager;
+import com.digitalhealth.dao.file.FileDoctorDao;
+import com.digitalhealth.dao.file.FilePatientDao;
+import com.digitalhealth.dao.file.FileTransactionManager;
+import com.digitalhealth.dto.DoctorDTO;
+import com.digitalhealth.dto.ImportResultDTO;
+import com.digitalhealth.dto.PatientDTO;
+import com.digitalhealth.exception.EntityNotFoundException;
+import com.digitalhealth.exception.ValidationException;
+import com.digitalhealth.util.CsvReader;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for ImportService.
+ */
+public class ImportServiceTest {
+    private PatientService patientService;
+    private DoctorService doctorService;
+    private ImportService importService;
+    private TransactionManager transactionManager;
+    private String testDir = "test-data-import";
+
+    @Before
+    public void setUp() {
+        new File(testDir).mkdirs();
+        FilePatientDao patientDao = new FilePatientDao(testDir + "/patients.dat");
+        FileDoctorDao doctorDao = new FileDoctorDao(testDir + "/doctors.dat");
+        transactionManager = new FileTransactionManager(testDir, patientDao, doctorDao);
+        patientService = new PatientService(patientDao);
+        doctorService = new DoctorService(doctorDao);
+        importService = new ImportService(patientService, doctorService, transactionManager,
+                new File(testDir, "imports"), 7, 3, 4);
+    }
+
+    @After
+    public void tearDown() {
+        File[] rejects = new File(testDir, "imports").listFiles();
+        if (rejects != null) {
+            for (File file : rejects) {
+                file.delete();
+            }
+        }
+        new File(testDir, "imports").delete();
+        new File(testDir + "/patients.dat").delete();
+        new File(testDir + "/doctors.dat").delete();
+        new File(testDir + "/transaction.journal").delete();
+        new File(testDir).delete();
+    }
+
+    @Test
+    public void testImportPatients_StoresValidRowsInBatchesAndRejectsTheRest() throws Exception {
+        StringBuilder csv = new StringBuilder("Contact,Name,Gender,Age,Notes\n");
+        for (int i = 0; i < 50; i++) {
+            csv.append(String.format("55500%05d,\"Doe, Jane %d\",F,%d,\"said \"\"hi\"\"\"%n", i, i, 20 + i));
+        }
+        csv.append("5550000100,Bad Age,M,abc,\n");          // line 52
+        csv.append("123,Short Contact,M,40,\n");           // line 53
+        csv.append("5550000101,Missing Column,M,40\n");    // line 54
+        csv.append("\n");
+        csv.append("5550000102,,F,40,\n");                 // line 56
+
+        StringWriter rejects = new StringWriter();
+        ImportResultDTO result = importService.importPatients(new StringReader(csv.toString()), rejects);
+
+        assertEquals(54, result.getRowsRead());
+        assertEquals(50, result.getImported());
+        assertEquals(4, result.getRejected());
+        assertEquals("Batches of 7", 8, result.getBatches());
+        assertNull("No reject file was kept", result.getImportId());
+        assertEquals(50, patientService.listAllPatients().size());
+        assertEquals(50, patientService.getChangeCount());
+
+        List<PatientDTO> found = patientService.searchPatients("5550000004", 5);
+        assertEquals(1, found.size());
+        assertEquals("Doe, Jane 4", found.get(0).getName());
+        assertEquals(24, found.get(0).getAge());
+
+        CsvReader reader = new CsvReader(new StringReader(rejects.toString()));
+        assertArrayEquals(new String[] {"line", "error", "Contact", "Name", "Gender", "Age", "Notes"},
+                reader.readRecord());
+        Map<String, String> reasons = new TreeMap<>();
+        String[] reject;
+        while ((reject = reader.readRecord()) != null) {
+            reasons.put(reject[0], reject[1]);
+        }
+        assertEquals(Arrays.asList("52", "53", "54", "56"), new ArrayList<>(reasons.keySet()));
+        assertEquals("Invalid age: must be a whole number", reasons.get("52"));
+        assertEquals("Contact must be a 10-digit phone number", reasons.get("53"));
+        assertEquals("Expected 5 columns, found 4", reasons.get("54"));
+        assertEquals("Patient name is required", reasons.get("56"));
+        assertEquals(4, result.getFirstRejects().size());
+    }
+
+    @Test
+    public void testImportDoctors_KeepsRejectFile() throws Exception {
+        String csv = "name,specialty,email\n"
+                + "Dr. One,Cardiology,one@example.com\n"
+                + "Dr. Two,,two@example.com\n"
+                + "Dr. Three,Neurology,\"unterminated\n";
+
+        ImportResultDTO result = importService.importDoctors(new StringReader(csv));
+
+        assertEquals(3, result.getRowsRead());
+        assertEquals(1, result.getImported());
+        assertEquals(2, result.getRejected());
+        List<DoctorDTO> doctors = doctorService.listAllDoctors();
+        assertEquals(1, doctors.size());
+        assertEquals("D0001", doctors.get(0).getDoctorId());
+        assertFalse("Default slots", doctors.get(0).getAvailableSlots().isEmpty());
+
+        File rejects = importService.getRejectsFile(result.getImportId());
+        List<String> reasons = new ArrayList<>();
+        try (CsvReader reader = new CsvReader(new FileReader(rejects))) {
+            reader.readRecord();
+            String[] reject;
+            while ((reject = reader.readRecord()) != null) {
+                reasons.add(reject[0] + " " + reject[1]);
+            }
+        }
+        Collections.sort(reasons);
+        assertEquals(Arrays.asList("3 Specialty is required", "4 Unterminated quoted field"), reasons);
+
+        try {
+            importService.getRejectsFile("../patients.dat");
+            fail("Expected EntityNotFoundException");
+        } catch (EntityNotFoundException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testRegisterDoctors_ConcurrentSingleRegistrationsGetOtherIds() throws Exception {
+        doctorService.addDoctor(new DoctorDTO("D0007", "Dr. Seven", "Cardiology"));
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<List<String>> batches = pool.submit(() -> {
+                List<String> ids = new ArrayList<>();
+                for (int i = 0; i < 10; i++) {
+                    List<DoctorDTO> batch = new ArrayList<>();
+                    for (int j = 0; j < 5; j++) {
+                        batch.add(new DoctorDTO(null, "Dr. Batch " + i + "-" + j, "Neurology"));
+                    }
+                    ids.addAll(doctorService.registerDoctors(batch, transactionManager));
+                }
+                return ids;
+            });
+            Future<List<String>> singles = pool.submit(() -> {
+                List<String> ids = new ArrayList<>();
+                for (int i = 0; i < 50; i++) {
+                    ids.add(doctorService.registerDoctor(new DoctorDTO(null, "Dr. Single " + i, "Pediatrics")));
+                }
+                return ids;
+            });
+
+            Set<String> ids = new HashSet<>(batches.get(30, TimeUnit.SECONDS));
+            ids.addAll(singles.get(30, TimeUnit.SECONDS));
+            assertEquals(100, ids.size());
+            assertFalse("IDs start after the highest stored one", ids.contains("D0007"));
+            assertTrue(ids.contains("D0008"));
+            assertEquals(101, doctorService.listAllDoctors().size());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test(expected = ValidationException.class)
+    public void testImport_MissingHeaderColumn() throws Exception {
+        importService.importPatients(new StringReader("name,age,contact\nJohn,30,1234567890\n"), new StringWriter());
+    }
+}
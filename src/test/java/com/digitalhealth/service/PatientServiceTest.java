@@ -3,7 +3,9 @@ package com.digitalhealth.service;
 import com.digitalhealth.dao.PatientDao;
 import com.digitalhealth.dao.file.FilePatientDao;
 import com.digitalhealth.dto.PatientDTO;
+import com.digitalhealth.model.Patient;
 import com.digitalhealth.exception.EntityNotFoundException;
+import com.digitalhealth.exception.OptimisticLockException;
 import com.digitalhealth.exception.ValidationException;
 import org.junit.After;
 import org.junit.Before;
@@ -11,6 +13,7 @@ import org.junit.Test;
 
 import java.io.File;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.*;
 
@@ -19,12 +22,13 @@ import static org.junit.Assert.*;
  */
 public class PatientServiceTest {
     private PatientService patientService;
+    private PatientDao patientDao;
     private String testDataFile = "test-data/test-patients.dat";
 
     @Before
     public void setUp() {
         new File("test-data").mkdirs();
-        PatientDao patientDao = new FilePatientDao(testDataFile);
+        patientDao = new FilePatientDao(testDataFile);
         patientService = new PatientService(patientDao);
     }
 
@@ -76,6 +80,21 @@ public class PatientServiceTest {
         patientService.registerPatient(dto);
     }
 
+    @Test
+    public void testChangeCount_AdvancesOnWritesOnly() throws Exception {
+        long initial = patientService.getChangeCount();
+        String patientId = patientService.registerPatient(new PatientDTO("John Doe", 30, "M", "1234567890"));
+        assertEquals(initial + 1, patientService.getChangeCount());
+
+        patientService.listAllPatients();
+        patientService.getPatient(patientId);
+        assertEquals(initial + 1, patientService.getChangeCount());
+
+        patientService.updatePatient(new PatientDTO(patientId, "John Doe", 31, "M", "1234567890"));
+        patientService.deletePatient(patientId);
+        assertEquals(initial + 3, patientService.getChangeCount());
+    }
+
     @Test
     public void testGetPatient_Success() throws ValidationException, EntityNotFoundException {
         PatientDTO dto = new PatientDTO("John Doe", 30, "M", "1234567890");
@@ -139,4 +158,138 @@ public class PatientServiceTest {
         assertEquals("John Doe", retrieved.getName());
         assertEquals(30, retrieved.getAge());
     }
+
+    @Test
+    public void testSaveStalePatient_Conflict() throws Exception {
+        String patientId = patientService.registerPatient(new PatientDTO("John Doe", 30, "M", "1234567890"));
+        Patient first = patientDao.findById(patientId).get();
+        Patient second = patientDao.findById(patientId).get();
+
+        first.setName("John A. Doe");
+        patientDao.save(first);
+        assertEquals(2, first.getVersion());
+
+        second.setName("Johnny Doe");
+        try {
+            patientDao.save(second);
+            fail("Expected OptimisticLockException");
+        } catch (OptimisticLockException expected) {
+            // The first update must not be overwritten
+        }
+        assertEquals("John A. Doe", patientService.getPatient(patientId).getName());
+
+        // A service update re-reads and applies on top of the latest version
+        PatientDTO update = new PatientDTO(patientId, "Johnny Doe", 31, "M", "1234567890");
+        patientService.updatePatient(update);
+        assertEquals("Johnny Doe", patientService.getPatient(patientId).getName());
+    }
+
+    @Test
+    public void testSaveNewPatient_ExistingIdConflict() throws Exception {
+        String patientId = patientService.registerPatient(new PatientDTO("John Doe", 30, "M", "1234567890"));
+
+        // Version 0 inserts; it must not overwrite the patient already stored under the ID
+        Patient duplicate = new Patient(patientId, "Someone Else", 50, "F", "0000000000");
+        try {
+            patientDao.save(duplicate);
+            fail("Expected OptimisticLockException");
+        } catch (OptimisticLockException expected) {
+            // The stored patient is untouched
+        }
+        assertEquals(0, duplicate.getVersion());
+        assertEquals("John Doe", patientService.getPatient(patientId).getName());
+    }
+
+    @Test
+    public void testUpdatePatient_StaleVersionConflict() throws Exception {
+        String patientId = patientService.registerPatient(new PatientDTO("John Doe", 30, "M", "1234567890"));
+        PatientDTO mine = patientService.getPatient(patientId);
+        PatientDTO theirs = patientService.getPatient(patientId);
+        assertEquals(1, mine.getVersion());
+
+        theirs.setName("John A. Doe");
+        patientService.updatePatient(theirs);
+        assertEquals(2, theirs.getVersion());
+
+        // An edit of the version-1 copy is refused rather than re-applied over the other change
+        mine.setContact("5550001111");
+        try {
+            patientService.updatePatient(mine);
+            fail("Expected OptimisticLockException");
+        } catch (OptimisticLockException expected) {
+            // The caller has to read the patient again
+        }
+        PatientDTO stored = patientService.getPatient(patientId);
+        assertEquals("John A. Doe", stored.getName());
+        assertEquals("1234567890", stored.getContact());
+        assertEquals(2, stored.getVersion());
+    }
+
+    @Test
+    public void testSavePatient_FailedWriteKeepsVersion() throws Exception {
+        boolean[] failWrites = {false};
+        PatientDao failingDao = new FilePatientDao(testDataFile) {
+            @Override
+            public void writeFile(Map<String, Patient> patients) {
+                if (failWrites[0]) {
+                    throw new RuntimeException("Disk full");
+                }
+                super.writeFile(patients);
+            }
+        };
+        Patient patient = new Patient("P5001", "John Doe", 30, "M", "1234567890");
+        failingDao.save(patient);
+        assertEquals(1, patient.getVersion());
+
+        failWrites[0] = true;
+        patient.setName("John A. Doe");
+        try {
+            failingDao.save(patient);
+            fail("Expected the write to fail");
+        } catch (RuntimeException expected) {
+            // Nothing was stored
+        }
+        assertEquals("The version still matches the stored patient", 1, patient.getVersion());
+
+        failWrites[0] = false;
+        failingDao.save(patient);
+        assertEquals(2, patient.getVersion());
+        assertEquals("John A. Doe", failingDao.findById("P5001").get().getName());
+    }
+
+    @Test
+    public void testSearchPatients_NameAndPhonePrefix() throws Exception {
+        String john = patientService.registerPatient(new PatientDTO("John Ronald Doe", 30, "M", "5551234567"));
+        String jane = patientService.registerPatient(new PatientDTO("Jane Jones", 28, "F", "5559876543"));
+        patientService.registerPatient(new PatientDTO("Émile Zola", 60, "M", "4440001111"));
+
+        // Any word of the name, case-insensitive; a patient matching twice is listed once
+        List<PatientDTO> jo = patientService.searchPatients("jo", 10);
+        assertEquals(2, jo.size());
+        assertEquals(john, jo.get(0).getPatientId()); // "john ronald doe"
+        assertEquals(jane, jo.get(1).getPatientId()); // "jones"
+        assertEquals(1, patientService.searchPatients("RONALD d", 10).size());
+        assertEquals(1, patientService.searchPatients("emile", 10).size());
+
+        // Phone prefixes ignore punctuation
+        assertEquals(2, patientService.searchPatients("555", 10).size());
+        assertEquals(jane, patientService.searchPatients("(555) 98", 10).get(0).getPatientId());
+        assertEquals(1, patientService.searchPatients("555", 1).size());
+
+        // The index follows updates and deletes
+        patientService.updatePatient(new PatientDTO(jane, "Jane Smith", 28, "F", "5559876543"));
+        assertEquals(1, patientService.searchPatients("jo", 10).size());
+        assertEquals(jane, patientService.searchPatients("smi", 10).get(0).getPatientId());
+        patientService.deletePatient(john);
+        assertTrue(patientService.searchPatients("doe", 10).isEmpty());
+
+        // A new service instance rebuilds the index from storage
+        PatientService reloaded = new PatientService(patientDao);
+        assertEquals(jane, reloaded.searchPatients("smith", 10).get(0).getPatientId());
+    }
+
+    @Test(expected = ValidationException.class)
+    public void testSearchPatients_BlankPrefix() throws Exception {
+        patientService.searchPatients("  ", 10);
+    }
 }
@@ -0,0 +1,178 @@
+package com.digitalhealth.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for DataMigrator.
+ */
+public class DataMigratorTest {
+    private final File testDir = new File("test-data-migration");
+    private final File checkpointFile = new File(testDir, "migration.checkpoint");
+    private final PrintStream out = new PrintStream(new ByteArrayOutputStream());
+
+    private List<String> patients;
+    private List<String> appointments;
+
+    @Before
+    public void setUp() {
+        patients = ids("P", 1050);
+        appointments = ids("A", 1000);
+    }
+
+    @After
+    public void tearDown() {
+        checkpointFile.delete();
+        new File(checkpointFile.getPath() + ".tmp").delete();
+        testDir.delete();
+    }
+
+    @Test
+    public void testRun_ResumesAfterFailedBatch() throws Exception {
+        Map<String, Integer> written = new HashMap<>();
+        AtomicBoolean patientsFinished = new AtomicBoolean();
+
+        // First run: the fourth appointment batch fails
+        DataMigrator first = new DataMigrator(checkpointFile, 100, out);
+        first.addTable("patients", 0, () -> patients, Function.identity(), new RecordingSink(written, -1) {
+            @Override
+            public void finish() {
+                patientsFinished.set(true);
+            }
+        });
+        first.addTable("appointments", 1, () -> appointments, Function.identity(), new RecordingSink(written, 3) {
+            @Override
+            public boolean write(List<String> batch) throws Exception {
+                assertTrue("Appointments wait for patients", patientsFinished.get());
+                return super.write(batch);
+            }
+        });
+        try {
+            first.run();
+            fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertEquals("Batch 3 failed", e.getCause().getMessage());
+        }
+        assertEquals(1050 + 300, written.size());
+
+        Properties checkpoint = new Properties();
+        try (InputStream in = new FileInputStream(checkpointFile)) {
+            checkpoint.load(in);
+        }
+        assertEquals("true", checkpoint.getProperty("patients.done"));
+        assertEquals("A100299", checkpoint.getProperty("appointments.lastId"));
+
+        // Second run picks up after the last stored batch and skips finished tables
+        DataMigrator second = new DataMigrator(checkpointFile, 100, out);
+        second.addTable("patients", 0, () -> patients, Function.identity(), new RecordingSink(written, -1));
+        second.addTable("appointments", 1, () -> appointments, Function.identity(), new RecordingSink(written, -1));
+        Map<String, Long> rows = second.run();
+
+        assertEquals(Long.valueOf(0), rows.get("patients"));
+        assertEquals(Long.valueOf(700), rows.get("appointments"));
+        assertEquals(2050, written.size());
+        for (Map.Entry<String, Integer> entry : written.entrySet()) {
+            assertEquals("Row " + entry.getKey() + " written once", Integer.valueOf(1), entry.getValue());
+        }
+        assertFalse("Checkpoint removed after a complete run", checkpointFile.exists());
+    }
+
+    @Test
+    public void testRun_BufferedSinkIsRedoneUntilFinished() throws Exception {
+        Map<String, Integer> written = new HashMap<>();
+        DataMigrator first = new DataMigrator(checkpointFile, 100, out);
+        first.addTable("appointments", 0, () -> appointments, Function.identity(), new BufferedSink(written, 5));
+        try {
+            first.run();
+            fail("Expected ExecutionException");
+        } catch (ExecutionException expected) {
+            // Nothing was stored, so nothing is checkpointed
+        }
+        assertTrue(written.isEmpty());
+
+        DataMigrator second = new DataMigrator(checkpointFile, 100, out);
+        second.addTable("appointments", 0, () -> appointments, Function.identity(), new BufferedSink(written, -1));
+        assertEquals(Long.valueOf(1000), second.run().get("appointments"));
+        assertEquals(1000, written.size());
+    }
+
+    private static List<String> ids(String prefix, int count) {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ids.add(prefix + (100000 + i));
+        }
+        // Sources come in any order; the migrator sorts by id
+        Collections.shuffle(ids, new Random(42));
+        return ids;
+    }
+
+    /**
+     * Stores every batch straight away, failing on one batch.
+     */
+    private static class RecordingSink implements DataMigrator.TableSink<String> {
+        private final Map<String, Integer> written;
+        private final int failingBatch;
+        private int batches;
+
+        RecordingSink(Map<String, Integer> written, int failingBatch) {
+            this.written = written;
+            this.failingBatch = failingBatch;
+        }
+
+        @Override
+        public boolean write(List<String> batch) throws Exception {
+            if (batches++ == failingBatch) {
+                throw new IllegalStateException("Batch " + failingBatch + " failed");
+            }
+            synchronized (written) {
+                for (String id : batch) {
+                    written.merge(id, 1, Integer::sum);
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Buffers rows and stores them when the table is finished.
+     */
+    private static class BufferedSink extends RecordingSink {
+        private final List<String> buffer = new ArrayList<>();
+        private final Map<String, Integer> written;
+        private final int failingBatch;
+        private int batches;
+
+        BufferedSink(Map<String, Integer> written, int failingBatch) {
+            super(written, -1);
+            this.written = written;
+            this.failingBatch = failingBatch;
+        }
+
+        @Override
+        public boolean write(List<String> batch) {
+            if (batches++ == failingBatch) {
+                throw new IllegalStateException("Batch " + failingBatch + " failed");
+            }
+            buffer.addAll(batch);
+            return false;
+        }
+
+        @Override
+        public void finish() throws Exception {
+            super.write(buffer);
+        }
+    }
+}